@@ -30,7 +30,11 @@ import java.awt.event.WindowEvent;
 
 import javax.swing.*;
 
+import server.Metrics;
 import server.Server;
+import server.ServerConfiguration;
+import server.ServerListener;
+import server.ThreadMode;
 
 /**
  * The application window for the {@link Server}, where you can update
@@ -38,7 +42,7 @@ import server.Server;
  * 
  * @author Chandan R. Rupakheti (rupakhet@rose-hulman.edu)
  */
-public class WebServer extends JFrame {
+public class WebServer extends JFrame implements ServerListener {
 	private static final long serialVersionUID = 5042579745743827174L;
 
 	private JPanel panelRunServer;
@@ -47,12 +51,20 @@ public class WebServer extends JFrame {
 	private JLabel lblRootDirectory;
 	private JTextField txtRootDirectory;
 	private JButton butSelect;
+	private JLabel lblThreadMode;
+	private JComboBox<ThreadMode> cmbThreadMode;
 
 	private JPanel panelInput;
 	private JButton butStartServer;
 	private JButton butStopServer;
 	private JLabel lblServiceRate;
 	private JTextField txtServiceRate;
+	private JLabel lblWorkers;
+	private JTextField txtWorkers;
+	private JLabel lblRequestRate;
+	private JTextField txtRequestRate;
+	private JLabel lblLatency;
+	private JTextField txtLatency;
 	
 	private Server server;
 	private ServiceRateUpdater rateUpdater;
@@ -73,6 +85,16 @@ public class WebServer extends JFrame {
 						WebServer.this.txtServiceRate.setText("Unknown");
 					else
 						WebServer.this.txtServiceRate.setText(Double.toString(rate));
+					WebServer.this.txtWorkers.setText(server.getActiveWorkers() + " / " 
+							+ server.getQueuedWorkers() + " / " + server.getRejectedWorkers());
+					
+					Metrics metrics = server.getMetrics();
+					Metrics.Window recent = metrics.getWindow(10);
+					WebServer.this.txtRequestRate.setText(String.format("%.1f / %.1f / %.1f", 
+							metrics.getWindow(1).getRequestRate(), recent.getRequestRate(), 
+							metrics.getWindow(60).getRequestRate()));
+					WebServer.this.txtLatency.setText(recent.getLatency(0.5) + " / " 
+							+ recent.getLatency(0.99) + " / " + recent.getLatency(0.999));
 				}
 				
 				// Poll at an interval of 500 milliseconds
@@ -104,6 +126,8 @@ public class WebServer extends JFrame {
 		this.txtRootDirectory.setEditable(false);
 		this.txtRootDirectory.setPreferredSize(new Dimension(400, 21));
 		this.butSelect = new JButton("Select");
+		this.lblThreadMode = new JLabel("Thread Mode");
+		this.cmbThreadMode = new JComboBox<ThreadMode>(ThreadMode.values());
 
 		this.panelInput.setBorder(BorderFactory.createTitledBorder("Input Parameters"));
 		this.panelInput.setLayout(new SpringLayout());
@@ -113,9 +137,11 @@ public class WebServer extends JFrame {
 		this.panelInput.add(this.txtRootDirectory);
 		this.panelInput.add(new JLabel("")); // Empty label
 		this.panelInput.add(this.butSelect);
+		this.panelInput.add(this.lblThreadMode);
+		this.panelInput.add(this.cmbThreadMode);
 
 		// Compact the grid
-		SpringUtilities.makeCompactGrid(this.panelInput, 3, 2, 5, 5, 5, 5);
+		SpringUtilities.makeCompactGrid(this.panelInput, 4, 2, 5, 5, 5, 5);
 
 
 		// Run server widgets
@@ -125,6 +151,15 @@ public class WebServer extends JFrame {
 		this.butStopServer.setEnabled(false);
 		this.lblServiceRate = new JLabel("Service Rate (Connections Serviced/Second)");
 		this.txtServiceRate = new JTextField("Unknown");
+		this.lblWorkers = new JLabel("Workers (Active / Queued / Rejected)");
+		this.txtWorkers = new JTextField("Unknown");
+		this.txtWorkers.setEditable(false);
+		this.lblRequestRate = new JLabel("Requests/Second (Last 1s / 10s / 60s)");
+		this.txtRequestRate = new JTextField("Unknown");
+		this.txtRequestRate.setEditable(false);
+		this.lblLatency = new JLabel("Latency in \u00b5s (p50 / p99 / p99.9 of Last 10s)");
+		this.txtLatency = new JTextField("Unknown");
+		this.txtLatency.setEditable(false);
 
 		// panelRunServer uses FlowLayout by default
 		this.panelRunServer.setBorder(BorderFactory.createTitledBorder("Run Server"));
@@ -133,9 +168,15 @@ public class WebServer extends JFrame {
 		this.panelRunServer.add(this.butStopServer);
 		this.panelRunServer.add(this.lblServiceRate);
 		this.panelRunServer.add(this.txtServiceRate);
+		this.panelRunServer.add(this.lblWorkers);
+		this.panelRunServer.add(this.txtWorkers);
+		this.panelRunServer.add(this.lblRequestRate);
+		this.panelRunServer.add(this.txtRequestRate);
+		this.panelRunServer.add(this.lblLatency);
+		this.panelRunServer.add(this.txtLatency);
 		
 		// Compact the grid
-		SpringUtilities.makeCompactGrid(this.panelRunServer, 2, 2, 5, 5, 5, 5);
+		SpringUtilities.makeCompactGrid(this.panelRunServer, 5, 2, 5, 5, 5, 5);
 		
 		JPanel contentPane = (JPanel)this.getContentPane();
 		contentPane.add(this.panelInput, BorderLayout.CENTER);
@@ -184,8 +225,13 @@ public class WebServer extends JFrame {
 				// Get hold of the root directory
 				String rootDirectory = WebServer.this.txtRootDirectory.getText();
 				
+				ServerConfiguration configuration = new ServerConfiguration();
+				configuration.setRootDirectory(rootDirectory);
+				configuration.setPort(port);
+				configuration.setThreadMode((ThreadMode) WebServer.this.cmbThreadMode.getSelectedItem());
+				
 				// Now run the server in non-gui thread
-				server = new Server(rootDirectory, port, WebServer.this);
+				server = new Server(configuration, WebServer.this);
 				rateUpdater = new ServiceRateUpdater();
 				
 				// Disable widgets
@@ -224,6 +270,7 @@ public class WebServer extends JFrame {
 	private void disableWidgets() {
 		this.txtPortNumber.setEnabled(false);
 		this.butSelect.setEnabled(false);
+		this.cmbThreadMode.setEnabled(false);
 		this.butStartServer.setEnabled(false);
 		this.butStopServer.setEnabled(true);
 	}
@@ -231,10 +278,19 @@ public class WebServer extends JFrame {
 	private void enableWidgets() {
 		this.txtPortNumber.setEnabled(true);
 		this.butSelect.setEnabled(true);
+		this.cmbThreadMode.setEnabled(true);
 		this.butStartServer.setEnabled(true);
 		this.butStopServer.setEnabled(false);
 	}
 
+	/* (non-Javadoc)
+	 * @see server.ServerListener#serverFailed(java.lang.Exception)
+	 */
+	@Override
+	public void serverFailed(Exception e) {
+		showSocketException(e);
+	}
+
 	/**
 	 * For displaying exception.
 	 * @param e
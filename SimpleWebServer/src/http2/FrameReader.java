@@ -0,0 +1,162 @@
+/*
+ * FrameReader.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package http2;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads HTTP/2 frames off a connection one at a time. Every frame starts
+ * with a nine octet header giving the length of its payload, its type, its
+ * flags and the stream it belongs to; the payload is read into a buffer that
+ * is reused for the next frame.
+ *
+ * A reader belongs to the thread reading its connection and is not thread
+ * safe.
+ */
+class FrameReader {
+	private InputStream in;
+	private byte[] header;
+	private byte[] payload;
+	private int length;
+	private int type;
+	private int flags;
+	private int streamId;
+
+	/**
+	 * @param in The input stream of the connection.
+	 * @param maxFrameSize The largest payload accepted, as announced in our
+	 * settings.
+	 */
+	FrameReader(InputStream in, int maxFrameSize) {
+		this.in = in;
+		this.header = new byte[Http2.FRAME_HEADER_LENGTH];
+		this.payload = new byte[maxFrameSize];
+	}
+
+	/**
+	 * Reads the client's connection preface, or what is left of it.
+	 *
+	 * @param offset How much of {@link Http2#PREFACE} has been read already.
+	 * @throws IOException if the connection ends first
+	 * @throws Http2Exception if the bytes are not the preface
+	 */
+	void readPreface(int offset) throws IOException, Http2Exception {
+		byte[] preface = new byte[Http2.PREFACE.length - offset];
+		readFully(preface, preface.length);
+		for(int i = 0; i < preface.length; i++) {
+			if(preface[i] != Http2.PREFACE[offset + i])
+				throw new Http2Exception(Http2.PROTOCOL_ERROR, "Bad connection preface");
+		}
+	}
+
+	/**
+	 * Blocks until the first octet of the next frame arrives, so the caller
+	 * can tell waiting for a frame from receiving one. The frame is read with
+	 * {@link #next()}.
+	 *
+	 * @return false if the client closed the connection between frames
+	 * @throws IOException
+	 */
+	boolean await() throws IOException {
+		int first = this.in.read();
+		if(first < 0)
+			return false;
+		this.header[0] = (byte) first;
+		return true;
+	}
+
+	/**
+	 * Blocks until the frame whose first octet {@link #await()} read has been
+	 * read.
+	 *
+	 * @throws IOException if the connection ends in the middle of the frame
+	 * @throws Http2Exception if the frame is larger than allowed
+	 */
+	void next() throws IOException, Http2Exception {
+		readFully(this.header, 1, Http2.FRAME_HEADER_LENGTH - 1);
+		this.length = ((this.header[0] & 0xff) << 16) | ((this.header[1] & 0xff) << 8) | (this.header[2] & 0xff);
+		this.type = this.header[3] & 0xff;
+		this.flags = this.header[4] & 0xff;
+		// The reserved bit is ignored
+		this.streamId = readInt(this.header, 5) & 0x7fffffff;
+		if(this.length > this.payload.length)
+			throw new Http2Exception(Http2.FRAME_SIZE_ERROR, "Frame of " + this.length + " octets");
+		readFully(this.payload, 0, this.length);
+	}
+
+	int getLength() {
+		return length;
+	}
+
+	int getType() {
+		return type;
+	}
+
+	int getFlags() {
+		return flags;
+	}
+
+	/**
+	 * @param flag One of the <tt>FLAG_</tt> constants of {@link Http2}.
+	 * @return true if the flag is set on the frame
+	 */
+	boolean hasFlag(int flag) {
+		return (this.flags & flag) != 0;
+	}
+
+	int getStreamId() {
+		return streamId;
+	}
+
+	/**
+	 * @return the payload, valid up to {@link #getLength()} until the next
+	 * frame is read
+	 */
+	byte[] getPayload() {
+		return payload;
+	}
+
+	/**
+	 * Reads a four octet integer in network order.
+	 */
+	static int readInt(byte[] in, int offset) {
+		return ((in[offset] & 0xff) << 24) | ((in[offset + 1] & 0xff) << 16) 
+				| ((in[offset + 2] & 0xff) << 8) | (in[offset + 3] & 0xff);
+	}
+
+	private void readFully(byte[] buffer, int length) throws IOException {
+		readFully(buffer, 0, length);
+	}
+
+	private void readFully(byte[] buffer, int offset, int length) throws IOException {
+		while(length > 0) {
+			int count = this.in.read(buffer, offset, length);
+			if(count < 0)
+				throw new EOFException("Connection closed in the middle of a frame");
+			offset += count;
+			length -= count;
+		}
+	}
+}
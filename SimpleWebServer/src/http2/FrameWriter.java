@@ -0,0 +1,215 @@
+/*
+ * FrameWriter.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package http2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes HTTP/2 frames to a connection. Frames are written whole, one at a
+ * time, by whichever thread has one to send: the reader answering a
+ * <tt>PING</tt> or returning flow control credit, or the thread sending the
+ * responses. The frames a header block is split into are written together,
+ * as nothing may come between them.
+ *
+ * Response frames are buffered and go out when {@link #flush()} is called or
+ * the buffer fills up, the frames other threads write are flushed right away.
+ * Writers take turns on a lock rather than the monitor, so a virtual thread
+ * blocked on the socket does not hold on to its carrier.
+ */
+class FrameWriter {
+	private OutputStream out;
+	private ReentrantLock lock;
+	private byte[] header;
+	private byte[] scratch;
+
+	/**
+	 * @param out A buffered stream on the connection.
+	 */
+	FrameWriter(OutputStream out) {
+		this.out = out;
+		this.lock = new ReentrantLock();
+		this.header = new byte[Http2.FRAME_HEADER_LENGTH];
+		this.scratch = new byte[8];
+	}
+
+	/**
+	 * Writes our settings, as pairs of identifier and value.
+	 */
+	void writeSettings(int... settings) throws IOException {
+		this.lock.lock();
+		try {
+			byte[] payload = new byte[settings.length / 2 * 6];
+			for(int i = 0; i < settings.length / 2; i++) {
+				payload[i * 6] = (byte) (settings[i * 2] >>> 8);
+				payload[i * 6 + 1] = (byte) settings[i * 2];
+				putInt(payload, i * 6 + 2, settings[i * 2 + 1]);
+			}
+			writeFrame(Http2.SETTINGS, 0, 0, payload, 0, payload.length);
+			flush();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	void writeSettingsAck() throws IOException {
+		this.lock.lock();
+		try {
+			writeFrame(Http2.SETTINGS, Http2.FLAG_ACK, 0, null, 0, 0);
+			flush();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Answers a <tt>PING</tt>, sending its opaque data back.
+	 */
+	void writePingAck(byte[] data, int offset) throws IOException {
+		this.lock.lock();
+		try {
+			writeFrame(Http2.PING, Http2.FLAG_ACK, 0, data, offset, 8);
+			flush();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	void writeGoAway(int lastStreamId, int error) throws IOException {
+		this.lock.lock();
+		try {
+			putInt(this.scratch, 0, lastStreamId);
+			putInt(this.scratch, 4, error);
+			writeFrame(Http2.GOAWAY, 0, 0, this.scratch, 0, 8);
+			flush();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	void writeRstStream(int streamId, int error) throws IOException {
+		this.lock.lock();
+		try {
+			putInt(this.scratch, 0, error);
+			writeFrame(Http2.RST_STREAM, 0, streamId, this.scratch, 0, 4);
+			flush();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	void writeWindowUpdate(int streamId, int increment) throws IOException {
+		this.lock.lock();
+		try {
+			putInt(this.scratch, 0, increment);
+			writeFrame(Http2.WINDOW_UPDATE, 0, streamId, this.scratch, 0, 4);
+			flush();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes a header block, in a <tt>HEADERS</tt> frame followed by as many
+	 * <tt>CONTINUATION</tt> frames as it takes.
+	 *
+	 * @param streamId The stream of the response.
+	 * @param block The encoded header block.
+	 * @param length The length of the block.
+	 * @param endStream Whether the response has no body.
+	 * @param maxFrameSize The largest payload the client accepts.
+	 */
+	void writeHeaders(int streamId, byte[] block, int length, boolean endStream, 
+			int maxFrameSize) throws IOException {
+		this.lock.lock();
+		try {
+			int type = Http2.HEADERS;
+			int flags = endStream ? Http2.FLAG_END_STREAM : 0;
+			int offset = 0;
+			do {
+				int count = Math.min(length - offset, maxFrameSize);
+				if(offset + count == length)
+					flags |= Http2.FLAG_END_HEADERS;
+				writeFrame(type, flags, streamId, block, offset, count);
+				offset += count;
+				type = Http2.CONTINUATION;
+				flags = 0;
+			}
+			while(offset < length);
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes part of a response body.
+	 */
+	void writeData(int streamId, byte[] data, int offset, int length, 
+			boolean endStream) throws IOException {
+		this.lock.lock();
+		try {
+			writeFrame(Http2.DATA, endStream ? Http2.FLAG_END_STREAM : 0, streamId, data, offset, length);
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	void flush() throws IOException {
+		this.lock.lock();
+		try {
+			this.out.flush();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void writeFrame(int type, int flags, int streamId, byte[] payload, 
+			int offset, int length) throws IOException {
+		this.header[0] = (byte) (length >>> 16);
+		this.header[1] = (byte) (length >>> 8);
+		this.header[2] = (byte) length;
+		this.header[3] = (byte) type;
+		this.header[4] = (byte) flags;
+		putInt(this.header, 5, streamId);
+		this.out.write(this.header);
+		if(length > 0)
+			this.out.write(payload, offset, length);
+	}
+
+	private static void putInt(byte[] out, int offset, int value) {
+		out[offset] = (byte) (value >>> 24);
+		out[offset + 1] = (byte) (value >>> 16);
+		out[offset + 2] = (byte) (value >>> 8);
+		out[offset + 3] = (byte) value;
+	}
+}
@@ -0,0 +1,279 @@
+/*
+ * HeaderTable.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package http2;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The table of header fields HPACK refers to by index (RFC 7541, section
+ * 2.3). Indices 1 to 61 are the static table, which is the same for every
+ * connection; the dynamic table follows, newest entry first. The dynamic
+ * table holds the fields the peer's encoder chose to add, as many as fit in
+ * its maximum size, and drops the oldest to make room.
+ *
+ * Each direction of a connection has its own table. A table is used by one
+ * thread at a time and is not thread safe.
+ */
+class HeaderTable {
+	/** What each entry costs on top of the length of its name and value */
+	static final int ENTRY_OVERHEAD = 32;
+
+	private static final String[][] STATIC = {
+		{ ":authority", "" },
+		{ ":method", "GET" },
+		{ ":method", "POST" },
+		{ ":path", "/" },
+		{ ":path", "/index.html" },
+		{ ":scheme", "http" },
+		{ ":scheme", "https" },
+		{ ":status", "200" },
+		{ ":status", "204" },
+		{ ":status", "206" },
+		{ ":status", "304" },
+		{ ":status", "400" },
+		{ ":status", "404" },
+		{ ":status", "500" },
+		{ "accept-charset", "" },
+		{ "accept-encoding", "gzip, deflate" },
+		{ "accept-language", "" },
+		{ "accept-ranges", "" },
+		{ "accept", "" },
+		{ "access-control-allow-origin", "" },
+		{ "age", "" },
+		{ "allow", "" },
+		{ "authorization", "" },
+		{ "cache-control", "" },
+		{ "content-disposition", "" },
+		{ "content-encoding", "" },
+		{ "content-language", "" },
+		{ "content-length", "" },
+		{ "content-location", "" },
+		{ "content-range", "" },
+		{ "content-type", "" },
+		{ "cookie", "" },
+		{ "date", "" },
+		{ "etag", "" },
+		{ "expect", "" },
+		{ "expires", "" },
+		{ "from", "" },
+		{ "host", "" },
+		{ "if-match", "" },
+		{ "if-modified-since", "" },
+		{ "if-none-match", "" },
+		{ "if-range", "" },
+		{ "if-unmodified-since", "" },
+		{ "last-modified", "" },
+		{ "link", "" },
+		{ "location", "" },
+		{ "max-forwards", "" },
+		{ "proxy-authenticate", "" },
+		{ "proxy-authorization", "" },
+		{ "range", "" },
+		{ "referer", "" },
+		{ "refresh", "" },
+		{ "retry-after", "" },
+		{ "server", "" },
+		{ "set-cookie", "" },
+		{ "strict-transport-security", "" },
+		{ "transfer-encoding", "" },
+		{ "user-agent", "" },
+		{ "vary", "" },
+		{ "via", "" },
+		{ "www-authenticate", "" }
+	};
+
+	static final int STATIC_LENGTH = STATIC.length;
+
+	// The first static index of each name, and of each name and value pair
+	private static final Map<String, Integer> staticNames = new HashMap<String, Integer>();
+	private static final Map<String, Integer> staticFields = new HashMap<String, Integer>();
+
+	static {
+		for(int i = STATIC_LENGTH; i > 0; i--) {
+			staticNames.put(STATIC[i - 1][0], i);
+			staticFields.put(STATIC[i - 1][0] + '\0' + STATIC[i - 1][1], i);
+		}
+	}
+
+	// A ring of the dynamic entries, the newest one is right before head
+	private String[] names;
+	private String[] values;
+	private int head;
+	private int count;
+	private int size;
+	private int maxSize;
+
+	/**
+	 * @param maxSize The most octets the dynamic table may hold.
+	 */
+	HeaderTable(int maxSize) {
+		this.maxSize = maxSize;
+		this.names = new String[capacity(maxSize)];
+		this.values = new String[this.names.length];
+		this.head = 0;
+		this.count = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * @return the number of entries, static ones included
+	 */
+	int length() {
+		return STATIC_LENGTH + this.count;
+	}
+
+	/**
+	 * @return the octets the dynamic entries take
+	 */
+	int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the most octets the dynamic table may hold
+	 */
+	int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @param index An index between 1 and {@link #length()}.
+	 * @return the name of the entry
+	 */
+	String getName(int index) {
+		if(index <= STATIC_LENGTH)
+			return STATIC[index - 1][0];
+		return this.names[slot(index)];
+	}
+
+	/**
+	 * @param index An index between 1 and {@link #length()}.
+	 * @return the value of the entry
+	 */
+	String getValue(int index) {
+		if(index <= STATIC_LENGTH)
+			return STATIC[index - 1][1];
+		return this.values[slot(index)];
+	}
+
+	/**
+	 * Looks up a field for the encoder, exact matches first.
+	 *
+	 * @param name The name of the field.
+	 * @param value The value of the field.
+	 * @return the index of an entry with the same name and value, the
+	 * negated index of one with the same name, or 0 if there is neither
+	 */
+	int find(String name, String value) {
+		Integer index = staticFields.get(name + '\0' + value);
+		if(index != null)
+			return index;
+		int named = 0;
+		for(int i = 0; i < this.count; i++) {
+			int slot = (this.head - 1 - i + this.names.length) % this.names.length;
+			if(!this.names[slot].equals(name))
+				continue;
+			if(this.values[slot].equals(value))
+				return STATIC_LENGTH + 1 + i;
+			if(named == 0)
+				named = STATIC_LENGTH + 1 + i;
+		}
+		index = staticNames.get(name);
+		if(index != null)
+			return -index;
+		return -named;
+	}
+
+	/**
+	 * Adds a field as the newest entry, evicting the oldest ones until it
+	 * fits. A field larger than the whole table empties it and is not added.
+	 *
+	 * @param name The name of the field.
+	 * @param value The value of the field.
+	 */
+	void add(String name, String value) {
+		int entrySize = size(name, value);
+		evict(this.maxSize - entrySize);
+		if(entrySize > this.maxSize)
+			return;
+		this.names[this.head] = name;
+		this.values[this.head] = value;
+		this.head = (this.head + 1) % this.names.length;
+		this.count++;
+		this.size += entrySize;
+	}
+
+	/**
+	 * Changes the most octets the dynamic table may hold, evicting entries
+	 * that no longer fit.
+	 *
+	 * @param maxSize The new maximum size.
+	 */
+	void setMaxSize(int maxSize) {
+		evict(maxSize);
+		this.maxSize = maxSize;
+		int capacity = capacity(maxSize);
+		if(capacity == this.names.length)
+			return;
+		// Copy the entries left over oldest first, so the newest ends up
+		// right before head again
+		String[] names = new String[capacity];
+		String[] values = new String[capacity];
+		for(int i = 0; i < this.count; i++) {
+			int slot = (this.head - this.count + i + this.names.length) % this.names.length;
+			names[i] = this.names[slot];
+			values[i] = this.values[slot];
+		}
+		this.names = names;
+		this.values = values;
+		this.head = this.count % capacity;
+	}
+
+	/**
+	 * @return the octets an entry for the field takes in the table
+	 */
+	static int size(String name, String value) {
+		return name.length() + value.length() + ENTRY_OVERHEAD;
+	}
+
+	private void evict(int limit) {
+		while(this.count > 0 && this.size > limit) {
+			int slot = (this.head - this.count + this.names.length) % this.names.length;
+			this.size -= size(this.names[slot], this.values[slot]);
+			this.names[slot] = null;
+			this.values[slot] = null;
+			this.count--;
+		}
+	}
+
+	private int slot(int index) {
+		int age = index - STATIC_LENGTH - 1;
+		return (this.head - 1 - age + this.names.length) % this.names.length;
+	}
+
+	private static int capacity(int maxSize) {
+		// Even entries with empty names and values take the overhead
+		return maxSize / ENTRY_OVERHEAD + 1;
+	}
+}
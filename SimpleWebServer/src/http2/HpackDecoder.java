@@ -0,0 +1,167 @@
+/*
+ * HpackDecoder.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package http2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Decodes the header blocks of the requests on one connection (RFC 7541).
+ * The decoder keeps the dynamic table the client's encoder fills, so every
+ * block has to go through it in the order it arrived, including those of
+ * requests that are refused.
+ *
+ * A decoder belongs to the thread reading its connection and is not thread
+ * safe.
+ */
+class HpackDecoder {
+	private HeaderTable table;
+	private int maxTableSize;
+	private int maxListSize;
+	private byte[] in;
+	private int position;
+	private int end;
+
+	/**
+	 * @param maxTableSize The most octets the client may let its table hold,
+	 * as announced in our settings.
+	 * @param maxListSize The most octets of fields a request may have, as
+	 * counted by HPACK.
+	 */
+	HpackDecoder(int maxTableSize, int maxListSize) {
+		this.table = new HeaderTable(maxTableSize);
+		this.maxTableSize = maxTableSize;
+		this.maxListSize = maxListSize;
+	}
+
+	/**
+	 * Decodes a complete header block. Fields past the list size limit are
+	 * decoded for the table's sake but not handed out.
+	 *
+	 * @param block The header block, fragments joined.
+	 * @param length The length of the block.
+	 * @param names Where the names of the fields go.
+	 * @param values Where the values of the fields go.
+	 * @return false if the fields exceed the list size limit
+	 * @throws Http2Exception if the block cannot be decoded, which leaves the
+	 * table out of sync with the client and ends the connection
+	 */
+	boolean decode(byte[] block, int length, List<String> names, List<String> values) throws Http2Exception {
+		this.in = block;
+		this.position = 0;
+		this.end = length;
+		int listSize = 0;
+		boolean fields = false;
+		try {
+			while(this.position < this.end) {
+				int first = this.in[this.position] & 0xff;
+				String name;
+				String value;
+				if((first & 0x80) != 0) {
+					// Indexed field
+					int index = readInt(7);
+					if(index == 0 || index > this.table.length())
+						throw new Http2Exception(Http2.COMPRESSION_ERROR, "Bad index " + index);
+					name = this.table.getName(index);
+					value = this.table.getValue(index);
+				}
+				else if((first & 0xc0) == 0x40) {
+					// Literal field added to the table
+					name = readName(6);
+					value = readString();
+					this.table.add(name, value);
+				}
+				else if((first & 0xe0) == 0x20) {
+					// Table size update, only allowed before the first field
+					int size = readInt(5);
+					if(fields || size > this.maxTableSize)
+						throw new Http2Exception(Http2.COMPRESSION_ERROR, "Bad table size update " + size);
+					this.table.setMaxSize(size);
+					continue;
+				}
+				else {
+					// Literal field left out of the table, never indexed or not
+					name = readName(4);
+					value = readString();
+				}
+				fields = true;
+				listSize += HeaderTable.size(name, value);
+				if(listSize <= this.maxListSize) {
+					names.add(name);
+					values.add(value);
+				}
+			}
+		}
+		finally {
+			this.in = null;
+		}
+		return listSize <= this.maxListSize;
+	}
+
+	private String readName(int prefix) throws Http2Exception {
+		int index = readInt(prefix);
+		if(index == 0)
+			return readString();
+		if(index > this.table.length())
+			throw new Http2Exception(Http2.COMPRESSION_ERROR, "Bad name index " + index);
+		return this.table.getName(index);
+	}
+
+	/**
+	 * Reads an integer whose first octet has the supplied number of bits
+	 * for it, the rest of the octet being the representation.
+	 */
+	private int readInt(int prefix) throws Http2Exception {
+		int mask = (1 << prefix) - 1;
+		int value = this.in[this.position++] & mask;
+		if(value < mask)
+			return value;
+		long sum = value;
+		for(int shift = 0; ; shift += 7) {
+			if(this.position == this.end || shift > 28)
+				throw new Http2Exception(Http2.COMPRESSION_ERROR, "Bad integer");
+			int octet = this.in[this.position++] & 0xff;
+			sum += (long) (octet & 0x7f) << shift;
+			if(sum > Integer.MAX_VALUE)
+				throw new Http2Exception(Http2.COMPRESSION_ERROR, "Integer too large");
+			if((octet & 0x80) == 0)
+				return (int) sum;
+		}
+	}
+
+	private String readString() throws Http2Exception {
+		if(this.position == this.end)
+			throw new Http2Exception(Http2.COMPRESSION_ERROR, "Missing string");
+		boolean huffman = (this.in[this.position] & 0x80) != 0;
+		int length = readInt(7);
+		if(length > this.end - this.position)
+			throw new Http2Exception(Http2.COMPRESSION_ERROR, "String past the end of the block");
+		String value;
+		if(huffman)
+			value = Huffman.decode(this.in, this.position, length);
+		else
+			value = new String(this.in, this.position, length, StandardCharsets.ISO_8859_1);
+		this.position += length;
+		return value;
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * HpackEncoder.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package http2;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Encodes the header blocks of the responses on one connection (RFC 7541).
+ * Fields that repeat from one response to the next, such as the server,
+ * the date or the content type, are added to the dynamic table and sent as
+ * a single index afterwards. Fields that are different for every response
+ * are sent as literals that leave the table alone, so they do not push the
+ * repeating ones out. Strings are Huffman coded when that makes them
+ * shorter.
+ *
+ * The blocks have to reach the client in the order they were encoded, so
+ * an encoder is used by one thread at a time, the one that writes the
+ * frames. Only {@link #setMaxTableSize(int)} may be called from another.
+ */
+class HpackEncoder {
+	private static final Set<String> UNINDEXED = new HashSet<String>(Arrays.asList(
+			"content-length", "content-range", "etag", "last-modified"));
+
+	private HeaderTable table;
+	private int pendingSize;
+	private int smallestSize;
+	private byte[] block;
+	private int length;
+
+	HpackEncoder() {
+		this.table = new HeaderTable(Http2.DEFAULT_HEADER_TABLE_SIZE);
+		this.pendingSize = -1;
+		this.smallestSize = -1;
+		this.block = new byte[512];
+		this.length = 0;
+	}
+
+	/**
+	 * Takes the table size the client allows in its settings. The encoder
+	 * never uses more than the default size, and tells the client about the
+	 * change at the start of the next block.
+	 *
+	 * @param size The size in the client's settings.
+	 */
+	synchronized void setMaxTableSize(int size) {
+		size = Math.min(size, Http2.DEFAULT_HEADER_TABLE_SIZE);
+		// A size that went down and back up has to be announced twice, so
+		// the client evicts what the smaller table would have
+		this.smallestSize = this.smallestSize < 0 ? size : Math.min(this.smallestSize, size);
+		this.pendingSize = size;
+	}
+
+	/**
+	 * Starts a new header block, with the table size updates that are due.
+	 */
+	synchronized void start() {
+		this.length = 0;
+		if(this.pendingSize < 0)
+			return;
+		if(this.smallestSize < this.pendingSize) {
+			writeInt(0x20, 5, this.smallestSize);
+			this.table.setMaxSize(this.smallestSize);
+		}
+		writeInt(0x20, 5, this.pendingSize);
+		this.table.setMaxSize(this.pendingSize);
+		this.pendingSize = -1;
+		this.smallestSize = -1;
+	}
+
+	/**
+	 * Adds a field to the block.
+	 *
+	 * @param name The lower case name of the field.
+	 * @param value The value of the field.
+	 */
+	void encode(String name, String value) {
+		int index = this.table.find(name, value);
+		if(index > 0) {
+			writeInt(0x80, 7, index);
+			return;
+		}
+		if(UNINDEXED.contains(name)) {
+			writeInt(0x00, 4, -index);
+		}
+		else {
+			writeInt(0x40, 6, -index);
+			this.table.add(name, value);
+		}
+		if(index == 0)
+			writeString(name);
+		writeString(value);
+	}
+
+	/**
+	 * @return the block encoded since {@link #start()}, valid up to
+	 * {@link #getLength()}
+	 */
+	byte[] getBlock() {
+		return block;
+	}
+
+	/**
+	 * @return the length of the block
+	 */
+	int getLength() {
+		return length;
+	}
+
+	private void writeInt(int representation, int prefix, int value) {
+		ensureCapacity(6);
+		int mask = (1 << prefix) - 1;
+		if(value < mask) {
+			this.block[this.length++] = (byte) (representation | value);
+			return;
+		}
+		this.block[this.length++] = (byte) (representation | mask);
+		value -= mask;
+		while(value >= 0x80) {
+			this.block[this.length++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		this.block[this.length++] = (byte) value;
+	}
+
+	private void writeString(String value) {
+		int encoded = Huffman.encodedLength(value);
+		if(encoded < value.length()) {
+			writeInt(0x80, 7, encoded);
+			ensureCapacity(encoded);
+			this.length = Huffman.encode(value, this.block, this.length);
+			return;
+		}
+		writeInt(0x00, 7, value.length());
+		ensureCapacity(value.length());
+		for(int i = 0; i < value.length(); i++)
+			this.block[this.length++] = (byte) value.charAt(i);
+	}
+
+	private void ensureCapacity(int count) {
+		if(this.length + count <= this.block.length)
+			return;
+		this.block = Arrays.copyOf(this.block, Math.max(this.block.length * 2, this.length + count));
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Http2.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package http2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.StringTokenizer;
+
+import protocol.HttpRequest;
+import protocol.Protocol;
+
+/**
+ * This class is a collection of HTTP/2 (RFC 7540) related constants: frame
+ * types and flags, settings, error codes and the limits the protocol puts
+ * on them. It also tells the HTTP/1.1 engines when a connection wants to
+ * switch to cleartext HTTP/2.
+ */
+public class Http2 {
+	/**
+	 * The name of cleartext HTTP/2 in the <tt>Upgrade</tt> field.
+	 */
+	public static final String H2C = "h2c";
+
+	/**
+	 * What every client connection starts with. Read as HTTP/1.1 its first
+	 * part is a request with the method <tt>PRI</tt>.
+	 */
+	static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+	static final String PREFACE_METHOD = "PRI";
+	static final String PREFACE_URI = "*";
+	// The part of the preface that follows the blank line
+	static final int PREFACE_REST = 6;
+
+	static final String HTTP2_SETTINGS = "http2-settings";
+	static final String UPGRADE = Protocol.UPGRADE.toLowerCase();
+	static final String CONNECTION = Protocol.CONNECTION.toLowerCase();
+
+	static final int FRAME_HEADER_LENGTH = 9;
+
+	// Frame types
+	static final int DATA = 0x0;
+	static final int HEADERS = 0x1;
+	static final int PRIORITY = 0x2;
+	static final int RST_STREAM = 0x3;
+	static final int SETTINGS = 0x4;
+	static final int PUSH_PROMISE = 0x5;
+	static final int PING = 0x6;
+	static final int GOAWAY = 0x7;
+	static final int WINDOW_UPDATE = 0x8;
+	static final int CONTINUATION = 0x9;
+
+	// Frame flags
+	static final int FLAG_END_STREAM = 0x1;
+	static final int FLAG_ACK = 0x1;
+	static final int FLAG_END_HEADERS = 0x4;
+	static final int FLAG_PADDED = 0x8;
+	static final int FLAG_PRIORITY = 0x20;
+
+	// Settings
+	static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+	static final int SETTINGS_ENABLE_PUSH = 0x2;
+	static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+	static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+	static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+	static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+	// Error codes
+	static final int NO_ERROR = 0x0;
+	static final int PROTOCOL_ERROR = 0x1;
+	static final int INTERNAL_ERROR = 0x2;
+	static final int FLOW_CONTROL_ERROR = 0x3;
+	static final int STREAM_CLOSED = 0x5;
+	static final int FRAME_SIZE_ERROR = 0x6;
+	static final int REFUSED_STREAM = 0x7;
+	static final int CANCEL = 0x8;
+	static final int COMPRESSION_ERROR = 0x9;
+	static final int ENHANCE_YOUR_CALM = 0xb;
+
+	// Limits and the values settings have until the peer changes them
+	static final int DEFAULT_WINDOW_SIZE = 65535;
+	static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+	static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+	static final int MAX_MAX_FRAME_SIZE = 16777215;
+	static final int DEFAULT_HEADER_TABLE_SIZE = 4096;
+
+	/**
+	 * Checks if a request read as HTTP/1.1 is the start of the preface of a
+	 * client that knows the server speaks HTTP/2.
+	 *
+	 * @param request The request.
+	 * @return true if the connection is an HTTP/2 one
+	 */
+	public static boolean isPreface(HttpRequest request) {
+		return PREFACE_METHOD.equals(request.getMethod()) && PREFACE_URI.equals(request.getUri())
+				&& Protocol.VERSION_2.equals(request.getVersion());
+	}
+
+	/**
+	 * Checks if an HTTP/1.1 request asks to switch the connection to
+	 * cleartext HTTP/2. The request has to name <tt>h2c</tt> in its
+	 * <tt>Upgrade</tt> field and carry the client's settings in an
+	 * <tt>HTTP2-Settings</tt> field that is named in <tt>Connection</tt>.
+	 *
+	 * @param request The request.
+	 * @return true if the connection may be switched
+	 */
+	public static boolean isUpgrade(HttpRequest request) {
+		// The request that switches may not have a body, it would be taken
+		// for the frames that follow
+		return Protocol.GET.equals(request.getMethod())
+				&& !request.hasBody()
+				&& Protocol.VERSION.equals(request.getVersion())
+				&& request.getHeader(HTTP2_SETTINGS) != null
+				&& hasToken(request.getHeader(UPGRADE), H2C)
+				&& hasToken(request.getHeader(CONNECTION), Protocol.UPGRADE)
+				&& hasToken(request.getHeader(CONNECTION), HTTP2_SETTINGS);
+	}
+
+	private static boolean hasToken(String value, String token) {
+		if(value == null)
+			return false;
+		StringTokenizer tokenizer = new StringTokenizer(value, ",");
+		while(tokenizer.hasMoreTokens()) {
+			if(tokenizer.nextToken().trim().equalsIgnoreCase(token))
+				return true;
+		}
+		return false;
+	}
+}
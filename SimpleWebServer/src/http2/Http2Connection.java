@@ -0,0 +1,1274 @@
+/*
+ * Http2Connection.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package http2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+import protocol.HttpRequest;
+import protocol.HttpRequestDecoder;
+import protocol.HttpResponse;
+import protocol.HttpResponseFactory;
+import protocol.Protocol;
+import server.MinimumRate;
+import server.Server;
+import server.ServerConfiguration;
+import server.TimerWheel;
+
+/**
+ * Serves one cleartext HTTP/2 connection (RFC 7540), for a client that
+ * started it with the connection preface or switched to it from HTTP/1.1
+ * with <tt>Upgrade: h2c</tt>. Any number of requests are in flight at once,
+ * each on its own stream, and their responses are interleaved on the one
+ * socket.
+ *
+ * The thread that calls {@link #serve(HttpRequest)}, the connection's
+ * handler, reads the frames the client sends, decodes header blocks and
+ * hands every request to the server's response executor, so responses are
+ * produced in parallel by the same {@link server.RequestProcessor} as for
+ * HTTP/1.1. The responses that are ready are written by a send task on the
+ * same executor, which takes turns between the streams a frame at a time so
+ * a large body does not hold up the others. It only sends as much of a body
+ * as the flow control windows of the stream and of the connection allow, and
+ * the streams that run out of window wait until the client opens it again.
+ * The task runs while there is something to send, and a few frames at a time
+ * so it does not keep an executor thread from the other connections.
+ *
+ * The connection is held to the same limits as an HTTP/1.1 one, on the
+ * server's {@link TimerWheel}: it closes after the keep-alive timeout with
+ * no stream open, each frame must arrive within the header timeout and at
+ * the minimum read rate once it has started, the send task must keep up
+ * with the minimum write rate, and a response not finished within the
+ * request timeout is replaced with 408, or cut off with <tt>RST_STREAM</tt>
+ * if it had started.
+ *
+ * Request bodies are not read, as only GET is served. Their flow control
+ * credit is given back as soon as they arrive.
+ */
+public class Http2Connection implements TimerWheel.Task {
+	// Frames the send task writes before it lets the executor run others
+	private static final int SEND_BATCH = 16;
+	private static final String SERVER_INFO = Protocol.getServerInfo();
+	private static final String BASE64URL = 
+			"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+	// Fields that only make sense for HTTP/1.1 and must not be sent
+	private static final Set<String> CONNECTION_FIELDS = new HashSet<String>(Arrays.asList(
+			"connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade"));
+
+	private Server server;
+	private Socket socket;
+	private OutputStream output;
+	private byte[] address;
+	private int maxStreams;
+	private FrameReader reader;
+	private FrameWriter writer;
+	private HpackDecoder decoder;
+	private HpackEncoder encoder;
+	private Runnable sendTask;
+	private byte[] buffer;
+	private TimerWheel timers;
+	private ServerConfiguration configuration;
+	private MinimumRate readRate;
+	private MinimumRate writeRate;
+	private volatile TimerWheel.Timeout frameDeadline;
+	private volatile TimerWheel.Timeout readCheck;
+	private volatile TimerWheel.Timeout writeCheck;
+	private volatile boolean handling;
+	// Signalled when the send task ends, close() waits for it on a lock
+	// rather than the monitor so a virtual thread does not pin its carrier
+	private ReentrantLock sendLock;
+	private Condition sendDone;
+
+	// The header block being received, it may span several frames
+	private int headerStream;
+	private boolean headerEndStream;
+	private byte[] headerBlock;
+	private int headerLength;
+
+	// Guarded by this
+	private Map<Integer, Http2Stream> streams;
+	private ArrayDeque<Http2Stream> ready;
+	private long window;
+	private int initialWindow;
+	private int lastStreamId;
+	private int goAwayStreamId;
+	private boolean goingAway;
+	private boolean goAwayPending;
+	private boolean sending;
+	private boolean signalled;
+	private boolean closed;
+	private boolean waiting;
+	private TimerWheel.Timeout idle;
+
+	/**
+	 * @param server The server whose requests are served.
+	 * @param socket The socket of the connection.
+	 * @param in The input stream of the socket.
+	 * @param out The output stream of the socket.
+	 * @param pending The bytes read past the HTTP/1.1 request that started
+	 * the connection.
+	 */
+	public Http2Connection(Server server, Socket socket, InputStream in, OutputStream out, byte[] pending) {
+		this.server = server;
+		this.socket = socket;
+		this.timers = server.getTimers();
+		this.configuration = server.getConfiguration();
+		if(this.configuration.getMinReadRate() > 0)
+			this.readRate = new MinimumRate(this.configuration.getMinReadRate());
+		if(this.configuration.getMinWriteRate() > 0)
+			this.writeRate = new MinimumRate(this.configuration.getMinWriteRate());
+		int frameLength = Http2.FRAME_HEADER_LENGTH + Http2.DEFAULT_MAX_FRAME_SIZE;
+		this.reader = new FrameReader(new BufferedInputStream(
+				new SequenceInputStream(new ByteArrayInputStream(pending), new RateInputStream(in)), frameLength), 
+				Http2.DEFAULT_MAX_FRAME_SIZE);
+		this.output = new BufferedOutputStream(out, frameLength);
+		this.writer = new FrameWriter(this.output);
+		this.address = socket.getInetAddress().getAddress();
+		this.maxStreams = this.configuration.getHttp2MaxConcurrentStreams();
+		this.decoder = new HpackDecoder(Http2.DEFAULT_HEADER_TABLE_SIZE, HttpRequestDecoder.MAX_HEADER_LENGTH);
+		this.encoder = new HpackEncoder();
+		this.buffer = new byte[Http2.DEFAULT_MAX_FRAME_SIZE];
+		this.headerBlock = new byte[Protocol.CHUNK_LENGTH];
+		this.streams = new HashMap<Integer, Http2Stream>();
+		this.ready = new ArrayDeque<Http2Stream>();
+		this.window = Http2.DEFAULT_WINDOW_SIZE;
+		this.initialWindow = Http2.DEFAULT_WINDOW_SIZE;
+		this.lastStreamId = 0;
+		this.goAwayStreamId = 0;
+		this.goingAway = false;
+		this.goAwayPending = false;
+		this.sending = false;
+		this.signalled = false;
+		this.closed = false;
+		this.waiting = false;
+		this.sendLock = new ReentrantLock();
+		this.sendDone = this.sendLock.newCondition();
+		this.sendTask = new Runnable() {
+			public void run() {
+				send();
+			}
+		};
+	}
+
+	/**
+	 * Serves the connection until either side closes it. Returns once the
+	 * responses in progress have been sent or given up.
+	 *
+	 * @param request The HTTP/1.1 request that started the connection: the
+	 * first part of the preface, see {@link Http2#isPreface(HttpRequest)},
+	 * or a request to upgrade, see {@link Http2#isUpgrade(HttpRequest)},
+	 * which is answered on stream 1.
+	 * @throws IOException if the socket cannot be set up
+	 */
+	public void serve(HttpRequest request) throws IOException {
+		boolean upgrade = !Http2.isPreface(request);
+		int error = Http2.NO_ERROR;
+		try {
+			// The rest of the preface is due like the rest of a header block
+			startFrame();
+			byte[] settings = null;
+			if(upgrade) {
+				settings = decodeSettings(request.getHeader(Http2.HTTP2_SETTINGS));
+				// Goes out with our settings, which follow right away
+				this.output.write(HttpResponseFactory.create101SwitchingProtocols(Http2.H2C).getHeaderBytes());
+			}
+			// Our settings are the first frame whichever way the client came
+			this.writer.writeSettings(
+					Http2.SETTINGS_MAX_CONCURRENT_STREAMS, this.maxStreams,
+					Http2.SETTINGS_MAX_HEADER_LIST_SIZE, HttpRequestDecoder.MAX_HEADER_LENGTH);
+			if(upgrade) {
+				if(settings == null)
+					throw new Http2Exception(Http2.PROTOCOL_ERROR, "Bad HTTP2-Settings");
+				applySettings(settings, settings.length);
+				synchronized(this) {
+					this.lastStreamId = 1;
+				}
+				open(1, request, true, null);
+				this.reader.readPreface(0);
+			}
+			else {
+				this.reader.readPreface(Http2.PREFACE.length - Http2.PREFACE_REST);
+			}
+			stopReadRate();
+			endFrame();
+			read();
+		}
+		catch(Http2Exception e) {
+			if(Server.logger.isLoggable(Level.FINE))
+				Server.logger.fine("HTTP/2 connection error: " + e.getMessage());
+			error = e.getError();
+		}
+		catch(IOException e) {
+			// The client went away, or stopped reading and was cut off
+		}
+		finally {
+			close(error);
+		}
+	}
+
+	/**
+	 * Has the client told that the connection is going away, used when the
+	 * server drains. The streams already open are still served, the
+	 * connection closes once they are done, those the client opens from now
+	 * on are refused. Safe to call from any thread, the <tt>GOAWAY</tt> frame
+	 * is sent by the send task.
+	 */
+	public synchronized void shutdown() {
+		if(this.goingAway)
+			return;
+		this.goingAway = true;
+		this.goAwayStreamId = this.lastStreamId;
+		this.goAwayPending = true;
+		schedule();
+	}
+
+	/**
+	 * Reads frames until the client closes the connection, the connection
+	 * went idle or the client broke the rules of the protocol. A deadline
+	 * that passes shuts the input down, which ends the loop as if the
+	 * client had closed the connection.
+	 */
+	private void read() throws IOException, Http2Exception {
+		boolean first = true;
+		while(true) {
+			setWaiting(true);
+			boolean more = this.reader.await();
+			setWaiting(false);
+			if(!more)
+				return;
+			startFrame();
+			this.reader.next();
+			stopReadRate();
+			if(first && this.reader.getType() != Http2.SETTINGS)
+				throw new Http2Exception(Http2.PROTOCOL_ERROR, "Preface not followed by SETTINGS");
+			first = false;
+			try {
+				onFrame();
+			}
+			catch(Http2Exception e) {
+				if(e.getStreamId() == 0)
+					throw e;
+				if(Server.logger.isLoggable(Level.FINE))
+					Server.logger.fine("HTTP/2 stream error: " + e.getMessage());
+				this.writer.writeRstStream(e.getStreamId(), e.getError());
+				reset(e.getStreamId());
+			}
+			endFrame();
+		}
+	}
+
+	/**
+	 * Tells whether the reader waits for the next frame. The keep-alive
+	 * timeout runs while it does and no stream is open.
+	 */
+	private synchronized void setWaiting(boolean waiting) {
+		this.waiting = waiting;
+		if(waiting) {
+			idleIfDone();
+		}
+		else if(this.idle != null) {
+			this.idle.cancel();
+			this.idle = null;
+		}
+	}
+
+	/**
+	 * Arms the keep-alive timeout if the reader waits and no stream is open.
+	 * Called holding the lock.
+	 */
+	private void idleIfDone() {
+		if(this.waiting && this.idle == null && this.streams.isEmpty())
+			this.idle = this.timers.schedule(this, this.configuration.getKeepAliveTimeout());
+	}
+
+	/**
+	 * Arms the header timeout when a frame starts, unless the frame goes on
+	 * with a header block that already has it, and times the frame against
+	 * the minimum read rate.
+	 */
+	private void startFrame() {
+		this.handling = false;
+		if(this.frameDeadline == null)
+			this.frameDeadline = this.timers.schedule(this, this.configuration.getHeaderTimeout());
+		if(this.readRate != null) {
+			this.readRate.start();
+			this.readCheck = this.timers.schedule(this, MinimumRate.GRACE);
+		}
+	}
+
+	/**
+	 * Stops timing the read once the frame has arrived. The header timeout
+	 * still runs while the frame is acted on, which may write to the client.
+	 */
+	private void stopReadRate() {
+		this.handling = true;
+		if(this.readRate != null) {
+			this.readRate.stop();
+			this.readCheck.cancel();
+		}
+	}
+
+	/**
+	 * Stops timing a frame that has been acted on. A header block that goes
+	 * on in CONTINUATION frames keeps its header timeout.
+	 */
+	private void endFrame() {
+		this.handling = false;
+		if(this.headerStream == 0 && this.frameDeadline != null) {
+			this.frameDeadline.cancel();
+			this.frameDeadline = null;
+		}
+	}
+
+	/**
+	 * Acts on a deadline or rate check that came up, on the timer thread.
+	 */
+	public void expired(TimerWheel.Timeout timeout) {
+		if(timeout == this.readCheck) {
+			checkRate(this.readRate, timeout);
+		}
+		else if(timeout == this.writeCheck) {
+			checkRate(this.writeRate, timeout);
+		}
+		else if(timeout == this.frameDeadline) {
+			// A reader past the frame can only be stuck writing an answer
+			// to a client that does not read
+			if(this.handling)
+				abort();
+			else
+				endRead();
+		}
+		else {
+			synchronized(this) {
+				// Idle for the keep-alive timeout, said goodbye on close
+				if(timeout != this.idle || !this.streams.isEmpty())
+					return;
+			}
+			endRead();
+		}
+	}
+
+	/**
+	 * Checks a read or write being timed, and checks it again once the time
+	 * it has left is up. A client that sends a frame too slowly has its
+	 * input shut down, one that reads too slowly is cut off.
+	 */
+	private void checkRate(MinimumRate rate, TimerWheel.Timeout timeout) {
+		if(!rate.isRunning())
+			return;
+		long remaining = rate.remaining();
+		if(remaining > 0) {
+			TimerWheel.Timeout check = this.timers.schedule(this, remaining);
+			if(rate == this.readRate)
+				this.readCheck = check;
+			else
+				this.writeCheck = check;
+			return;
+		}
+		if(rate == this.readRate) {
+			this.server.getMetrics().slowRead();
+			endRead();
+		}
+		else {
+			this.server.getMetrics().slowWrite();
+			abort();
+		}
+	}
+
+	/**
+	 * Wakes up the reader as if the client had closed the connection, which
+	 * then closes with a GOAWAY frame.
+	 */
+	private void endRead() {
+		try {
+			this.socket.shutdownInput();
+		}
+		catch(IOException e) {
+		}
+	}
+
+	private void onFrame() throws IOException, Http2Exception {
+		int type = this.reader.getType();
+		int id = this.reader.getStreamId();
+		if(this.headerStream != 0 && (type != Http2.CONTINUATION || id != this.headerStream))
+			throw new Http2Exception(Http2.PROTOCOL_ERROR, "Header block interrupted");
+		switch(type) {
+		case Http2.DATA: onData(); break;
+		case Http2.HEADERS: onHeaders(); break;
+		case Http2.CONTINUATION: onContinuation(); break;
+		case Http2.PRIORITY: onPriority(); break;
+		case Http2.RST_STREAM: onRstStream(); break;
+		case Http2.SETTINGS: onSettings(); break;
+		case Http2.PING: onPing(); break;
+		case Http2.GOAWAY: onGoAway(); break;
+		case Http2.WINDOW_UPDATE: onWindowUpdate(); break;
+		case Http2.PUSH_PROMISE:
+			throw new Http2Exception(Http2.PROTOCOL_ERROR, "PUSH_PROMISE from a client");
+		default:
+			// Frames of unknown types are ignored
+			break;
+		}
+	}
+
+	private void onData() throws IOException, Http2Exception {
+		int id = this.reader.getStreamId();
+		int length = this.reader.getLength();
+		if(id == 0)
+			throw new Http2Exception(Http2.PROTOCOL_ERROR, "DATA on stream 0");
+		if(this.reader.hasFlag(Http2.FLAG_PADDED) 
+				&& (length == 0 || (this.reader.getPayload()[0] & 0xff) >= length))
+			throw new Http2Exception(Http2.PROTOCOL_ERROR, "Bad padding");
+		// The body is not kept, so its credit goes back right away
+		if(length > 0)
+			this.writer.writeWindowUpdate(0, length);
+
+		Http2Stream stream;
+		synchronized(this) {
+			if(id > this.lastStreamId)
+				throw new Http2Exception(Http2.PROTOCOL_ERROR, "DATA on idle stream " + id);
+			stream = this.streams.get(id);
+			if(stream == null || stream.isRemoteClosed())
+				throw new Http2Exception(id, Http2.STREAM_CLOSED, "DATA on closed stream " + id);
+			if(this.reader.hasFlag(Http2.FLAG_END_STREAM))
+				stream.setRemoteClosed();
+		}
+		if(length > 0 && !this.reader.hasFlag(Http2.FLAG_END_STREAM))
+			this.writer.writeWindowUpdate(id, length);
+	}
+
+	private void onHeaders() throws IOException, Http2Exception {
+		int id = this.reader.getStreamId();
+		int length = this.reader.getLength();
+		byte[] payload = this.reader.getPayload();
+		if(id == 0 || id % 2 == 0)
+			throw new Http2Exception(Http2.PROTOCOL_ERROR, "HEADERS on stream " + id);
+		int offset = 0;
+		int end = length;
+		if(this.reader.hasFlag(Http2.FLAG_PADDED)) {
+			if(length == 0)
+				throw new Http2Exception(Http2.PROTOCOL_ERROR, "Bad padding");
+			offset = 1;
+			end -= payload[0] & 0xff;
+		}
+		// Priorities are not acted on, streams take turns
+		if(this.reader.hasFlag(Http2.FLAG_PRIORITY))
+			offset += 5;
+		if(offset > end)
+			throw new Http2Exception(Http2.PROTOCOL_ERROR, "Bad padding");
+
+		this.headerStream = id;
+		this.headerEndStream = this.reader.hasFlag(Http2.FLAG_END_STREAM);
+		this.headerLength = 0;
+		appendHeaderBlock(payload, offset, end - offset);
+		if(this.reader.hasFlag(Http2.FLAG_END_HEADERS))
+			endHeaders();
+	}
+
+	private void onContinuation() throws IOException, Http2Exception {
+		if(this.headerStream == 0)
+			throw new Http2Exception(Http2.PROTOCOL_ERROR, "CONTINUATION without HEADERS");
+		appendHeaderBlock(this.reader.getPayload(), 0, this.reader.getLength());
+		if(this.reader.hasFlag(Http2.FLAG_END_HEADERS))
+			endHeaders();
+	}
+
+	private void appendHeaderBlock(byte[] fragment, int offset, int length) throws Http2Exception {
+		int total = this.headerLength + length;
+		if(total > HttpRequestDecoder.MAX_HEADER_LENGTH)
+			throw new Http2Exception(Http2.ENHANCE_YOUR_CALM, "Header block of " + total + " octets");
+		if(total > this.headerBlock.length)
+			this.headerBlock = Arrays.copyOf(this.headerBlock, Math.max(total, this.headerBlock.length * 2));
+		System.arraycopy(fragment, offset, this.headerBlock, this.headerLength, length);
+		this.headerLength = total;
+	}
+
+	/**
+	 * Decodes a complete header block and opens the stream of its request.
+	 */
+	private void endHeaders() throws IOException, Http2Exception {
+		int id = this.headerStream;
+		this.headerStream = 0;
+		List<String> names = new ArrayList<String>();
+		List<String> values = new ArrayList<String>();
+		// Decoded even if the stream is refused, the table has to keep up
+		boolean fits = this.decoder.decode(this.headerBlock, this.headerLength, names, values);
+
+		synchronized(this) {
+			if(id <= this.lastStreamId) {
+				// Trailers of a request body, which is not read
+				Http2Stream stream = this.streams.get(id);
+				if(stream == null || stream.isRemoteClosed())
+					throw new Http2Exception(id, Http2.STREAM_CLOSED, "HEADERS on closed stream " + id);
+				if(!this.headerEndStream)
+					throw new Http2Exception(id, Http2.PROTOCOL_ERROR, "Trailers without END_STREAM");
+				stream.setRemoteClosed();
+				return;
+			}
+			this.lastStreamId = id;
+			// Past the last stream announced in GOAWAY, the client may retry
+			// it on another connection
+			if(this.goingAway)
+				throw new Http2Exception(id, Http2.REFUSED_STREAM, "Stream " + id + " past GOAWAY");
+			if(this.streams.size() >= this.maxStreams)
+				throw new Http2Exception(id, Http2.REFUSED_STREAM, "Too many streams");
+		}
+		if(!fits) {
+			open(id, null, this.headerEndStream, 
+					HttpResponseFactory.create431RequestHeaderFieldsTooLarge(Protocol.OPEN));
+			return;
+		}
+		open(id, createRequest(id, names, values), this.headerEndStream, null);
+	}
+
+	/**
+	 * Turns the decoded fields into a request, checking them against the
+	 * rules HTTP/2 has for requests.
+	 */
+	private HttpRequest createRequest(int id, List<String> names, List<String> values) throws Http2Exception {
+		String method = null;
+		String scheme = null;
+		String path = null;
+		String authority = null;
+		String cookie = null;
+		boolean host = false;
+		boolean regular = false;
+		List<String> fieldNames = new ArrayList<String>(names.size() + 1);
+		List<String> fieldValues = new ArrayList<String>(names.size() + 1);
+		for(int i = 0; i < names.size(); i++) {
+			String name = names.get(i);
+			String value = values.get(i);
+			if(name.startsWith(":")) {
+				// Pseudo-header fields come first, once each
+				if(regular)
+					throw malformed(id, "Pseudo-header field after regular ones");
+				switch(name) {
+				case ":method": if(method != null) throw malformed(id, name); method = value; break;
+				case ":scheme": if(scheme != null) throw malformed(id, name); scheme = value; break;
+				case ":path": if(path != null) throw malformed(id, name); path = value; break;
+				case ":authority": if(authority != null) throw malformed(id, name); authority = value; break;
+				default: throw malformed(id, name);
+				}
+				continue;
+			}
+			regular = true;
+			if(!name.toLowerCase(Locale.ROOT).equals(name) || CONNECTION_FIELDS.contains(name)
+					|| ("te".equals(name) && !"trailers".equals(value)))
+				throw malformed(id, name);
+			if("cookie".equals(name)) {
+				// Cookies may be split into several fields to compress better
+				cookie = cookie == null ? value : cookie + "; " + value;
+				continue;
+			}
+			if("host".equals(name))
+				host = true;
+			fieldNames.add(name);
+			fieldValues.add(value);
+		}
+		if(method == null || scheme == null || path == null || path.isEmpty())
+			throw malformed(id, "Missing pseudo-header field");
+		if(authority != null && !host) {
+			fieldNames.add("host");
+			fieldValues.add(authority);
+		}
+		if(cookie != null) {
+			fieldNames.add("cookie");
+			fieldValues.add(cookie);
+		}
+		return HttpRequest.create(method, path, Protocol.VERSION_2, fieldNames, fieldValues);
+	}
+
+	private static Http2Exception malformed(int id, String reason) {
+		return new Http2Exception(id, Http2.PROTOCOL_ERROR, "Malformed request: " + reason);
+	}
+
+	/**
+	 * Opens a stream and has its response produced on the response executor.
+	 *
+	 * @param response The response if it is already known, or null.
+	 */
+	private void open(int id, final HttpRequest request, boolean remoteClosed, HttpResponse response) {
+		final Http2Stream stream;
+		synchronized(this) {
+			stream = new Http2Stream(id, request, this.initialWindow, remoteClosed);
+			this.streams.put(id, stream);
+			stream.setDeadline(this.timers.schedule(new TimerWheel.Task() {
+				public void expired(TimerWheel.Timeout timeout) {
+					expire(stream);
+				}
+			}, this.configuration.getRequestTimeout()));
+		}
+		if(request != null)
+			this.server.getMetrics().requestStarted();
+		if(response != null) {
+			respond(stream, response);
+			return;
+		}
+		try {
+			this.server.getResponseExecutor().execute(new Runnable() {
+				public void run() {
+					respond(stream, server.getRequestProcessor().process(request, Protocol.OPEN));
+				}
+			});
+		}
+		catch(RejectedExecutionException e) {
+			// The server is going down
+			respond(stream, HttpResponseFactory.create503ServiceUnavailable(Protocol.OPEN));
+		}
+	}
+
+	/**
+	 * Queues a response that has been produced for sending.
+	 */
+	private synchronized void respond(Http2Stream stream, HttpResponse response) {
+		// The stream may have timed out and been answered with 408 already
+		if(stream.isReset() || this.closed || stream.getResponse() != null) {
+			response.release();
+			return;
+		}
+		stream.setResponse(response);
+		this.ready.add(stream);
+		schedule();
+	}
+
+	/**
+	 * Acts on the request timeout of a stream, on the timer thread. A
+	 * response that has not started is replaced with 408, the send task cuts
+	 * off one that has with <tt>RST_STREAM</tt>.
+	 */
+	private synchronized void expire(Http2Stream stream) {
+		if(stream.isReset() || this.closed || this.streams.get(stream.getId()) != stream)
+			return;
+		if(!stream.isHeadersSent() && !stream.isSending()) {
+			HttpResponse late = stream.getResponse();
+			if(late != null)
+				late.release();
+			else
+				this.ready.add(stream);
+			stream.setResponse(HttpResponseFactory.create408RequestTimedOut(Protocol.OPEN));
+		}
+		else {
+			stream.setExpired();
+			if(stream.isBlocked()) {
+				stream.setBlocked(false);
+				this.ready.add(stream);
+			}
+		}
+		schedule();
+	}
+
+	private void onPriority() throws Http2Exception {
+		int id = this.reader.getStreamId();
+		if(id == 0)
+			throw new Http2Exception(Http2.PROTOCOL_ERROR, "PRIORITY on stream 0");
+		if(this.reader.getLength() != 5)
+			throw new Http2Exception(id, Http2.FRAME_SIZE_ERROR, "PRIORITY of " + this.reader.getLength() + " octets");
+	}
+
+	private void onRstStream() throws Http2Exception {
+		int id = this.reader.getStreamId();
+		if(this.reader.getLength() != 4)
+			throw new Http2Exception(Http2.FRAME_SIZE_ERROR, "RST_STREAM of " + this.reader.getLength() + " octets");
+		synchronized(this) {
+			if(id == 0 || id > this.lastStreamId)
+				throw new Http2Exception(Http2.PROTOCOL_ERROR, "RST_STREAM on idle stream " + id);
+		}
+		reset(id);
+	}
+
+	private void onSettings() throws IOException, Http2Exception {
+		int length = this.reader.getLength();
+		if(this.reader.getStreamId() != 0)
+			throw new Http2Exception(Http2.PROTOCOL_ERROR, "SETTINGS on a stream");
+		if(this.reader.hasFlag(Http2.FLAG_ACK)) {
+			if(length != 0)
+				throw new Http2Exception(Http2.FRAME_SIZE_ERROR, "SETTINGS ack with a payload");
+			return;
+		}
+		if(length % 6 != 0)
+			throw new Http2Exception(Http2.FRAME_SIZE_ERROR, "SETTINGS of " + length + " octets");
+		applySettings(this.reader.getPayload(), length);
+		this.writer.writeSettingsAck();
+	}
+
+	/**
+	 * Takes the client's settings, from a SETTINGS frame or from the
+	 * <tt>HTTP2-Settings</tt> field of a request to upgrade.
+	 */
+	private void applySettings(byte[] settings, int length) throws Http2Exception {
+		for(int i = 0; i + 6 <= length; i += 6) {
+			int id = ((settings[i] & 0xff) << 8) | (settings[i + 1] & 0xff);
+			int value = FrameReader.readInt(settings, i + 2);
+			switch(id) {
+			case Http2.SETTINGS_HEADER_TABLE_SIZE:
+				// Unsigned, anything past the largest int is as good
+				this.encoder.setMaxTableSize(value < 0 ? Integer.MAX_VALUE : value);
+				break;
+			case Http2.SETTINGS_ENABLE_PUSH:
+				if(value != 0 && value != 1)
+					throw new Http2Exception(Http2.PROTOCOL_ERROR, "Bad ENABLE_PUSH " + value);
+				break;
+			case Http2.SETTINGS_INITIAL_WINDOW_SIZE:
+				if(value < 0)
+					throw new Http2Exception(Http2.FLOW_CONTROL_ERROR, "Bad INITIAL_WINDOW_SIZE");
+				setInitialWindow(value);
+				break;
+			case Http2.SETTINGS_MAX_FRAME_SIZE:
+				// Never more than the default is sent, which is the least allowed
+				if(value < Http2.DEFAULT_MAX_FRAME_SIZE || value > Http2.MAX_MAX_FRAME_SIZE)
+					throw new Http2Exception(Http2.PROTOCOL_ERROR, "Bad MAX_FRAME_SIZE " + value);
+				break;
+			default:
+				// Nothing is pushed and our header blocks are small, the
+				// other settings do not matter to us
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Changes the window of every stream by the change of the initial
+	 * window size.
+	 */
+	private synchronized void setInitialWindow(int size) throws Http2Exception {
+		int delta = size - this.initialWindow;
+		this.initialWindow = size;
+		for(Http2Stream stream : this.streams.values()) {
+			if(!stream.updateWindow(delta))
+				throw new Http2Exception(Http2.FLOW_CONTROL_ERROR, "Window of stream " + stream.getId() + " overflowed");
+			unblock(stream);
+		}
+	}
+
+	private void onPing() throws IOException, Http2Exception {
+		if(this.reader.getStreamId() != 0)
+			throw new Http2Exception(Http2.PROTOCOL_ERROR, "PING on a stream");
+		if(this.reader.getLength() != 8)
+			throw new Http2Exception(Http2.FRAME_SIZE_ERROR, "PING of " + this.reader.getLength() + " octets");
+		if(!this.reader.hasFlag(Http2.FLAG_ACK))
+			this.writer.writePingAck(this.reader.getPayload(), 0);
+	}
+
+	private void onGoAway() throws Http2Exception {
+		if(this.reader.getStreamId() != 0)
+			throw new Http2Exception(Http2.PROTOCOL_ERROR, "GOAWAY on a stream");
+		// The client opens no more streams, those open are still answered
+		// until it closes the connection
+	}
+
+	private void onWindowUpdate() throws Http2Exception {
+		int id = this.reader.getStreamId();
+		if(this.reader.getLength() != 4)
+			throw new Http2Exception(Http2.FRAME_SIZE_ERROR, "WINDOW_UPDATE of " + this.reader.getLength() + " octets");
+		int increment = FrameReader.readInt(this.reader.getPayload(), 0) & 0x7fffffff;
+		synchronized(this) {
+			if(id == 0) {
+				if(increment == 0)
+					throw new Http2Exception(Http2.PROTOCOL_ERROR, "WINDOW_UPDATE of 0");
+				this.window += increment;
+				if(this.window > Http2.MAX_WINDOW_SIZE)
+					throw new Http2Exception(Http2.FLOW_CONTROL_ERROR, "Connection window overflowed");
+				if(!this.ready.isEmpty())
+					schedule();
+				return;
+			}
+			if(id > this.lastStreamId)
+				throw new Http2Exception(Http2.PROTOCOL_ERROR, "WINDOW_UPDATE on idle stream " + id);
+			if(increment == 0)
+				throw new Http2Exception(id, Http2.PROTOCOL_ERROR, "WINDOW_UPDATE of 0");
+			// Updates for streams that are done may still be on their way
+			Http2Stream stream = this.streams.get(id);
+			if(stream == null)
+				return;
+			if(!stream.updateWindow(increment))
+				throw new Http2Exception(id, Http2.FLOW_CONTROL_ERROR, "Window of stream " + id + " overflowed");
+			unblock(stream);
+		}
+	}
+
+	/**
+	 * Puts a stream that waited for its window back in turn once the
+	 * window opened. Called holding the lock.
+	 */
+	private void unblock(Http2Stream stream) {
+		if(!stream.isBlocked() || stream.getWindow() <= 0)
+			return;
+		stream.setBlocked(false);
+		this.ready.add(stream);
+		schedule();
+	}
+
+	/**
+	 * Gives up a stream, because the client reset it or because of an error
+	 * on it.
+	 */
+	private synchronized void reset(int id) {
+		Http2Stream stream = this.streams.remove(id);
+		if(stream == null)
+			return;
+		stream.setReset();
+		this.ready.remove(stream);
+		if(stream.getRequest() != null)
+			this.server.getMetrics().requestFinished();
+		// A stream being sent is released by the send task when it is done
+		if(!stream.isSending())
+			stream.release();
+		idleIfDone();
+		closeIfDone();
+	}
+
+	/**
+	 * Ends a connection that is going away once its last stream is done, by
+	 * waking up the reader as if the client had closed it. Called holding
+	 * the lock.
+	 */
+	private void closeIfDone() {
+		if(!this.goingAway || this.goAwayPending || !this.streams.isEmpty())
+			return;
+		try {
+			this.socket.shutdownInput();
+		}
+		catch(IOException e) {
+		}
+	}
+
+	/**
+	 * Has the send task run, unless it is running already; then it runs
+	 * once more when it is done, so nothing added meanwhile is missed.
+	 * Called holding the lock whenever there may be something to send.
+	 */
+	private void schedule() {
+		this.signalled = true;
+		if(this.sending || this.closed)
+			return;
+		this.sending = true;
+		try {
+			this.server.getResponseExecutor().execute(this.sendTask);
+		}
+		catch(RejectedExecutionException e) {
+			// The server is going down and will not send anything else
+			this.sending = false;
+			abort();
+		}
+	}
+
+	/**
+	 * The send task, it sends a frame of the stream whose turn it is until
+	 * there is nothing to send or it has sent a batch, and flushes them.
+	 */
+	private void send() {
+		boolean more = false;
+		try {
+			synchronized(this) {
+				this.signalled = false;
+			}
+			startWrite();
+			for(int i = 0; i < SEND_BATCH; i++) {
+				Http2Stream stream = next();
+				if(stream == null)
+					break;
+				send(stream);
+				more = i == SEND_BATCH - 1;
+			}
+			this.writer.flush();
+		}
+		catch(IOException e) {
+			// The client is gone, wake the reader up if it did not notice
+			abort();
+		}
+		catch(RuntimeException e) {
+			// A bug, the streams cannot be trusted to go on
+			Server.logger.log(Level.WARNING, "HTTP/2 send failed", e);
+			abort();
+		}
+		finally {
+			stopWrite();
+			synchronized(this) {
+				this.sending = false;
+				if(more || this.signalled)
+					schedule();
+			}
+			// The reader may wait for the task to end before it closes
+			this.sendLock.lock();
+			try {
+				this.sendDone.signalAll();
+			}
+			finally {
+				this.sendLock.unlock();
+			}
+		}
+	}
+
+	private synchronized boolean isSending() {
+		return this.sending;
+	}
+
+	/**
+	 * Times a batch of the send task against the minimum write rate. Each
+	 * write is allowed for with {@link #expect(int)} before it blocks.
+	 */
+	private void startWrite() {
+		if(this.writeRate == null)
+			return;
+		this.writeRate.start();
+		this.writeCheck = this.timers.schedule(this, MinimumRate.GRACE);
+	}
+
+	private void stopWrite() {
+		if(this.writeRate == null)
+			return;
+		this.writeRate.stop();
+		this.writeCheck.cancel();
+	}
+
+	private void expect(int bytes) {
+		if(this.writeRate != null)
+			this.writeRate.expect(bytes);
+	}
+
+	/**
+	 * Takes the stream that can send something next, after writing the
+	 * <tt>GOAWAY</tt> frame if one is due.
+	 *
+	 * @return the stream, or null if there is nothing to send
+	 */
+	private Http2Stream next() throws IOException {
+		int goAway;
+		synchronized(this) {
+			if(!this.goAwayPending)
+				return poll();
+			this.goAwayPending = false;
+			goAway = this.goAwayStreamId;
+		}
+		expect(Http2.FRAME_HEADER_LENGTH + 8);
+		this.writer.writeGoAway(goAway, Http2.NO_ERROR);
+		synchronized(this) {
+			closeIfDone();
+			return poll();
+		}
+	}
+
+	/**
+	 * Takes the next stream in turn that can send something, which is any
+	 * stream whose header block is due, or one with body left and room in
+	 * its window and in the connection's. Called holding the lock.
+	 */
+	private Http2Stream poll() {
+		if(this.closed)
+			return null;
+		for(int i = this.ready.size(); i > 0; i--) {
+			Http2Stream stream = this.ready.poll();
+			// An expired stream only has its RST_STREAM left to send
+			if(stream.isHeadersSent() && !stream.isExpired()) {
+				if(stream.getWindow() <= 0) {
+					// Back in turn once the client opens the window
+					stream.setBlocked(true);
+					continue;
+				}
+				if(this.window <= 0) {
+					// Waits with the others for the connection window
+					this.ready.add(stream);
+					continue;
+				}
+			}
+			stream.setSending(true);
+			return stream;
+		}
+		return null;
+	}
+
+	/**
+	 * Sends the header block of a stream, or one frame of its body. The
+	 * stream goes to the back of the line if it has more to send.
+	 */
+	private void send(Http2Stream stream) throws IOException {
+		int id = stream.getId();
+		if(!stream.isHeadersSent()) {
+			encodeHeaders(stream.getResponse());
+			boolean end = !stream.hasBody();
+			expect(Http2.FRAME_HEADER_LENGTH + this.encoder.getLength());
+			this.writer.writeHeaders(id, this.encoder.getBlock(), this.encoder.getLength(), end, 
+					Http2.DEFAULT_MAX_FRAME_SIZE);
+			stream.sent(Http2.FRAME_HEADER_LENGTH + this.encoder.getLength());
+			stream.setHeadersSent();
+			sent(stream, 0, end);
+			return;
+		}
+
+		int allowed;
+		boolean expired;
+		synchronized(this) {
+			allowed = (int) Math.min(this.buffer.length, Math.min(stream.getWindow(), this.window));
+			expired = stream.isExpired();
+			if(!expired && allowed <= 0) {
+				// A new initial window size closed the window since poll()
+				holdBack(stream);
+				return;
+			}
+		}
+		if(expired) {
+			// Out of time, the client learns the response is cut
+			synchronized(this) {
+				stream.setSending(false);
+			}
+			expect(Http2.FRAME_HEADER_LENGTH + 4);
+			this.writer.writeRstStream(id, Http2.CANCEL);
+			reset(id);
+			return;
+		}
+		int count;
+		try {
+			count = stream.read(this.buffer, 0, allowed);
+		}
+		catch(IOException e) {
+			// The body cannot be read, the client learns the response is cut
+			Server.logger.warning("Could not read response body: " + e.getMessage());
+			synchronized(this) {
+				stream.setSending(false);
+			}
+			this.writer.writeRstStream(id, Http2.INTERNAL_ERROR);
+			reset(id);
+			return;
+		}
+		boolean end = count < 0 || stream.isComplete();
+		count = Math.max(count, 0);
+		expect(Http2.FRAME_HEADER_LENGTH + count);
+		this.writer.writeData(id, this.buffer, 0, count, end);
+		stream.sent(Http2.FRAME_HEADER_LENGTH + count);
+		sent(stream, count, end);
+	}
+
+	/**
+	 * Has a stream that has no room left to send wait for its window, or with
+	 * the others for the connection's. Called holding the lock.
+	 */
+	private void holdBack(Http2Stream stream) {
+		stream.setSending(false);
+		if(stream.isReset())
+			stream.release();
+		else if(stream.getWindow() <= 0)
+			stream.setBlocked(true);
+		else
+			this.ready.add(stream);
+	}
+
+	/**
+	 * Accounts for what was sent on a stream and finishes it or puts it
+	 * back in line.
+	 */
+	private synchronized void sent(Http2Stream stream, int count, boolean end) {
+		this.window -= count;
+		stream.updateWindow(-count);
+		stream.setSending(false);
+		if(stream.isReset()) {
+			stream.release();
+			return;
+		}
+		if(!end) {
+			this.ready.add(stream);
+			return;
+		}
+		this.streams.remove(stream.getId());
+		stream.release();
+		this.server.recordResponse(this.address, stream.getRequest(), stream.getResponse().getStatus(), 
+				stream.getSent(), System.nanoTime() - stream.getStart());
+		idleIfDone();
+		closeIfDone();
+	}
+
+	/**
+	 * Encodes the status and the header fields of a response. The fields
+	 * that are about the HTTP/1.1 connection are left out, the general ones
+	 * HTTP/1.1 writes from prepared bytes are added.
+	 */
+	private void encodeHeaders(HttpResponse response) {
+		this.encoder.start();
+		this.encoder.encode(":status", Integer.toString(response.getStatus()));
+		this.encoder.encode("date", HttpResponseFactory.getDate());
+		this.encoder.encode("server", SERVER_INFO);
+		for(Map.Entry<String, String> field : response.getHeader().entrySet()) {
+			String name = field.getKey().toLowerCase(Locale.ROOT);
+			if(!CONNECTION_FIELDS.contains(name))
+				this.encoder.encode(name, field.getValue());
+		}
+	}
+
+	/**
+	 * Cuts the connection, waking up the reader and a send task blocked on
+	 * the socket.
+	 */
+	private void abort() {
+		synchronized(this) {
+			this.closed = true;
+		}
+		try {
+			this.socket.close();
+		}
+		catch(IOException e) {
+		}
+	}
+
+	/**
+	 * Ends the connection: tells the client why unless it was told already,
+	 * lets the send task finish and gives up the streams that are left.
+	 *
+	 * @param error The error code for the GOAWAY frame.
+	 */
+	private void close(int error) {
+		boolean goAway;
+		int lastStreamId;
+		synchronized(this) {
+			goAway = !this.goingAway || this.goAwayPending || error != Http2.NO_ERROR;
+			if(!this.goingAway)
+				this.goAwayStreamId = this.lastStreamId;
+			this.goingAway = true;
+			this.closed = true;
+			lastStreamId = this.goAwayStreamId;
+		}
+		if(goAway && !this.socket.isClosed()) {
+			try {
+				this.writer.writeGoAway(lastStreamId, error);
+			}
+			catch(IOException e) {
+			}
+		}
+		// A send task stuck on a client that does not read is cut loose by
+		// the minimum write rate
+		this.sendLock.lock();
+		try {
+			while(isSending())
+				this.sendDone.await();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			this.sendLock.unlock();
+		}
+
+		List<Http2Stream> left;
+		synchronized(this) {
+			left = new ArrayList<Http2Stream>(this.streams.values());
+			this.streams.clear();
+			this.ready.clear();
+			if(this.idle != null)
+				this.idle.cancel();
+		}
+		if(this.frameDeadline != null)
+			this.frameDeadline.cancel();
+		if(this.readRate != null) {
+			this.readRate.stop();
+			if(this.readCheck != null)
+				this.readCheck.cancel();
+		}
+		for(Http2Stream stream : left) {
+			stream.setReset();
+			stream.release();
+			if(stream.getRequest() != null)
+				this.server.getMetrics().requestFinished();
+		}
+	}
+
+	/**
+	 * Credits what arrives to the minimum read rate of the frame being read.
+	 * It is not closed at the end of the input, which would close the socket
+	 * before the connection could say goodbye.
+	 */
+	private class RateInputStream extends FilterInputStream {
+		private RateInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b >= 0 && readRate != null)
+				readRate.transferred(1);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int count = super.read(b, off, len);
+			if(count > 0 && readRate != null)
+				readRate.transferred(count);
+			return count;
+		}
+
+		@Override
+		public void close() {
+			// The handler closes the socket
+		}
+	}
+
+	/**
+	 * Decodes the client's settings from the <tt>HTTP2-Settings</tt> field,
+	 * which carries them in base64url without padding.
+	 *
+	 * @return the settings or null if the field is not valid
+	 */
+	private static byte[] decodeSettings(String value) {
+		value = value.trim();
+		int length = value.length();
+		while(length > 0 && value.charAt(length - 1) == '=')
+			length--;
+		byte[] settings = new byte[length * 3 / 4];
+		int bits = 0;
+		int pending = 0;
+		int next = 0;
+		for(int i = 0; i < length; i++) {
+			int digit = BASE64URL.indexOf(value.charAt(i));
+			if(digit < 0)
+				return null;
+			bits = ((bits << 6) | digit) & 0xffff;
+			pending += 6;
+			if(pending >= 8) {
+				pending -= 8;
+				settings[next++] = (byte) (bits >>> pending);
+			}
+		}
+		if(next % 6 != 0)
+			return null;
+		return settings;
+	}
+}
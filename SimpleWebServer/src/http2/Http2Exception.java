@@ -0,0 +1,72 @@
+/*
+ * Http2Exception.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package http2;
+
+/**
+ * An error of the peer that breaks the rules of HTTP/2. A connection error
+ * ends the connection with a <tt>GOAWAY</tt> frame, a stream error only
+ * resets the stream it happened on.
+ */
+class Http2Exception extends Exception {
+	private static final long serialVersionUID = 5087916315410512723L;
+
+	private int error;
+	private int streamId;
+
+	/**
+	 * Creates a connection error.
+	 *
+	 * @param error The error code sent to the peer.
+	 * @param message What went wrong.
+	 */
+	Http2Exception(int error, String message) {
+		this(0, error, message);
+	}
+
+	/**
+	 * Creates a stream error.
+	 *
+	 * @param streamId The stream that is reset.
+	 * @param error The error code sent to the peer.
+	 * @param message What went wrong.
+	 */
+	Http2Exception(int streamId, int error, String message) {
+		super(message);
+		this.streamId = streamId;
+		this.error = error;
+	}
+
+	/**
+	 * @return the error code sent to the peer
+	 */
+	int getError() {
+		return error;
+	}
+
+	/**
+	 * @return the stream that is reset, or 0 for a connection error
+	 */
+	int getStreamId() {
+		return streamId;
+	}
+}
@@ -0,0 +1,303 @@
+/*
+ * Http2Stream.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package http2;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+
+import protocol.ChunkedBody;
+import protocol.HttpRequest;
+import protocol.HttpResponse;
+import server.TimerWheel;
+
+/**
+ * One request and its response on an {@link Http2Connection}. The stream
+ * hands its response body out a frame at a time, in the order of the
+ * segments of the response, and keeps the flow control window the client
+ * gave it.
+ *
+ * The state is guarded by the connection, only the body is read without
+ * holding its lock, by the thread sending the responses.
+ */
+class Http2Stream {
+	private int id;
+	private HttpRequest request;
+	private long start;
+	private long window;
+	private boolean remoteClosed;
+
+	private HttpResponse response;
+	private List<HttpResponse.Segment> segments;
+	private int segment;
+	private long position;
+	private FileChannel file;
+	private long length;
+	private long bodySent;
+	private long sent;
+
+	private boolean headersSent;
+	private boolean sending;
+	private boolean blocked;
+	private boolean reset;
+	private boolean expired;
+	private TimerWheel.Timeout deadline;
+
+	/**
+	 * @param id The stream identifier.
+	 * @param request The request that opened the stream.
+	 * @param window The initial flow control window of the client.
+	 * @param remoteClosed Whether the client sent all it had to.
+	 */
+	Http2Stream(int id, HttpRequest request, int window, boolean remoteClosed) {
+		this.id = id;
+		this.request = request;
+		this.start = System.nanoTime();
+		this.window = window;
+		this.remoteClosed = remoteClosed;
+	}
+
+	int getId() {
+		return id;
+	}
+
+	HttpRequest getRequest() {
+		return request;
+	}
+
+	/**
+	 * @return when the request arrived, as a {@link System#nanoTime()} value
+	 */
+	long getStart() {
+		return start;
+	}
+
+	/**
+	 * @return the octets of body the client lets us send
+	 */
+	long getWindow() {
+		return window;
+	}
+
+	/**
+	 * Changes the window, by a <tt>WINDOW_UPDATE</tt>, by a change of the
+	 * initial window size or by sending data.
+	 *
+	 * @param delta The change, negative for data sent.
+	 * @return false if the window grew past its limit
+	 */
+	boolean updateWindow(long delta) {
+		this.window += delta;
+		return this.window <= Http2.MAX_WINDOW_SIZE;
+	}
+
+	boolean isRemoteClosed() {
+		return remoteClosed;
+	}
+
+	void setRemoteClosed() {
+		this.remoteClosed = true;
+	}
+
+	HttpResponse getResponse() {
+		return response;
+	}
+
+	/**
+	 * Sets the response to send, its body is taken apart into segments.
+	 */
+	void setResponse(HttpResponse response) {
+		this.response = response;
+		if(response.hasBody())
+			this.segments = response.getSegments();
+		else
+			this.segments = Collections.emptyList();
+		this.segment = 0;
+		this.position = 0;
+		this.length = response.getContentLength();
+	}
+
+	/**
+	 * @return true if DATA frames follow the header block
+	 */
+	boolean hasBody() {
+		return !this.segments.isEmpty() && this.length != 0;
+	}
+
+	/**
+	 * Reads the next part of the body.
+	 *
+	 * @param buffer Where the bytes go.
+	 * @param offset Where the first byte goes.
+	 * @param length The most bytes to read.
+	 * @return the number of bytes read, 0 if <tt>length</tt> is not positive,
+	 * or -1 at the end of the body
+	 * @throws IOException if the body cannot be read
+	 */
+	int read(byte[] buffer, int offset, int length) throws IOException {
+		if(length <= 0)
+			return 0;
+		while(this.segment < this.segments.size()) {
+			HttpResponse.Segment current = this.segments.get(this.segment);
+			int count;
+			boolean exhausted;
+			if(current.getBuffer() != null) {
+				ByteBuffer content = current.getBuffer();
+				count = Math.min(length, content.remaining());
+				content.get(buffer, offset, count);
+				exhausted = !content.hasRemaining();
+			}
+			else if(current.getChunkedBody() != null) {
+				ChunkedBody body = current.getChunkedBody();
+				count = body.read(ByteBuffer.wrap(buffer, offset, length));
+				exhausted = count < 0;
+			}
+			else {
+				long left = current.getCount() - this.position;
+				count = (int) Math.min(length, left);
+				if(count > 0) {
+					if(this.file == null)
+						this.file = new RandomAccessFile(this.response.getFile(), "r").getChannel();
+					count = this.file.read(ByteBuffer.wrap(buffer, offset, count), 
+							current.getPosition() + this.position);
+					if(count < 0)
+						throw new EOFException("File shrank while being sent");
+					this.position += count;
+				}
+				exhausted = this.position >= current.getCount();
+			}
+			if(exhausted) {
+				this.segment++;
+				this.position = 0;
+			}
+			if(count > 0) {
+				this.bodySent += count;
+				return count;
+			}
+			// A source with nothing to give right now
+			if(!exhausted)
+				return 0;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return true if the body of known length has been read in full
+	 */
+	boolean isComplete() {
+		return this.length >= 0 && this.bodySent >= this.length;
+	}
+
+	/**
+	 * Counts octets sent on the stream, frame headers included.
+	 */
+	void sent(long count) {
+		this.sent += count;
+	}
+
+	long getSent() {
+		return sent;
+	}
+
+	boolean isHeadersSent() {
+		return headersSent;
+	}
+
+	void setHeadersSent() {
+		this.headersSent = true;
+	}
+
+	/**
+	 * @return true while the sending thread reads the body without the
+	 * connection's lock, in which case it releases the response itself
+	 */
+	boolean isSending() {
+		return sending;
+	}
+
+	void setSending(boolean sending) {
+		this.sending = sending;
+	}
+
+	/**
+	 * @return true if the stream waits for its window to open
+	 */
+	boolean isBlocked() {
+		return blocked;
+	}
+
+	void setBlocked(boolean blocked) {
+		this.blocked = blocked;
+	}
+
+	boolean isReset() {
+		return reset;
+	}
+
+	void setReset() {
+		this.reset = true;
+	}
+
+	/**
+	 * @return true if the request ran out of time while its response was
+	 * being sent, so the rest of it is cut off
+	 */
+	boolean isExpired() {
+		return expired;
+	}
+
+	void setExpired() {
+		this.expired = true;
+	}
+
+	/**
+	 * @param deadline The request timeout of the stream, cancelled when
+	 * the stream is released.
+	 */
+	void setDeadline(TimerWheel.Timeout deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Gives back the response's resources, closes the file being sent and
+	 * cancels the request timeout. Calling it more than once has no effect.
+	 */
+	void release() {
+		if(this.deadline != null)
+			this.deadline.cancel();
+		if(this.response != null)
+			this.response.release();
+		if(this.file == null)
+			return;
+		try {
+			this.file.close();
+		}
+		catch(IOException e) {
+		}
+		this.file = null;
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * ByteRange.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package protocol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A range of bytes of a file asked for in a <tt>Range</tt> field, with both
+ * ends included as in RFC 7233.
+ */
+public class ByteRange {
+	/** More ranges than this and the whole file is sent instead */
+	public static final int MAX_RANGES = 16;
+
+	private long first;
+	private long last;
+
+	/**
+	 * @param first The position of the first byte.
+	 * @param last The position of the last byte.
+	 */
+	public ByteRange(long first, long last) {
+		this.first = first;
+		this.last = last;
+	}
+
+	/**
+	 * @return the position of the first byte
+	 */
+	public long getFirst() {
+		return first;
+	}
+
+	/**
+	 * @return the position of the last byte
+	 */
+	public long getLast() {
+		return last;
+	}
+
+	/**
+	 * @return the number of bytes in the range
+	 */
+	public long getLength() {
+		return last - first + 1;
+	}
+
+	/**
+	 * Parses the value of a <tt>Range</tt> field for a file of the supplied
+	 * length. Ranges are kept in the order they were asked for, unless some
+	 * overlap or touch: then they are sorted and merged, so no byte is sent
+	 * twice.
+	 *
+	 * @param value The field value, e.g. <tt>bytes=0-499,-500</tt>.
+	 * @param length The length of the file.
+	 * @return The ranges, an empty list if none of them is within the file,
+	 * or null if the field must be ignored because it uses another unit,
+	 * is malformed or asks for more than {@link #MAX_RANGES} ranges.
+	 */
+	public static List<ByteRange> parse(String value, long length) {
+		int equals = value.indexOf('=');
+		if(equals < 0 || !value.substring(0, equals).trim().equalsIgnoreCase(Protocol.BYTES))
+			return null;
+
+		List<ByteRange> ranges = new ArrayList<ByteRange>();
+		int count = 0;
+		for(String spec : value.substring(equals + 1).split(",")) {
+			spec = spec.trim();
+			// Empty list elements are allowed
+			if(spec.isEmpty())
+				continue;
+			if(++count > MAX_RANGES)
+				return null;
+			int dash = spec.indexOf('-');
+			if(dash < 0)
+				return null;
+			long first = parseNumber(spec.substring(0, dash).trim());
+			long last = parseNumber(spec.substring(dash + 1).trim());
+
+			if(dash == 0) {
+				// The last bytes of the file
+				if(last < 0)
+					return null;
+				if(last > 0 && length > 0)
+					ranges.add(new ByteRange(Math.max(0, length - last), length - 1));
+				continue;
+			}
+			if(first < 0)
+				return null;
+			if(dash == spec.length() - 1)
+				last = length - 1;
+			else if(last < first)
+				return null;
+			if(first < length)
+				ranges.add(new ByteRange(first, Math.min(last, length - 1)));
+		}
+		if(count == 0)
+			return null;
+		return coalesce(ranges);
+	}
+
+	/**
+	 * Parses a run of digits, capping values that do not fit in a long.
+	 *
+	 * @return the number or -1 if the string is not a number
+	 */
+	private static long parseNumber(String digits) {
+		if(digits.isEmpty())
+			return -1;
+		long number = 0;
+		for(int i = 0; i < digits.length(); i++) {
+			char c = digits.charAt(i);
+			if(c < '0' || c > '9')
+				return -1;
+			if(number > (Long.MAX_VALUE - 9) / 10)
+				return Long.MAX_VALUE;
+			number = number * 10 + (c - '0');
+		}
+		return number;
+	}
+
+	private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+		if(ranges.size() < 2)
+			return ranges;
+		List<ByteRange> sorted = new ArrayList<ByteRange>(ranges);
+		Collections.sort(sorted, new Comparator<ByteRange>() {
+			public int compare(ByteRange a, ByteRange b) {
+				return a.first < b.first ? -1 : (a.first == b.first ? 0 : 1);
+			}
+		});
+		List<ByteRange> merged = new ArrayList<ByteRange>();
+		ByteRange current = sorted.get(0);
+		for(int i = 1; i < sorted.size(); i++) {
+			ByteRange next = sorted.get(i);
+			if(next.first <= current.last + 1) {
+				current = new ByteRange(current.first, Math.max(current.last, next.last));
+			}
+			else {
+				merged.add(current);
+				current = next;
+			}
+		}
+		merged.add(current);
+		// Nothing to merge, the client's order stands
+		return merged.size() == ranges.size() ? ranges : merged;
+	}
+
+	@Override
+	public String toString() {
+		return first + "-" + last;
+	}
+}
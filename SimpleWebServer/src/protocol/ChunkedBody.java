@@ -0,0 +1,168 @@
+/*
+ * ChunkedBody.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A body whose length is not known before it has been produced, sent with
+ * <tt>Transfer-Encoding: chunked</tt>. The bytes are pulled from a source
+ * channel one chunk at a time, so a body of any length takes the memory of
+ * a single chunk, and the frame each chunk is written into is taken from a
+ * pool and reused.
+ *
+ * The source must block until it has bytes or reached its end, as is the
+ * case for files, pipes and the channels of {@link java.nio.channels.Channels}.
+ * The last chunk ends the body, so the connection can be kept alive.
+ */
+public class ChunkedBody {
+	/** The most bytes of the source carried by one chunk */
+	public static final int CHUNK_SIZE = 16 * 1024;
+
+	private static final int MAX_POOLED = 256;
+	// The chunk size in hex and CRLF, the largest chunk has the longest
+	private static final int SIZE_LINE = Integer.toHexString(CHUNK_SIZE).length() + 2;
+	private static final byte[] LAST_CHUNK = ("0" + Protocol.CRLF + Protocol.CRLF).getBytes();
+	private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+	private static final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<ByteBuffer>();
+	private static final AtomicInteger pooled = new AtomicInteger();
+
+	private ReadableByteChannel source;
+	private ByteBuffer frame;
+	private boolean finished;
+
+	/**
+	 * @param source The channel the body is read from, closed along with
+	 * this body.
+	 */
+	public ChunkedBody(ReadableByteChannel source) {
+		this.source = source;
+		this.finished = false;
+	}
+
+	/**
+	 * Reads the next chunk from the source and frames it. The frame holds the
+	 * last chunk too once the source is at its end. The buffer returned is
+	 * the same every time, so it has to be written out before this is called
+	 * again, and it must not be modified.
+	 *
+	 * @return the frame to send, or null once the last chunk has been returned
+	 * @throws IOException if the source cannot be read
+	 */
+	public ByteBuffer next() throws IOException {
+		if(this.finished)
+			return null;
+		if(this.frame == null)
+			this.frame = acquire();
+
+		ByteBuffer frame = this.frame;
+		frame.clear();
+		frame.position(SIZE_LINE);
+		frame.limit(SIZE_LINE + CHUNK_SIZE);
+		boolean end = false;
+		while(frame.hasRemaining()) {
+			int count = this.source.read(frame);
+			if(count < 0) {
+				end = true;
+				break;
+			}
+			if(count == 0)
+				break;
+		}
+
+		int size = frame.position() - SIZE_LINE;
+		frame.limit(frame.capacity());
+		int start = SIZE_LINE;
+		if(size > 0) {
+			// The size line goes right in front of the data
+			frame.put((byte) Protocol.CR).put((byte) Protocol.LF);
+			start -= 2;
+			frame.put(start, (byte) Protocol.CR).put(start + 1, (byte) Protocol.LF);
+			for(int value = size; value != 0; value >>>= 4)
+				frame.put(--start, HEX[value & 0xf]);
+		}
+		if(end) {
+			// The source is done, the last chunk can go in the same write
+			frame.put(LAST_CHUNK);
+			this.finished = true;
+		}
+		frame.limit(frame.position());
+		frame.position(start);
+		return frame;
+	}
+
+	/**
+	 * Reads the body as it comes from the source, without the chunk framing,
+	 * for protocols that frame the body themselves such as HTTP/2. Calls to
+	 * this and to {@link #next()} must not be mixed on one body.
+	 *
+	 * @param buffer Where the bytes go.
+	 * @return the number of bytes read, or -1 once the source is at its end
+	 * @throws IOException if the source cannot be read
+	 */
+	public int read(ByteBuffer buffer) throws IOException {
+		if(this.finished)
+			return -1;
+		int count = this.source.read(buffer);
+		if(count < 0)
+			this.finished = true;
+		return count;
+	}
+
+	/**
+	 * Closes the source and gives back the frame. Calling it more than once
+	 * has no effect.
+	 */
+	public void close() {
+		if(this.frame != null) {
+			release(this.frame);
+			this.frame = null;
+		}
+		try {
+			this.source.close();
+		}
+		catch(IOException e) {
+		}
+	}
+
+	private static ByteBuffer acquire() {
+		ByteBuffer frame = pool.poll();
+		if(frame == null)
+			return ByteBuffer.allocate(SIZE_LINE + CHUNK_SIZE + 2 + LAST_CHUNK.length);
+		pooled.decrementAndGet();
+		return frame;
+	}
+
+	private static void release(ByteBuffer frame) {
+		if(pooled.incrementAndGet() > MAX_POOLED) {
+			pooled.decrementAndGet();
+			return;
+		}
+		pool.add(frame);
+	}
+}
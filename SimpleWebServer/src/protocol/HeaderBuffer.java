@@ -0,0 +1,129 @@
+/*
+ * HeaderBuffer.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package protocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A growable byte array that header blocks are serialized into. Buffers are
+ * pooled rather than kept per thread, so they are reused no matter how many
+ * (virtual) threads write responses.
+ */
+class HeaderBuffer {
+	private static final int INITIAL_SIZE = 2 * Protocol.CHUNK_LENGTH;
+	private static final int MAX_POOLED = 256;
+
+	private static final Queue<HeaderBuffer> pool = new ConcurrentLinkedQueue<HeaderBuffer>();
+	private static final AtomicInteger pooled = new AtomicInteger();
+
+	private byte[] data;
+	private int length;
+
+	private HeaderBuffer() {
+		this.data = new byte[INITIAL_SIZE];
+		this.length = 0;
+	}
+
+	/**
+	 * Takes an empty buffer from the pool, or creates one if the pool is empty.
+	 */
+	static HeaderBuffer acquire() {
+		HeaderBuffer buffer = pool.poll();
+		if(buffer == null)
+			return new HeaderBuffer();
+		pooled.decrementAndGet();
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer to the pool. The buffer must not be used afterwards.
+	 */
+	static void release(HeaderBuffer buffer) {
+		buffer.length = 0;
+		// Do not hold on to buffers that grew for a one-off huge header
+		if(buffer.data.length > INITIAL_SIZE * 4)
+			return;
+		if(pooled.incrementAndGet() > MAX_POOLED) {
+			pooled.decrementAndGet();
+			return;
+		}
+		pool.add(buffer);
+	}
+
+	HeaderBuffer append(byte[] bytes) {
+		return append(bytes, 0, bytes.length);
+	}
+
+	HeaderBuffer append(byte[] bytes, int offset, int count) {
+		ensureCapacity(this.length + count);
+		System.arraycopy(bytes, offset, this.data, this.length, count);
+		this.length += count;
+		return this;
+	}
+
+	/**
+	 * Appends the characters of a header name or value. Header fields are
+	 * ISO-8859-1, so each character is written as its low byte.
+	 */
+	HeaderBuffer append(String text) {
+		int count = text.length();
+		ensureCapacity(this.length + count);
+		for(int i = 0; i < count; i++)
+			this.data[this.length++] = (byte) text.charAt(i);
+		return this;
+	}
+
+	HeaderBuffer append(char c) {
+		ensureCapacity(this.length + 1);
+		this.data[this.length++] = (byte) c;
+		return this;
+	}
+
+	int length() {
+		return this.length;
+	}
+
+	byte[] toByteArray() {
+		byte[] bytes = new byte[this.length];
+		System.arraycopy(this.data, 0, bytes, 0, this.length);
+		return bytes;
+	}
+
+	void writeTo(OutputStream out) throws IOException {
+		out.write(this.data, 0, this.length);
+	}
+
+	private void ensureCapacity(int capacity) {
+		if(capacity <= this.data.length)
+			return;
+		int size = this.data.length * 2;
+		while(size < capacity)
+			size *= 2;
+		byte[] grown = new byte[size];
+		System.arraycopy(this.data, 0, grown, 0, this.length);
+		this.data = grown;
+	}
+}
@@ -22,13 +22,14 @@
  
 package protocol;
 
-import java.io.BufferedReader;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.logging.Level;
 
 import server.Server;
 
@@ -38,13 +39,88 @@ import server.Server;
  * @author Chandan R. Rupakheti (rupakhet@rose-hulman.edu)
  */
 public class HttpRequest {
+	private static final String CONNECTION = Protocol.CONNECTION.toLowerCase();
+	private static final String CONTENT_LENGTH = Protocol.CONTENT_LENGTH.toLowerCase();
+	private static final String TRANSFER_ENCODING = Protocol.TRANSFER_ENCODING.toLowerCase();
+	
 	private String method;
 	private String uri;
 	private String version;
+	
+	// The header block as received, field values are slices of it that
+	// only become Strings when somebody asks for them
+	private byte[] data;
+	private int fields;
+	private String[] names;
+	private int[] valueOffsets;
+	private int[] valueLengths;
+	private String[] values;
 	private Map<String, String> header;
 	
-	private HttpRequest() {
-		this.header = new HashMap<String, String>();
+	HttpRequest(String method, String uri, String version, byte[] data) {
+		this.method = method;
+		this.uri = uri;
+		this.version = version;
+		this.data = data;
+		this.fields = 0;
+		this.names = new String[16];
+		this.valueOffsets = new int[16];
+		this.valueLengths = new int[16];
+	}
+	
+	/**
+	 * Creates a request out of header fields that arrived in some other form
+	 * than an HTTP/1.1 header block, such as an HTTP/2 one. The fields are
+	 * laid out as they would have been received over HTTP/1.1, so they are
+	 * looked up and counted like those of any other request.
+	 * 
+	 * @param method The request method.
+	 * @param uri The request target.
+	 * @param version The protocol version, e.g. {@link Protocol#VERSION_2}.
+	 * @param names The lower case names of the header fields.
+	 * @param values The values of the header fields, in the same order.
+	 * @return the request
+	 */
+	public static HttpRequest create(String method, String uri, String version, 
+			List<String> names, List<String> values) {
+		StringBuilder block = new StringBuilder(256);
+		int[] offsets = new int[names.size()];
+		for(int i = 0; i < names.size(); i++) {
+			block.append(names.get(i)).append(Protocol.SEPERATOR).append(Protocol.SPACE);
+			offsets[i] = block.length();
+			block.append(values.get(i)).append(Protocol.CRLF);
+		}
+		HttpRequest request = new HttpRequest(method, uri, version, 
+				block.toString().getBytes(StandardCharsets.ISO_8859_1));
+		for(int i = 0; i < names.size(); i++)
+			request.addField(names.get(i), offsets[i], values.get(i).length());
+		return request;
+	}
+	
+	/**
+	 * Records a header field whose value lies in the header block.
+	 * 
+	 * @param name The lower case name of the field.
+	 * @param offset Where the value starts in the header block.
+	 * @param length The length of the value.
+	 */
+	void addField(String name, int offset, int length) {
+		if(this.fields == this.names.length) {
+			int size = this.fields * 2;
+			String[] grownNames = new String[size];
+			System.arraycopy(this.names, 0, grownNames, 0, this.fields);
+			this.names = grownNames;
+			int[] grownOffsets = new int[size];
+			System.arraycopy(this.valueOffsets, 0, grownOffsets, 0, this.fields);
+			this.valueOffsets = grownOffsets;
+			int[] grownLengths = new int[size];
+			System.arraycopy(this.valueLengths, 0, grownLengths, 0, this.fields);
+			this.valueLengths = grownLengths;
+		}
+		this.names[this.fields] = name;
+		this.valueOffsets[this.fields] = offset;
+		this.valueLengths[this.fields] = length;
+		this.fields++;
 	}
 	
 	/**
@@ -74,18 +150,161 @@ public class HttpRequest {
 	}
 
 	/**
-	 * The key to value mapping in the request header fields.
+	 * The size of the request line and header fields as received.
+	 * 
+	 * @return the length in bytes
+	 */
+	public int getLength() {
+		return this.data.length;
+	}
+
+	/**
+	 * The key to value mapping in the request header fields. Keys are in
+	 * lower case. If a field was sent more than once, the last value wins.
 	 * 
 	 * @return the header
 	 */
 	public Map<String, String> getHeader() {
+		if(this.header == null) {
+			Map<String, String> map = new HashMap<String, String>();
+			for(int i = 0; i < this.fields; i++)
+				map.put(this.names[i], value(i));
+			this.header = map;
+		}
 		// Lets return the unmodifable view of the header map
-		return Collections.unmodifiableMap(header);
+		return Collections.unmodifiableMap(this.header);
+	}
+	
+	/**
+	 * Looks up a single header field without building the whole
+	 * {@link #getHeader()} map.
+	 * 
+	 * @param key The lower case name of the field, e.g. "host"
+	 * @return The value or null if the field was not sent.
+	 */
+	public String getHeader(String key) {
+		for(int i = this.fields - 1; i >= 0; i--) {
+			if(this.names[i].equals(key))
+				return value(i);
+		}
+		return null;
+	}
+	
+	private String value(int index) {
+		if(this.values == null)
+			this.values = new String[this.names.length];
+		String value = this.values[index];
+		if(value == null) {
+			value = new String(this.data, this.valueOffsets[index], this.valueLengths[index], 
+					StandardCharsets.ISO_8859_1);
+			this.values[index] = value;
+		}
+		return value;
 	}
 
+	/**
+	 * Checks if the client wants the connection to stay open after this
+	 * request. HTTP/1.1 connections are persistent unless the client sends
+	 * <tt>Connection: close</tt>, HTTP/1.0 ones only if it sends
+	 * <tt>Connection: keep-alive</tt>. A connection is never reused after a
+	 * request with a body, see {@link #hasBody()}.
+	 * 
+	 * @return true if the connection may be reused
+	 */
+	public boolean isKeepAlive() {
+		if(hasBody())
+			return false;
+		String connection = getHeader(CONNECTION);
+		if(Protocol.VERSION.equalsIgnoreCase(this.version))
+			return !hasToken(connection, Protocol.CLOSE);
+		return hasToken(connection, Protocol.OPEN);
+	}
+	
+	/**
+	 * Checks if a body follows the header block. The server does not read
+	 * request bodies, so whatever follows such a request on the connection
+	 * cannot be taken for the next one.
+	 * 
+	 * @return true if the request has a <tt>Transfer-Encoding</tt> or a
+	 * non-zero <tt>Content-Length</tt>
+	 */
+	public boolean hasBody() {
+		if(getHeader(TRANSFER_ENCODING) != null)
+			return true;
+		String length = getHeader(CONTENT_LENGTH);
+		if(length == null)
+			return false;
+		for(int i = 0; i < length.length(); i++) {
+			char c = length.charAt(i);
+			if(c != '0' && c != ',' && c != Protocol.SPACE && c != '\t')
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Rejects a request whose body length is ambiguous, since a proxy in
+	 * front of us may have framed it differently: one with both a
+	 * <tt>Transfer-Encoding</tt> and a <tt>Content-Length</tt>, or with
+	 * <tt>Content-Length</tt> values that are malformed or disagree.
+	 * 
+	 * @throws ProtocolException If the body length is ambiguous.
+	 */
+	void checkFraming() throws ProtocolException {
+		String length = null;
+		boolean chunked = false;
+		for(int i = 0; i < this.fields; i++) {
+			if(this.names[i].equals(TRANSFER_ENCODING)) {
+				chunked = true;
+				continue;
+			}
+			if(!this.names[i].equals(CONTENT_LENGTH))
+				continue;
+			// A value may also be a list of the same length sent several times
+			StringTokenizer tokenizer = new StringTokenizer(value(i), ",");
+			if(!tokenizer.hasMoreTokens())
+				throw new ProtocolException(Protocol.BAD_REQUEST_CODE, Protocol.BAD_REQUEST_TEXT);
+			while(tokenizer.hasMoreTokens()) {
+				String token = tokenizer.nextToken().trim();
+				if(!isDigits(token) || (length != null && !length.equals(token)))
+					throw new ProtocolException(Protocol.BAD_REQUEST_CODE, Protocol.BAD_REQUEST_TEXT);
+				length = token;
+			}
+		}
+		if(chunked && length != null)
+			throw new ProtocolException(Protocol.BAD_REQUEST_CODE, Protocol.BAD_REQUEST_TEXT);
+	}
+	
+	private static boolean isDigits(String value) {
+		if(value.isEmpty())
+			return false;
+		for(int i = 0; i < value.length(); i++) {
+			if(value.charAt(i) < '0' || value.charAt(i) > '9')
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks if a comma separated header value such as 
+	 * <tt>keep-alive, Upgrade</tt> contains the supplied token.
+	 */
+	private static boolean hasToken(String value, String token) {
+		if(value == null)
+			return false;
+		StringTokenizer tokenizer = new StringTokenizer(value, ",");
+		while(tokenizer.hasMoreTokens()) {
+			if(tokenizer.nextToken().trim().equalsIgnoreCase(token))
+				return true;
+		}
+		return false;
+	}
+	
 	/**
 	 * Reads raw data from the supplied input stream and constructs a 
-	 * <tt>HttpRequest</tt> object out of the raw data.
+	 * <tt>HttpRequest</tt> object out of the raw data. Bytes the stream
+	 * delivers past the end of the request are lost, use a
+	 * {@link HttpRequestDecoder} to read several requests from one stream.
 	 * 
 	 * @param inputStream The input stream to read from.
 	 * @return A <tt>HttpRequest</tt> object.
@@ -93,69 +312,12 @@ public class HttpRequest {
 	 * {@link IOException} for socket input stream read errors.
 	 */
 	public static HttpRequest read(InputStream inputStream) throws Exception {
-		Server.logger.info(inputStream.toString());
-		// We will fill this object with the data from input stream and return it
-		HttpRequest request = new HttpRequest();
-		
-		InputStreamReader inStreamReader = new InputStreamReader(inputStream);
-		BufferedReader reader = new BufferedReader(inStreamReader);
-		
-		//First Request Line: GET /somedir/page.html HTTP/1.1
-		String line = reader.readLine(); // A line ends with either a \r, or a \n, or both
-		
-		if(line == null) {
+		if(Server.logger.isLoggable(Level.FINE))
+			Server.logger.fine("Reading request from " + inputStream);
+		HttpRequest request = new HttpRequestDecoder().read(inputStream);
+		if(request == null) {
 			throw new ProtocolException(Protocol.BAD_REQUEST_CODE, Protocol.BAD_REQUEST_TEXT);
 		}
-		
-		// We will break this line using space as delimeter into three parts
-		StringTokenizer tokenizer = new StringTokenizer(line, " ");
-		
-		// Error checking the first line must have exactly three elements
-		if(tokenizer.countTokens() != 3) {
-			throw new ProtocolException(Protocol.BAD_REQUEST_CODE, Protocol.BAD_REQUEST_TEXT);
-		}
-		
-		request.method = tokenizer.nextToken();		// GET
-		request.uri = tokenizer.nextToken();		// /somedir/page.html
-		request.version = tokenizer.nextToken();	// HTTP/1.1
-		
-		// Rest of the request is a header that maps keys to values
-		// e.g. Host: www.rose-hulman.edu
-		// We will convert both the strings to lower case to be able to search later
-		line = reader.readLine().trim();
-		
-		while(!line.equals("")) {
-			// THIS IS A PATCH 
-			// Instead of a string tokenizer, we are using string split
-			// Lets break the line into two part with first space as a separator 
-			
-			// First lets trim the line to remove escape characters
-			line = line.trim();
-			
-			// Now, get index of the first occurrence of space
-			int index = line.indexOf(' ');
-			
-			if(index > 0 && index < line.length()-1) {
-				// Now lets break the string in two parts
-				String key = line.substring(0, index); // Get first part, e.g. "Host:"
-				String value = line.substring(index+1); // Get the rest, e.g. "www.rose-hulman.edu"
-				
-				// Lets strip off the white spaces from key if any and change it to lower case
-				key = key.trim().toLowerCase();
-				
-				// Lets also remove ":" from the key
-				key = key.substring(0, key.length() - 1);
-				
-				// Lets strip white spaces if any from value as well
-				value = value.trim();
-				
-				// Now lets put the key=>value mapping to the header map
-				request.header.put(key, value);
-			}
-			
-			// Processed one more line, now lets read another header line and loop
-			line = reader.readLine().trim();
-		}
 		return request;
 	}
 	
@@ -171,7 +333,7 @@ public class HttpRequest {
 		buffer.append(this.version);
 		buffer.append(Protocol.LF);
 		
-		for(Map.Entry<String, String> entry : this.header.entrySet()) {
+		for(Map.Entry<String, String> entry : getHeader().entrySet()) {
 			buffer.append(entry.getKey());
 			buffer.append(Protocol.SEPERATOR);
 			buffer.append(Protocol.SPACE);
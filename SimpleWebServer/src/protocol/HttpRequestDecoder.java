@@ -0,0 +1,219 @@
+/*
+ * HttpRequestDecoder.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ * 
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ * 
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ */
+ 
+package protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Builds {@link HttpRequest} objects out of bytes that arrive in arbitrary
+ * pieces, as they do on a non-blocking channel. Bytes are collected until
+ * the blank line that ends the header block has been seen; anything after
+ * it is kept for the next request on the same connection.
+ * 
+ * One decoder belongs to one connection and is not thread safe.
+ */
+public class HttpRequestDecoder {
+	/**
+	 * Longest request line that is accepted, longer ones are answered with
+	 * {@link Protocol#URI_TOO_LONG_CODE}.
+	 */
+	public static final int MAX_REQUEST_LINE_LENGTH = 8 * 1024;
+	
+	/**
+	 * Largest header block (request line included) that will be buffered
+	 * before the request is rejected with 
+	 * {@link Protocol#HEADER_FIELDS_TOO_LARGE_CODE}.
+	 */
+	public static final int MAX_HEADER_LENGTH = 64 * 1024;
+	
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+	
+	private byte[] buffer;
+	private int length;
+	private int scanned;
+	private int lineEnd;
+	private byte[] chunk;
+	
+	public HttpRequestDecoder() {
+		this.buffer = new byte[Protocol.CHUNK_LENGTH];
+		this.length = 0;
+		this.scanned = 0;
+		this.lineEnd = -1;
+	}
+	
+	/**
+	 * Consumes all the remaining bytes of the supplied buffer and returns the
+	 * next complete request, if there is one.
+	 * 
+	 * @param in The bytes just read from the connection.
+	 * @return The next request, or null if more bytes are needed.
+	 * @throws Exception Throws {@link ProtocolException} for bad request.
+	 */
+	public HttpRequest decode(ByteBuffer in) throws Exception {
+		int count = in.remaining();
+		if(count > 0) {
+			ensureCapacity(this.length + count);
+			in.get(this.buffer, this.length, count);
+			this.length += count;
+		}
+		
+		int end = findHeaderEnd();
+		if(this.lineEnd < 0 ? this.length > MAX_REQUEST_LINE_LENGTH : this.lineEnd > MAX_REQUEST_LINE_LENGTH) {
+			throw new ProtocolException(Protocol.URI_TOO_LONG_CODE, Protocol.URI_TOO_LONG_TEXT);
+		}
+		if(end < 0 ? this.length > MAX_HEADER_LENGTH : end > MAX_HEADER_LENGTH) {
+			throw new ProtocolException(Protocol.HEADER_FIELDS_TOO_LARGE_CODE, 
+					Protocol.HEADER_FIELDS_TOO_LARGE_TEXT);
+		}
+		if(end < 0) {
+			return null;
+		}
+		
+		HttpRequest request = HttpRequestParser.parse(this.buffer, end);
+		
+		// Keep whatever follows the header block for the next request
+		System.arraycopy(this.buffer, end, this.buffer, 0, this.length - end);
+		this.length -= end;
+		this.scanned = 0;
+		this.lineEnd = -1;
+		return request;
+	}
+	
+	/**
+	 * Blocks until the next complete request has been read from the supplied
+	 * stream. Bytes read past the end of that request are kept for the next
+	 * call, so the same decoder can be used for every request that arrives
+	 * on a persistent connection.
+	 * 
+	 * @param in The input stream of the connection.
+	 * @return The next request, or null if the client closed the connection
+	 * between requests.
+	 * @throws Exception Throws either {@link ProtocolException} for bad request or 
+	 * {@link java.io.IOException} for socket input stream read errors.
+	 */
+	public HttpRequest read(InputStream in) throws Exception {
+		HttpRequest request = decode(EMPTY);
+		if(request != null)
+			return request;
+		
+		if(this.chunk == null)
+			this.chunk = new byte[Protocol.CHUNK_LENGTH];
+		while(request == null) {
+			int count = in.read(this.chunk);
+			if(count < 0) {
+				if(this.length == 0)
+					return null;
+				// Connection closed in the middle of a request
+				throw new ProtocolException(Protocol.BAD_REQUEST_CODE, Protocol.BAD_REQUEST_TEXT);
+			}
+			request = decode(ByteBuffer.wrap(this.chunk, 0, count));
+		}
+		return request;
+	}
+	
+	/**
+	 * Checks if the next request can be decoded without waiting on the
+	 * client. Whatever the stream can deliver without blocking is taken in
+	 * first.
+	 * 
+	 * @param in The input stream of the connection.
+	 * @return true if a whole header block, or more than fits in one, is
+	 * buffered
+	 * @throws IOException
+	 */
+	public boolean hasRequest(InputStream in) throws IOException {
+		if(this.chunk == null)
+			this.chunk = new byte[Protocol.CHUNK_LENGTH];
+		int available = in.available();
+		while(available > 0 && this.length <= MAX_HEADER_LENGTH) {
+			int count = in.read(this.chunk, 0, Math.min(available, this.chunk.length));
+			if(count <= 0)
+				break;
+			ensureCapacity(this.length + count);
+			System.arraycopy(this.chunk, 0, this.buffer, this.length, count);
+			this.length += count;
+			available -= count;
+		}
+		// A block that is too large is rejected by the next read
+		return findHeaderEnd() >= 0 || this.length > MAX_HEADER_LENGTH;
+	}
+	
+	/**
+	 * Checks if part of a request has been received but not decoded yet.
+	 * 
+	 * @return true if there are buffered bytes
+	 */
+	public boolean hasPendingBytes() {
+		return this.length > 0;
+	}
+	
+	/**
+	 * Hands over the bytes received past the last request, used when the
+	 * connection switches to another protocol and the bytes belong to it.
+	 * The decoder is empty afterwards.
+	 * 
+	 * @return the buffered bytes, possibly none
+	 */
+	public byte[] takePendingBytes() {
+		byte[] pending = new byte[this.length];
+		System.arraycopy(this.buffer, 0, pending, 0, this.length);
+		this.length = 0;
+		this.scanned = 0;
+		this.lineEnd = -1;
+		return pending;
+	}
+	
+	/**
+	 * Looks for an empty line, i.e. <tt>\n\n</tt> or <tt>\n\r\n</tt>, 
+	 * resuming where the last search left off. Also notes where the request
+	 * line ends, so its length can be checked.
+	 * 
+	 * @return The offset just past the header block or -1 if not found.
+	 */
+	private int findHeaderEnd() {
+		for(int i = Math.max(this.scanned, 1); i < this.length; i++) {
+			if(this.buffer[i] != Protocol.LF)
+				continue;
+			if(this.lineEnd < 0)
+				this.lineEnd = i;
+			if(this.buffer[i - 1] == Protocol.LF)
+				return i + 1;
+			if(i >= 2 && this.buffer[i - 1] == Protocol.CR && this.buffer[i - 2] == Protocol.LF)
+				return i + 1;
+		}
+		this.scanned = Math.max(this.length, 1);
+		return -1;
+	}
+	
+	private void ensureCapacity(int capacity) {
+		if(capacity <= this.buffer.length)
+			return;
+		int size = this.buffer.length;
+		while(size < capacity)
+			size *= 2;
+		byte[] grown = new byte[size];
+		System.arraycopy(this.buffer, 0, grown, 0, this.length);
+		this.buffer = grown;
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * HttpRequestParser.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package protocol;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns the raw bytes of a header block into a {@link HttpRequest}. The
+ * bytes are scanned in place: common methods, versions and header names are
+ * matched against prepared byte patterns and mapped to shared String
+ * constants, and header values are only recorded as offsets into the block.
+ * The only objects created per request are the request itself, its copy of
+ * the header block and the URI.
+ */
+class HttpRequestParser {
+	static final String VERSION_1_0 = "HTTP/1.0";
+
+	private static final String[] METHODS = { 
+		Protocol.GET, "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "TRACE", "CONNECT", "PATCH" 
+	};
+	private static final String[] VERSIONS = { Protocol.VERSION, VERSION_1_0 };
+
+	/**
+	 * Lower case names of the header fields clients commonly send, as they
+	 * appear in {@link HttpRequest#getHeader()}.
+	 */
+	private static final String[] HEADER_NAMES = {
+		"host", "connection", "user-agent", "accept", "accept-charset", "accept-encoding", 
+		"accept-language", "authorization", "cache-control", "content-length", "content-type", 
+		"cookie", "dnt", "expect", "http2-settings", "if-match", "if-modified-since", 
+		"if-none-match", "if-range", "if-unmodified-since", "keep-alive", "origin", "pragma", 
+		"range", "referer", "te", "transfer-encoding", "upgrade", "upgrade-insecure-requests", "via"
+	};
+
+	/** The names of {@link #HEADER_NAMES} grouped by length, for quick lookup */
+	private static final String[][] headerNamesByLength;
+
+	static {
+		int longest = 0;
+		for(String name : HEADER_NAMES)
+			longest = Math.max(longest, name.length());
+		int[] counts = new int[longest + 1];
+		for(String name : HEADER_NAMES)
+			counts[name.length()]++;
+		headerNamesByLength = new String[longest + 1][];
+		for(int i = 0; i <= longest; i++)
+			headerNamesByLength[i] = new String[counts[i]];
+		for(String name : HEADER_NAMES)
+			headerNamesByLength[name.length()][--counts[name.length()]] = name;
+	}
+
+	private HttpRequestParser() {
+	}
+
+	/**
+	 * Parses a complete header block, i.e. everything up to and including
+	 * the empty line that ends it.
+	 * 
+	 * @param buffer The bytes of the header block, which are copied.
+	 * @param length The length of the header block.
+	 * @return The request.
+	 * @throws ProtocolException If the block is not a valid request.
+	 */
+	static HttpRequest parse(byte[] buffer, int length) throws ProtocolException {
+		byte[] data = new byte[length];
+		System.arraycopy(buffer, 0, data, 0, length);
+
+		// Tolerate empty lines in front of the request line
+		int position = 0;
+		while(position < length && (data[position] == Protocol.CR || data[position] == Protocol.LF))
+			position++;
+
+		//First Request Line: GET /somedir/page.html HTTP/1.1
+		int lineEnd = indexOf(data, Protocol.LF, position, length);
+		if(lineEnd < 0)
+			throw badRequest();
+		int end = trimCR(data, position, lineEnd);
+
+		// It must have exactly three elements separated by spaces
+		int methodEnd = indexOf(data, (byte) Protocol.SPACE, position, end);
+		if(methodEnd <= position)
+			throw badRequest();
+		int uriStart = skipSpaces(data, methodEnd, end);
+		int uriEnd = indexOf(data, (byte) Protocol.SPACE, uriStart, end);
+		if(uriEnd < 0 || uriEnd == uriStart)
+			throw badRequest();
+		int versionStart = skipSpaces(data, uriEnd, end);
+		if(versionStart == end || indexOf(data, (byte) Protocol.SPACE, versionStart, end) >= 0)
+			throw badRequest();
+
+		String method = match(data, position, methodEnd, METHODS, false);
+		String uri = new String(data, uriStart, uriEnd - uriStart, StandardCharsets.ISO_8859_1);
+		String version = match(data, versionStart, end, VERSIONS, false);
+		HttpRequest request = new HttpRequest(method, uri, version, data);
+
+		// Rest of the request is a header that maps keys to values
+		// e.g. Host: www.rose-hulman.edu
+		position = lineEnd + 1;
+		while(position < length) {
+			lineEnd = indexOf(data, Protocol.LF, position, length);
+			if(lineEnd < 0)
+				throw badRequest();
+			end = trimCR(data, position, lineEnd);
+			if(end == position)
+				break;
+
+			// Folded lines are obsolete and may be used to smuggle fields
+			if(isWhitespace(data[position]))
+				throw badRequest();
+
+			int colon = indexOf(data, (byte) Protocol.SEPERATOR, position, end);
+			if(colon > position) {
+				// No whitespace is allowed between the name and the colon
+				if(isWhitespace(data[colon - 1]))
+					throw badRequest();
+				int valueStart = colon + 1;
+				while(valueStart < end && isWhitespace(data[valueStart]))
+					valueStart++;
+				int valueEnd = end;
+				while(valueEnd > valueStart && isWhitespace(data[valueEnd - 1]))
+					valueEnd--;
+				request.addField(headerName(data, position, colon), valueStart, valueEnd - valueStart);
+			}
+			// Lines without a colon carry nothing we can use, skip them
+			position = lineEnd + 1;
+		}
+		request.checkFraming();
+		return request;
+	}
+
+	/**
+	 * Maps a header name to its lower case form, reusing the shared constant
+	 * for the names in {@link #HEADER_NAMES}.
+	 */
+	private static String headerName(byte[] data, int start, int end) {
+		int length = end - start;
+		if(length < headerNamesByLength.length) {
+			String known = match(data, start, end, headerNamesByLength[length], true);
+			if(known != null)
+				return known;
+		}
+		char[] chars = new char[length];
+		for(int i = 0; i < length; i++)
+			chars[i] = (char) toLowerCase(data[start + i] & 0xff);
+		return new String(chars);
+	}
+
+	/**
+	 * Finds the candidate the bytes spell out, or creates a String from them
+	 * when the candidates come from the request line and none matches.
+	 */
+	private static String match(byte[] data, int start, int end, String[] candidates, boolean ignoreCase) {
+		int length = end - start;
+		for(String candidate : candidates) {
+			if(candidate.length() == length && regionMatches(data, start, candidate, ignoreCase))
+				return candidate;
+		}
+		if(ignoreCase)
+			return null;
+		return new String(data, start, length, StandardCharsets.ISO_8859_1);
+	}
+
+	private static boolean regionMatches(byte[] data, int start, String candidate, boolean ignoreCase) {
+		for(int i = 0; i < candidate.length(); i++) {
+			int b = data[start + i] & 0xff;
+			if(ignoreCase)
+				b = toLowerCase(b);
+			if(b != candidate.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private static int toLowerCase(int b) {
+		return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == Protocol.SPACE || b == '\t';
+	}
+
+	private static int indexOf(byte[] data, byte b, int start, int end) {
+		for(int i = start; i < end; i++) {
+			if(data[i] == b)
+				return i;
+		}
+		return -1;
+	}
+
+	private static int indexOf(byte[] data, char c, int start, int end) {
+		return indexOf(data, (byte) c, start, end);
+	}
+
+	private static int skipSpaces(byte[] data, int start, int end) {
+		while(start < end && data[start] == Protocol.SPACE)
+			start++;
+		return start;
+	}
+
+	/**
+	 * @return the end of the line without the CR that may precede its LF
+	 */
+	private static int trimCR(byte[] data, int start, int lineEnd) {
+		if(lineEnd > start && data[lineEnd - 1] == Protocol.CR)
+			return lineEnd - 1;
+		return lineEnd;
+	}
+
+	private static ProtocolException badRequest() {
+		return new ProtocolException(Protocol.BAD_REQUEST_CODE, Protocol.BAD_REQUEST_TEXT);
+	}
+}
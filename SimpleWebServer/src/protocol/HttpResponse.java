@@ -22,12 +22,20 @@
 package protocol;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
 
 import server.Server;
 
@@ -42,6 +50,16 @@ public class HttpResponse {
 	private String phrase;
 	private Map<String, String> header;
 	private File file;
+	private ByteBuffer content;
+	private MappedFileCache mappedFileCache;
+	private MappedFileCache.MappedFile mappedFile;
+	private boolean generalHeader;
+	private List<ByteRange> ranges;
+	private byte[][] partHeaders;
+	private byte[] closingDelimiter;
+	private ChunkedBody chunkedBody;
+	private WriteListener listener;
+	private long bytesSent;
 
 	
 	/**
@@ -97,7 +115,91 @@ public class HttpResponse {
 	}
 
 	/**
-	 * Returns the header fields associated with the response object.
+	 * The content of {@link #getFile()} already in memory, if it is.
+	 * 
+	 * @return the content or null if the body is read from the file
+	 */
+	public ByteBuffer getContent() {
+		return content;
+	}
+	
+	/**
+	 * Supplies the body from memory instead of reading {@link #getFile()}.
+	 * The buffer's remaining bytes are sent, the buffer itself is not
+	 * modified.
+	 * 
+	 * @param content The body of the response.
+	 */
+	public void setContent(ByteBuffer content) {
+		this.content = content;
+	}
+
+	/**
+	 * Streams the body from a channel with <tt>Transfer-Encoding: chunked</tt>
+	 * instead of sending a file or content, see {@link ChunkedBody}.
+	 */
+	void setChunkedBody(ChunkedBody body) {
+		this.chunkedBody = body;
+	}
+	
+	/**
+	 * Checks if the body is streamed in chunks, so its length is not known.
+	 * 
+	 * @return true if the body is chunked
+	 */
+	public boolean isChunked() {
+		return this.chunkedBody != null;
+	}
+	
+	/**
+	 * Lets the caller of {@link #write(OutputStream, WritableByteChannel)}
+	 * follow a chunked body, whose length is not known when the write
+	 * starts.
+	 * 
+	 * @param listener The listener, or null.
+	 */
+	public void setWriteListener(WriteListener listener) {
+		this.listener = listener;
+	}
+	
+	/**
+	 * Serves the body from a memory mapped file. The mapping is given back
+	 * to the cache by {@link #release()}.
+	 */
+	void setMappedFile(MappedFileCache cache, MappedFileCache.MappedFile mappedFile) {
+		this.mappedFileCache = cache;
+		this.mappedFile = mappedFile;
+		this.content = mappedFile.getContent();
+	}
+	
+	/**
+	 * Gives back whatever the body was borrowing, such as a memory mapped 
+	 * file. {@link #write(OutputStream, WritableByteChannel)} does this by
+	 * itself, so only callers that send the body some other way, or not at
+	 * all, need to call it. Calling it more than once has no effect.
+	 */
+	public void release() {
+		if(this.mappedFile != null) {
+			this.content = null;
+			this.mappedFileCache.release(this.mappedFile);
+			this.mappedFile = null;
+		}
+		if(this.chunkedBody != null)
+			this.chunkedBody.close();
+	}
+
+	/**
+	 * Sends the <tt>Date</tt>, <tt>Server</tt> and <tt>Provider</tt> fields
+	 * with this response. They are not part of {@link #getHeader()}, they
+	 * are copied in already serialized when the header block is written.
+	 */
+	void addGeneralHeader() {
+		this.generalHeader = true;
+	}
+
+	/**
+	 * Returns the header fields associated with the response object. The
+	 * general fields added by {@link HttpResponseFactory} are not included.
 	 * @return the header
 	 */
 	public Map<String, String> getHeader() {
@@ -115,52 +217,405 @@ public class HttpResponse {
 	}
 	
 	/**
-	 * Writes the data of the http response object to the output stream.
+	 * Serializes the status line, the header fields and the blank line that
+	 * ends them. The body, if any, is not included.
 	 * 
-	 * @param outStream The output stream
-	 * @throws Exception
+	 * @return The header block as it goes on the wire.
 	 */
-	public void write(OutputStream outStream) throws Exception {
-		Server.logger.info(outStream.toString());
-		BufferedOutputStream out = new BufferedOutputStream(outStream, Protocol.CHUNK_LENGTH);
-
+	public byte[] getHeaderBytes() {
+		HeaderBuffer buffer = HeaderBuffer.acquire();
+		try {
+			appendHeader(buffer);
+			return buffer.toByteArray();
+		}
+		finally {
+			HeaderBuffer.release(buffer);
+		}
+	}
+	
+	/**
+	 * Serializes the header block into the supplied buffer. Prepared bytes
+	 * are copied for the status line and the general fields, only the fields
+	 * specific to this response are encoded.
+	 */
+	private void appendHeader(HeaderBuffer buffer) {
 		// First status line
-		String line = this.version + Protocol.SPACE + this.status + Protocol.SPACE + this.phrase + Protocol.CRLF;
-		out.write(line.getBytes());
+		PreparedHeaders.appendStatusLine(buffer, this.version, this.status, this.phrase);
+		if(this.generalHeader)
+			PreparedHeaders.appendGeneralHeader(buffer);
 		
 		// Write header fields if there is something to write in header field
 		if(header != null && !header.isEmpty()) {
 			for(Map.Entry<String, String> entry : header.entrySet()) {
-				String key = entry.getKey();
-				String value = entry.getValue();
-				
 				// Write each header field line
-				line = key + Protocol.SEPERATOR + Protocol.SPACE + value + Protocol.CRLF;
-				out.write(line.getBytes());
+				buffer.append(entry.getKey()).append(Protocol.SEPERATOR).append(Protocol.SPACE)
+						.append(entry.getValue()).append(Protocol.CRLF);
 			}
 		}
 
 		// Write a blank line
-		out.write(Protocol.CRLF.getBytes());
+		buffer.append(Protocol.CRLF);
+	}
+	
+	/**
+	 * Gets the number of bytes {@link #write(OutputStream, WritableByteChannel)}
+	 * put on the wire for this response, header included. If the write
+	 * failed this is what was sent before the failure, at most.
+	 * 
+	 * @return the bytes sent
+	 */
+	public long getBytesSent() {
+		return bytesSent;
+	}
+	
+	/**
+	 * Checks if the response carries the content of {@link #getFile()} or
+	 * {@link #getContent()}.
+	 * 
+	 * @return true if a body follows the header block
+	 */
+	public boolean hasBody() {
+		return (this.status == Protocol.OK_CODE || this.status == Protocol.PARTIAL_CONTENT_CODE) 
+				&& (this.file != null || this.content != null || this.chunkedBody != null);
+	}
+	
+	/**
+	 * Limits the body to ranges of the file. More than one range makes the
+	 * body a <tt>multipart/byteranges</tt> whose parts carry their own
+	 * <tt>Content-Type</tt> and <tt>Content-Range</tt>.
+	 * 
+	 * @param ranges The ranges, in the order they are sent.
+	 * @param length The length of the whole file.
+	 * @param contentType The type of the file, or null if it is not known.
+	 * @return The boundary separating the parts, or null for a single range.
+	 */
+	String setRanges(List<ByteRange> ranges, long length, String contentType) {
+		this.ranges = ranges;
+		if(ranges.size() == 1)
+			return null;
+		
+		// Random, so it is very unlikely to turn up in the file
+		String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+		this.partHeaders = new byte[ranges.size()][];
+		for(int i = 0; i < ranges.size(); i++) {
+			ByteRange range = ranges.get(i);
+			StringBuilder part = new StringBuilder(128);
+			part.append(Protocol.CRLF).append("--").append(boundary).append(Protocol.CRLF);
+			if(contentType != null)
+				part.append(Protocol.CONTENT_TYPE).append(Protocol.SEPERATOR).append(Protocol.SPACE)
+						.append(contentType).append(Protocol.CRLF);
+			part.append(Protocol.CONTENT_RANGE).append(Protocol.SEPERATOR).append(Protocol.SPACE)
+					.append(Protocol.BYTES).append(Protocol.SPACE).append(range.getFirst()).append('-')
+					.append(range.getLast()).append(Protocol.SLASH).append(length).append(Protocol.CRLF)
+					.append(Protocol.CRLF);
+			this.partHeaders[i] = part.toString().getBytes(StandardCharsets.ISO_8859_1);
+		}
+		this.closingDelimiter = (Protocol.CRLF + "--" + boundary + "--" + Protocol.CRLF)
+				.getBytes(StandardCharsets.ISO_8859_1);
+		return boundary;
+	}
+	
+	/**
+	 * Gets the length of the body once it is limited to ranges, part
+	 * headers included.
+	 * 
+	 * @return the body length
+	 */
+	long getRangesLength() {
+		long length = 0;
+		for(ByteRange range : this.ranges)
+			length += range.getLength();
+		if(this.partHeaders != null) {
+			for(byte[] part : this.partHeaders)
+				length += part.length;
+			length += this.closingDelimiter.length;
+		}
+		return length;
+	}
+	
+	/**
+	 * Breaks the body down into what goes on the wire: the whole file or
+	 * content, the ranges asked for with the multipart framing between
+	 * them, or a chunked body. Ranges of content in memory are slices of it.
+	 * 
+	 * @return the segments, empty if there is no body
+	 */
+	public List<Segment> getSegments() {
+		List<Segment> segments = new ArrayList<Segment>();
+		if(!hasBody())
+			return segments;
+		if(this.chunkedBody != null) {
+			segments.add(new Segment(this.chunkedBody));
+			return segments;
+		}
+		if(this.ranges == null) {
+			if(this.content != null)
+				segments.add(new Segment(this.content.duplicate()));
+			else
+				segments.add(new Segment(0, getContentLength()));
+			return segments;
+		}
+		
+		for(int i = 0; i < this.ranges.size(); i++) {
+			ByteRange range = this.ranges.get(i);
+			if(this.partHeaders != null)
+				segments.add(new Segment(ByteBuffer.wrap(this.partHeaders[i])));
+			if(this.content != null) {
+				ByteBuffer slice = this.content.duplicate();
+				int first = slice.position() + (int) range.getFirst();
+				slice.limit(first + (int) range.getLength());
+				slice.position(first);
+				segments.add(new Segment(slice));
+			}
+			else {
+				segments.add(new Segment(range.getFirst(), range.getLength()));
+			}
+		}
+		if(this.closingDelimiter != null)
+			segments.add(new Segment(ByteBuffer.wrap(this.closingDelimiter)));
+		return segments;
+	}
+	
+	/**
+	 * Gets the length of the body, as announced by the 
+	 * <tt>Content-Length</tt> field.
+	 * 
+	 * @return the length in bytes, 0 if there is no body or -1 if it is chunked
+	 */
+	public long getContentLength() {
+		if(this.chunkedBody != null)
+			return -1;
+		String length = this.header.get(Protocol.CONTENT_LENGTH);
+		if(!hasBody() || length == null)
+			return 0;
+		return Long.parseLong(length);
+	}
+	
+	/**
+	 * Writes the data of the http response object to the output stream.
+	 * 
+	 * @param outStream The output stream
+	 * @throws Exception
+	 */
+	public void write(OutputStream outStream) throws Exception {
+		write(outStream, null);
+	}
+	
+	/**
+	 * Writes the data of the http response object to the output stream. If
+	 * the channel behind that stream is supplied, the file is handed to the
+	 * kernel with {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+	 * rather than being copied through the heap.
+	 * 
+	 * @param outStream The output stream
+	 * @param channel The channel <tt>outStream</tt> writes to, or null.
+	 * @throws Exception
+	 */
+	public void write(OutputStream outStream, WritableByteChannel channel) throws Exception {
+		try {
+			writeTo(outStream, channel);
+		}
+		finally {
+			release();
+		}
+	}
+	
+	private void writeTo(OutputStream outStream, WritableByteChannel channel) throws Exception {
+		if(Server.logger.isLoggable(Level.FINE))
+			Server.logger.fine("Writing response to " + outStream);
 
-		// We are reading a file
-		if(this.getStatus() == Protocol.OK_CODE && file != null) {
-			// Process text documents
-			FileInputStream fileInStream = new FileInputStream(file);
+		HeaderBuffer buffer = HeaderBuffer.acquire();
+		try {
+			appendHeader(buffer);
+			// A small body in memory goes out in the same write as the header
+			if(hasBody() && ranges == null && content != null && content.hasArray() 
+					&& buffer.length() + content.remaining() <= Protocol.CHUNK_LENGTH) {
+				buffer.append(content.array(), content.arrayOffset() + content.position(), content.remaining());
+				buffer.writeTo(outStream);
+				outStream.flush();
+				this.bytesSent += buffer.length();
+				return;
+			}
+			buffer.writeTo(outStream);
+			this.bytesSent += buffer.length();
+		}
+		finally {
+			HeaderBuffer.release(buffer);
+		}
+
+		if(hasBody()) {
+			for(Segment segment : getSegments()) {
+				// We are sending content that is already in memory
+				if(segment.buffer != null)
+					writeContent(outStream, channel, segment.buffer);
+				// We are streaming a body of unknown length
+				else if(segment.chunkedBody != null)
+					writeChunks(outStream, channel, segment.chunkedBody);
+				// We are reading a file
+				else if(channel != null)
+					transferFile(channel, segment.position, segment.count);
+				else
+					copyFile(outStream, segment.position, segment.count);
+			}
+		}
+		
+		// Flush the data so that outStream sends everything through the socket 
+		outStream.flush();
+	}
+	
+	/**
+	 * Sends bytes that are already in memory, without an extra copy when
+	 * possible.
+	 */
+	private void writeContent(OutputStream out, WritableByteChannel channel, ByteBuffer buffer) throws Exception {
+		if(buffer.hasArray()) {
+			out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			this.bytesSent += buffer.remaining();
+		}
+		else if(channel != null) {
+			while(buffer.hasRemaining())
+				this.bytesSent += channel.write(buffer);
+		}
+		else {
+			byte[] chunk = new byte[Math.min(Protocol.CHUNK_LENGTH, buffer.remaining())];
+			while(buffer.hasRemaining()) {
+				int count = Math.min(chunk.length, buffer.remaining());
+				buffer.get(chunk, 0, count);
+				out.write(chunk, 0, count);
+				this.bytesSent += count;
+			}
+		}
+	}
+	
+	/**
+	 * Sends a chunked body one frame at a time.
+	 */
+	private void writeChunks(OutputStream out, WritableByteChannel channel, ChunkedBody body) throws Exception {
+		ByteBuffer frame;
+		while((frame = body.next()) != null) {
+			if(this.listener != null)
+				this.listener.writing(frame.remaining());
+			writeContent(out, channel, frame);
+		}
+	}
+	
+	/**
+	 * Sends a slice of the file straight from the page cache to the channel.
+	 * 
+	 * @throws EOFException if the file shrank and the slice cannot be sent 
+	 * in full, the client then learns of it only when the connection closes
+	 */
+	private void transferFile(WritableByteChannel channel, long position, long count) throws Exception {
+		FileInputStream fileInStream = new FileInputStream(file);
+		try {
+			FileChannel fileChannel = fileInStream.getChannel();
+			long end = position + count;
+			while(position < end) {
+				long sent = fileChannel.transferTo(position, end - position, channel);
+				if(sent <= 0 && position >= fileChannel.size())
+					throw new EOFException("File shrank while being sent");
+				position += sent;
+				this.bytesSent += sent;
+			}
+		}
+		finally {
+			fileInStream.close();
+		}
+	}
+	
+	/**
+	 * Copies a slice of the file to the stream one chunk at a time.
+	 * 
+	 * @throws EOFException if the file shrank and the slice cannot be sent 
+	 * in full
+	 */
+	private void copyFile(OutputStream out, long position, long count) throws Exception {
+		// Process text documents
+		FileInputStream fileInStream = new FileInputStream(file);
+		try {
+			fileInStream.getChannel().position(position);
 			BufferedInputStream inStream = new BufferedInputStream(fileInStream, Protocol.CHUNK_LENGTH);
 			
 			byte[] buffer = new byte[Protocol.CHUNK_LENGTH];
 			int bytesRead = 0;
 			// While there is some bytes to read from file, read each chunk and send to the socket out stream
-			while((bytesRead = inStream.read(buffer)) != -1) {
+			while(count > 0 && (bytesRead = inStream.read(buffer, 0, (int) Math.min(buffer.length, count))) != -1) {
 				out.write(buffer, 0, bytesRead);
+				this.bytesSent += bytesRead;
+				count -= bytesRead;
 			}
+			if(count > 0)
+				throw new EOFException("File shrank while being sent");
+		}
+		finally {
 			// Close the file input stream, we are done reading
-			inStream.close();
+			fileInStream.close();
 		}
+	}
+	
+	/**
+	 * A piece of the body as it goes on the wire: bytes in memory, a
+	 * slice of {@link HttpResponse#getFile()} or a chunked body.
+	 */
+	public static class Segment {
+		private ByteBuffer buffer;
+		private long position;
+		private long count;
+		private ChunkedBody chunkedBody;
 		
-		// Flush the data so that outStream sends everything through the socket 
-		out.flush();
+		private Segment(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+		
+		private Segment(ChunkedBody chunkedBody) {
+			this.chunkedBody = chunkedBody;
+		}
+		
+		private Segment(long position, long count) {
+			this.position = position;
+			this.count = count;
+		}
+		
+		/**
+		 * @return the bytes to send, or null if the segment is a slice of 
+		 * the file or a chunked body
+		 */
+		public ByteBuffer getBuffer() {
+			return buffer;
+		}
+		
+		/**
+		 * @return where the slice of the file starts
+		 */
+		public long getPosition() {
+			return position;
+		}
+		
+		/**
+		 * @return the length of the slice of the file
+		 */
+		public long getCount() {
+			return count;
+		}
+		
+		/**
+		 * @return the body to stream, or null if the segment is not chunked
+		 */
+		public ChunkedBody getChunkedBody() {
+			return chunkedBody;
+		}
+	}
+	
+	/**
+	 * Follows the write of a response whose length was not known up front.
+	 */
+	public interface WriteListener {
+		/**
+		 * Called before a blocking write of part of the body.
+		 * 
+		 * @param bytes The number of bytes about to be written.
+		 */
+		void writing(long bytes);
 	}
 	
 	@Override
@@ -174,6 +629,10 @@ public class HttpResponse {
 		buffer.append(this.phrase);
 		buffer.append(Protocol.LF);
 		
+		if(this.generalHeader) {
+			buffer.append(Protocol.DATE + Protocol.SEPERATOR + Protocol.SPACE + PreparedHeaders.getDate());
+			buffer.append(Protocol.LF);
+		}
 		for(Map.Entry<String, String> entry : this.header.entrySet()) {
 			buffer.append(entry.getKey());
 			buffer.append(Protocol.SEPERATOR);
@@ -186,6 +645,8 @@ public class HttpResponse {
 		if(file != null) {
 			buffer.append("Data: ");
 			buffer.append(this.file.getAbsolutePath());
+			if(content != null)
+				buffer.append(" (cached)");
 		}
 		buffer.append("\n----------------------------------\n");
 		return buffer.toString();
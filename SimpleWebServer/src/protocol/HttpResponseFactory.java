@@ -24,10 +24,12 @@ package protocol;
 import java.io.File;
 import java.net.FileNameMap;
 import java.net.URLConnection;
-import java.util.Calendar;
-import java.util.Date;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.util.HashMap;
+import java.util.List;
 
+import server.GMTConversion;
 import server.Server;
 
 /**
@@ -36,6 +38,16 @@ import server.Server;
  * @author Chandan R. Rupakheti (rupakhet@rose-hulman.edu)
  */
 public class HttpResponseFactory {
+	/**
+	 * Gets the value of the <tt>Date</tt> field sent with responses right
+	 * now, for protocols that write the general fields themselves.
+	 * 
+	 * @return the current date in the format of HTTP
+	 */
+	public static String getDate() {
+		return PreparedHeaders.getDate();
+	}
+	
 	/**
 	 * Convenience method for adding general header to the supplied response object.
 	 * 
@@ -46,15 +58,9 @@ public class HttpResponseFactory {
 		// Lets add Connection header
 		response.put(Protocol.CONNECTION, connection);
 
-		// Lets add current date
-		Date date = Calendar.getInstance().getTime();
-		response.put(Protocol.DATE, date.toString());
-		
-		// Lets add server info
-		response.put(Protocol.Server, Protocol.getServerInfo());
-
-		// Lets add extra header with provider info
-		response.put(Protocol.PROVIDER, Protocol.AUTHOR);
+		// Date, server info and provider info are the same for every response
+		// and are written from prepared bytes, see PreparedHeaders
+		response.addGeneralHeader();
 	}
 	
 	/**
@@ -66,25 +72,148 @@ public class HttpResponseFactory {
 	 * @return A {@link HttpResponse} object represent 200 status.
 	 */
 	public static HttpResponse create200OK(File file, String connection) {
-		Server.logger.info(connection);
-		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.OK_CODE, 
-				Protocol.OK_TEXT, new HashMap<String, String>(), file);
+		return create200OK(file, file.lastModified(), file.length(), null, connection);
+	}
+	
+	/**
+	 * Creates a {@link HttpResponse} object for sending a file whose details
+	 * are already known, so the file system does not need to be asked again.
+	 * 
+	 * @param file The {@link File} to be sent.
+	 * @param lastModified The modification time of the file.
+	 * @param length The length of the file in bytes.
+	 * @param content The content of the file if it is in memory, otherwise null.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 200 status.
+	 */
+	public static HttpResponse create200OK(File file, long lastModified, long length, 
+			ByteBuffer content, String connection) {
+		return create200OK(file, lastModified, length, content, null, GMTConversion.toGMTString(lastModified), 
+				createETag(lastModified, length), connection);
+	}
+	
+	/**
+	 * Creates a {@link HttpResponse} object for sending a file whose details
+	 * and validators are already known, e.g. from a cache.
+	 * 
+	 * @param file The {@link File} to be sent.
+	 * @param lastModified The modification time of the file.
+	 * @param length The length of the file in bytes.
+	 * @param content The content of the file if it is in memory, otherwise null.
+	 * @param mappedFiles The cache to map a large file from if it is not in 
+	 * memory, or null to read it the usual way.
+	 * @param lastModifiedDate The modification time as an HTTP date.
+	 * @param etag The entity tag, see {@link #createETag(long, long)}.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 200 status.
+	 */
+	public static HttpResponse create200OK(File file, long lastModified, long length, ByteBuffer content, 
+			MappedFileCache mappedFiles, String lastModifiedDate, String etag, String connection) {
+		HttpResponse response = createFileResponse(Protocol.OK_CODE, Protocol.OK_TEXT, file, lastModified, 
+				length, content, mappedFiles, getContentType(file), lastModifiedDate, etag, connection);
+		
+		// Lets get content length in bytes
+		response.put(Protocol.CONTENT_LENGTH, length + "");
+		
+		// Clients may ask for parts of the file next time
+		response.put(Protocol.ACCEPT_RANGES, Protocol.BYTES);
+		return response;
+	}
+	
+	/**
+	 * Creates a {@link HttpResponse} object for sending a compressed variant
+	 * of a file, either compressed by the server or a precompressed copy.
+	 * Ranges are not offered, as they would have to refer to the compressed
+	 * bytes.
+	 * 
+	 * @param file The {@link File} holding the compressed bytes, only read if 
+	 * they are not in memory.
+	 * @param lastModified The modification time of that file.
+	 * @param length The number of compressed bytes.
+	 * @param variant The compressed bytes if they are in memory, otherwise null.
+	 * @param mappedFiles The cache to map a large file from if the bytes are 
+	 * not in memory, or null to read it the usual way.
+	 * @param contentType The MIME type of the original file, may be null.
+	 * @param lastModifiedDate The modification time of the original file as an HTTP date.
+	 * @param etag The entity tag of the variant.
+	 * @param encoding The content coding of the variant, e.g. <tt>gzip</tt>.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 200 status.
+	 */
+	public static HttpResponse create200OKEncoded(File file, long lastModified, long length, ByteBuffer variant, 
+			MappedFileCache mappedFiles, String contentType, String lastModifiedDate, String etag, 
+			String encoding, String connection) {
+		HttpResponse response = createFileResponse(Protocol.OK_CODE, Protocol.OK_TEXT, file, lastModified, 
+				length, variant, mappedFiles, contentType, lastModifiedDate, etag, connection);
+		response.put(Protocol.CONTENT_ENCODING, encoding);
+		response.put(Protocol.CONTENT_LENGTH, length + "");
+		return response;
+	}
+	
+	/**
+	 * Creates a {@link HttpResponse} object for sending ranges of a file,
+	 * see {@link ByteRange#parse(String, long)}. A single range is sent as
+	 * is, several go in a <tt>multipart/byteranges</tt> body.
+	 * 
+	 * @param file The {@link File} to be sent.
+	 * @param lastModified The modification time of the file.
+	 * @param length The length of the file in bytes.
+	 * @param content The content of the file if it is in memory, otherwise null.
+	 * @param mappedFiles The cache to map a large file from if it is not in 
+	 * memory, or null to read it the usual way.
+	 * @param lastModifiedDate The modification time as an HTTP date.
+	 * @param etag The entity tag, see {@link #createETag(long, long)}.
+	 * @param ranges The ranges to send, at least one and all within the file.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 206 status.
+	 */
+	public static HttpResponse create206PartialContent(File file, long lastModified, long length, 
+			ByteBuffer content, MappedFileCache mappedFiles, String lastModifiedDate, String etag, 
+			List<ByteRange> ranges, String connection) {
+		HttpResponse response = createFileResponse(Protocol.PARTIAL_CONTENT_CODE, Protocol.PARTIAL_CONTENT_TEXT, 
+				file, lastModified, length, content, mappedFiles, getContentType(file), lastModifiedDate, 
+				etag, connection);
+		
+		String boundary = response.setRanges(ranges, length, response.getHeader().get(Protocol.CONTENT_TYPE));
+		if(boundary == null) {
+			ByteRange range = ranges.get(0);
+			response.put(Protocol.CONTENT_RANGE, Protocol.BYTES + Protocol.SPACE + range.getFirst() 
+					+ "-" + range.getLast() + Protocol.SLASH + length);
+		}
+		else {
+			// Every part has its own type and range
+			response.put(Protocol.CONTENT_TYPE, Protocol.MULTIPART_BYTERANGES + "; boundary=" + boundary);
+		}
+		response.put(Protocol.CONTENT_LENGTH, response.getRangesLength() + "");
+		response.put(Protocol.ACCEPT_RANGES, Protocol.BYTES);
+		return response;
+	}
+	
+	/**
+	 * Sets up a response carrying a file, without any length yet.
+	 */
+	private static HttpResponse createFileResponse(int status, String phrase, File file, long lastModified, 
+			long length, ByteBuffer content, MappedFileCache mappedFiles, String mime, String lastModifiedDate, 
+			String etag, String connection) {
+		Server.logger.fine(connection);
+		HttpResponse response = new HttpResponse(Protocol.VERSION, status, 
+				phrase, new HashMap<String, String>(), file);
+		response.setContent(content);
+		
+		// Large files are served from a memory mapping if we have one
+		if(content == null && mappedFiles != null) {
+			MappedFileCache.MappedFile mapped = mappedFiles.acquire(file, lastModified, length);
+			if(mapped != null)
+				response.setMappedFile(mappedFiles, mapped);
+		}
 		
 		// Lets fill up header fields with more information
 		fillGeneralHeader(response, connection);
 		
-		// Lets add last modified date for the file
-		long timeSinceEpoch = file.lastModified();
-		Date modifiedTime = new Date(timeSinceEpoch);
-		response.put(Protocol.LAST_MODIFIED, modifiedTime.toString());
-		
-		// Lets get content length in bytes
-		long length = file.length();
-		response.put(Protocol.CONTENT_LENGTH, length + "");
+		// Lets add the validators clients send back in conditional requests
+		response.put(Protocol.LAST_MODIFIED, lastModifiedDate);
+		response.put(Protocol.ETAG, etag);
 		
-		// Lets get MIME type for the file
-		FileNameMap fileNameMap = URLConnection.getFileNameMap();
-		String mime = fileNameMap.getContentTypeFor(file.getName());
 		// The fileNameMap cannot find mime type for all of the documents, e.g. doc, odt, etc.
 		// So we will not add this field if we cannot figure out what a mime type is for the file.
 		// Let browser do this job by itself.
@@ -95,6 +224,17 @@ public class HttpResponseFactory {
 		return response;
 	}
 	
+	/**
+	 * Looks up the MIME type of a file from its extension.
+	 * 
+	 * @param file The file.
+	 * @return The MIME type or null if it is not known.
+	 */
+	public static String getContentType(File file) {
+		FileNameMap fileNameMap = URLConnection.getFileNameMap();
+		return fileNameMap.getContentTypeFor(file.getName());
+	}
+	
 	/**
 	 * Creates a {@link HttpResponse} object for sending bad request response.
 	 * 
@@ -102,13 +242,16 @@ public class HttpResponseFactory {
 	 * @return A {@link HttpResponse} object represent 400 status.
 	 */
 	public static HttpResponse create400BadRequest(String connection) {
-		Server.logger.info(connection);
+		Server.logger.fine(connection);
 		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.BAD_REQUEST_CODE, 
 				Protocol.BAD_REQUEST_TEXT, new HashMap<String, String>(), null);
 		
 		// Lets fill up header fields with more information
 		fillGeneralHeader(response, connection);
 		
+		// There is no body, say so to keep persistent connections in sync
+		response.put(Protocol.CONTENT_LENGTH, "0");
+		
 		return response;
 	}
 	
@@ -119,27 +262,166 @@ public class HttpResponseFactory {
 	 * @return A {@link HttpResponse} object represent 404 status.
 	 */
 	public static HttpResponse create404NotFound(String connection) {
-		Server.logger.info(connection);
+		Server.logger.fine(connection);
 		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.NOT_FOUND_CODE, 
 				Protocol.NOT_FOUND_TEXT, new HashMap<String, String>(), null);
 		
 		// Lets fill up the header fields with more information
 		fillGeneralHeader(response, connection);
 		
+		// There is no body, say so to keep persistent connections in sync
+		response.put(Protocol.CONTENT_LENGTH, "0");
+		
 		return response;	
 	}
 	
 	public static HttpResponse create408RequestTimedOut(String connection) {
-		Server.logger.info(connection);
+		Server.logger.fine(connection);
 		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.TIMEOUT_CODE, 
 				Protocol.TIMEOUT_TEXT, new HashMap<String, String>(), null);
 		
 		// Lets fill up header fields with more information
 		fillGeneralHeader(response, connection);
 		
+		// There is no body, say so to keep persistent connections in sync
+		response.put(Protocol.CONTENT_LENGTH, "0");
+		
+		return response;
+	}
+	
+	/**
+	 * Creates a {@link HttpResponse} object for sending content generated by
+	 * the server itself rather than read from a file.
+	 * 
+	 * @param content The body of the response.
+	 * @param contentType The MIME type of the body.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 200 status.
+	 */
+	public static HttpResponse create200OK(ByteBuffer content, String contentType, String connection) {
+		Server.logger.fine(connection);
+		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.OK_CODE, 
+				Protocol.OK_TEXT, new HashMap<String, String>(), null);
+		response.setContent(content);
+		
+		// Lets fill up header fields with more information
+		fillGeneralHeader(response, connection);
+		
+		response.put(Protocol.CONTENT_LENGTH, content.remaining() + "");
+		response.put(Protocol.CONTENT_TYPE, contentType);
+		
+		return response;
+	}
+	
+	/**
+	 * Creates a {@link HttpResponse} object for sending content that is
+	 * produced while it is sent, so its length is not known up front. It is
+	 * sent with chunked transfer coding, see {@link ChunkedBody}.
+	 * 
+	 * @param body The channel the body is read from, closed once it is sent.
+	 * @param contentType The MIME type of the body, may be null.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 200 status.
+	 */
+	public static HttpResponse create200OKChunked(ReadableByteChannel body, String contentType, String connection) {
+		Server.logger.fine(connection);
+		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.OK_CODE, 
+				Protocol.OK_TEXT, new HashMap<String, String>(), null);
+		response.setChunkedBody(new ChunkedBody(body));
+		
+		// Lets fill up header fields with more information
+		fillGeneralHeader(response, connection);
+		
+		// The end of the body is marked by the last chunk instead of a length
+		response.put(Protocol.TRANSFER_ENCODING, Protocol.CHUNKED);
+		if(contentType != null)
+			response.put(Protocol.CONTENT_TYPE, contentType);
+		
 		return response;
 	}
 	
+	/**
+	 * Creates a {@link HttpResponse} object for sending a file while it is
+	 * being compressed.
+	 * 
+	 * @param body The channel the compressed bytes are read from.
+	 * @param contentType The MIME type of the file, may be null.
+	 * @param lastModifiedDate The modification time of the file as an HTTP date.
+	 * @param etag The entity tag of the compressed variant.
+	 * @param encoding The content coding, e.g. <tt>gzip</tt>.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 200 status.
+	 */
+	public static HttpResponse create200OKEncodedChunked(ReadableByteChannel body, String contentType, 
+			String lastModifiedDate, String etag, String encoding, String connection) {
+		HttpResponse response = create200OKChunked(body, contentType, connection);
+		response.put(Protocol.LAST_MODIFIED, lastModifiedDate);
+		response.put(Protocol.ETAG, etag);
+		response.put(Protocol.CONTENT_ENCODING, encoding);
+		return response;
+	}
+	
+	/**
+	 * Creates a {@link HttpResponse} object for sending request line too long response.
+	 * 
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 414 status.
+	 */
+	public static HttpResponse create414UriTooLong(String connection) {
+		Server.logger.fine(connection);
+		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.URI_TOO_LONG_CODE, 
+				Protocol.URI_TOO_LONG_TEXT, new HashMap<String, String>(), null);
+		
+		// Lets fill up header fields with more information
+		fillGeneralHeader(response, connection);
+		
+		// There is no body, say so to keep persistent connections in sync
+		response.put(Protocol.CONTENT_LENGTH, "0");
+		
+		return response;
+	}
+	
+	/**
+	 * Creates a {@link HttpResponse} object for sending header block too large response.
+	 * 
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 431 status.
+	 */
+	public static HttpResponse create431RequestHeaderFieldsTooLarge(String connection) {
+		Server.logger.fine(connection);
+		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.HEADER_FIELDS_TOO_LARGE_CODE, 
+				Protocol.HEADER_FIELDS_TOO_LARGE_TEXT, new HashMap<String, String>(), null);
+		
+		// Lets fill up header fields with more information
+		fillGeneralHeader(response, connection);
+		
+		// There is no body, say so to keep persistent connections in sync
+		response.put(Protocol.CONTENT_LENGTH, "0");
+		
+		return response;
+	}
+	
+	/**
+	 * Creates the {@link HttpResponse} for a request that could not be read,
+	 * based on the status of the supplied exception. Statuses without a 
+	 * response of their own are answered as a bad request.
+	 * 
+	 * @param exception Why the request could not be read.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent the error status.
+	 */
+	public static HttpResponse createError(ProtocolException exception, String connection) {
+		switch(exception.getStatus()) {
+		case Protocol.URI_TOO_LONG_CODE:
+			return create414UriTooLong(connection);
+		case Protocol.HEADER_FIELDS_TOO_LARGE_CODE:
+			return create431RequestHeaderFieldsTooLarge(connection);
+		default:
+			// TODO: Handle version not supported code as well
+			return create400BadRequest(connection);
+		}
+	}
+	
 	/**
 	 * Creates a {@link HttpResponse} object for sending version not supported response.
 	 * 
@@ -147,13 +429,16 @@ public class HttpResponseFactory {
 	 * @return A {@link HttpResponse} object represent 505 status.
 	 */
 	public static HttpResponse create501NotImplemented(String connection) {
-		Server.logger.info(connection);
+		Server.logger.fine(connection);
 		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.NOT_IMPLEMENTED_CODE, 
 				Protocol.NOT_IMPLEMENTED_TEXT, new HashMap<String, String>(), null);
 		
 		// Lets fill up the header fields with more information
 		fillGeneralHeader(response, connection);
 		
+		// There is no body, say so to keep persistent connections in sync
+		response.put(Protocol.CONTENT_LENGTH, "0");
+		
 		return response;
 	}
 	
@@ -164,11 +449,98 @@ public class HttpResponseFactory {
 	 * @return A {@link HttpResponse} object represent 304 status.
 	 */
 	public static HttpResponse create304NotModified(String connection) {
-		Server.logger.info(connection);
+		Server.logger.fine(connection);
 		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.NOT_MODIFIED_CODE, 
 				Protocol.NOT_MODIFIED_TEXT, new HashMap<String, String>(), null);
 		fillGeneralHeader(response, connection);
 		
 		return response;
 	}
+	
+	/**
+	 * Creates a {@link HttpResponse} object telling the client its copy of a
+	 * file is still current. It carries the validators a 200 for the file
+	 * would have, so the client can update what it stored.
+	 * 
+	 * @param lastModifiedDate The modification time of the file as an HTTP date.
+	 * @param etag The entity tag of the file.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 304 status.
+	 */
+	public static HttpResponse create304NotModified(String lastModifiedDate, String etag, String connection) {
+		HttpResponse response = create304NotModified(connection);
+		response.put(Protocol.LAST_MODIFIED, lastModifiedDate);
+		response.put(Protocol.ETAG, etag);
+		return response;
+	}
+	
+	/**
+	 * Creates the strong entity tag of a file from its modification time and
+	 * length, which change whenever its content does. No content is read.
+	 * 
+	 * @param lastModified The modification time of the file.
+	 * @param length The length of the file in bytes.
+	 * @return The entity tag, quoted.
+	 */
+	public static String createETag(long lastModified, long length) {
+		return "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+	}
+
+	/**
+	 * Creates a {@link HttpResponse} object telling the client none of the
+	 * ranges it asked for is within the file.
+	 * 
+	 * @param length The length of the file in bytes.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 416 status.
+	 */
+	public static HttpResponse create416RangeNotSatisfiable(long length, String connection) {
+		Server.logger.fine(connection);
+		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.RANGE_NOT_SATISFIABLE_CODE, 
+				Protocol.RANGE_NOT_SATISFIABLE_TEXT, new HashMap<String, String>(), null);
+		fillGeneralHeader(response, connection);
+		
+		response.put(Protocol.CONTENT_RANGE, Protocol.BYTES + " */" + length);
+		response.put(Protocol.CONTENT_LENGTH, "0");
+		return response;
+	}
+
+	/**
+	 * Creates a {@link HttpResponse} object for sending service unavailable response.
+	 * 
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 503 status.
+	 */
+	public static HttpResponse create503ServiceUnavailable(String connection) {
+		Server.logger.fine(connection);
+		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.SERVICE_UNAVAILABLE_CODE, 
+				Protocol.SERVICE_UNAVAILABLE_TEXT, new HashMap<String, String>(), null);
+		
+		// Lets fill up the header fields with more information
+		fillGeneralHeader(response, connection);
+		
+		// There is no body, say so to keep persistent connections in sync
+		response.put(Protocol.CONTENT_LENGTH, "0");
+		
+		return response;
+	}
+
+	/**
+	 * Creates a {@link HttpResponse} object for switching the connection to
+	 * another protocol. The response to the request that asked for the
+	 * switch is sent with the new protocol.
+	 * 
+	 * @param protocol The protocol switched to, e.g. <tt>h2c</tt>.
+	 * @return A {@link HttpResponse} object represent 101 status.
+	 */
+	public static HttpResponse create101SwitchingProtocols(String protocol) {
+		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.SWITCHING_PROTOCOLS_CODE, 
+				Protocol.SWITCHING_PROTOCOLS_TEXT, new HashMap<String, String>(), null);
+		
+		// The connection stays open, only what is spoken on it changes
+		response.put(Protocol.CONNECTION, Protocol.UPGRADE);
+		response.put(Protocol.UPGRADE, protocol);
+		
+		return response;
+	}
 }
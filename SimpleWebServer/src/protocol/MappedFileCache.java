@@ -0,0 +1,287 @@
+/*
+ * MappedFileCache.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package protocol;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps large files memory mapped so their bodies are served straight from
+ * the page cache, without read calls. Only files of at least the threshold
+ * size are mapped, and the number of mappings and of mapped bytes are both
+ * bounded; the least recently used mapping goes first.
+ *
+ * A mapping is handed out with {@link #acquire(File, long, long)} and must be
+ * given back with {@link #release(MappedFile)}. Mappings that are evicted or
+ * whose file changed are unmapped as soon as nobody uses them anymore.
+ * Files are mapped and unmapped outside the lock, so requests for other
+ * files do not wait for that I/O.
+ *
+ * @see server.Server#getMappedFileCache()
+ */
+public class MappedFileCache {
+	private long threshold;
+	private int maxFiles;
+	private long maxBytes;
+
+	private LinkedHashMap<String, MappedFile> files;
+	private long mappedBytes;
+	private boolean closed;
+
+	/**
+	 * @param threshold The size of the smallest file to map.
+	 * @param maxFiles The most files that may be mapped at once.
+	 * @param maxBytes The most bytes that may be mapped at once.
+	 */
+	public MappedFileCache(long threshold, int maxFiles, long maxBytes) {
+		this.threshold = threshold;
+		this.maxFiles = maxFiles;
+		this.maxBytes = maxBytes;
+		// Access ordered, so iteration starts at the least recently used file
+		this.files = new LinkedHashMap<String, MappedFile>(16, 0.75f, true);
+		this.mappedBytes = 0;
+		this.closed = false;
+	}
+
+	/**
+	 * Gets the mapping of the supplied file, mapping it if needed.
+	 *
+	 * @param file The file to be sent.
+	 * @param lastModified The modification time the file is expected to have.
+	 * @param length The length the file is expected to have.
+	 * @return The mapping, or null if the file should be read the usual way.
+	 */
+	public MappedFile acquire(File file, long lastModified, long length) {
+		if(length < this.threshold || length > Integer.MAX_VALUE
+				|| length > this.maxBytes || this.maxFiles < 1)
+			return null;
+
+		String path = file.getPath();
+		List<MappedByteBuffer> unused = new ArrayList<MappedByteBuffer>();
+		try {
+			synchronized(this) {
+				if(this.closed)
+					return null;
+				MappedFile mapped = this.files.get(path);
+				if(mapped != null && mapped.lastModified == lastModified && mapped.length == length) {
+					mapped.references++;
+					return mapped;
+				}
+			}
+
+			MappedFile created = map(file, lastModified, length);
+			if(created == null)
+				return null;
+			synchronized(this) {
+				MappedFile mapped = this.files.get(path);
+				if(this.closed || (mapped != null && mapped.lastModified == lastModified && mapped.length == length)) {
+					// Another request mapped it meanwhile, or the server stopped
+					unused.add(created.buffer);
+					if(this.closed)
+						return null;
+					mapped.references++;
+					return mapped;
+				}
+				if(mapped != null) {
+					// The file changed since it was mapped
+					this.files.remove(path);
+					retire(mapped, unused);
+				}
+				this.files.put(path, created);
+				this.mappedBytes += length;
+				evict(created, unused);
+				created.references++;
+				return created;
+			}
+		}
+		finally {
+			unmap(unused);
+		}
+	}
+
+	/**
+	 * Gives back a mapping obtained from {@link #acquire(File, long, long)}.
+	 *
+	 * @param mapped The mapping that is no longer used.
+	 */
+	public void release(MappedFile mapped) {
+		synchronized(this) {
+			mapped.references--;
+			if(!mapped.retired || mapped.references > 0)
+				return;
+		}
+		unmap(mapped.buffer);
+	}
+
+	/**
+	 * Drops every mapping, once the server stops. A mapping still used by a
+	 * response is unmapped when it is given back, and nothing is mapped
+	 * anymore.
+	 */
+	public void close() {
+		List<MappedByteBuffer> unused = new ArrayList<MappedByteBuffer>();
+		synchronized(this) {
+			this.closed = true;
+			for(MappedFile mapped : this.files.values())
+				retire(mapped, unused);
+			this.files.clear();
+		}
+		unmap(unused);
+	}
+
+	/**
+	 * @return the number of files currently mapped
+	 */
+	public synchronized int getMappedFiles() {
+		return this.files.size();
+	}
+
+	/**
+	 * @return the number of bytes currently mapped
+	 */
+	public synchronized long getMappedBytes() {
+		return this.mappedBytes;
+	}
+
+	private MappedFile map(File file, long lastModified, long length) {
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				if(channel.size() != length)
+					return null;
+				// The mapping stays valid after the channel is closed
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+				return new MappedFile(buffer, lastModified, length);
+			}
+			finally {
+				raf.close();
+			}
+		}
+		catch(IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Drops least recently used mappings, other than the supplied one, until
+	 * the cache is within its limits. Called holding the lock.
+	 */
+	private void evict(MappedFile keep, List<MappedByteBuffer> unused) {
+		Iterator<Map.Entry<String, MappedFile>> iterator = this.files.entrySet().iterator();
+		while((this.files.size() > this.maxFiles || this.mappedBytes > this.maxBytes) && iterator.hasNext()) {
+			MappedFile mapped = iterator.next().getValue();
+			if(mapped == keep)
+				continue;
+			iterator.remove();
+			retire(mapped, unused);
+		}
+	}
+
+	/**
+	 * Takes a mapping out of the limits. If nobody uses it, it is added to
+	 * the buffers to unmap once the lock is released, otherwise the last
+	 * {@link #release(MappedFile)} unmaps it. Called holding the lock.
+	 */
+	private void retire(MappedFile mapped, List<MappedByteBuffer> unused) {
+		this.mappedBytes -= mapped.length;
+		mapped.retired = true;
+		if(mapped.references == 0)
+			unused.add(mapped.buffer);
+	}
+
+	private static void unmap(List<MappedByteBuffer> buffers) {
+		for(MappedByteBuffer buffer : buffers)
+			unmap(buffer);
+	}
+
+	/**
+	 * Releases the mapping right away instead of waiting for the garbage
+	 * collector. There is no public API for this, so it goes through
+	 * <tt>sun.misc.Unsafe.invokeCleaner</tt> on Java 9 and later and through
+	 * the buffer's cleaner before that. If neither works the mapping is left
+	 * to the garbage collector.
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return;
+		}
+		catch(Exception e) {
+			// Not Java 9 or later, try the older way
+		}
+		try {
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if(cleaner != null)
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+		}
+		catch(Exception e) {
+			// Leave it to the garbage collector
+		}
+	}
+
+	/**
+	 * A mapped file that is handed out to responses.
+	 */
+	public static class MappedFile {
+		private MappedByteBuffer buffer;
+		private long lastModified;
+		private long length;
+		private int references;
+		private boolean retired;
+
+		private MappedFile(MappedByteBuffer buffer, long lastModified, long length) {
+			this.buffer = buffer;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.references = 0;
+			this.retired = false;
+		}
+
+		/**
+		 * Gets a new view of the mapped content, which must not be used
+		 * after the mapping has been released.
+		 *
+		 * @return the content
+		 */
+		public ByteBuffer getContent() {
+			return this.buffer.duplicate();
+		}
+	}
+}
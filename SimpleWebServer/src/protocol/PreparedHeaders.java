@@ -0,0 +1,132 @@
+/*
+ * PreparedHeaders.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package protocol;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import server.GMTConversion;
+
+/**
+ * Header bytes that are the same for many responses, serialized ahead of
+ * time: the status line of every status code we send and the general header
+ * fields (<tt>Date</tt>, <tt>Server</tt> and <tt>Provider</tt>). The date only
+ * changes once a second, so it is formatted at most once a second no matter
+ * how many responses go out.
+ */
+class PreparedHeaders {
+	private static final Map<Integer, String> phrases = new HashMap<Integer, String>();
+	private static final Map<Integer, byte[]> statusLines = new HashMap<Integer, byte[]>();
+	private static final byte[] constantFields;
+	private static volatile GeneralHeader generalHeader;
+
+	static {
+		addStatusLine(Protocol.SWITCHING_PROTOCOLS_CODE, Protocol.SWITCHING_PROTOCOLS_TEXT);
+		addStatusLine(Protocol.OK_CODE, Protocol.OK_TEXT);
+		addStatusLine(Protocol.PARTIAL_CONTENT_CODE, Protocol.PARTIAL_CONTENT_TEXT);
+		addStatusLine(Protocol.MOVED_PERMANENTLY_CODE, Protocol.MOVED_PERMANENTLY_TEXT);
+		addStatusLine(Protocol.NOT_MODIFIED_CODE, Protocol.NOT_MODIFIED_TEXT);
+		addStatusLine(Protocol.BAD_REQUEST_CODE, Protocol.BAD_REQUEST_TEXT);
+		addStatusLine(Protocol.NOT_FOUND_CODE, Protocol.NOT_FOUND_TEXT);
+		addStatusLine(Protocol.TIMEOUT_CODE, Protocol.TIMEOUT_TEXT);
+		addStatusLine(Protocol.URI_TOO_LONG_CODE, Protocol.URI_TOO_LONG_TEXT);
+		addStatusLine(Protocol.RANGE_NOT_SATISFIABLE_CODE, Protocol.RANGE_NOT_SATISFIABLE_TEXT);
+		addStatusLine(Protocol.HEADER_FIELDS_TOO_LARGE_CODE, Protocol.HEADER_FIELDS_TOO_LARGE_TEXT);
+		addStatusLine(Protocol.NOT_IMPLEMENTED_CODE, Protocol.NOT_IMPLEMENTED_TEXT);
+		addStatusLine(Protocol.SERVICE_UNAVAILABLE_CODE, Protocol.SERVICE_UNAVAILABLE_TEXT);
+		addStatusLine(Protocol.NOT_SUPPORTED_CODE, Protocol.NOT_SUPPORTED_TEXT);
+
+		constantFields = (field(Protocol.Server, Protocol.getServerInfo())
+				+ field(Protocol.PROVIDER, Protocol.AUTHOR)).getBytes();
+	}
+
+	private PreparedHeaders() {
+	}
+
+	/**
+	 * Appends the status line for the supplied status.
+	 */
+	static void appendStatusLine(HeaderBuffer buffer, String version, int status, String phrase) {
+		byte[] line = statusLines.get(status);
+		if(line != null && Protocol.VERSION.equals(version) && phrase.equals(phrases.get(status))) {
+			buffer.append(line);
+			return;
+		}
+		buffer.append(version).append(Protocol.SPACE).append(Integer.toString(status))
+				.append(Protocol.SPACE).append(phrase).append(Protocol.CRLF);
+	}
+
+	/**
+	 * Appends the <tt>Date</tt>, <tt>Server</tt> and <tt>Provider</tt> fields.
+	 */
+	static void appendGeneralHeader(HeaderBuffer buffer) {
+		buffer.append(getGeneralHeader().bytes);
+	}
+
+	/**
+	 * @return the current value of the <tt>Date</tt> field
+	 */
+	static String getDate() {
+		return getGeneralHeader().date;
+	}
+
+	private static GeneralHeader getGeneralHeader() {
+		long now = System.currentTimeMillis();
+		long second = now / 1000;
+		GeneralHeader current = generalHeader;
+		if(current == null || current.second != second) {
+			// Racing threads may both format the date, either result is right
+			current = new GeneralHeader(second, GMTConversion.toGMTString(new Date(second * 1000)));
+			generalHeader = current;
+		}
+		return current;
+	}
+
+	private static void addStatusLine(int status, String phrase) {
+		statusLines.put(status, (Protocol.VERSION + Protocol.SPACE + status
+				+ Protocol.SPACE + phrase + Protocol.CRLF).getBytes());
+		phrases.put(status, phrase);
+	}
+
+	private static String field(String key, String value) {
+		return key + Protocol.SEPERATOR + Protocol.SPACE + value + Protocol.CRLF;
+	}
+
+	/**
+	 * The general header fields as of one second.
+	 */
+	private static class GeneralHeader {
+		private long second;
+		private String date;
+		private byte[] bytes;
+
+		private GeneralHeader(long second, String date) {
+			this.second = second;
+			this.date = date;
+			byte[] dateField = field(Protocol.DATE, date).getBytes();
+			this.bytes = new byte[dateField.length + constantFields.length];
+			System.arraycopy(dateField, 0, this.bytes, 0, dateField.length);
+			System.arraycopy(constantFields, 0, this.bytes, dateField.length, constantFields.length);
+		}
+	}
+}
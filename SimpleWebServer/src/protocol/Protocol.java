@@ -38,12 +38,19 @@ public class Protocol {
 
     // Some useful protocol elements
     public static final String VERSION = "HTTP/1.1";
+    public static final String VERSION_2 = "HTTP/2.0";
     public static final String GET = "GET";
     
     // Some useful http codes and text
+    public static final int SWITCHING_PROTOCOLS_CODE = 101;
+    public static final String SWITCHING_PROTOCOLS_TEXT = "Switching Protocols";
+    
     public static final int OK_CODE = 200;
     public static final String OK_TEXT = "OK";
     
+    public static final int PARTIAL_CONTENT_CODE = 206;
+    public static final String PARTIAL_CONTENT_TEXT = "Partial Content";
+    
     public static final int MOVED_PERMANENTLY_CODE = 301;
     public static final String MOVED_PERMANENTLY_TEXT = "Moved Permanently";
     
@@ -59,9 +66,21 @@ public class Protocol {
     public static final int TIMEOUT_CODE = 408;
     public static final String TIMEOUT_TEXT = "Request Timed Out";
     
+    public static final int URI_TOO_LONG_CODE = 414;
+    public static final String URI_TOO_LONG_TEXT = "URI Too Long";
+    
+    public static final int RANGE_NOT_SATISFIABLE_CODE = 416;
+    public static final String RANGE_NOT_SATISFIABLE_TEXT = "Range Not Satisfiable";
+    
+    public static final int HEADER_FIELDS_TOO_LARGE_CODE = 431;
+    public static final String HEADER_FIELDS_TOO_LARGE_TEXT = "Request Header Fields Too Large";
+    
     public static final int NOT_IMPLEMENTED_CODE = 501;
     public static final String NOT_IMPLEMENTED_TEXT = "Request Not Implemented";
     
+    public static final int SERVICE_UNAVAILABLE_CODE = 503;
+    public static final String SERVICE_UNAVAILABLE_TEXT = "Service Unavailable";
+    
     public static final int NOT_SUPPORTED_CODE = 505;
     public static final String NOT_SUPPORTED_TEXT = "HTTP Version Not Supported";
 
@@ -69,13 +88,24 @@ public class Protocol {
     public static final String HOST = "Host";
     public static final String CONNECTION = "Connection";
     public static final String USER_AGENT = "User-Agent";
+    public static final String UPGRADE = "Upgrade";
 
     // Some useful header elements in response
     public static final String DATE = "Date";
     public static final String Server = "Server";
     public static final String LAST_MODIFIED = "Last-Modified";
+    public static final String ETAG = "ETag";
+    public static final String ACCEPT_RANGES = "Accept-Ranges";
+    public static final String CONTENT_RANGE = "Content-Range";
+    public static final String BYTES = "bytes";
+    public static final String MULTIPART_BYTERANGES = "multipart/byteranges";
     public static final String CONTENT_LENGTH = "Content-Length";
     public static final String CONTENT_TYPE = "Content-Type";
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+    public static final String TRANSFER_ENCODING = "Transfer-Encoding";
+    public static final String CHUNKED = "chunked";
+    public static final String VARY = "Vary";
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
     
     /**
      * A chunk size to be used when reading a file and sending it to a socket. 
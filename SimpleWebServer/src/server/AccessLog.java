@@ -0,0 +1,357 @@
+/*
+ * AccessLog.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import protocol.Protocol;
+
+/**
+ * A binary log with one record per response. Request threads only copy the
+ * fields of a record into an in-memory batch; a writer thread appends full
+ * batches, or whatever has gathered after a second, to the file with a
+ * {@link FileChannel}. When the file would grow past its size limit it is
+ * rotated to <tt>&lt;file&gt;.1</tt>, <tt>&lt;file&gt;.2</tt> and so on.
+ *
+ * The file starts with {@link #MAGIC} and a version number, followed by
+ * records with this big-endian layout:
+ *
+ * <pre>
+ * short  record length in bytes, this field included
+ * long   time the response was written, in ms since the epoch
+ * byte   client address length, 4 or 16
+ * byte[16] client address, zero padded
+ * byte   method, an index into {@link #METHODS}, 0 if there was no request
+ * short  status code
+ * long   bytes sent, header included
+ * long   service time in microseconds
+ * short  URI length, followed by the URI in ISO-8859-1
+ * </pre>
+ *
+ * Run {@link #main(String[])} on a log file to convert it to text.
+ */
+public class AccessLog {
+	public static final byte[] MAGIC = { 'S', 'W', 'S', 'A', 'C', 'C', 'E', 'S' };
+	public static final int VERSION = 1;
+
+	/**
+	 * The methods a record can name. Index 0 stands for a response without
+	 * a request, e.g. to a request that could not be parsed.
+	 */
+	public static final String[] METHODS = {
+		"-", Protocol.GET, "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "TRACE", "CONNECT", "PATCH"
+	};
+	private static final int OTHER_METHOD = 0xff;
+
+	/** The longest URI that is recorded, longer ones are cut */
+	public static final int MAX_URI_LENGTH = 2048;
+
+	private static final int FIXED_LENGTH = 2 + 8 + 1 + 16 + 1 + 2 + 8 + 8 + 2;
+	private static final int BATCH_SIZE = 64 * 1024;
+	private static final int BATCHES = 4;
+	private static final long FLUSH_INTERVAL = 1000; // in ms
+
+	private File file;
+	private long maxSize;
+	private int maxFiles;
+
+	private FileChannel channel;
+	private long size;
+
+	private ByteBuffer current;
+	private BlockingQueue<ByteBuffer> full;
+	private BlockingQueue<ByteBuffer> free;
+	private AtomicLong dropped;
+	private Thread writer;
+	private volatile boolean closed;
+
+	/**
+	 * Opens the log, appending to an existing file, and starts the writer
+	 * thread.
+	 *
+	 * @param file The log file.
+	 * @param maxSize The size at which the file is rotated.
+	 * @param maxFiles The number of rotated files kept besides the current one.
+	 * @throws IOException If the file cannot be opened.
+	 */
+	public AccessLog(File file, long maxSize, int maxFiles) throws IOException {
+		this.file = file;
+		this.maxSize = maxSize;
+		this.maxFiles = maxFiles;
+		open();
+
+		// One more slot for the batch close() hands over
+		this.full = new ArrayBlockingQueue<ByteBuffer>(BATCHES + 1);
+		this.free = new ArrayBlockingQueue<ByteBuffer>(BATCHES);
+		for(int i = 0; i < BATCHES; i++)
+			this.free.add(ByteBuffer.allocateDirect(BATCH_SIZE));
+		this.dropped = new AtomicLong();
+
+		this.writer = new Thread(new Runnable() {
+			public void run() {
+				writeBatches();
+			}
+		}, "sws-access-log");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Records one response. This only copies the fields into the current
+	 * batch; if every batch is waiting to be written the record is dropped.
+	 *
+	 * @param address The raw IP address of the client.
+	 * @param method The request method, or null if there was no request.
+	 * @param uri The request URI, or null if there was no request.
+	 * @param status The status code of the response.
+	 * @param bytesSent The number of bytes written for the response.
+	 * @param serviceTime The time taken to serve the request, in microseconds.
+	 */
+	public void log(byte[] address, String method, String uri, int status, long bytesSent, long serviceTime) {
+		int uriLength = uri == null ? 0 : Math.min(uri.length(), MAX_URI_LENGTH);
+		int length = FIXED_LENGTH + uriLength;
+		long now = System.currentTimeMillis();
+
+		synchronized(this) {
+			if(this.closed)
+				return;
+			ByteBuffer batch = this.current;
+			if(batch == null || batch.remaining() < length) {
+				if(batch != null)
+					this.full.add(batch);
+				batch = this.free.poll();
+				this.current = batch;
+				if(batch == null) {
+					this.dropped.incrementAndGet();
+					return;
+				}
+			}
+
+			batch.putShort((short) length);
+			batch.putLong(now);
+			batch.put((byte) address.length);
+			batch.put(address, 0, Math.min(address.length, 16));
+			for(int i = address.length; i < 16; i++)
+				batch.put((byte) 0);
+			batch.put((byte) methodCode(method));
+			batch.putShort((short) status);
+			batch.putLong(bytesSent);
+			batch.putLong(serviceTime);
+			batch.putShort((short) uriLength);
+			for(int i = 0; i < uriLength; i++)
+				batch.put((byte) uri.charAt(i));
+		}
+	}
+
+	/**
+	 * @return the number of records lost because the writer fell behind
+	 */
+	public long getDropped() {
+		return this.dropped.get();
+	}
+
+	/**
+	 * Writes out the records gathered so far and closes the file.
+	 */
+	public void close() {
+		synchronized(this) {
+			if(this.closed)
+				return;
+			this.closed = true;
+			// Wakes up the writer, with an empty batch if there is nothing left
+			this.full.add(this.current != null ? this.current : ByteBuffer.allocate(0));
+			this.current = null;
+		}
+		try {
+			this.writer.join(TimeUnit.SECONDS.toMillis(5));
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static int methodCode(String method) {
+		if(method == null)
+			return 0;
+		for(int i = 1; i < METHODS.length; i++) {
+			if(METHODS[i].equals(method))
+				return i;
+		}
+		return OTHER_METHOD;
+	}
+
+	private void writeBatches() {
+		try {
+			while(true) {
+				ByteBuffer batch = null;
+				try {
+					batch = this.full.poll(FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+				}
+				catch(InterruptedException e) {
+					break;
+				}
+				if(batch == null)
+					batch = takeCurrent();
+				if(batch != null)
+					write(batch);
+				if(this.closed && this.full.isEmpty())
+					break;
+			}
+		}
+		catch(IOException e) {
+			Server.logger.severe("Access log failed: " + e.getMessage());
+		}
+		finally {
+			try {
+				this.channel.close();
+			}
+			catch(IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * Takes the batch that is being filled if it has any records in it.
+	 */
+	private synchronized ByteBuffer takeCurrent() {
+		ByteBuffer batch = this.current;
+		if(batch == null || batch.position() == 0)
+			return null;
+		this.current = null;
+		return batch;
+	}
+
+	private void write(ByteBuffer batch) throws IOException {
+		batch.flip();
+		if(this.size + batch.remaining() > this.maxSize && this.size > MAGIC.length + 4)
+			rotate();
+		while(batch.hasRemaining())
+			this.size += this.channel.write(batch);
+		batch.clear();
+		if(batch.capacity() > 0)
+			this.free.add(batch);
+	}
+
+	private void open() throws IOException {
+		this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE, 
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		this.size = this.channel.size();
+		if(this.size == 0) {
+			ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 4);
+			header.put(MAGIC).putInt(VERSION).flip();
+			while(header.hasRemaining())
+				this.size += this.channel.write(header);
+		}
+	}
+
+	/**
+	 * Shifts <tt>log.1</tt> to <tt>log.2</tt> and so on, dropping the oldest,
+	 * moves the current file to <tt>log.1</tt> and starts a new one.
+	 */
+	private void rotate() throws IOException {
+		this.channel.close();
+		String name = this.file.getPath();
+		new File(name + "." + this.maxFiles).delete();
+		for(int i = this.maxFiles - 1; i >= 1; i--)
+			new File(name + "." + i).renameTo(new File(name + "." + (i + 1)));
+		if(this.maxFiles > 0)
+			this.file.renameTo(new File(name + ".1"));
+		else
+			this.file.delete();
+		open();
+	}
+
+	/**
+	 * Prints an access log as text, one line per record.
+	 *
+	 * @param args The log files to print.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length == 0) {
+			System.err.println("Usage: java server.AccessLog <access log>...");
+			System.exit(1);
+		}
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+		for(String name : args) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(name)));
+			try {
+				byte[] magic = new byte[MAGIC.length];
+				in.readFully(magic);
+				int version = in.readInt();
+				if(!Arrays.equals(magic, MAGIC) || version != VERSION)
+					throw new IOException(name + " is not an access log of version " + VERSION);
+
+				while(true) {
+					int length;
+					try {
+						length = in.readUnsignedShort();
+					}
+					catch(EOFException e) {
+						break;
+					}
+					long time = in.readLong();
+					int addressLength = in.readUnsignedByte();
+					byte[] address = new byte[16];
+					in.readFully(address);
+					int method = in.readUnsignedByte();
+					int status = in.readUnsignedShort();
+					long bytesSent = in.readLong();
+					long serviceTime = in.readLong();
+					byte[] uri = new byte[in.readUnsignedShort()];
+					in.readFully(uri);
+					// Skip fields added by later versions
+					in.skipBytes(length - FIXED_LENGTH - uri.length);
+
+					System.out.println(format.format(new Date(time)) + Protocol.SPACE
+							+ InetAddress.getByAddress(Arrays.copyOf(address, addressLength)).getHostAddress()
+							+ Protocol.SPACE + (method < METHODS.length ? METHODS[method] : "?")
+							+ Protocol.SPACE + (uri.length == 0 ? "-" : new String(uri, "ISO-8859-1"))
+							+ Protocol.SPACE + status + Protocol.SPACE + bytesSent
+							+ Protocol.SPACE + serviceTime + "us");
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+	}
+}
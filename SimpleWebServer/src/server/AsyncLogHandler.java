@@ -0,0 +1,175 @@
+/*
+ * AsyncLogHandler.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * A {@link Handler} that takes log records off the calling thread. Records
+ * are put in a {@link RingBuffer} and a single writer thread hands them to
+ * the wrapped handler in batches, flushing it once per batch. The thread
+ * that logs never touches the file.
+ *
+ * When the buffer is full the record is dropped or the caller waits for a
+ * free slot, depending on the {@link OverflowPolicy}.
+ */
+public class AsyncLogHandler extends Handler {
+	/**
+	 * What to do with a record that arrives while the buffer is full.
+	 */
+	public enum OverflowPolicy {
+		/** Discard the record and count it, the caller never waits. */
+		DROP,
+		/** Wait until the writer has made room, no record is lost. */
+		BLOCK
+	}
+
+	private static final int BATCH_SIZE = 256;
+	private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(50);
+	private static final long FULL_WAIT = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private Handler target;
+	private OverflowPolicy policy;
+	private RingBuffer<LogRecord> buffer;
+	private AtomicLong dropped;
+	private Thread writer;
+	private volatile boolean idle;
+	private volatile boolean closed;
+
+	/**
+	 * Creates the handler and starts its writer thread.
+	 *
+	 * @param target The handler that writes the records out.
+	 * @param capacity The number of records that may wait for the writer.
+	 * @param policy What to do when that many records are waiting.
+	 */
+	public AsyncLogHandler(Handler target, int capacity, OverflowPolicy policy) {
+		this.target = target;
+		this.policy = policy;
+		this.buffer = new RingBuffer<LogRecord>(capacity);
+		this.dropped = new AtomicLong();
+		this.writer = new Thread(new Runnable() {
+			public void run() {
+				drain();
+			}
+		}, "sws-log-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	@Override
+	public void publish(LogRecord record) {
+		if(this.closed || !isLoggable(record))
+			return;
+		// The writer thread formats the record later, make sure the
+		// caller is recorded before that happens
+		record.getSourceClassName();
+
+		while(!this.buffer.offer(record)) {
+			if(this.policy == OverflowPolicy.DROP || this.closed) {
+				this.dropped.incrementAndGet();
+				return;
+			}
+			wakeWriter();
+			LockSupport.parkNanos(this, FULL_WAIT);
+		}
+		if(this.idle)
+			wakeWriter();
+	}
+
+	/**
+	 * Waits a short while for the records already queued to be written.
+	 */
+	@Override
+	public void flush() {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+		while(!this.buffer.isEmpty() && System.nanoTime() < deadline) {
+			wakeWriter();
+			LockSupport.parkNanos(this, FULL_WAIT);
+		}
+		this.target.flush();
+	}
+
+	/**
+	 * Writes out what is queued, stops the writer thread and closes the
+	 * wrapped handler.
+	 */
+	@Override
+	public void close() {
+		if(this.closed)
+			return;
+		this.closed = true;
+		wakeWriter();
+		try {
+			this.writer.join(TimeUnit.SECONDS.toMillis(1));
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.target.close();
+	}
+
+	/**
+	 * @return the number of records discarded because the buffer was full
+	 */
+	public long getDropped() {
+		return this.dropped.get();
+	}
+
+	private void wakeWriter() {
+		LockSupport.unpark(this.writer);
+	}
+
+	private void drain() {
+		while(true) {
+			int written = 0;
+			LogRecord record;
+			while(written < BATCH_SIZE && (record = this.buffer.poll()) != null) {
+				try {
+					this.target.publish(record);
+				}
+				catch(Exception e) {
+					reportError(null, e, ErrorManager.WRITE_FAILURE);
+				}
+				written++;
+			}
+			if(written > 0) {
+				this.target.flush();
+				continue;
+			}
+			if(this.closed && this.buffer.isEmpty())
+				return;
+
+			// Nothing to do, sleep until a producer wakes us up. The check
+			// after raising the flag catches a record that raced with it.
+			this.idle = true;
+			if(this.buffer.isEmpty() && !this.closed)
+				LockSupport.parkNanos(this, IDLE_WAIT);
+			this.idle = false;
+		}
+	}
+}
@@ -0,0 +1,468 @@
+/*
+ * Compressor.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses file content for clients that accept it, with the
+ * <tt>gzip</tt> or <tt>deflate</tt> content coding. Files may also come
+ * precompressed, see {@link ContentCache.Entry#getSidecar(Encoding)}, which
+ * adds <tt>br</tt> to the codings that can be sent. Only files whose MIME
+ * type is on {@link ServerConfiguration#getCompressionTypes()} and that
+ * are at least {@link ServerConfiguration#getCompressionMinSize()} long
+ * are compressed; images, archives and the like would not get any smaller.
+ *
+ * Content is streamed through the deflater in chunks, so a file does not
+ * have to be read into memory first. Files longer than
+ * {@link ServerConfiguration#getCompressionMaxFileSize()} are not
+ * compressed in full, they are sent while they are being compressed, see
+ * {@link #open(File, long, Encoding)}. A {@link Deflater} holds native
+ * memory that is costly to set up, so idle ones are kept in a pool per
+ * coding and reset for the next use.
+ */
+public class Compressor {
+	/**
+	 * The content codings the server can send, the first is preferred if a
+	 * client accepts several equally.
+	 */
+	public enum Encoding {
+		BROTLI("br", ".br", false),
+		GZIP("gzip", ".gz", true),
+		DEFLATE("deflate", null, true);
+
+		private String token;
+		private String suffix;
+		private boolean producible;
+
+		private Encoding(String token, String suffix, boolean producible) {
+			this.token = token;
+			this.suffix = suffix;
+			this.producible = producible;
+		}
+
+		/**
+		 * @return the name of the coding in <tt>Content-Encoding</tt>
+		 */
+		public String getToken() {
+			return token;
+		}
+
+		/**
+		 * @return the extension of a file precompressed with this coding,
+		 * or null if such files are not looked for
+		 */
+		public String getSidecarSuffix() {
+			return suffix;
+		}
+
+		/**
+		 * @return true if the server can compress with this coding itself
+		 */
+		public boolean isProducible() {
+			return producible;
+		}
+	}
+
+	private static final int CHUNK = 16 * 1024;
+	private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+	private int level;
+	private long minSize;
+	private long maxFileSize;
+	private String[] types;
+	private List<ArrayBlockingQueue<Deflater>> pools;
+
+	private AtomicLong compressions;
+	private AtomicLong bytesIn;
+	private AtomicLong bytesOut;
+
+	/**
+	 * @param configuration The server configuration holding the compression settings.
+	 */
+	public Compressor(ServerConfiguration configuration) {
+		this.level = configuration.getCompressionLevel();
+		this.minSize = configuration.getCompressionMinSize();
+		this.maxFileSize = configuration.getCompressionMaxFileSize();
+		this.types = parseTypes(configuration.getCompressionTypes());
+		int idle = 2 * Runtime.getRuntime().availableProcessors();
+		this.pools = new ArrayList<ArrayBlockingQueue<Deflater>>(Encoding.values().length);
+		for(int i = 0; i < Encoding.values().length; i++)
+			this.pools.add(new ArrayBlockingQueue<Deflater>(idle));
+		this.compressions = new AtomicLong();
+		this.bytesIn = new AtomicLong();
+		this.bytesOut = new AtomicLong();
+	}
+
+	private static String[] parseTypes(String list) {
+		List<String> types = new ArrayList<String>();
+		for(String type : list.split(",")) {
+			type = type.trim().toLowerCase(Locale.ROOT);
+			if(!type.isEmpty())
+				types.add(type);
+		}
+		return types.toArray(new String[types.size()]);
+	}
+
+	/**
+	 * Checks if a file is worth compressing.
+	 *
+	 * @param contentType The MIME type of the file, may be null.
+	 * @param length The length of the file in bytes.
+	 * @return true if the file is compressed for clients that accept it
+	 */
+	public boolean isCompressible(String contentType, long length) {
+		if(contentType == null || length < this.minSize)
+			return false;
+		String type = contentType.toLowerCase(Locale.ROOT);
+		int parameters = type.indexOf(';');
+		if(parameters >= 0)
+			type = type.substring(0, parameters).trim();
+		for(String allowed : this.types) {
+			if(allowed.endsWith("/*") ? type.startsWith(allowed.substring(0, allowed.length() - 1)) 
+					: type.equals(allowed))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Picks the coding to send from an <tt>Accept-Encoding</tt> field. The
+	 * one with the highest quality wins; a quality of 0 rules a coding out
+	 * and <tt>*</tt> stands for the codings not named.
+	 *
+	 * @param acceptEncoding The field value, may be null.
+	 * @param compressible Whether the content may be compressed on the fly,
+	 * see {@link #isCompressible(String, long)}.
+	 * @param precompressed The codings the content is available in already.
+	 * @return the coding or null if the content is to be sent as is
+	 */
+	public Encoding negotiate(String acceptEncoding, boolean compressible, Set<Encoding> precompressed) {
+		if(acceptEncoding == null || (!compressible && precompressed.isEmpty()))
+			return null;
+		Encoding[] encodings = Encoding.values();
+		// Quality of each coding in thousandths, -1 if not named
+		int[] qualities = new int[encodings.length];
+		int wildcard = -1;
+		for(int i = 0; i < qualities.length; i++)
+			qualities[i] = -1;
+
+		for(String element : acceptEncoding.split(",")) {
+			int semicolon = element.indexOf(';');
+			String coding = (semicolon < 0 ? element : element.substring(0, semicolon)).trim();
+			int quality = semicolon < 0 ? 1000 : parseQuality(element.substring(semicolon + 1));
+			if(coding.equals("*")) {
+				wildcard = quality;
+				continue;
+			}
+			for(int i = 0; i < encodings.length; i++) {
+				if(coding.equalsIgnoreCase(encodings[i].getToken()))
+					qualities[i] = quality;
+			}
+		}
+
+		Encoding best = null;
+		int bestQuality = 0;
+		for(int i = 0; i < encodings.length; i++) {
+			if(!(compressible && encodings[i].isProducible()) && !precompressed.contains(encodings[i]))
+				continue;
+			int quality = qualities[i] < 0 ? wildcard : qualities[i];
+			if(quality > bestQuality) {
+				best = encodings[i];
+				bestQuality = quality;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Parses the <tt>q=</tt> parameter of an element, in thousandths. A
+	 * malformed quality counts as 0, so the coding is not used.
+	 */
+	private static int parseQuality(String parameters) {
+		for(String parameter : parameters.split(";")) {
+			parameter = parameter.trim();
+			if(!parameter.startsWith("q=") && !parameter.startsWith("Q="))
+				continue;
+			try {
+				double quality = Double.parseDouble(parameter.substring(2).trim());
+				if(quality < 0 || quality > 1)
+					return 0;
+				return (int) Math.round(quality * 1000);
+			}
+			catch(NumberFormatException e) {
+				return 0;
+			}
+		}
+		return 1000;
+	}
+
+	/**
+	 * Checks if a compressible file is too large to be compressed in full,
+	 * so it has to be streamed compressed instead.
+	 *
+	 * @param length The length of the file in bytes.
+	 * @return true if the file is longer than
+	 * {@link ServerConfiguration#getCompressionMaxFileSize()}
+	 */
+	public boolean isStreamed(long length) {
+		return length > this.maxFileSize;
+	}
+
+	/**
+	 * Compresses content held in memory.
+	 *
+	 * @param content The content, which is not consumed.
+	 * @param encoding The coding to use.
+	 * @return the compressed content
+	 */
+	public byte[] compress(ByteBuffer content, Encoding encoding) {
+		byte[] bytes;
+		int offset = 0;
+		int length = content.remaining();
+		if(content.hasArray()) {
+			bytes = content.array();
+			offset = content.arrayOffset() + content.position();
+		}
+		else {
+			bytes = new byte[length];
+			content.duplicate().get(bytes);
+		}
+		try {
+			return drain(new DeflatingChannel(new ByteArrayInputStream(bytes, offset, length), length, encoding));
+		}
+		catch(IOException e) {
+			// Memory does not fail to be read
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Compresses a file while reading it.
+	 *
+	 * @param file The file.
+	 * @param length The length the file is expected to have.
+	 * @param encoding The coding to use.
+	 * @return the compressed content
+	 * @throws IOException if the file cannot be read or its length changed
+	 */
+	public byte[] compress(File file, long length, Encoding encoding) throws IOException {
+		return drain(new DeflatingChannel(new FileInputStream(file), length, encoding));
+	}
+
+	/**
+	 * Opens a channel reading a file compressed, for a body that is sent
+	 * while it is being compressed. At most a chunk of the file and of its
+	 * compressed bytes is held in memory at a time.
+	 *
+	 * @param file The file.
+	 * @param length The length the file is expected to have, a read fails
+	 * if the file turns out to have a different one.
+	 * @param encoding The coding to use.
+	 * @return the channel, which must be closed to give back its deflater
+	 * @throws IOException if the file cannot be opened
+	 */
+	public ReadableByteChannel open(File file, long length, Encoding encoding) throws IOException {
+		return new DeflatingChannel(new FileInputStream(file), length, encoding);
+	}
+
+	private static byte[] drain(DeflatingChannel channel) throws IOException {
+		try {
+			// Text usually shrinks to well under half
+			int size = (int) Math.min(Integer.MAX_VALUE - 8, channel.length / 3 + 64);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+			ByteBuffer buffer = ByteBuffer.allocate(CHUNK);
+			while(channel.read(buffer) != -1) {
+				out.write(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+			return out.toByteArray();
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * @return the number of times content was compressed
+	 */
+	public long getCompressions() {
+		return this.compressions.get();
+	}
+
+	/**
+	 * @return the number of bytes that went into the deflaters
+	 */
+	public long getBytesIn() {
+		return this.bytesIn.get();
+	}
+
+	/**
+	 * @return the number of compressed bytes that came out of them
+	 */
+	public long getBytesOut() {
+		return this.bytesOut.get();
+	}
+
+	private Deflater acquire(Encoding encoding) {
+		if(!encoding.isProducible())
+			throw new IllegalArgumentException("Cannot compress with " + encoding.getToken());
+		Deflater deflater = this.pools.get(encoding.ordinal()).poll();
+		if(deflater != null)
+			return deflater;
+		// gzip has a header and trailer of its own around raw deflate data
+		return new Deflater(this.level, encoding == Encoding.GZIP);
+	}
+
+	private void release(Encoding encoding, Deflater deflater) {
+		deflater.reset();
+		if(!this.pools.get(encoding.ordinal()).offer(deflater))
+			deflater.end();
+	}
+
+	/**
+	 * Compressed bytes read from an uncompressed stream. The stream is
+	 * fed to the deflater a chunk at a time as the compressed bytes are
+	 * read, gzip framing included.
+	 */
+	private class DeflatingChannel implements ReadableByteChannel {
+		private InputStream in;
+		private long length;
+		private Encoding encoding;
+		private Deflater deflater;
+		private CRC32 crc;
+		private byte[] input;
+		private byte[] output;
+		private ByteBuffer pending;
+		private long read;
+		private long written;
+		private boolean finishing;
+		private boolean done;
+
+		private DeflatingChannel(InputStream in, long length, Encoding encoding) {
+			this.in = in;
+			this.length = length;
+			this.encoding = encoding;
+			try {
+				this.deflater = acquire(encoding);
+			}
+			catch(RuntimeException e) {
+				close();
+				throw e;
+			}
+			this.input = new byte[CHUNK];
+			this.output = new byte[CHUNK];
+			this.pending = ByteBuffer.allocate(0);
+			if(encoding == Encoding.GZIP) {
+				this.crc = new CRC32();
+				this.pending = ByteBuffer.wrap(GZIP_HEADER);
+			}
+		}
+
+		public int read(ByteBuffer dst) throws IOException {
+			if(this.deflater == null)
+				throw new ClosedChannelException();
+			while(!this.pending.hasRemaining()) {
+				if(this.done)
+					return -1;
+				fill();
+			}
+			int count = Math.min(dst.remaining(), this.pending.remaining());
+			ByteBuffer slice = this.pending.duplicate();
+			slice.limit(slice.position() + count);
+			dst.put(slice);
+			this.pending.position(this.pending.position() + count);
+			this.written += count;
+			return count;
+		}
+
+		/**
+		 * Deflates until there are bytes to hand out or the end is reached.
+		 */
+		private void fill() throws IOException {
+			if(this.deflater.finished()) {
+				this.done = true;
+				this.pending = ByteBuffer.allocate(0);
+				if(this.crc != null) {
+					// Little endian, the length modulo 2^32 as the format has it
+					ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+					trailer.putInt((int) this.crc.getValue()).putInt((int) this.read).flip();
+					this.pending = trailer;
+				}
+				return;
+			}
+			if(this.deflater.needsInput() && !this.finishing) {
+				int count = this.in.read(this.input);
+				if(count == -1) {
+					if(this.read != this.length)
+						throw new IOException("Content changed while being compressed");
+					this.deflater.finish();
+					this.finishing = true;
+				}
+				else {
+					if(this.crc != null)
+						this.crc.update(this.input, 0, count);
+					this.read += count;
+					this.deflater.setInput(this.input, 0, count);
+				}
+			}
+			this.pending = ByteBuffer.wrap(this.output, 0, this.deflater.deflate(this.output));
+		}
+
+		public boolean isOpen() {
+			return this.deflater != null;
+		}
+
+		public void close() {
+			try {
+				this.in.close();
+			}
+			catch(IOException e) {
+			}
+			if(this.deflater == null)
+				return;
+			release(this.encoding, this.deflater);
+			this.deflater = null;
+			if(this.done)
+				compressions.incrementAndGet();
+			bytesIn.addAndGet(this.read);
+			bytesOut.addAndGet(this.written);
+		}
+	}
+}
@@ -21,22 +21,23 @@
  
 package server;
 
-import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
 
+import http2.Http2;
+import http2.Http2Connection;
 import protocol.HttpRequest;
+import protocol.HttpRequestDecoder;
 import protocol.HttpResponse;
 import protocol.HttpResponseFactory;
 import protocol.Protocol;
 import protocol.ProtocolException;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Map;
-import java.util.PriorityQueue;
-
 /**
  * This class is responsible for handling a incoming request
  * by creating a {@link HttpRequest} object and sending the appropriate
@@ -45,16 +46,54 @@ import java.util.PriorityQueue;
  * 
  * @author Chandan R. Rupakheti (rupakhet@rose-hulman.edu)
  */
-public class ConnectionHandler implements Runnable {
+public class ConnectionHandler implements Runnable, TimerWheel.Task {
 	private Server server;
 	private Socket socket;
-	private PriorityQueue<HttpRequest> queue;
-	private final int MAX_EXEC_TIME = 10000; //in ms
+	private RequestPipeline pipeline;
+	private volatile boolean closed;
+	private volatile boolean aborted;
+	private boolean idle;
+	private volatile TimerWheel.Timeout readDeadline;
+	private volatile boolean headerStarted;
+	private volatile boolean readExpired;
+	private MinimumRate readRate;
+	private MinimumRate writeRate;
+	private volatile MinimumRate rate;
+	private volatile TimerWheel.Timeout rateCheck;
+	private volatile Http2Connection http2;
+	private HttpRequest handedOver;
+	private HttpRequestDecoder handedOverDecoder;
 	
 	public ConnectionHandler(Server server, Socket socket) {
 		this.server = server;
 		this.socket = socket;
-		this.queue = new PriorityQueue<HttpRequest>();
+		this.pipeline = new RequestPipeline(server, this, server.getConfiguration().getPipelineDepth());
+		this.closed = false;
+		this.aborted = false;
+		this.idle = false;
+		this.headerStarted = false;
+		this.readExpired = false;
+		ServerConfiguration configuration = server.getConfiguration();
+		if(configuration.getMinReadRate() > 0)
+			this.readRate = new MinimumRate(configuration.getMinReadRate());
+		if(configuration.getMinWriteRate() > 0)
+			this.writeRate = new MinimumRate(configuration.getMinWriteRate());
+	}
+	
+	/**
+	 * Creates a handler for a connection a {@link Reactor} read the start of
+	 * HTTP/2 on. The reactor counted the connection as opened, it is closed
+	 * and counted by the handler.
+	 * 
+	 * @param server The server.
+	 * @param socket The socket, in blocking mode.
+	 * @param request The request that started HTTP/2.
+	 * @param decoder The decoder holding what the client sent past it.
+	 */
+	ConnectionHandler(Server server, Socket socket, HttpRequest request, HttpRequestDecoder decoder) {
+		this(server, socket);
+		this.handedOver = request;
+		this.handedOverDecoder = decoder;
 	}
 	
 	/**
@@ -70,16 +109,23 @@ public class ConnectionHandler implements Runnable {
 	 * incoming request and creates a {@link HttpRequest} object,
 	 * then it creates an appropriate {@link HttpResponse} object
 	 * and sends the response back to the client (web browser).
+	 * This repeats for as long as the connection is persistent.
 	 */
 	public void run() {
+		if(this.handedOver != null) {
+			serveHandedOver();
+			return;
+		}
 		// Get the start time
-		long start = System.currentTimeMillis();
+		long start = System.nanoTime();
+		this.server.getMetrics().connectionOpened();
+		this.server.register(this);
 		
 		InputStream inStream = null;
 		OutputStream outStream = null;
 		
 		try {
-			inStream = this.socket.getInputStream();
+			inStream = new DeadlineInputStream(this.socket.getInputStream());
 			outStream = this.socket.getOutputStream();
 		}
 		catch(Exception e) {
@@ -90,203 +136,436 @@ public class ConnectionHandler implements Runnable {
 			// Increment number of connections by 1
 			server.incrementConnections(1);
 			// Get the end time
-			long end = System.currentTimeMillis();
-			this.server.incrementServiceTime(end-start);
+			long end = System.nanoTime();
+			this.server.incrementServiceTime(TimeUnit.NANOSECONDS.toMillis(end-start));
+			closeSocket();
 			return;
 		}
 		
-		// At this point we have the input and output stream of the socket
-		// Now lets create a HttpRequest object
-		HttpRequest request = null;
-		HttpResponse response = null;
-		try {
-			request = HttpRequest.read(inStream);
-//			System.out.println(request);
-		}
-		catch(ProtocolException pe) {
-			// We have some sort of protocol exception. Get its status code and create response
-			// We know only two kind of exception is possible inside fromInputStream
-			// Protocol.BAD_REQUEST_CODE and Protocol.NOT_SUPPORTED_CODE
-			int status = pe.getStatus();
-			if(status == Protocol.BAD_REQUEST_CODE) {
-				response = HttpResponseFactory.create400BadRequest(Protocol.CLOSE);
-			}
-			// TODO: Handle version not supported code as well
-		}
-		catch(Exception e) {
-			e.printStackTrace();
-			// For any other error, we will create bad request response as well
-			response = HttpResponseFactory.create400BadRequest(Protocol.CLOSE);
-		}
+		ServerConfiguration configuration = server.getConfiguration();
+		HttpRequestDecoder decoder = new HttpRequestDecoder();
+		byte[] address = this.socket.getInetAddress().getAddress();
+		int served = 0;
+		boolean reading = true;
 		
-		if(response != null) {
-			// Means there was an error, now write the response object to the socket
+		while(true) {
+			// Wait for a request if we have nothing to write, then parse ahead
+			// whatever else the client has already pipelined
+			while(reading && !this.pipeline.isFull() 
+					&& (this.pipeline.isEmpty() || hasMoreInput(decoder, inStream))) {
+				// At this point we have the input and output stream of the socket
+				// Now lets create a HttpRequest object
+				HttpRequest request = null;
+				HttpResponse response = null;
+				// Nothing is lost if a draining server closes the connection
+				// while we wait for the start of the next request
+				boolean waiting = this.pipeline.isEmpty() && !decoder.hasPendingBytes();
+				if(waiting && !setIdle(true)) {
+					reading = false;
+					break;
+				}
+				// An idle client may wait for the keep-alive timeout, one that
+				// started a request has the header timeout to finish it
+				startReadDeadline(waiting);
+				try {
+					request = decoder.read(inStream);
+					if(request == null) {
+						// The client closed the connection between requests,
+						// or stayed idle for too long
+						reading = false;
+						break;
+					}
+//					System.out.println(request);
+				}
+				catch(ProtocolException pe) {
+					// We have some sort of protocol exception. Get its status code and create response
+					if(this.readExpired)
+						response = HttpResponseFactory.create408RequestTimedOut(Protocol.CLOSE);
+					else
+						response = HttpResponseFactory.createError(pe, Protocol.CLOSE);
+				}
+				catch(Exception e) {
+					if(this.closed) {
+						// Closed by the server while we were waiting
+						reading = false;
+						break;
+					}
+					e.printStackTrace();
+					// For any other error, we will create bad request response as well
+					response = HttpResponseFactory.create400BadRequest(Protocol.CLOSE);
+				}
+				finally {
+					this.readDeadline.cancel();
+					stopRate();
+				}
+				if(waiting && !setIdle(false)) {
+					// The request arrived just as the server closed the connection
+					reading = false;
+					break;
+				}
+				
+				// A client may switch to HTTP/2 before it has pipelined anything
+				if(request != null && this.pipeline.isEmpty() && (Http2.isPreface(request) 
+						|| (Http2.isUpgrade(request) && !decoder.hasPendingBytes()))) {
+					serveHttp2(request, decoder);
+					closeSocket();
+					return;
+				}
+				
+				// The first request is timed from when the connection was handed to
+				// us, later ones from when they arrived so idle time is not counted
+				if(served > 0)
+					start = System.nanoTime();
+				served++;
+				
+				if(response != null || request == null) {
+					// Means there was an error, the response goes out after the ones
+					// already queued and we cannot trust the rest of the stream
+					if(response == null)
+						response = HttpResponseFactory.create400BadRequest(Protocol.CLOSE);
+					this.pipeline.add(response, false, start);
+					reading = false;
+					break;
+				}
+				
+				// Keep the connection open if the client asked for it, unless it
+				// used up its share of requests or the server is going down
+				boolean keepAlive = request.isKeepAlive() 
+						&& served < configuration.getMaxKeepAliveRequests()
+						&& !server.isStopping();
+				String connection = keepAlive ? Protocol.OPEN : Protocol.CLOSE;
+				
+				// We reached here means no error so far, so lets process further
+				this.server.getMetrics().requestStarted();
+				this.pipeline.add(request, connection, keepAlive, start);
+				reading = keepAlive;
+			}
+			
+			// Write the oldest response, pipelined responses go out in request order
+			RequestPipeline.Entry entry = this.pipeline.poll();
+			if(entry == null)
+				break;
+			
+			HttpResponse response = null;
 			try {
-				response.write(outStream);
-//				System.out.println(response);
+				response = entry.getResponse();
 			}
-			catch(Exception e){
-				// We will ignore this exception
+			catch(CancellationException e) {
+				// The deadline passed, answered below
+			}
+			catch(Exception e) {
 				e.printStackTrace();
+				response = HttpResponseFactory.create400BadRequest(Protocol.CLOSE);
 			}
-
-			// Increment number of connections by 1
-			server.incrementConnections(1);
-			// Get the end time
-			long end = System.currentTimeMillis();
-			this.server.incrementServiceTime(end-start);
-			return;
-		}
-		
-		if(responseTimeTooLong(start, outStream, response)){
-			return;
-		}
-		
-		this.queue.add(request);
-		request = this.queue.poll();
-		
-		// We reached here means no error so far, so lets process further
-		try {
-			// Fill in the code to create a response for version mismatch.
-			// You may want to use constants such as Protocol.VERSION, Protocol.NOT_SUPPORTED_CODE, and more.
-			// You can check if the version matches as follows
-			if(!request.getVersion().equalsIgnoreCase(Protocol.VERSION)) {
-				// Here you checked that the "Protocol.VERSION" string is not equal to the  
-				// "request.version" string ignoring the case of the letters in both strings
-				// TODO: Fill in the rest of the code here
+			
+			boolean timedOut = !entry.startWriting();
+			if(timedOut) {
+				// The response was not ready in time, the pipeline releases it
+				response = HttpResponseFactory.create408RequestTimedOut(Protocol.CLOSE);
 			}
-			else if(request.getMethod().equalsIgnoreCase(Protocol.GET)) {
-				if(responseTimeTooLong(start, outStream, response)){
-					return;
-				}
-				Map<String, String> header = request.getHeader();
-				String date = header.get("if-modified-since");
-				
-				// Handling GET request here
-				// Get relative URI path from request
-				String uri = request.getUri();
-				// Get root directory path from server
-				String rootDirectory = server.getRootDirectory();
-				// Combine them together to form absolute file path
-				File file = new File(rootDirectory + uri);
-				if(responseTimeTooLong(start, outStream, response)){
-					return;
-				}
-				// Check if the file exists
-				if(file.exists()) {
-					if(responseTimeTooLong(start, outStream, response)){
-						return;
-					}
-					if(file.isDirectory()) {
-						// Look for default index.html file in a directory
-						if(responseTimeTooLong(start, outStream, response)){
-							return;
-						}
-						String location = rootDirectory + uri + System.getProperty("file.separator") + Protocol.DEFAULT_FILE;
-						file = new File(location);
-						if(file.exists()) {
-							// Lets create 200 OK response
-							if(responseTimeTooLong(start, outStream, response)){
-								return;
-							}
-							
-							if(date != null){
-								long datetime = file.lastModified();
-				                Date modified_date = new Date(datetime);
-				                SimpleDateFormat df = new SimpleDateFormat("eee, dd mmm yyyy hh:mm:ss zzz");
-				                Date request_date = df.parse(date);
-				                if (modified_date.getTime() > request_date.getTime())
-				                	response = HttpResponseFactory.create200OK(file, Protocol.CLOSE);
-				                else
-				                	response = HttpResponseFactory.create304NotModified(Protocol.CLOSE);
-							} else {
-								response = HttpResponseFactory.create200OK(file, Protocol.CLOSE);
-							}
-						}
-						else {
-							// File does not exist so lets create 404 file not found code
-							if(responseTimeTooLong(start, outStream, response)){
-								return;
-							}
-							response = HttpResponseFactory.create404NotFound(Protocol.CLOSE);
-						}
-					}
-					else { // Its a file
-						// Lets create 200 OK response
-						if(responseTimeTooLong(start, outStream, response)){
-							return;
+			
+			boolean written = true;
+			try{
+				// The write blocks until the last bytes are handed to the
+				// kernel, so it gets the time the minimum rate needs for them
+				startRate(this.writeRate);
+				final MinimumRate rate = this.writeRate;
+				if(rate != null && response.isChunked()) {
+					// The length is not known, so every chunk gets its time
+					response.setWriteListener(new HttpResponse.WriteListener() {
+						public void writing(long bytes) {
+							rate.expect(bytes);
 						}
-						response = HttpResponseFactory.create200OK(file, Protocol.CLOSE);
-					}
+					});
 				}
-				else {
-					// File does not exist so lets create 404 file not found code
-					if(responseTimeTooLong(start, outStream, response)){
-						return;
-					}
-					response = HttpResponseFactory.create404NotFound(Protocol.CLOSE);
+				else if(rate != null) {
+					rate.expect(response.getContentLength());
 				}
+				// Write response, the socket is closed once we leave the loop
+				// Sockets accepted from a channel get the zero-copy file path
+				response.write(outStream, this.socket.getChannel());
+//				System.out.println(response);
 			}
-			else {
-				response = HttpResponseFactory.create501NotImplemented(Protocol.CLOSE);
+			catch(Exception e){
+				// We will ignore this exception, unless we did not cut the connection
+				if(!this.aborted)
+					e.printStackTrace();
+				written = false;
+			} 
+			finally {
+				stopRate();
 			}
+			if(!timedOut && !entry.finishWriting())
+				written = false;
+			
+			// Count the response and add it to the access log
+			long end = System.nanoTime();
+			this.server.recordResponse(address, entry.getRequest(), response.getStatus(), 
+					response.getBytesSent(), end-entry.getStart());
+			
+			if(!written || timedOut || !entry.isKeepAlive())
+				break;
+		}
+		this.pipeline.clear();
+		closeSocket();
+	}
+
+	/**
+	 * Serves the rest of the connection with HTTP/2, after the client sent
+	 * the preface or asked to upgrade, or a {@link Reactor} handed over
+	 * such a connection.
+	 * 
+	 * @param request The request that started HTTP/2.
+	 * @param decoder The decoder holding what the client sent past it.
+	 */
+	private void serveHttp2(HttpRequest request, HttpRequestDecoder decoder) {
+		try {
+			Http2Connection http2 = new Http2Connection(this.server, this.socket, 
+					this.socket.getInputStream(), this.socket.getOutputStream(), 
+					decoder.takePendingBytes());
+			this.http2 = http2;
+			http2.serve(request);
+		}
+		catch(IOException e) {
+			// The client went away
+		}
+	}
+
+	/**
+	 * Serves a connection a {@link Reactor} read the start of HTTP/2 on.
+	 */
+	private void serveHandedOver() {
+		this.headerStarted = true;
+		this.server.register(this);
+		serveHttp2(this.handedOver, this.handedOverDecoder);
+		closeSocket();
+	}
+
+	/**
+	 * Checks if the client opened the connection with the HTTP/2 preface, so
+	 * an HTTP/1.1 answer would mean nothing to it.
+	 * 
+	 * @return true if the handler was handed over with the preface
+	 */
+	boolean isHttp2Preface() {
+		return this.handedOver != null && Http2.isPreface(this.handedOver);
+	}
+
+	/**
+	 * Checks if the next request can be read without waiting on the client.
+	 * Part of a request is not enough, the responses already produced would
+	 * wait for the rest of it; they are written first instead.
+	 */
+	private boolean hasMoreInput(HttpRequestDecoder decoder, InputStream inStream) {
+		try {
+			return decoder.hasRequest(inStream);
 		}
 		catch(Exception e) {
-			e.printStackTrace();
+			return false;
 		}
-		
-		if(responseTimeTooLong(start, outStream, response)){
+	}
+
+	/**
+	 * Arms the deadline for reading the next request.
+	 *
+	 * @param waiting Whether nothing of the request has arrived yet.
+	 */
+	private void startReadDeadline(boolean waiting) {
+		ServerConfiguration configuration = this.server.getConfiguration();
+		this.headerStarted = !waiting;
+		this.readDeadline = this.server.getTimers().schedule(this, waiting 
+				? configuration.getKeepAliveTimeout() : configuration.getHeaderTimeout());
+		if(!waiting)
+			startRate(this.readRate);
+	}
+
+	/**
+	 * Switches from the keep-alive to the header timeout once the first
+	 * bytes of a request arrive.
+	 */
+	private void headerStarted() {
+		if(this.headerStarted)
+			return;
+		this.headerStarted = true;
+		if(this.readDeadline.cancel())
+			this.readDeadline = this.server.getTimers().schedule(this, 
+					this.server.getConfiguration().getHeaderTimeout());
+		startRate(this.readRate);
+	}
+
+	/**
+	 * Starts timing a read or write against its minimum rate.
+	 *
+	 * @param rate The rate to keep up with, null if there is none.
+	 */
+	private void startRate(MinimumRate rate) {
+		if(rate == null)
+			return;
+		rate.start();
+		this.rate = rate;
+		this.rateCheck = this.server.getTimers().schedule(this, MinimumRate.GRACE);
+	}
+
+	private void stopRate() {
+		MinimumRate rate = this.rate;
+		if(rate == null)
+			return;
+		rate.stop();
+		this.rate = null;
+		this.rateCheck.cancel();
+	}
+
+	/**
+	 * Checks the transfer being timed on the timer thread, and checks it
+	 * again once the time it has left is up. A client that sends too slowly
+	 * is answered with 408, one that reads too slowly is cut off.
+	 */
+	private void checkRate() {
+		MinimumRate rate = this.rate;
+		if(rate == null || !rate.isRunning())
+			return;
+		long remaining = rate.remaining();
+		if(remaining > 0) {
+			this.rateCheck = this.server.getTimers().schedule(this, remaining);
 			return;
 		}
-		// TODO: So far response could be null for protocol version mismatch.
-		// So this is a temporary patch for that problem and should be removed
-		// after a response object is created for protocol version mismatch.
-		if(response == null) {
-			response = HttpResponseFactory.create400BadRequest(Protocol.CLOSE);
+		if(rate == this.readRate) {
+			this.server.getMetrics().slowRead();
+			endRead();
 		}
-		
-		try{
-			// Write response and we are all done so close the socket
-			response.write(outStream);
-//			System.out.println(response);
-			if(!socket.getKeepAlive())
-				socket.close();
+		else {
+			this.server.getMetrics().slowWrite();
+			close();
 		}
-		catch(Exception e){
-			// We will ignore this exception
-			e.printStackTrace();
-		} 
-		
-		// Increment number of connections by 1
-		server.incrementConnections(1);
-		// Get the end time
-		long end = System.currentTimeMillis();
-		this.server.incrementServiceTime(end-start);
 	}
 
 	/**
-	 * @param start
-	 * @param outStream
-	 * @param response
-	 * @return
+	 * Acts on a read deadline or rate check that came up, on the timer
+	 * thread.
 	 */
-	private boolean responseTimeTooLong(long start, OutputStream outStream,
-			HttpResponse response) {
-		if(System.currentTimeMillis() - start > MAX_EXEC_TIME){
-			response = HttpResponseFactory.create408RequestTimedOut(Protocol.CLOSE);
-			try {
-				response.write(outStream);
-				if(!socket.getKeepAlive())
-					socket.close();
+	public void expired(TimerWheel.Timeout timeout) {
+		if(timeout == this.rateCheck)
+			checkRate();
+		else if(timeout == this.readDeadline)
+			endRead();
+	}
+
+	/**
+	 * Ends a read that ran out of time. Shutting the input down wakes up the
+	 * blocked read without closing the socket, so a 408 can still be written
+	 * if the client was in the middle of a request.
+	 */
+	private void endRead() {
+		this.readExpired = true;
+		try {
+			this.socket.shutdownInput();
+		}
+		catch(IOException e) {
+		}
+	}
+
+	/**
+	 * Closes the connection if the handler is waiting for the next request,
+	 * used by a draining server.
+	 *
+	 * @return true if the connection was closed
+	 */
+	synchronized boolean closeIfIdle() {
+		// An HTTP/2 connection closes itself once its streams are done
+		Http2Connection http2 = this.http2;
+		if(http2 != null) {
+			http2.shutdown();
+			return false;
+		}
+		if(!this.idle || this.closed)
+			return false;
+		closeSocket();
+		return true;
+	}
+
+	/**
+	 * Cuts the connection no matter what it is doing. The client gets a
+	 * reset, whatever has not been sent yet is discarded.
+	 */
+	void close() {
+		this.aborted = true;
+		try {
+			this.socket.setSoLinger(true, 0);
+			// Closing alone does not wake up a thread blocked in a file
+			// transfer to the socket, shutting its output down does
+			this.socket.shutdownOutput();
+		}
+		catch(IOException e) {
+		}
+		closeSocket();
+	}
+
+	private synchronized boolean setIdle(boolean idle) {
+		if(this.closed)
+			return false;
+		this.idle = idle;
+		return true;
+	}
+
+	private synchronized void closeSocket() {
+		if(this.closed)
+			return;
+		this.closed = true;
+		this.server.unregister(this);
+		this.server.getMetrics().connectionClosed();
+		release();
+	}
+
+	/**
+	 * Closes the socket of a handler that never ran, such as one turned away
+	 * by the {@link WorkerPool}, and gives back its share of the connections
+	 * of its client address.
+	 */
+	void discard() {
+		// The reactor that handed the connection over counted it as open
+		if(this.handedOver != null)
+			this.server.getMetrics().connectionClosed();
+		release();
+	}
+
+	private void release() {
+		this.server.getConnectionLimiter().release(this.socket.getInetAddress());
+		try {
+			this.socket.close();
+		}
+		catch(Exception e) {
+		}
+	}
+
+	/**
+	 * Tells the handler when the first bytes of a request arrive and how
+	 * fast the rest follows.
+	 */
+	private class DeadlineInputStream extends FilterInputStream {
+		private DeadlineInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b >= 0) {
+				headerStarted();
+				if(readRate != null)
+					readRate.transferred(1);
 			}
-			catch(Exception e){
-				e.printStackTrace();
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int count = super.read(b, off, len);
+			if(count > 0) {
+				headerStarted();
+				if(readRate != null)
+					readRate.transferred(count);
 			}
-			server.incrementConnections(1);
-			long end = System.currentTimeMillis();
-			this.server.incrementServiceTime(end-start);
-			return true;
+			return count;
 		}
-		return false;
 	}
 }
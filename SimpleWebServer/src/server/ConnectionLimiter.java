@@ -0,0 +1,95 @@
+/*
+ * ConnectionLimiter.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package server;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the open connections of every client address, so that one client
+ * cannot take all the workers of a {@link Server}. Addresses without a
+ * connection are forgotten, the map only holds the clients connected now.
+ */
+class ConnectionLimiter {
+	private int max;
+	private ConcurrentHashMap<InetAddress, AtomicInteger> counts;
+
+	/**
+	 * @param max The most connections an address may have open, 0 for no limit.
+	 */
+	ConnectionLimiter(int max) {
+		this.max = max;
+		this.counts = new ConcurrentHashMap<InetAddress, AtomicInteger>();
+	}
+
+	/**
+	 * Takes a connection for the supplied address, unless it has its share.
+	 * A successful call must be matched by {@link #release(InetAddress)}.
+	 *
+	 * @param address The client address.
+	 * @return true if the connection may be served
+	 */
+	boolean acquire(InetAddress address) {
+		if(this.max == 0)
+			return true;
+		while(true) {
+			AtomicInteger count = this.counts.get(address);
+			if(count == null) {
+				count = this.counts.putIfAbsent(address, new AtomicInteger(1));
+				if(count == null)
+					return true;
+			}
+			int current = count.get();
+			if(current == 0) {
+				// Being removed by its last release, make way for a new count
+				this.counts.remove(address, count);
+				continue;
+			}
+			if(current >= this.max)
+				return false;
+			if(count.compareAndSet(current, current + 1))
+				return true;
+		}
+	}
+
+	/**
+	 * Gives back a connection taken with {@link #acquire(InetAddress)}.
+	 *
+	 * @param address The client address.
+	 */
+	void release(InetAddress address) {
+		if(this.max == 0)
+			return;
+		AtomicInteger count = this.counts.get(address);
+		if(count != null && count.decrementAndGet() == 0)
+			this.counts.remove(address, count);
+	}
+
+	/**
+	 * @return the number of addresses with an open connection
+	 */
+	int getAddresses() {
+		return this.counts.size();
+	}
+}
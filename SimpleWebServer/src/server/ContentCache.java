@@ -0,0 +1,540 @@
+/*
+ * ContentCache.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import protocol.HttpResponseFactory;
+
+/**
+ * Remembers what a request path resolved to, so hot files are served without
+ * going back to the file system. Every entry records the resolved file, its
+ * modification time and length and the validators derived from them; files up to
+ * {@link ServerConfiguration#getCacheMaxFileSize()} also keep their content.
+ *
+ * Entries are evicted least recently used first once the cached content
+ * exceeds {@link ServerConfiguration#getCacheBudget()} bytes or there are
+ * more than {@link #MAX_ENTRIES} entries. An entry is checked against the file
+ * at most once every {@link ServerConfiguration#getCacheValidationInterval()}
+ * milliseconds and dropped if the file changed or disappeared.
+ *
+ * Compressed variants of the content, see {@link Compressor}, are kept
+ * with the entry of their file within a budget of their own,
+ * {@link ServerConfiguration#getCacheVariantBudget()}. When it is exceeded
+ * the variants of the least recently used entries are dropped, the entries
+ * themselves stay.
+ *
+ * Precompressed copies of a file, e.g. <tt>app.js.gz</tt> next to
+ * <tt>app.js</tt>, are looked for when the file is cached and checked
+ * together with it, so they cost no file system calls per request.
+ */
+public class ContentCache {
+	public static final int MAX_ENTRIES = 10000;
+
+	private long budget;
+	private long variantBudget;
+	private long maxFileSize;
+	private long validationInterval;
+
+	private LinkedHashMap<String, Entry> entries;
+	private long size;
+	private long variantSize;
+
+	private AtomicLong hits;
+	private AtomicLong misses;
+	private AtomicLong evictions;
+
+	/**
+	 * @param configuration The server configuration holding the cache limits.
+	 */
+	public ContentCache(ServerConfiguration configuration) {
+		this.budget = configuration.getCacheBudget();
+		this.variantBudget = configuration.getCacheVariantBudget();
+		this.maxFileSize = configuration.getCacheMaxFileSize();
+		this.validationInterval = configuration.getCacheValidationInterval();
+		// Access ordered, so iteration starts at the least recently used entry
+		this.entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+		this.size = 0;
+		this.variantSize = 0;
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.evictions = new AtomicLong();
+	}
+
+	/**
+	 * Finds the entry for a request path, checking it against the file
+	 * system if it has not been checked recently.
+	 *
+	 * @param path The request path joined to the root directory.
+	 * @return The entry or null if the path is not cached or went stale.
+	 */
+	public Entry get(String path) {
+		Entry entry;
+		synchronized(this) {
+			entry = this.entries.get(path);
+		}
+		if(entry == null) {
+			this.misses.incrementAndGet();
+			return null;
+		}
+
+		long now = System.currentTimeMillis();
+		if(now - entry.checkedAt > this.validationInterval) {
+			File file = entry.file;
+			if(file.lastModified() != entry.lastModified || file.length() != entry.length 
+					|| !entry.isSidecarCurrent()) {
+				remove(path, entry);
+				this.misses.incrementAndGet();
+				return null;
+			}
+			entry.checkedAt = now;
+		}
+		this.hits.incrementAndGet();
+		return entry;
+	}
+
+	/**
+	 * Caches what a request path resolved to, reading the file into memory
+	 * if it is small enough.
+	 *
+	 * @param path The request path joined to the root directory.
+	 * @param file The existing, regular file the path resolved to.
+	 * @return The new entry.
+	 */
+	public Entry put(String path, File file) {
+		long checkedAt = System.currentTimeMillis();
+		long lastModified = file.lastModified();
+		long length = file.length();
+		byte[] content = null;
+		if(length <= this.maxFileSize && length <= this.budget) {
+			try {
+				content = Files.readAllBytes(file.toPath());
+			}
+			catch(IOException e) {
+				// Still worth remembering where the path leads
+			}
+			if(content != null && content.length != length) {
+				// The file changed while we read it, do not trust either
+				content = null;
+			}
+		}
+
+		// Only the modification times of precompressed copies are kept, if
+		// a copy is there at all they tell it apart from a missing one
+		Compressor.Encoding[] encodings = Compressor.Encoding.values();
+		long[] sidecarStamps = new long[encodings.length];
+		for(Compressor.Encoding encoding : encodings) {
+			File sidecar = getSidecarFile(file, encoding);
+			if(sidecar != null)
+				sidecarStamps[encoding.ordinal()] = sidecar.lastModified();
+		}
+
+		Entry entry = new Entry(file, lastModified, length, content, sidecarStamps, checkedAt);
+		synchronized(this) {
+			Entry previous = this.entries.put(path, entry);
+			if(previous != null) {
+				this.size -= previous.getCachedSize();
+				this.variantSize -= previous.getVariantSize();
+			}
+			this.size += entry.getCachedSize();
+			evict();
+		}
+		return entry;
+	}
+
+	/**
+	 * Reads a precompressed copy of a cached file into its entry, if it fits
+	 * within the limits of the cache.
+	 *
+	 * @param path The request path joined to the root directory.
+	 * @param entry The entry of the file.
+	 * @param encoding The coding of the copy, which must exist.
+	 * @return the compressed content or null if it is to be sent from the file
+	 */
+	public ByteBuffer loadSidecar(String path, Entry entry, Compressor.Encoding encoding) {
+		Sidecar sidecar = entry.getSidecar(encoding);
+		long length = sidecar.getLength();
+		if(length > this.maxFileSize || length > this.variantBudget)
+			return null;
+		byte[] content;
+		try {
+			content = Files.readAllBytes(sidecar.getFile().toPath());
+		}
+		catch(IOException e) {
+			return null;
+		}
+		if(content.length != length)
+			return null;
+		putVariant(path, entry, encoding, content);
+		return ByteBuffer.wrap(content);
+	}
+
+	/**
+	 * Keeps a compressed variant of a cached file, unless the entry has
+	 * been replaced or dropped since it was looked up.
+	 *
+	 * @param path The request path joined to the root directory.
+	 * @param entry The entry the variant was made from.
+	 * @param encoding The coding of the variant.
+	 * @param variant The compressed content, which must not be modified.
+	 */
+	public synchronized void putVariant(String path, Entry entry, Compressor.Encoding encoding, byte[] variant) {
+		if(variant.length > this.variantBudget || this.entries.get(path) != entry)
+			return;
+		byte[] previous = entry.variants.getAndSet(encoding.ordinal(), variant);
+		if(previous != null)
+			this.variantSize -= previous.length;
+		this.variantSize += variant.length;
+		evictVariants(entry);
+	}
+
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * @return the number of lookups that had to go to the file system
+	 */
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * @return the number of entries dropped to stay within the limits
+	 */
+	public long getEvictions() {
+		return this.evictions.get();
+	}
+
+	/**
+	 * @return the number of content bytes currently held
+	 */
+	public synchronized long getSize() {
+		return this.size;
+	}
+
+	/**
+	 * @return the number of compressed bytes currently held
+	 */
+	public synchronized long getVariantSize() {
+		return this.variantSize;
+	}
+
+	/**
+	 * @return the number of cached paths
+	 */
+	public synchronized int getEntryCount() {
+		return this.entries.size();
+	}
+
+	private synchronized void remove(String path, Entry entry) {
+		// Only remove it if nobody replaced it in the meantime
+		if(this.entries.get(path) == entry) {
+			this.entries.remove(path);
+			this.size -= entry.getCachedSize();
+			this.variantSize -= entry.getVariantSize();
+		}
+	}
+
+	/**
+	 * Drops least recently used entries until the cache is within its
+	 * limits. Must be called with the lock held.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+		while((this.size > this.budget || this.entries.size() > MAX_ENTRIES) && iterator.hasNext()) {
+			Entry entry = iterator.next().getValue();
+			iterator.remove();
+			this.size -= entry.getCachedSize();
+			this.variantSize -= entry.getVariantSize();
+			this.evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Drops the variants of least recently used entries until they are
+	 * within their budget, sparing the entry that just got one. Must be
+	 * called with the lock held.
+	 */
+	private void evictVariants(Entry spared) {
+		Iterator<Entry> iterator = this.entries.values().iterator();
+		while(this.variantSize > this.variantBudget && iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if(entry != spared)
+				this.variantSize -= entry.clearVariants();
+		}
+	}
+
+	/**
+	 * @return the file precompressed with the supplied coding next to a file,
+	 * or null if the coding has no such files
+	 */
+	private static File getSidecarFile(File file, Compressor.Encoding encoding) {
+		String suffix = encoding.getSidecarSuffix();
+		if(suffix == null)
+			return null;
+		return new File(file.getPath() + suffix);
+	}
+
+	/**
+	 * What a request path resolved to the last time it was looked at.
+	 */
+	public static class Entry {
+		private File file;
+		private long lastModified;
+		private long length;
+		private byte[] content;
+		private String lastModifiedDate;
+		private String etag;
+		private String contentType;
+		private AtomicReferenceArray<byte[]> variants;
+		private long[] sidecarStamps;
+		private Sidecar[] sidecars;
+		private Set<Compressor.Encoding> sidecarEncodings;
+		private volatile long checkedAt;
+
+		private Entry(File file, long lastModified, long length, byte[] content, long[] sidecarStamps, 
+				long checkedAt) {
+			this.file = file;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.content = content;
+			this.lastModifiedDate = GMTConversion.toGMTString(lastModified);
+			this.etag = HttpResponseFactory.createETag(lastModified, length);
+			this.contentType = HttpResponseFactory.getContentType(file);
+			this.variants = new AtomicReferenceArray<byte[]>(Compressor.Encoding.values().length);
+			this.sidecarStamps = sidecarStamps;
+			this.sidecars = new Sidecar[sidecarStamps.length];
+			EnumSet<Compressor.Encoding> encodings = EnumSet.noneOf(Compressor.Encoding.class);
+			for(Compressor.Encoding encoding : Compressor.Encoding.values()) {
+				long stamp = sidecarStamps[encoding.ordinal()];
+				// A copy older than the file was made from an earlier version
+				if(stamp == 0 || stamp < lastModified)
+					continue;
+				File sidecar = getSidecarFile(file, encoding);
+				this.sidecars[encoding.ordinal()] = new Sidecar(sidecar, stamp, sidecar.length());
+				encodings.add(encoding);
+			}
+			this.sidecarEncodings = Collections.unmodifiableSet(encodings);
+			this.checkedAt = checkedAt;
+		}
+
+		/**
+		 * @return the file the path resolved to
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * @return the modification time of the file when it was cached
+		 */
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * @return the length of the file when it was cached
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * @return the modification time as an HTTP date, for the
+		 * <tt>Last-Modified</tt> field
+		 */
+		public String getLastModifiedDate() {
+			return lastModifiedDate;
+		}
+
+		/**
+		 * @return the strong entity tag of the file, for the <tt>ETag</tt> field
+		 */
+		public String getETag() {
+			return etag;
+		}
+
+		/**
+		 * Gets the entity tag of a variant of the file. Each coding is a
+		 * different representation, so it must have a tag of its own.
+		 *
+		 * @param encoding The coding of the variant, null for the file as is.
+		 * @return the strong entity tag of the variant
+		 */
+		public String getETag(Compressor.Encoding encoding) {
+			if(encoding == null)
+				return etag;
+			String tag = etag;
+			// A precompressed copy may change without the file changing
+			Sidecar sidecar = sidecars[encoding.ordinal()];
+			if(sidecar != null)
+				tag = HttpResponseFactory.createETag(sidecar.getLastModified(), sidecar.getLength());
+			return tag.substring(0, tag.length() - 1) + "-" + encoding.getToken() + "\"";
+		}
+
+		/**
+		 * Gets the copy of the file precompressed with a coding. Copies
+		 * are named after the file plus
+		 * {@link Compressor.Encoding#getSidecarSuffix()}, e.g.
+		 * <tt>app.js.br</tt>, and are only used if they are not older than
+		 * the file.
+		 *
+		 * @param encoding The coding.
+		 * @return the copy or null if there is none
+		 */
+		public Sidecar getSidecar(Compressor.Encoding encoding) {
+			return sidecars[encoding.ordinal()];
+		}
+
+		/**
+		 * @return the codings the file has precompressed copies in
+		 */
+		public Set<Compressor.Encoding> getSidecarEncodings() {
+			return sidecarEncodings;
+		}
+
+		/**
+		 * @return the MIME type of the file or null if it is not known
+		 */
+		public String getContentType() {
+			return contentType;
+		}
+
+		/**
+		 * Gets a cached compressed variant of the file, with the same
+		 * sharing rules as {@link #getContent()}.
+		 *
+		 * @param encoding The coding of the variant.
+		 * @return the compressed content or null if it is not cached
+		 */
+		public ByteBuffer getVariant(Compressor.Encoding encoding) {
+			byte[] variant = variants.get(encoding.ordinal());
+			if(variant == null)
+				return null;
+			return ByteBuffer.wrap(variant);
+		}
+
+		/**
+		 * Gets the cached content of the file. Each call returns a new
+		 * buffer, so callers can consume it independently, but they all
+		 * share the same bytes which must not be modified.
+		 *
+		 * @return the content or null if the file is too big to be held
+		 */
+		public ByteBuffer getContent() {
+			if(content == null)
+				return null;
+			return ByteBuffer.wrap(content);
+		}
+
+		private long getCachedSize() {
+			return content == null ? 0 : content.length;
+		}
+
+		/**
+		 * Checks if the precompressed copies are still the ones that were
+		 * found, and that none came or went.
+		 */
+		private boolean isSidecarCurrent() {
+			for(Compressor.Encoding encoding : Compressor.Encoding.values()) {
+				File sidecar = getSidecarFile(file, encoding);
+				if(sidecar != null && sidecar.lastModified() != sidecarStamps[encoding.ordinal()])
+					return false;
+			}
+			return true;
+		}
+
+		private long getVariantSize() {
+			long size = 0;
+			for(int i = 0; i < variants.length(); i++) {
+				byte[] variant = variants.get(i);
+				if(variant != null)
+					size += variant.length;
+			}
+			return size;
+		}
+
+		/**
+		 * @return the number of bytes released
+		 */
+		private long clearVariants() {
+			long size = 0;
+			for(int i = 0; i < variants.length(); i++) {
+				byte[] variant = variants.getAndSet(i, null);
+				if(variant != null)
+					size += variant.length;
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * A precompressed copy of a file.
+	 */
+	public static class Sidecar {
+		private File file;
+		private long lastModified;
+		private long length;
+
+		private Sidecar(File file, long lastModified, long length) {
+			this.file = file;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+
+		/**
+		 * @return the compressed file
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * @return the modification time of the compressed file
+		 */
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * @return the length of the compressed file
+		 */
+		public long getLength() {
+			return length;
+		}
+	}
+}
@@ -2,39 +2,88 @@ package server;
 
 import java.text.DateFormat;
 import java.text.ParseException;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Date;
-import java.util.GregorianCalendar;
+import java.util.Locale;
 import java.util.TimeZone;
 
+/**
+ * Formats and parses the dates of HTTP header fields. Dates are always
+ * written in the IMF-fixdate format of RFC 7231, e.g.
+ * <tt>Sun, 06 Nov 1994 08:49:37 GMT</tt>; the obsolete RFC 850 and asctime
+ * formats are accepted too when parsing.
+ *
+ * {@link SimpleDateFormat} is not thread safe and costly to create, so every
+ * thread keeps its own formats and reuses them.
+ */
 public class GMTConversion {
-	public static final String GMT_FORMAT = "EEE, d MMM yyyy HH:mm:ss z";
-	
+	public static final String GMT_FORMAT = "EEE, dd MMM yyyy HH:mm:ss 'GMT'";
+	private static final String RFC_850_FORMAT = "EEEE, dd-MMM-yy HH:mm:ss 'GMT'";
+	private static final String ASCTIME_FORMAT = "EEE MMM d HH:mm:ss yyyy";
+
+	private static final ThreadLocal<DateFormat[]> formats = new ThreadLocal<DateFormat[]>() {
+		@Override
+		protected DateFormat[] initialValue() {
+			return new DateFormat[] {
+				createFormat(GMT_FORMAT),
+				createFormat(RFC_850_FORMAT),
+				createFormat(ASCTIME_FORMAT)
+			};
+		}
+	};
+
+	private static DateFormat createFormat(String pattern) {
+		DateFormat format = new SimpleDateFormat(pattern, Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		format.setLenient(false);
+		return format;
+	}
+
 	public static String toGMTString(Date date) {
-		Calendar calendar = new GregorianCalendar();
-		calendar.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return formats.get()[0].format(date);
+	}
 
-		DateFormat gmtFormat = new SimpleDateFormat(GMT_FORMAT);
-		gmtFormat.setCalendar(calendar);
-		
-		return gmtFormat.format(date);
+	/**
+	 * @param time The time in milliseconds since the epoch.
+	 * @return the time as an HTTP date
+	 */
+	public static String toGMTString(long time) {
+		return toGMTString(new Date(time));
 	}
-	
+
 	public static Date fromGMTString(String dateString) throws ParseException {
-		Calendar calendar = new GregorianCalendar();
-		calendar.setTimeZone(TimeZone.getTimeZone("GMT"));
+		long time = parse(dateString);
+		if(time == -1)
+			throw new ParseException("Unparseable date: \"" + dateString + "\"", 0);
+		return new Date(time);
+	}
 
-		DateFormat gmtFormat = new SimpleDateFormat(GMT_FORMAT);
-		gmtFormat.setCalendar(calendar);
-	
-		return gmtFormat.parse(dateString);
+	/**
+	 * Parses an HTTP date without throwing on the malformed ones clients
+	 * send now and then.
+	 *
+	 * @param dateString The date in any of the formats HTTP allows.
+	 * @return the time in milliseconds since the epoch, or -1 if the date
+	 * cannot be parsed
+	 */
+	public static long parse(String dateString) {
+		String date = dateString.trim();
+		for(DateFormat format : formats.get()) {
+			ParsePosition position = new ParsePosition(0);
+			Date parsed = format.parse(date, position);
+			// Nothing may follow the date
+			if(parsed != null && position.getIndex() == date.length())
+				return parsed.getTime();
+		}
+		return -1;
 	}
-	
+
 	public static void main(String[] args) throws Exception {
 		Date date = new Date();
 		System.out.println("From Any Timezone Date:\t" + date);
 		String newTime = toGMTString(date);
 		System.out.println("To GMT Timezone Date:\t" + newTime);
+		System.out.println("Back From GMT Date:\t" + fromGMTString(newTime));
 	}
 }
@@ -0,0 +1,179 @@
+/*
+ * HeartbeatWriter.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import protocol.MappedFileCache;
+
+/**
+ * Periodically writes a snapshot of the server's counters to a small text
+ * file that monitoring scripts can poll. The snapshot is written to a
+ * temporary file next to the target and renamed over it, so readers never
+ * see a partial file. This runs on its own thread, nothing is written from
+ * the threads that accept or serve connections.
+ */
+public class HeartbeatWriter implements Runnable {
+	private Server server;
+	private File file;
+	private File temporary;
+	private long interval;
+	private long started;
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * @param server The server whose counters are written.
+	 * @param file The file the snapshot is written to.
+	 * @param interval The time between snapshots, in milliseconds.
+	 */
+	public HeartbeatWriter(Server server, File file, long interval) {
+		this.server = server;
+		this.file = file;
+		this.temporary = new File(file.getPath() + ".tmp");
+		this.interval = interval;
+	}
+
+	/**
+	 * Starts writing snapshots every interval.
+	 */
+	public synchronized void start() {
+		if(this.scheduler != null)
+			return;
+		this.started = System.currentTimeMillis();
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "sws-heartbeat");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.scheduler.scheduleWithFixedDelay(this, 0, this.interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the schedule and writes one last snapshot.
+	 */
+	public synchronized void stop() {
+		if(this.scheduler == null)
+			return;
+		this.scheduler.shutdown();
+		try {
+			this.scheduler.awaitTermination(1, TimeUnit.SECONDS);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.scheduler = null;
+		run();
+	}
+
+	/**
+	 * Writes one snapshot.
+	 */
+	public void run() {
+		try {
+			write(snapshot());
+		}
+		catch(IOException e) {
+			Server.logger.warning("Could not write " + this.file + ": " + e.getMessage());
+		}
+	}
+
+	private String snapshot() {
+		long now = System.currentTimeMillis();
+		StringBuilder buffer = new StringBuilder();
+		buffer.append("Connections: ").append(this.server.getConnections()).append('\n');
+		buffer.append("Service Time: ").append(this.server.getServiceTime()).append('\n');
+		buffer.append("Service Rate: ").append(this.server.getServiceRate()).append('\n');
+		buffer.append("Time: ").append(new Date(now)).append('\n');
+		buffer.append("Uptime: ").append(now - this.started).append('\n');
+		buffer.append("Stopping: ").append(this.server.isStopping()).append('\n');
+		buffer.append("Drained Connections: ").append(this.server.getDrainedConnections()).append('\n');
+		buffer.append("Cut Connections: ").append(this.server.getCutConnections()).append('\n');
+		buffer.append("Active Workers: ").append(this.server.getActiveWorkers()).append('\n');
+		buffer.append("Queued Workers: ").append(this.server.getQueuedWorkers()).append('\n');
+		buffer.append("Rejected Workers: ").append(this.server.getRejectedWorkers()).append('\n');
+
+		Metrics metrics = this.server.getMetrics();
+		buffer.append("Requests: ").append(metrics.getRequests()).append('\n');
+		buffer.append("Bytes In: ").append(metrics.getBytesIn()).append('\n');
+		buffer.append("Bytes Out: ").append(metrics.getBytesOut()).append('\n');
+		buffer.append("Slow Reads Killed: ").append(metrics.getSlowReads()).append('\n');
+		buffer.append("Slow Writes Killed: ").append(metrics.getSlowWrites()).append('\n');
+		buffer.append("Connections Refused: ").append(metrics.getConnectionsRefused()).append('\n');
+		for(int status : metrics.getStatuses())
+			buffer.append("Status ").append(status).append(": ").append(metrics.getStatusCount(status)).append('\n');
+		for(int seconds : new int[] { 1, 10, 60 }) {
+			Metrics.Window window = metrics.getWindow(seconds);
+			buffer.append("Request Rate ").append(seconds).append("s: ").append(window.getRequestRate()).append('\n');
+			buffer.append("Latency ").append(seconds).append("s (p50/p99/p999 us): ").append(window.getLatency(0.5))
+					.append(" / ").append(window.getLatency(0.99)).append(" / ").append(window.getLatency(0.999)).append('\n');
+		}
+
+		ContentCache cache = this.server.getContentCache();
+		buffer.append("Cache Hits: ").append(cache.getHits()).append('\n');
+		buffer.append("Cache Misses: ").append(cache.getMisses()).append('\n');
+		buffer.append("Cache Evictions: ").append(cache.getEvictions()).append('\n');
+		buffer.append("Cache Size: ").append(cache.getSize()).append('\n');
+		buffer.append("Cache Variant Size: ").append(cache.getVariantSize()).append('\n');
+		buffer.append("Compressions: ").append(this.server.getCompressor().getCompressions()).append('\n');
+
+		MappedFileCache mapped = this.server.getMappedFileCache();
+		buffer.append("Mapped Files: ").append(mapped.getMappedFiles()).append('\n');
+		buffer.append("Mapped Bytes: ").append(mapped.getMappedBytes()).append('\n');
+		AccessLog accessLog = this.server.getAccessLog();
+		if(accessLog != null)
+			buffer.append("Access Log Dropped: ").append(accessLog.getDropped()).append('\n');
+		return buffer.toString();
+	}
+
+	private void write(String snapshot) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(this.temporary), StandardCharsets.UTF_8);
+		try {
+			writer.write(snapshot);
+		}
+		finally {
+			writer.close();
+		}
+		try {
+			Files.move(this.temporary.toPath(), this.file.toPath(), 
+					StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch(AtomicMoveNotSupportedException e) {
+			// Still better than writing the file in place
+			Files.move(this.temporary.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
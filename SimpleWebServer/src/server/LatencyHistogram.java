@@ -0,0 +1,149 @@
+/*
+ * LatencyHistogram.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts values, such as latencies in microseconds, in buckets whose width
+ * grows with the value, in the manner of HdrHistogram: every power of two
+ * is split into {@link #SUB_BUCKETS} equal buckets, so any percentile read
+ * back is within about 3% of the true value while the histogram stays a
+ * fixed, small array of counters. Recording is a single atomic increment.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// Values up to 2^40 (about 12 days in microseconds) are told apart
+	private static final int MAX_EXPONENT = 40;
+	private static final int BUCKETS = SUB_BUCKETS * (MAX_EXPONENT - SUB_BUCKET_BITS + 2);
+
+	private AtomicLongArray counts;
+
+	public LatencyHistogram() {
+		this.counts = new AtomicLongArray(BUCKETS);
+	}
+
+	/**
+	 * Records a value. Negative values count as 0, values beyond the range
+	 * count in the last bucket.
+	 *
+	 * @param value The value to record.
+	 */
+	public void record(long value) {
+		this.counts.incrementAndGet(bucket(value));
+	}
+
+	/**
+	 * Adds the counts of this histogram to the supplied array, which must
+	 * have {@link #size()} elements.
+	 *
+	 * @param totals The counts to add to.
+	 */
+	public void addTo(long[] totals) {
+		for(int i = 0; i < BUCKETS; i++)
+			totals[i] += this.counts.get(i);
+	}
+
+	/**
+	 * @return the number of buckets
+	 */
+	public static int size() {
+		return BUCKETS;
+	}
+
+	/**
+	 * Finds the value below which the supplied fraction of the counted
+	 * values fall.
+	 *
+	 * @param counts Bucket counts, e.g. gathered with {@link #addTo(long[])}.
+	 * @param fraction The fraction, e.g. 0.99 for the 99th percentile.
+	 * @return The value, or 0 if nothing was counted.
+	 */
+	public static long percentile(long[] counts, double fraction) {
+		long total = 0;
+		for(long count : counts)
+			total += count;
+		if(total == 0)
+			return 0;
+		long rank = (long) Math.ceil(fraction * total);
+		if(rank < 1)
+			rank = 1;
+		long seen = 0;
+		for(int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if(seen >= rank)
+				return highestValue(i);
+		}
+		return highestValue(counts.length - 1);
+	}
+
+	/**
+	 * Reads a percentile of this histogram alone.
+	 *
+	 * @param fraction The fraction, e.g. 0.99 for the 99th percentile.
+	 * @return the value
+	 */
+	public long percentile(double fraction) {
+		long[] totals = new long[BUCKETS];
+		addTo(totals);
+		return percentile(totals, fraction);
+	}
+
+	/**
+	 * Counts the values that are at most the supplied value. Values are
+	 * only known to the precision of their bucket, a bucket is counted if
+	 * its largest value is within the limit.
+	 *
+	 * @param counts Bucket counts, e.g. gathered with {@link #addTo(long[])}.
+	 * @param limit The largest value to count.
+	 * @return the count
+	 */
+	public static long countAtMost(long[] counts, long limit) {
+		long count = 0;
+		for(int i = 0; i < counts.length && highestValue(i) <= limit; i++)
+			count += counts[i];
+		return count;
+	}
+
+	private static int bucket(long value) {
+		if(value < SUB_BUCKETS)
+			return value < 0 ? 0 : (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if(exponent > MAX_EXPONENT)
+			return BUCKETS - 1;
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @return the largest value that falls in the supplied bucket
+	 */
+	private static long highestValue(int bucket) {
+		if(bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+		long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return sub * width + width - 1;
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Launcher.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+/**
+ * Runs a {@link Server} without the Swing window, for use under a process
+ * supervisor. The configuration comes from an optional properties file
+ * (<tt>.xml</tt> files are read as XML properties) and from command line
+ * flags, which win over the file:
+ *
+ * <pre>
+ * java server.Launcher [--config=&lt;file&gt;] [--&lt;setting&gt;=&lt;value&gt; ...]
+ * </pre>
+ *
+ * The settings are those of {@link ServerConfiguration#load(Properties)},
+ * e.g. <tt>--port=8080 --rootDirectory=/srv/www --threadMode=REACTOR</tt>.
+ * The metrics endpoint is off unless a path is given for it, e.g.
+ * <tt>--metricsPath=/metrics</tt>.
+ *
+ * Errors are logged and reflected in the exit code: {@link #EXIT_USAGE} for
+ * a bad command line or configuration, {@link #EXIT_FAILURE} if the server
+ * could not run, e.g. because the port is taken. The server is stopped
+ * when the process is asked to terminate.
+ */
+public class Launcher {
+	public static final int EXIT_OK = 0;
+	public static final int EXIT_FAILURE = 1;
+	public static final int EXIT_USAGE = 2;
+
+	private static final String CONFIG_FLAG = "config";
+	private static final String USAGE = 
+			"Usage: java server.Launcher [--config=<file>] [--<setting>=<value> ...]";
+
+	private static Logger logger = Server.logger;
+
+	public static void main(String[] args) {
+		ServerConfiguration configuration;
+		try {
+			configuration = parse(args);
+		}
+		catch(IllegalArgumentException e) {
+			logger.severe(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(EXIT_USAGE);
+			return;
+		}
+		if(configuration == null) {
+			System.out.println(USAGE);
+			return;
+		}
+
+		System.exit(run(configuration));
+	}
+
+	/**
+	 * Builds the configuration described by the command line.
+	 *
+	 * @param args The command line arguments.
+	 * @return The configuration, or null if only help was asked for.
+	 * @throws IllegalArgumentException if the arguments or the file are invalid
+	 */
+	public static ServerConfiguration parse(String[] args) {
+		Properties flags = new Properties();
+		String config = null;
+		for(String arg : args) {
+			if(arg.equals("-h") || arg.equals("--help"))
+				return null;
+			int equals = arg.indexOf('=');
+			if(!arg.startsWith("--") || equals < 3)
+				throw new IllegalArgumentException("Invalid argument: " + arg);
+			String key = arg.substring(2, equals);
+			String value = arg.substring(equals + 1);
+			if(key.equals(CONFIG_FLAG))
+				config = value;
+			else
+				flags.setProperty(key, value);
+		}
+
+		ServerConfiguration configuration = new ServerConfiguration();
+		if(config != null)
+			configuration.load(read(new File(config)));
+		configuration.load(flags);
+
+		File root = new File(configuration.getRootDirectory());
+		if(!root.isDirectory())
+			throw new IllegalArgumentException("Root directory does not exist: " + root);
+		return configuration;
+	}
+
+	/**
+	 * Runs a server on the calling thread until it is stopped or fails.
+	 *
+	 * @param configuration The configuration of the server.
+	 * @return {@link #EXIT_OK} or {@link #EXIT_FAILURE}
+	 */
+	public static int run(ServerConfiguration configuration) {
+		final Server server = new Server(configuration, null);
+		final CountDownLatch stopped = new CountDownLatch(1);
+		Thread hook = new Thread(new Runnable() {
+			public void run() {
+				server.stop();
+				try {
+					// Let the server close its logs before the process goes away
+					stopped.await();
+				}
+				catch(InterruptedException e) {
+				}
+			}
+		}, "sws-shutdown");
+		Runtime.getRuntime().addShutdownHook(hook);
+
+		logger.info("Serving " + configuration.getRootDirectory() + " on port " 
+				+ configuration.getPort() + " with " + configuration.getThreadMode());
+		try {
+			server.run();
+		}
+		finally {
+			stopped.countDown();
+		}
+
+		if(server.getFailure() != null)
+			return EXIT_FAILURE;
+		return EXIT_OK;
+	}
+
+	private static Properties read(File file) {
+		Properties properties = new Properties();
+		try {
+			InputStream in = new FileInputStream(file);
+			try {
+				if(file.getName().endsWith(".xml"))
+					properties.loadFromXML(in);
+				else
+					properties.load(in);
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch(IOException e) {
+			throw new IllegalArgumentException("Cannot read configuration " + file + ": " + e.getMessage(), e);
+		}
+		return properties;
+	}
+}
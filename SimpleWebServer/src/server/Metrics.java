@@ -0,0 +1,422 @@
+/*
+ * Metrics.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Request statistics of a {@link Server}: lifetime totals per status code,
+ * bytes in and out and a latency histogram, plus the same figures for each
+ * of the last {@link #WINDOW_SECONDS} seconds so that recent rates and
+ * percentiles can be reported instead of lifetime averages.
+ *
+ * Recording never takes a lock. Lifetime totals are {@link StripedCounter}s;
+ * each second gets a fresh slot that replaces the one from a minute ago
+ * with a compare-and-set.
+ */
+public class Metrics {
+	/** The longest window that can be asked for, in seconds */
+	public static final int WINDOW_SECONDS = 60;
+
+	private static final int MIN_STATUS = 100;
+	private static final int MAX_STATUS = 599;
+
+	private StripedCounter requests;
+	private StripedCounter started;
+	private StripedCounter finished;
+	private StripedCounter opened;
+	private StripedCounter closed;
+	private StripedCounter slowReads;
+	private StripedCounter slowWrites;
+	private StripedCounter refused;
+	private StripedCounter latencySum;
+	private StripedCounter bytesIn;
+	private StripedCounter bytesOut;
+	private AtomicReferenceArray<StripedCounter> statuses;
+	private LatencyHistogram latency;
+	// One more slot than the longest window, the current second is partial
+	private AtomicReferenceArray<Slot> slots;
+
+	public Metrics() {
+		this.requests = new StripedCounter();
+		this.started = new StripedCounter();
+		this.finished = new StripedCounter();
+		this.opened = new StripedCounter();
+		this.closed = new StripedCounter();
+		this.slowReads = new StripedCounter();
+		this.slowWrites = new StripedCounter();
+		this.refused = new StripedCounter();
+		this.latencySum = new StripedCounter();
+		this.bytesIn = new StripedCounter();
+		this.bytesOut = new StripedCounter();
+		this.statuses = new AtomicReferenceArray<StripedCounter>(MAX_STATUS - MIN_STATUS + 1);
+		this.latency = new LatencyHistogram();
+		this.slots = new AtomicReferenceArray<Slot>(WINDOW_SECONDS + 1);
+	}
+
+	/**
+	 * Records one response.
+	 *
+	 * @param status The status code of the response.
+	 * @param received The size of the request, 0 if it could not be read.
+	 * @param sent The number of bytes written for the response.
+	 * @param latency The time taken to serve the request, in microseconds.
+	 */
+	public void record(int status, long received, long sent, long latency) {
+		this.requests.increment();
+		this.bytesIn.add(received);
+		this.bytesOut.add(sent);
+		this.latency.record(latency);
+		this.latencySum.add(latency);
+		statusCounter(status).increment();
+
+		Slot slot = slot(System.currentTimeMillis() / 1000);
+		slot.requests.incrementAndGet();
+		slot.bytesIn.addAndGet(received);
+		slot.bytesOut.addAndGet(sent);
+		if(status >= 500)
+			slot.errors.incrementAndGet();
+		slot.latency.record(latency);
+	}
+
+	/**
+	 * Counts a connection the server started serving.
+	 */
+	public void connectionOpened() {
+		this.opened.increment();
+	}
+
+	/**
+	 * Counts a connection that was closed, after 
+	 * {@link #connectionOpened()} was called for it.
+	 */
+	public void connectionClosed() {
+		this.closed.increment();
+	}
+
+	/**
+	 * Counts a connection whose client sent a request slower than
+	 * {@link ServerConfiguration#getMinReadRate()}.
+	 */
+	public void slowRead() {
+		this.slowReads.increment();
+	}
+
+	/**
+	 * Counts a connection that was cut because its client took a response
+	 * slower than {@link ServerConfiguration#getMinWriteRate()}.
+	 */
+	public void slowWrite() {
+		this.slowWrites.increment();
+	}
+
+	/**
+	 * Counts a connection closed on accept because its client address had
+	 * {@link ServerConfiguration#getMaxConnectionsPerAddress()} open already.
+	 */
+	public void connectionRefused() {
+		this.refused.increment();
+	}
+
+	/**
+	 * Counts a request that has been read and is being served.
+	 */
+	public void requestStarted() {
+		this.started.increment();
+	}
+
+	/**
+	 * Counts a request that was served, or given up on, after
+	 * {@link #requestStarted()} was called for it.
+	 */
+	public void requestFinished() {
+		this.finished.increment();
+	}
+
+	/**
+	 * @return the number of connections accepted and handed to a handler
+	 */
+	public long getConnectionsOpened() {
+		return this.opened.get();
+	}
+
+	/**
+	 * @return the number of connections currently open
+	 */
+	public long getOpenConnections() {
+		return Math.max(0, this.opened.get() - this.closed.get());
+	}
+
+	/**
+	 * @return the number of connections killed for sending too slowly
+	 */
+	public long getSlowReads() {
+		return this.slowReads.get();
+	}
+
+	/**
+	 * @return the number of connections killed for reading too slowly
+	 */
+	public long getSlowWrites() {
+		return this.slowWrites.get();
+	}
+
+	/**
+	 * @return the number of connections refused by the per address limit
+	 */
+	public long getConnectionsRefused() {
+		return this.refused.get();
+	}
+
+	/**
+	 * @return the number of requests read whose response is not out yet
+	 */
+	public long getRequestsInFlight() {
+		// Read finished first, so a request counted in between is not negative
+		long finished = this.finished.get();
+		return Math.max(0, this.started.get() - finished);
+	}
+
+	/**
+	 * @return the sum of all recorded latencies, in microseconds
+	 */
+	public long getLatencySum() {
+		return this.latencySum.get();
+	}
+
+	/**
+	 * Adds the lifetime latency histogram to the supplied counts, see
+	 * {@link LatencyHistogram#addTo(long[])}.
+	 *
+	 * @param counts The counts to add to.
+	 */
+	public void addLatencyTo(long[] counts) {
+		this.latency.addTo(counts);
+	}
+
+	/**
+	 * @return the number of responses recorded
+	 */
+	public long getRequests() {
+		return this.requests.get();
+	}
+
+	/**
+	 * @return the number of request bytes received
+	 */
+	public long getBytesIn() {
+		return this.bytesIn.get();
+	}
+
+	/**
+	 * @return the number of response bytes sent
+	 */
+	public long getBytesOut() {
+		return this.bytesOut.get();
+	}
+
+	/**
+	 * Gets the number of responses with the supplied status code.
+	 *
+	 * @param status The status code.
+	 * @return the count
+	 */
+	public long getStatusCount(int status) {
+		if(status < MIN_STATUS || status > MAX_STATUS)
+			return 0;
+		StripedCounter counter = this.statuses.get(status - MIN_STATUS);
+		return counter == null ? 0 : counter.get();
+	}
+
+	/**
+	 * Gets the status codes that have been sent at least once, in
+	 * ascending order.
+	 *
+	 * @return the status codes
+	 */
+	public int[] getStatuses() {
+		int count = 0;
+		for(int i = 0; i < this.statuses.length(); i++) {
+			if(this.statuses.get(i) != null)
+				count++;
+		}
+		int[] statuses = new int[count];
+		count = 0;
+		for(int i = 0; i < this.statuses.length() && count < statuses.length; i++) {
+			if(this.statuses.get(i) != null)
+				statuses[count++] = i + MIN_STATUS;
+		}
+		return statuses;
+	}
+
+	/**
+	 * Reads a latency percentile over the whole lifetime of the server.
+	 *
+	 * @param fraction The fraction, e.g. 0.99 for the 99th percentile.
+	 * @return the latency in microseconds
+	 */
+	public long getLatency(double fraction) {
+		return this.latency.percentile(fraction);
+	}
+
+	/**
+	 * Sums up the last complete seconds.
+	 *
+	 * @param seconds The length of the window, 1 to {@link #WINDOW_SECONDS}.
+	 * @return the figures for the window
+	 */
+	public Window getWindow(int seconds) {
+		if(seconds < 1 || seconds > WINDOW_SECONDS)
+			throw new IllegalArgumentException("seconds must be within 1 and " + WINDOW_SECONDS + ": " + seconds);
+		long current = System.currentTimeMillis() / 1000;
+		Window window = new Window(seconds);
+		for(long second = current - seconds; second < current; second++) {
+			Slot slot = this.slots.get(index(second));
+			if(slot == null || slot.second != second)
+				continue;
+			window.requests += slot.requests.get();
+			window.errors += slot.errors.get();
+			window.bytesIn += slot.bytesIn.get();
+			window.bytesOut += slot.bytesOut.get();
+			slot.latency.addTo(window.latency);
+		}
+		return window;
+	}
+
+	private StripedCounter statusCounter(int status) {
+		int index = Math.max(MIN_STATUS, Math.min(status, MAX_STATUS)) - MIN_STATUS;
+		StripedCounter counter = this.statuses.get(index);
+		if(counter == null) {
+			this.statuses.compareAndSet(index, null, new StripedCounter());
+			counter = this.statuses.get(index);
+		}
+		return counter;
+	}
+
+	private Slot slot(long second) {
+		int index = index(second);
+		while(true) {
+			Slot slot = this.slots.get(index);
+			if(slot != null && slot.second == second)
+				return slot;
+			if(slot != null && slot.second > second)
+				// The clock went back, count it in the newer second
+				return slot;
+			this.slots.compareAndSet(index, slot, new Slot(second));
+		}
+	}
+
+	private int index(long second) {
+		return (int) (second % this.slots.length());
+	}
+
+	/**
+	 * The figures of one second.
+	 */
+	private static class Slot {
+		private final long second;
+		private final AtomicLong requests;
+		private final AtomicLong errors;
+		private final AtomicLong bytesIn;
+		private final AtomicLong bytesOut;
+		private final LatencyHistogram latency;
+
+		private Slot(long second) {
+			this.second = second;
+			this.requests = new AtomicLong();
+			this.errors = new AtomicLong();
+			this.bytesIn = new AtomicLong();
+			this.bytesOut = new AtomicLong();
+			this.latency = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * The figures of the last few seconds.
+	 */
+	public static class Window {
+		private int seconds;
+		private long requests;
+		private long errors;
+		private long bytesIn;
+		private long bytesOut;
+		private long[] latency;
+
+		private Window(int seconds) {
+			this.seconds = seconds;
+			this.latency = new long[LatencyHistogram.size()];
+		}
+
+		/**
+		 * @return the length of the window in seconds
+		 */
+		public int getSeconds() {
+			return seconds;
+		}
+
+		/**
+		 * @return the number of responses in the window
+		 */
+		public long getRequests() {
+			return requests;
+		}
+
+		/**
+		 * @return the number of responses per second
+		 */
+		public double getRequestRate() {
+			return requests / (double) seconds;
+		}
+
+		/**
+		 * @return the number of responses with a 5xx status
+		 */
+		public long getErrors() {
+			return errors;
+		}
+
+		/**
+		 * @return the number of request bytes received per second
+		 */
+		public double getBytesInRate() {
+			return bytesIn / (double) seconds;
+		}
+
+		/**
+		 * @return the number of response bytes sent per second
+		 */
+		public double getBytesOutRate() {
+			return bytesOut / (double) seconds;
+		}
+
+		/**
+		 * Reads a latency percentile of the window.
+		 *
+		 * @param fraction The fraction, e.g. 0.99 for the 99th percentile.
+		 * @return the latency in microseconds
+		 */
+		public long getLatency(double fraction) {
+			return LatencyHistogram.percentile(latency, fraction);
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * MetricsEndpoint.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.nio.ByteBuffer;
+
+import protocol.HttpResponse;
+import protocol.HttpResponseFactory;
+import protocol.MappedFileCache;
+
+/**
+ * Renders the statistics of a {@link Server} in the Prometheus text
+ * exposition format, served by {@link RequestProcessor} at
+ * {@link ServerConfiguration#getMetricsPath()}.
+ *
+ * Scrapes are serialized and render into buffers that are reused from one
+ * scrape to the next; numbers are appended without going through Strings.
+ * The only allocation of note is the body handed to the response.
+ */
+public class MetricsEndpoint {
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	/** The upper bounds of the latency histogram buckets, in microseconds */
+	private static final long[] BUCKETS = {
+		100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 
+		100000, 250000, 500000, 1000000, 2500000, 5000000, 10000000
+	};
+	private static final int[] WINDOWS = { 1, 10, 60 };
+	private static final String[] QUANTILES = { "0.5", "0.99", "0.999" };
+	private static final double[] QUANTILE_FRACTIONS = { 0.5, 0.99, 0.999 };
+
+	private Server server;
+	private StringBuilder text;
+	private long[] latency;
+
+	/**
+	 * @param server The server whose statistics are rendered.
+	 */
+	public MetricsEndpoint(Server server) {
+		this.server = server;
+		this.text = new StringBuilder(8192);
+		this.latency = new long[LatencyHistogram.size()];
+	}
+
+	/**
+	 * Creates the response to a scrape.
+	 *
+	 * @param connection The connection header value for the response.
+	 * @return The response carrying the current statistics.
+	 */
+	public HttpResponse createResponse(String connection) {
+		byte[] body;
+		synchronized(this) {
+			this.text.setLength(0);
+			render(this.text);
+			// Everything rendered is ASCII
+			body = new byte[this.text.length()];
+			for(int i = 0; i < body.length; i++)
+				body[i] = (byte) this.text.charAt(i);
+		}
+		return HttpResponseFactory.create200OK(ByteBuffer.wrap(body), CONTENT_TYPE, connection);
+	}
+
+	private void render(StringBuilder out) {
+		Metrics metrics = this.server.getMetrics();
+
+		type(out, "sws_connections_opened_total", "counter", "Connections handed to a handler.");
+		sample(out, "sws_connections_opened_total", metrics.getConnectionsOpened());
+		type(out, "sws_connections_open", "gauge", "Connections currently open.");
+		sample(out, "sws_connections_open", metrics.getOpenConnections());
+		type(out, "sws_requests_in_flight", "gauge", "Requests read whose response is not written yet.");
+		sample(out, "sws_requests_in_flight", metrics.getRequestsInFlight());
+
+		type(out, "sws_responses_total", "counter", "Responses written, by status code.");
+		for(int status : metrics.getStatuses()) {
+			out.append("sws_responses_total{code=\"").append(status).append("\"} ")
+					.append(metrics.getStatusCount(status)).append('\n');
+		}
+		type(out, "sws_received_bytes_total", "counter", "Request header bytes received.");
+		sample(out, "sws_received_bytes_total", metrics.getBytesIn());
+		type(out, "sws_sent_bytes_total", "counter", "Response bytes sent.");
+		sample(out, "sws_sent_bytes_total", metrics.getBytesOut());
+
+		// Lifetime latency as a Prometheus histogram
+		long[] latency = this.latency;
+		for(int i = 0; i < latency.length; i++)
+			latency[i] = 0;
+		metrics.addLatencyTo(latency);
+		type(out, "sws_request_duration_seconds", "histogram", "Time to serve a request.");
+		for(long bound : BUCKETS) {
+			out.append("sws_request_duration_seconds_bucket{le=\"");
+			appendSeconds(out, bound);
+			out.append("\"} ").append(LatencyHistogram.countAtMost(latency, bound)).append('\n');
+		}
+		long count = metrics.getRequests();
+		out.append("sws_request_duration_seconds_bucket{le=\"+Inf\"} ").append(count).append('\n');
+		out.append("sws_request_duration_seconds_sum ");
+		appendSeconds(out, metrics.getLatencySum());
+		out.append('\n');
+		sample(out, "sws_request_duration_seconds_count", count);
+
+		// Recent figures, so dashboards do not need to derive them
+		type(out, "sws_request_rate", "gauge", "Responses per second over the last seconds.");
+		for(int seconds : WINDOWS) {
+			out.append("sws_request_rate{window=\"").append(seconds).append("s\"} ")
+					.append(metrics.getWindow(seconds).getRequestRate()).append('\n');
+		}
+		type(out, "sws_request_duration_window_seconds", "gauge", "Latency quantiles over the last seconds.");
+		for(int seconds : WINDOWS) {
+			Metrics.Window window = metrics.getWindow(seconds);
+			for(int i = 0; i < QUANTILES.length; i++) {
+				out.append("sws_request_duration_window_seconds{window=\"").append(seconds)
+						.append("s\",quantile=\"").append(QUANTILES[i]).append("\"} ");
+				appendSeconds(out, window.getLatency(QUANTILE_FRACTIONS[i]));
+				out.append('\n');
+			}
+		}
+
+		ContentCache cache = this.server.getContentCache();
+		type(out, "sws_cache_hits_total", "counter", "Content cache lookups answered from memory.");
+		sample(out, "sws_cache_hits_total", cache.getHits());
+		type(out, "sws_cache_misses_total", "counter", "Content cache lookups that went to the file system.");
+		sample(out, "sws_cache_misses_total", cache.getMisses());
+		type(out, "sws_cache_evictions_total", "counter", "Content cache entries evicted.");
+		sample(out, "sws_cache_evictions_total", cache.getEvictions());
+		type(out, "sws_cache_bytes", "gauge", "File content held by the content cache.");
+		sample(out, "sws_cache_bytes", cache.getSize());
+		type(out, "sws_cache_entries", "gauge", "Paths held by the content cache.");
+		sample(out, "sws_cache_entries", cache.getEntryCount());
+		type(out, "sws_cache_variant_bytes", "gauge", "Compressed file content held by the content cache.");
+		sample(out, "sws_cache_variant_bytes", cache.getVariantSize());
+
+		Compressor compressor = this.server.getCompressor();
+		type(out, "sws_compressions_total", "counter", "Times file content was compressed.");
+		sample(out, "sws_compressions_total", compressor.getCompressions());
+		type(out, "sws_compression_in_bytes_total", "counter", "Bytes fed to the compressor.");
+		sample(out, "sws_compression_in_bytes_total", compressor.getBytesIn());
+		type(out, "sws_compression_out_bytes_total", "counter", "Compressed bytes produced.");
+		sample(out, "sws_compression_out_bytes_total", compressor.getBytesOut());
+
+		MappedFileCache mapped = this.server.getMappedFileCache();
+		type(out, "sws_mapped_files", "gauge", "Files currently memory mapped.");
+		sample(out, "sws_mapped_files", mapped.getMappedFiles());
+		type(out, "sws_mapped_bytes", "gauge", "Bytes currently memory mapped.");
+		sample(out, "sws_mapped_bytes", mapped.getMappedBytes());
+
+		type(out, "sws_workers_active", "gauge", "Worker threads running a connection handler.");
+		sample(out, "sws_workers_active", this.server.getActiveWorkers());
+		type(out, "sws_workers_queued", "gauge", "Connections waiting for a worker thread.");
+		sample(out, "sws_workers_queued", this.server.getQueuedWorkers());
+		type(out, "sws_workers_rejected_total", "counter", "Connections answered with 503 by the worker pool.");
+		sample(out, "sws_workers_rejected_total", this.server.getRejectedWorkers());
+
+		type(out, "sws_connections_killed_total", "counter", "Connections closed for breaking a client limit, by rule.");
+		rule(out, "min_read_rate", metrics.getSlowReads());
+		rule(out, "min_write_rate", metrics.getSlowWrites());
+		rule(out, "max_connections_per_address", metrics.getConnectionsRefused());
+		type(out, "sws_client_addresses", "gauge", "Client addresses with a connection open.");
+		sample(out, "sws_client_addresses", this.server.getConnectionLimiter().getAddresses());
+
+		AccessLog accessLog = this.server.getAccessLog();
+		if(accessLog != null) {
+			type(out, "sws_access_log_dropped_total", "counter", "Access log records lost because the writer fell behind.");
+			sample(out, "sws_access_log_dropped_total", accessLog.getDropped());
+		}
+	}
+
+	private static void type(StringBuilder out, String name, String type, String help) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void rule(StringBuilder out, String rule, long value) {
+		out.append("sws_connections_killed_total{rule=\"").append(rule).append("\"} ").append(value).append('\n');
+	}
+
+	private static void sample(StringBuilder out, String name, long value) {
+		out.append(name).append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * Appends microseconds as seconds with six decimals.
+	 */
+	private static void appendSeconds(StringBuilder out, long micros) {
+		out.append(micros / 1000000).append('.');
+		long fraction = micros % 1000000;
+		for(long digit = 100000; digit > 0; digit /= 10) {
+			out.append((char) ('0' + fraction / digit));
+			fraction %= digit;
+		}
+	}
+}
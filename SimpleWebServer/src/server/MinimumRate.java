@@ -0,0 +1,113 @@
+/*
+ * MinimumRate.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells whether a transfer keeps up with a minimum data rate. Every byte
+ * moved earns the transfer 1/rate of a second, but it is never more than
+ * {@link #GRACE} ahead, so a client cannot send quickly at first and then
+ * stall. A transfer whose credit has run out is too slow.
+ *
+ * Progress is reported by the thread doing the transfer and checked from
+ * the timer, so this costs a subtraction per read or write and one
+ * timeout every {@link #GRACE} or so.
+ */
+public class MinimumRate {
+	/** How long a transfer may go without making progress, in ms */
+	public static final long GRACE = 3000;
+
+	private static final long GRACE_NANOS = TimeUnit.MILLISECONDS.toNanos(GRACE);
+
+	private int rate;
+	private volatile long deadline;
+	private volatile boolean running;
+
+	/**
+	 * @param rate The minimum rate, in bytes per second.
+	 */
+	public MinimumRate(int rate) {
+		this.rate = rate;
+		this.running = false;
+	}
+
+	/**
+	 * Starts timing a transfer, which has {@link #GRACE} to make progress.
+	 */
+	public void start() {
+		this.deadline = System.nanoTime() + GRACE_NANOS;
+		this.running = true;
+	}
+
+	/**
+	 * Stops timing the transfer.
+	 */
+	public void stop() {
+		this.running = false;
+	}
+
+	/**
+	 * @return true if a transfer is being timed
+	 */
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	/**
+	 * Credits bytes that have been moved.
+	 *
+	 * @param bytes The number of bytes.
+	 */
+	public void transferred(long bytes) {
+		long now = System.nanoTime();
+		long deadline = this.deadline + credit(bytes);
+		this.deadline = deadline - now > GRACE_NANOS ? now + GRACE_NANOS : deadline;
+	}
+
+	/**
+	 * Allows for a write that will not report progress until it is done,
+	 * such as a blocking write to a socket. The write has the time the
+	 * minimum rate needs for all its bytes.
+	 *
+	 * @param bytes The number of bytes the write is for.
+	 */
+	public void expect(long bytes) {
+		long deadline = System.nanoTime() + credit(bytes);
+		if(deadline - this.deadline > 0)
+			this.deadline = deadline;
+	}
+
+	/**
+	 * Gets the time the transfer has left before it is too slow.
+	 *
+	 * @return the time left in milliseconds, 0 or less if it is too slow
+	 */
+	public long remaining() {
+		return TimeUnit.NANOSECONDS.toMillis(this.deadline - System.nanoTime());
+	}
+
+	private long credit(long bytes) {
+		return TimeUnit.SECONDS.toNanos(bytes) / this.rate;
+	}
+}
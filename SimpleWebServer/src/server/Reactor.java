@@ -0,0 +1,372 @@
+/*
+ * Reactor.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+
+import protocol.HttpRequest;
+import protocol.HttpRequestDecoder;
+import protocol.HttpResponse;
+import protocol.Protocol;
+
+/**
+ * A selector loop serving many non-blocking connections from one thread.
+ * The acceptor hands each new channel to a reactor through
+ * {@link #register(SocketChannel)}; from then on every read, parse and write
+ * for that channel happens on the reactor's thread. Only producing the
+ * responses happens elsewhere, on the server's response executor.
+ */
+public class Reactor implements Runnable {
+	private Server server;
+	private Selector selector;
+	private Queue<SocketChannel> newChannels;
+	private Queue<TimerWheel.Timeout> expired;
+	private Queue<HandOver> handOvers;
+	private Queue<Response> responses;
+	private ByteBuffer readBuffer;
+	private Thread thread;
+	private volatile boolean stop;
+	private volatile boolean draining;
+	private volatile int cut;
+
+	/**
+	 * @param server The server whose requests are served.
+	 * @param id The number of this reactor, used to name its thread.
+	 * @throws IOException If the selector cannot be opened.
+	 */
+	public Reactor(Server server, int id) throws IOException {
+		this.server = server;
+		this.selector = Selector.open();
+		this.newChannels = new ConcurrentLinkedQueue<SocketChannel>();
+		this.expired = new ConcurrentLinkedQueue<TimerWheel.Timeout>();
+		this.handOvers = new ConcurrentLinkedQueue<HandOver>();
+		this.responses = new ConcurrentLinkedQueue<Response>();
+		// One read buffer is shared by all connections of this reactor,
+		// decoders copy out whatever they need to keep
+		this.readBuffer = ByteBuffer.allocateDirect(Protocol.CHUNK_LENGTH);
+		this.thread = new Thread(this, "sws-reactor-" + id);
+		this.stop = false;
+		this.draining = false;
+		this.cut = 0;
+	}
+
+	/**
+	 * Starts the reactor thread.
+	 */
+	public void start() {
+		this.thread.start();
+	}
+
+	/**
+	 * Hands a freshly accepted channel to this reactor. Safe to call from any
+	 * thread, the channel is registered by the reactor thread itself.
+	 *
+	 * @param channel The accepted channel.
+	 */
+	public void register(SocketChannel channel) {
+		this.newChannels.add(channel);
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Hands a deadline of one of this reactor's connections that passed
+	 * over to the reactor thread. Called by the timer thread.
+	 *
+	 * @param timeout The deadline of a {@link ReactorConnection}.
+	 */
+	void expire(TimerWheel.Timeout timeout) {
+		this.expired.add(timeout);
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Hands a response that has been produced for one of this reactor's
+	 * connections over to the reactor thread, which writes it. Called by the
+	 * response executor.
+	 *
+	 * @param connection The connection.
+	 * @param response The response, null if producing it failed.
+	 */
+	void respond(ReactorConnection connection, HttpResponse response) {
+		this.responses.add(new Response(connection, response));
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Takes a channel whose client switched to HTTP/2 off this reactor. Its
+	 * key has been cancelled; once the next select has dropped it, the
+	 * channel is made blocking and served by a {@link ConnectionHandler} on
+	 * the server's worker pool. Called on the reactor thread.
+	 *
+	 * @param channel The channel.
+	 * @param request The request that started HTTP/2.
+	 * @param decoder The decoder holding what the client sent past it.
+	 */
+	void handOver(SocketChannel channel, HttpRequest request, HttpRequestDecoder decoder) {
+		this.handOvers.add(new HandOver(channel, request, decoder));
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Asks the reactor to finish the responses in progress, close the
+	 * connections waiting for a request and exit once none is left.
+	 */
+	public void shutdown() {
+		this.draining = true;
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Waits for the reactor to exit after {@link #shutdown()}.
+	 *
+	 * @param timeout The most time to wait, in milliseconds.
+	 * @return true if the reactor exited
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(long timeout) throws InterruptedException {
+		this.thread.join(timeout);
+		return !this.thread.isAlive();
+	}
+
+	/**
+	 * Closes the connections still open, whatever they are doing, and
+	 * waits for the reactor to exit.
+	 *
+	 * @return the number of connections that were cut
+	 * @throws InterruptedException
+	 */
+	public int shutdownNow() throws InterruptedException {
+		this.stop = true;
+		this.selector.wakeup();
+		this.thread.join();
+		return this.cut;
+	}
+
+	public void run() {
+		while(!this.stop) {
+			// Registered before selecting, so a connection has been read
+			// from at least once before a draining reactor thinks it idle
+			registerNewChannels();
+			try {
+				this.selector.select();
+			}
+			catch(IOException e) {
+				Server.logger.severe("Reactor select failed: " + e.getMessage());
+				break;
+			}
+			startHandOvers();
+
+			Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+			while(keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				ReactorConnection connection = (ReactorConnection) key.attachment();
+				try {
+					if(key.isValid() && key.isReadable())
+						connection.read(this.readBuffer);
+					if(key.isValid() && key.isWritable())
+						connection.write();
+				}
+				catch(CancelledKeyException e) {
+					connection.close();
+				}
+				catch(IOException e) {
+					// The client went away in the middle of an exchange
+					connection.close();
+				}
+				catch(RuntimeException e) {
+					fail(connection, e);
+				}
+			}
+
+			Response response;
+			while((response = this.responses.poll()) != null) {
+				try {
+					response.connection.respond(response.response);
+				}
+				catch(IOException e) {
+					response.connection.close();
+				}
+				catch(CancelledKeyException e) {
+					response.connection.close();
+				}
+				catch(RuntimeException e) {
+					fail(response.connection, e);
+				}
+			}
+
+			TimerWheel.Timeout timeout;
+			while((timeout = this.expired.poll()) != null) {
+				ReactorConnection connection = (ReactorConnection) timeout.getTask();
+				try {
+					connection.timedOut(timeout);
+				}
+				catch(RuntimeException e) {
+					fail(connection, e);
+				}
+			}
+			if(this.draining && closeWaitingConnections() == 0)
+				break;
+		}
+
+		int cut = 0;
+		for(SelectionKey key : this.selector.keys()) {
+			if(key.isValid())
+				cut++;
+			((ReactorConnection) key.attachment()).abort();
+		}
+		SocketChannel channel;
+		while((channel = this.newChannels.poll()) != null) {
+			cut++;
+			discard(channel);
+		}
+		Response response;
+		while((response = this.responses.poll()) != null) {
+			if(response.response != null)
+				response.response.release();
+		}
+		HandOver handOver;
+		while((handOver = this.handOvers.poll()) != null) {
+			cut++;
+			this.server.getMetrics().connectionClosed();
+			discard(handOver.channel);
+		}
+		this.cut = cut;
+		try {
+			this.selector.close();
+		}
+		catch(IOException e) {
+		}
+	}
+
+	/**
+	 * Cuts a connection whose handling failed with a bug rather than an I/O
+	 * error, so one bad connection does not take the whole reactor down.
+	 */
+	private void fail(ReactorConnection connection, RuntimeException e) {
+		Server.logger.log(Level.WARNING, "Reactor connection failed", e);
+		try {
+			connection.abort();
+		}
+		catch(RuntimeException ignored) {
+		}
+	}
+
+	/**
+	 * Closes the connections that have no request in progress.
+	 *
+	 * @return the number of connections left open
+	 */
+	private int closeWaitingConnections() {
+		int busy = this.newChannels.size();
+		for(SelectionKey key : this.selector.keys()) {
+			if(key.isValid() && !((ReactorConnection) key.attachment()).closeIfWaiting())
+				busy++;
+		}
+		return busy;
+	}
+
+	private void startHandOvers() {
+		HandOver handOver;
+		while((handOver = this.handOvers.poll()) != null) {
+			SocketChannel channel = handOver.channel;
+			try {
+				channel.configureBlocking(true);
+			}
+			catch(IOException e) {
+				Server.logger.warning("Could not hand over channel: " + e.getMessage());
+				this.server.getMetrics().connectionClosed();
+				discard(channel);
+				continue;
+			}
+			// Bound by the pool like any other blocking connection, a full
+			// pool turns it away
+			this.server.dispatch(new ConnectionHandler(this.server, channel.socket(), 
+					handOver.request, handOver.decoder));
+		}
+	}
+
+	private void registerNewChannels() {
+		SocketChannel channel;
+		while((channel = this.newChannels.poll()) != null) {
+			try {
+				channel.configureBlocking(false);
+				SelectionKey key = channel.register(this.selector, SelectionKey.OP_READ);
+				key.attach(new ReactorConnection(this.server, this, channel, key));
+			}
+			catch(IOException e) {
+				Server.logger.warning("Could not register channel: " + e.getMessage());
+				discard(channel);
+			}
+		}
+	}
+
+	/**
+	 * Closes a channel that never got a connection, giving back its share of
+	 * the connections of its client address.
+	 */
+	private void discard(SocketChannel channel) {
+		this.server.getConnectionLimiter().release(channel.socket().getInetAddress());
+		try {
+			channel.close();
+		}
+		catch(IOException e) {
+		}
+	}
+
+	/**
+	 * A response on its way from the response executor to the reactor.
+	 */
+	private static class Response {
+		private ReactorConnection connection;
+		private HttpResponse response;
+
+		private Response(ReactorConnection connection, HttpResponse response) {
+			this.connection = connection;
+			this.response = response;
+		}
+	}
+
+	/**
+	 * A channel on its way from the reactor to the worker pool.
+	 */
+	private static class HandOver {
+		private SocketChannel channel;
+		private HttpRequest request;
+		private HttpRequestDecoder decoder;
+
+		private HandOver(SocketChannel channel, HttpRequest request, HttpRequestDecoder decoder) {
+			this.channel = channel;
+			this.request = request;
+			this.decoder = decoder;
+		}
+	}
+}
@@ -0,0 +1,554 @@
+/*
+ * ReactorConnection.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import http2.Http2;
+import protocol.ChunkedBody;
+import protocol.HttpRequest;
+import protocol.HttpRequestDecoder;
+import protocol.HttpResponse;
+import protocol.HttpResponseFactory;
+import protocol.Protocol;
+import protocol.ProtocolException;
+
+/**
+ * The state of one non-blocking connection owned by a {@link Reactor}. It is
+ * the non-blocking counterpart of {@link ConnectionHandler}: requests are
+ * decoded as bytes arrive and responses are written as the socket drains,
+ * without a thread waiting on either. Responses are produced on the server's
+ * response executor, so compressing or caching a body does not hold up the
+ * other connections of the reactor, and handed back to the reactor to be
+ * written.
+ *
+ * A connection always has one deadline on the server's {@link TimerWheel},
+ * the one of what it is doing: waiting for a request, receiving its header
+ * block or writing its response. While receiving or writing it also has a
+ * {@link MinimumRate} to keep up with. The timer hands an expired deadline
+ * or rate check back to the reactor, which acts on it from its own thread.
+ */
+class ReactorConnection implements TimerWheel.Task {
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	private static final int IDLE = 0;
+	private static final int HEADER = 1;
+	private static final int RESPONSE = 2;
+
+	private Server server;
+	private Reactor reactor;
+	private SocketChannel channel;
+	private SelectionKey key;
+	private HttpRequestDecoder decoder;
+
+	private HttpResponse response;
+	private ByteBuffer header;
+	private List<HttpResponse.Segment> segments;
+	private int segment;
+	private ChunkedBody chunks;
+	private ByteBuffer content;
+	private FileChannel body;
+	private long position;
+	private long remaining;
+	private long start;
+	private long sent;
+	private int phase;
+	private TimerWheel.Timeout deadline;
+	private MinimumRate readRate;
+	private MinimumRate writeRate;
+	private MinimumRate rate;
+	private TimerWheel.Timeout rateCheck;
+	private HttpRequest request;
+	private byte[] address;
+	private int served;
+	private boolean keepAlive;
+	private boolean processing;
+	private boolean closed;
+
+	ReactorConnection(Server server, Reactor reactor, SocketChannel channel, SelectionKey key) {
+		this.server = server;
+		this.reactor = reactor;
+		this.channel = channel;
+		this.key = key;
+		this.decoder = new HttpRequestDecoder();
+		this.start = 0;
+		this.address = channel.socket().getInetAddress().getAddress();
+		this.served = 0;
+		this.processing = false;
+		this.closed = false;
+		ServerConfiguration configuration = server.getConfiguration();
+		if(configuration.getMinReadRate() > 0)
+			this.readRate = new MinimumRate(configuration.getMinReadRate());
+		if(configuration.getMinWriteRate() > 0)
+			this.writeRate = new MinimumRate(configuration.getMinWriteRate());
+		server.getMetrics().connectionOpened();
+		setDeadline(IDLE, server.getConfiguration().getKeepAliveTimeout());
+	}
+
+	/**
+	 * Reads what the socket has and responds once a full request arrived.
+	 *
+	 * @param buffer A scratch buffer shared by the reactor.
+	 * @throws IOException
+	 */
+	void read(ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		int count = this.channel.read(buffer);
+		if(count < 0) {
+			close();
+			return;
+		}
+		buffer.flip();
+		if(this.start == 0)
+			this.start = System.nanoTime();
+		if(this.phase == IDLE && count > 0) {
+			setDeadline(HEADER, this.server.getConfiguration().getHeaderTimeout());
+			startRate(this.readRate);
+		}
+		if(this.rate != null)
+			this.rate.transferred(count);
+		decode(buffer);
+	}
+
+	/**
+	 * Continues writing the pending response, stopping as soon as the socket
+	 * would block.
+	 *
+	 * @throws IOException
+	 */
+	void write() throws IOException {
+		while(this.header.hasRemaining()) {
+			int count = this.channel.write(this.header);
+			if(count == 0)
+				return;
+			sent(count);
+		}
+		do {
+			while(this.content != null && this.content.hasRemaining()) {
+				int count = this.channel.write(this.content);
+				if(count == 0)
+					return;
+				sent(count);
+			}
+
+			while(this.remaining > 0) {
+				long sent = this.body.transferTo(this.position, this.remaining, this.channel);
+				if(sent == 0) {
+					// Either the socket is full or the file shrunk under us
+					if(this.position >= this.body.size())
+						cutShort();
+					return;
+				}
+				this.position += sent;
+				this.remaining -= sent;
+				sent(sent);
+			}
+		} while(nextSegment());
+		finish();
+	}
+
+	/**
+	 * Moves on to the next segment of the body.
+	 *
+	 * @return false if the whole body has been sent
+	 * @throws IOException
+	 */
+	private boolean nextSegment() throws IOException {
+		if(this.chunks != null) {
+			// A chunked body goes on until its last chunk is out
+			this.content = this.chunks.next();
+			if(this.content != null)
+				return true;
+			this.chunks = null;
+		}
+		if(this.segment >= this.segments.size())
+			return false;
+		HttpResponse.Segment segment = this.segments.get(this.segment++);
+		this.content = segment.getBuffer();
+		this.remaining = 0;
+		if(segment.getChunkedBody() != null) {
+			this.chunks = segment.getChunkedBody();
+			this.content = this.chunks.next();
+		}
+		else if(this.content == null) {
+			// The file is opened once for all its slices
+			if(this.body == null)
+				this.body = new FileInputStream(this.response.getFile()).getChannel();
+			this.position = segment.getPosition();
+			this.remaining = segment.getCount();
+		}
+		return true;
+	}
+
+	/**
+	 * Gives up a response whose file shrank while it was being sent. Fewer
+	 * bytes than the <tt>Content-Length</tt> went out, so the client can only
+	 * tell from the connection closing.
+	 */
+	private void cutShort() {
+		Server.logger.warning("File shrank while being sent: " + this.response.getFile());
+		this.server.recordResponse(this.address, this.request, this.response.getStatus(), 
+				this.sent, System.nanoTime() - this.start);
+		this.request = null;
+		close();
+	}
+
+	private void sent(long count) {
+		this.sent += count;
+		if(this.rate != null)
+			this.rate.transferred(count);
+	}
+
+	/**
+	 * Called on the timer thread, passes the deadline on to the reactor.
+	 */
+	public void expired(TimerWheel.Timeout timeout) {
+		this.reactor.expire(timeout);
+	}
+
+	/**
+	 * Acts on a deadline that passed, on the reactor thread. An idle
+	 * connection is closed, a request that is not fully received or whose
+	 * response was not produced in time is answered with 408 and a response
+	 * the client does not take fast enough is cut off.
+	 *
+	 * @param timeout The deadline, ignored if it is not the current one.
+	 */
+	void timedOut(TimerWheel.Timeout timeout) {
+		if(this.closed)
+			return;
+		if(timeout == this.rateCheck) {
+			checkRate();
+			return;
+		}
+		if(timeout != this.deadline)
+			return;
+		if(this.phase == IDLE) {
+			close();
+			return;
+		}
+		if(this.phase == RESPONSE && !this.processing) {
+			abort();
+			return;
+		}
+		try {
+			// A response produced too late is released when it comes back
+			this.processing = false;
+			this.keepAlive = false;
+			send(HttpResponseFactory.create408RequestTimedOut(Protocol.CLOSE));
+		}
+		catch(IOException e) {
+			close();
+		}
+	}
+
+	/**
+	 * Checks the transfer being timed against its minimum rate, and checks
+	 * it again once the time it has left is up. A client that sends too
+	 * slowly is answered with 408, one that reads too slowly is cut off.
+	 */
+	private void checkRate() {
+		if(this.rate == null)
+			return;
+		long remaining = this.rate.remaining();
+		if(remaining > 0) {
+			this.rateCheck = this.server.getTimers().schedule(this, remaining);
+			return;
+		}
+		if(this.rate == this.writeRate) {
+			this.server.getMetrics().slowWrite();
+			abort();
+			return;
+		}
+		this.server.getMetrics().slowRead();
+		try {
+			this.keepAlive = false;
+			send(HttpResponseFactory.create408RequestTimedOut(Protocol.CLOSE));
+		}
+		catch(IOException e) {
+			close();
+		}
+	}
+
+	/**
+	 * Starts timing the request being read or the response being written
+	 * against its minimum rate.
+	 *
+	 * @param rate The rate to keep up with, null if there is none.
+	 */
+	private void startRate(MinimumRate rate) {
+		stopRate();
+		if(rate == null)
+			return;
+		rate.start();
+		this.rate = rate;
+		this.rateCheck = this.server.getTimers().schedule(this, MinimumRate.GRACE);
+	}
+
+	private void stopRate() {
+		if(this.rate == null)
+			return;
+		this.rate.stop();
+		this.rate = null;
+		this.rateCheck.cancel();
+	}
+
+	private void setDeadline(int phase, long timeout) {
+		if(this.deadline != null)
+			this.deadline.cancel();
+		this.phase = phase;
+		this.deadline = this.server.getTimers().schedule(this, timeout);
+	}
+
+	/**
+	 * Closes the connection if no request is in progress on it, used when
+	 * the server drains.
+	 *
+	 * @return true if the connection was closed
+	 */
+	boolean closeIfWaiting() {
+		if(this.processing || this.header != null || this.decoder.hasPendingBytes())
+			return false;
+		close();
+		return true;
+	}
+
+	/**
+	 * Cuts the connection, the client gets a reset and whatever has not been
+	 * sent yet is discarded.
+	 */
+	void abort() {
+		if(this.closed)
+			return;
+		try {
+			this.channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+		}
+		catch(IOException e) {
+		}
+		close();
+	}
+
+	/**
+	 * Closes the connection and any file being sent on it.
+	 */
+	void close() {
+		if(this.closed)
+			return;
+		this.closed = true;
+		this.deadline.cancel();
+		stopRate();
+		this.server.getConnectionLimiter().release(this.channel.socket().getInetAddress());
+		Metrics metrics = this.server.getMetrics();
+		if(this.request != null)
+			metrics.requestFinished();
+		metrics.connectionClosed();
+		this.key.cancel();
+		closeBody();
+		try {
+			this.channel.close();
+		}
+		catch(IOException e) {
+		}
+	}
+
+	private void decode(ByteBuffer buffer) throws IOException {
+		HttpResponse response;
+		try {
+			HttpRequest request = this.decoder.decode(buffer);
+			if(request == null)
+				return;
+			if(Http2.isPreface(request) || (Http2.isUpgrade(request) && !this.decoder.hasPendingBytes())) {
+				handOver(request);
+				return;
+			}
+			this.request = request;
+			this.server.getMetrics().requestStarted();
+			this.served++;
+			this.keepAlive = request.isKeepAlive()
+					&& this.served < this.server.getConfiguration().getMaxKeepAliveRequests()
+					&& !this.server.isStopping();
+			process(request, this.keepAlive ? Protocol.OPEN : Protocol.CLOSE);
+			return;
+		}
+		catch(ProtocolException pe) {
+			// The request was malformed or exceeded a limit
+			this.keepAlive = false;
+			response = HttpResponseFactory.createError(pe, Protocol.CLOSE);
+		}
+		catch(Exception e) {
+			// A header block we could not make sense of is a bad request too
+			this.keepAlive = false;
+			response = HttpResponseFactory.create400BadRequest(Protocol.CLOSE);
+		}
+		send(response);
+	}
+
+	/**
+	 * Has the response to a request produced on the response executor. The
+	 * connection neither reads nor writes until the reactor brings the
+	 * response back to {@link #respond(HttpResponse)}, but the request
+	 * timeout runs meanwhile.
+	 */
+	private void process(final HttpRequest request, final String connection) throws IOException {
+		stopRate();
+		setDeadline(RESPONSE, this.server.getConfiguration().getRequestTimeout() 
+				- TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.start));
+		this.key.interestOps(0);
+		this.processing = true;
+		try {
+			this.server.getResponseExecutor().execute(new Runnable() {
+				public void run() {
+					HttpResponse response = null;
+					try {
+						response = server.getRequestProcessor().process(request, connection);
+					}
+					catch(RuntimeException e) {
+						Server.logger.log(Level.WARNING, "Could not produce response", e);
+					}
+					reactor.respond(ReactorConnection.this, response);
+				}
+			});
+		}
+		catch(RejectedExecutionException e) {
+			// The server is going down
+			this.processing = false;
+			this.keepAlive = false;
+			send(HttpResponseFactory.create503ServiceUnavailable(Protocol.CLOSE));
+		}
+	}
+
+	/**
+	 * Writes a response the response executor produced, on the reactor
+	 * thread. One that comes back after the request timed out is only
+	 * released.
+	 *
+	 * @param response The response, null if producing it failed.
+	 * @throws IOException
+	 */
+	void respond(HttpResponse response) throws IOException {
+		if(this.closed || !this.processing) {
+			if(response != null)
+				response.release();
+			return;
+		}
+		this.processing = false;
+		if(response == null) {
+			this.keepAlive = false;
+			response = HttpResponseFactory.create400BadRequest(Protocol.CLOSE);
+		}
+		send(response);
+	}
+
+	/**
+	 * Gives the connection up to the worker pool, for a client that
+	 * switches to HTTP/2. Its streams are produced and sent concurrently,
+	 * which the blocking HTTP/2 engine does; the reactor only stops watching
+	 * the channel, the connection stays open and counted.
+	 */
+	private void handOver(HttpRequest request) {
+		this.closed = true;
+		this.deadline.cancel();
+		stopRate();
+		this.key.cancel();
+		this.reactor.handOver(this.channel, request, this.decoder);
+	}
+
+	private void send(HttpResponse response) throws IOException {
+		// The response has what is left of the request timeout to go out,
+		// a 408 for a late header block gets a fresh one
+		long timeout = this.server.getConfiguration().getRequestTimeout();
+		if(this.request != null)
+			timeout -= TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.start);
+		setDeadline(RESPONSE, timeout);
+		startRate(this.writeRate);
+
+		// Stop reading until this response is out, which keeps responses
+		// in the order the requests came in
+		this.key.interestOps(SelectionKey.OP_WRITE);
+		this.response = response;
+		this.sent = 0;
+		this.header = ByteBuffer.wrap(response.getHeaderBytes());
+		this.segments = response.getSegments();
+		this.segment = 0;
+		this.chunks = null;
+		this.content = null;
+		this.remaining = 0;
+		write();
+	}
+
+	private void finish() throws IOException {
+		this.server.recordResponse(this.address, this.request, this.response.getStatus(), 
+				this.sent, System.nanoTime() - this.start);
+		this.request = null;
+		if(!this.keepAlive) {
+			close();
+			return;
+		}
+
+		// Get ready for the next request on this connection
+		closeBody();
+		this.header = null;
+		this.content = null;
+		this.start = 0;
+		this.key.interestOps(SelectionKey.OP_READ);
+		if(this.decoder.hasPendingBytes()) {
+			// The client already sent (part of) the next request
+			this.start = System.nanoTime();
+			setDeadline(HEADER, this.server.getConfiguration().getHeaderTimeout());
+			startRate(this.readRate);
+			decode(EMPTY);
+		}
+		else {
+			stopRate();
+			setDeadline(IDLE, this.server.getConfiguration().getKeepAliveTimeout());
+		}
+	}
+
+	private void closeBody() {
+		if(this.response != null) {
+			// Give back a mapped file the body may have been sent from
+			this.content = null;
+			this.segments = null;
+			this.chunks = null;
+			this.response.release();
+			this.response = null;
+		}
+		if(this.body == null)
+			return;
+		try {
+			this.body.close();
+		}
+		catch(IOException e) {
+		}
+		this.body = null;
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * RequestPipeline.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import protocol.HttpRequest;
+import protocol.HttpResponse;
+
+/**
+ * The requests a client pipelined on one connection whose responses have not
+ * been written yet. Responses may be produced out of order, the oldest
+ * request is always taken out first so they go back in request order.
+ *
+ * Every request has a deadline of
+ * {@link ServerConfiguration#getRequestTimeout()} on the server's
+ * {@link TimerWheel}. A request whose response is not being written by then
+ * is given up, so its handler can answer 408 right away; a response still
+ * being written then is cut off by closing the connection.
+ *
+ * A pipeline belongs to one {@link ConnectionHandler} and is not thread safe.
+ */
+public class RequestPipeline {
+	private Server server;
+	private ConnectionHandler handler;
+	private int depth;
+	private ArrayDeque<Entry> entries;
+
+	/**
+	 * @param server The server producing the responses.
+	 * @param handler The handler writing the responses.
+	 * @param depth The most requests that may wait for their response.
+	 */
+	public RequestPipeline(Server server, ConnectionHandler handler, int depth) {
+		this.server = server;
+		this.handler = handler;
+		this.depth = depth;
+		this.entries = new ArrayDeque<Entry>(depth);
+	}
+
+	/**
+	 * Queues a request and starts producing its response. The response of a
+	 * request that arrives behind others is produced on the server's
+	 * response executor, so it can be ready by the time it is written.
+	 *
+	 * @param request The request.
+	 * @param connection The connection header value for the response.
+	 * @param keepAlive Whether the connection stays open after the response.
+	 * @param start When the request arrived, as a {@link System#nanoTime()} value.
+	 */
+	public void add(final HttpRequest request, final String connection, boolean keepAlive, long start) {
+		final Entry entry = new Entry(request, keepAlive, start);
+		FutureTask<HttpResponse> task = new FutureTask<HttpResponse>(new Callable<HttpResponse>() {
+			public HttpResponse call() throws Exception {
+				HttpResponse response = server.getRequestProcessor().process(request, connection);
+				entry.produced(response);
+				return response;
+			}
+		});
+		entry.response = task;
+		schedule(entry);
+
+		if(this.entries.isEmpty())
+			task.run();
+		else
+			this.server.getResponseExecutor().execute(task);
+		this.entries.add(entry);
+	}
+
+	/**
+	 * Queues a response that is already known, e.g. for a bad request.
+	 *
+	 * @param response The response.
+	 * @param keepAlive Whether the connection stays open after the response.
+	 * @param start When the request arrived, as a {@link System#nanoTime()} value.
+	 */
+	public void add(HttpResponse response, boolean keepAlive, long start) {
+		Entry entry = new Entry(null, keepAlive, start);
+		FutureTask<HttpResponse> task = new FutureTask<HttpResponse>(new Runnable() {
+			public void run() {
+			}
+		}, response);
+		task.run();
+		entry.response = task;
+		entry.produced(response);
+		schedule(entry);
+		this.entries.add(entry);
+	}
+
+	private void schedule(Entry entry) {
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - entry.start);
+		long timeout = this.server.getConfiguration().getRequestTimeout() - elapsed;
+		entry.deadline = this.server.getTimers().schedule(entry, timeout);
+	}
+
+	/**
+	 * Removes the oldest request from the pipeline.
+	 *
+	 * @return the oldest entry or null if the pipeline is empty
+	 */
+	public Entry poll() {
+		return this.entries.poll();
+	}
+
+	/**
+	 * Checks if the pipeline has room for another request.
+	 *
+	 * @return true if the pipeline is at its depth limit
+	 */
+	public boolean isFull() {
+		return this.entries.size() >= this.depth;
+	}
+
+	/**
+	 * @return true if no response is waiting to be written
+	 */
+	public boolean isEmpty() {
+		return this.entries.isEmpty();
+	}
+
+	/**
+	 * Gives up the responses that have not been written, used when the
+	 * connection breaks before they could be. Their requests no longer
+	 * count as in flight.
+	 */
+	public void clear() {
+		Entry entry;
+		while((entry = this.entries.poll()) != null) {
+			if(entry.request != null)
+				this.server.getMetrics().requestFinished();
+			entry.deadline.cancel();
+			entry.abandon();
+		}
+	}
+
+	/**
+	 * One pipelined request.
+	 */
+	public class Entry implements TimerWheel.Task {
+		private static final int QUEUED = 0;
+		private static final int WRITING = 1;
+		private static final int DONE = 2;
+		private static final int ABANDONED = 3;
+
+		private HttpRequest request;
+		private Future<HttpResponse> response;
+		private boolean keepAlive;
+		private long start;
+		private TimerWheel.Timeout deadline;
+		private AtomicInteger state;
+		private AtomicReference<HttpResponse> produced;
+
+		private Entry(HttpRequest request, boolean keepAlive, long start) {
+			this.request = request;
+			this.keepAlive = keepAlive;
+			this.start = start;
+			this.state = new AtomicInteger(QUEUED);
+			this.produced = new AtomicReference<HttpResponse>();
+		}
+
+		/**
+		 * @return the request or null if the response answers one that 
+		 * could not be read
+		 */
+		public HttpRequest getRequest() {
+			return request;
+		}
+
+		/**
+		 * Waits for the response to be produced.
+		 *
+		 * @return the response
+		 * @throws Exception {@link java.util.concurrent.CancellationException}
+		 * if the deadline passed first
+		 */
+		public HttpResponse getResponse() throws Exception {
+			return this.response.get();
+		}
+
+		/**
+		 * @return true if the connection stays open after this response
+		 */
+		public boolean isKeepAlive() {
+			return keepAlive;
+		}
+
+		/**
+		 * @return when the request arrived, as a {@link System#nanoTime()} value
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		/**
+		 * Claims the response for writing. Fails if the deadline has passed,
+		 * in which case the response is released by the pipeline and must
+		 * not be used.
+		 *
+		 * @return true if the response may be written
+		 */
+		public boolean startWriting() {
+			return this.state.compareAndSet(QUEUED, WRITING);
+		}
+
+		/**
+		 * Marks the response as written and cancels the deadline.
+		 *
+		 * @return false if the deadline passed while the response was being
+		 * written and the connection has been closed
+		 */
+		public boolean finishWriting() {
+			this.deadline.cancel();
+			return this.state.compareAndSet(WRITING, DONE);
+		}
+
+		public void expired(TimerWheel.Timeout timeout) {
+			// Giving up the response also wakes up a handler waiting for it,
+			// one that is writing has a client that does not read fast enough
+			if(!abandon() && this.state.compareAndSet(WRITING, ABANDONED))
+				handler.close();
+		}
+
+		private void produced(HttpResponse response) {
+			this.produced.set(response);
+			if(this.state.get() == ABANDONED)
+				release();
+		}
+
+		/**
+		 * Gives up a response that has not been claimed for writing.
+		 */
+		private boolean abandon() {
+			if(!this.state.compareAndSet(QUEUED, ABANDONED))
+				return false;
+			release();
+			this.response.cancel(false);
+			return true;
+		}
+
+		private void release() {
+			// Whoever sees both the response and the abandoned state releases it
+			HttpResponse response = this.produced.getAndSet(null);
+			if(response != null)
+				response.release();
+		}
+	}
+}
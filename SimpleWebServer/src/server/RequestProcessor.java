@@ -0,0 +1,357 @@
+/*
+ * RequestProcessor.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+import java.util.Set;
+
+import protocol.ByteRange;
+import protocol.HttpRequest;
+import protocol.HttpResponse;
+import protocol.HttpResponseFactory;
+import protocol.Protocol;
+
+/**
+ * Maps a parsed {@link HttpRequest} to the {@link HttpResponse} that should be
+ * sent back for it. This holds no connection state, so the same processor is
+ * shared by every {@link ConnectionHandler} and every {@link Reactor} of a
+ * {@link Server}.
+ */
+public class RequestProcessor {
+	private static final String IF_NONE_MATCH = "if-none-match";
+	private static final String IF_MODIFIED_SINCE = "if-modified-since";
+	private static final String RANGE = "range";
+	private static final String IF_RANGE = "if-range";
+	private static final String ACCEPT_ENCODING = "accept-encoding";
+
+	private Server server;
+	private String metricsPath;
+	private MetricsEndpoint metrics;
+
+	/**
+	 * @param server The server whose root directory is served.
+	 */
+	public RequestProcessor(Server server) {
+		this.server = server;
+		String path = server.getConfiguration().getMetricsPath();
+		if(path != null && !path.isEmpty()) {
+			this.metricsPath = path;
+			this.metrics = new MetricsEndpoint(server);
+		}
+	}
+
+	/**
+	 * Creates the response for the supplied request.
+	 *
+	 * @param request The request to answer.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return The response, never null.
+	 */
+	public HttpResponse process(HttpRequest request, String connection) {
+		HttpResponse response = null;
+		try {
+			// Fill in the code to create a response for version mismatch.
+			// You may want to use constants such as Protocol.VERSION, Protocol.NOT_SUPPORTED_CODE, and more.
+			// You can check if the version matches as follows
+			// HTTP/2 requests are answered the same, their framing is
+			// taken care of by the http2 package
+			if(!request.getVersion().equalsIgnoreCase(Protocol.VERSION)
+					&& !request.getVersion().equalsIgnoreCase(Protocol.VERSION_2)) {
+				// Here you checked that the "Protocol.VERSION" string is not equal to the
+				// "request.version" string ignoring the case of the letters in both strings
+				// TODO: Fill in the rest of the code here
+			}
+			else if(request.getMethod().equalsIgnoreCase(Protocol.GET)) {
+				if(isMetricsRequest(request.getUri()))
+					response = this.metrics.createResponse(connection);
+				else
+					response = processGet(request, connection);
+			}
+			else {
+				response = HttpResponseFactory.create501NotImplemented(connection);
+			}
+		}
+		catch(Exception e) {
+			e.printStackTrace();
+		}
+
+		// TODO: So far response could be null for protocol version mismatch.
+		// So this is a temporary patch for that problem and should be removed
+		// after a response object is created for protocol version mismatch.
+		if(response == null) {
+			response = HttpResponseFactory.create400BadRequest(connection);
+		}
+		return response;
+	}
+
+	private HttpResponse processGet(HttpRequest request, String connection) throws Exception {
+		// Handling GET request here
+		// Get relative URI path from request
+		String uri = request.getUri();
+		// Get root directory path from server
+		String rootDirectory = server.getRootDirectory();
+		// Combine them together to form absolute file path
+		String path = rootDirectory + uri;
+
+		// Hot files are answered without touching the file system
+		ContentCache cache = server.getContentCache();
+		ContentCache.Entry entry = cache.get(path);
+		if(entry == null) {
+			File file = resolve(rootDirectory, uri);
+			if(file == null) {
+				// File does not exist so lets create 404 file not found code
+				return HttpResponseFactory.create404NotFound(connection);
+			}
+			entry = cache.put(path, file);
+		}
+
+		// Text and files shipped precompressed go out compressed to clients
+		// that take it, so what is sent depends on Accept-Encoding and shared
+		// caches have to be told
+		Compressor compressor = server.getCompressor();
+		boolean compressible = compressor.isCompressible(entry.getContentType(), entry.getLength());
+		Set<Compressor.Encoding> precompressed = entry.getSidecarEncodings();
+		boolean varies = compressible || !precompressed.isEmpty();
+		Compressor.Encoding encoding = null;
+		if(varies)
+			encoding = compressor.negotiate(request.getHeader(ACCEPT_ENCODING), compressible, precompressed);
+
+		// The client's copy is still current, it only gets the validators
+		if(isNotModified(request, entry, entry.getETag(encoding)))
+			return vary(HttpResponseFactory.create304NotModified(entry.getLastModifiedDate(), 
+					entry.getETag(encoding), connection), varies);
+
+		// Parts of the file, unless it changed since the client got the others.
+		// Ranges always refer to the file as is.
+		String range = request.getHeader(RANGE);
+		if(range != null && isRangeCurrent(request, entry)) {
+			List<ByteRange> ranges = ByteRange.parse(range, entry.getLength());
+			if(ranges != null && ranges.isEmpty())
+				return HttpResponseFactory.create416RangeNotSatisfiable(entry.getLength(), connection);
+			if(ranges != null)
+				return vary(HttpResponseFactory.create206PartialContent(entry.getFile(), entry.getLastModified(), 
+						entry.getLength(), entry.getContent(), server.getMappedFileCache(), 
+						entry.getLastModifiedDate(), entry.getETag(), ranges, connection), varies);
+		}
+
+		if(encoding != null) {
+			HttpResponse response = createEncoded(path, entry, encoding, connection);
+			if(response != null)
+				return vary(response, true);
+		}
+
+		// Lets create 200 OK response
+		return vary(HttpResponseFactory.create200OK(entry.getFile(), entry.getLastModified(), entry.getLength(), 
+				entry.getContent(), server.getMappedFileCache(), entry.getLastModifiedDate(), entry.getETag(), 
+				connection), varies);
+	}
+
+	/**
+	 * Creates the response carrying a compressed variant of a file. A
+	 * precompressed copy is sent if there is one, from memory if it is
+	 * small enough to be cached. Otherwise the file is compressed, in full
+	 * or while it is sent if it is too large for that.
+	 *
+	 * @return the response or null if the file could not be compressed
+	 */
+	private HttpResponse createEncoded(String path, ContentCache.Entry entry, Compressor.Encoding encoding, 
+			String connection) {
+		ContentCache.Sidecar sidecar = entry.getSidecar(encoding);
+		String etag = entry.getETag(encoding);
+		if(sidecar == null && server.getCompressor().isStreamed(entry.getLength())) {
+			// Too large to hold compressed, it is compressed as it is sent
+			try {
+				ReadableByteChannel body = server.getCompressor().open(entry.getFile(), entry.getLength(), encoding);
+				return HttpResponseFactory.create200OKEncodedChunked(body, entry.getContentType(), 
+						entry.getLastModifiedDate(), etag, encoding.getToken(), connection);
+			}
+			catch(IOException e) {
+				Server.logger.fine(e.toString());
+				return null;
+			}
+		}
+
+		ByteBuffer variant = entry.getVariant(encoding);
+		if(variant == null) {
+			if(sidecar != null)
+				variant = server.getContentCache().loadSidecar(path, entry, encoding);
+			else
+				variant = encode(path, entry, encoding);
+		}
+
+		if(variant != null)
+			return HttpResponseFactory.create200OKEncoded(entry.getFile(), entry.getLastModified(), 
+					variant.remaining(), variant, null, entry.getContentType(), entry.getLastModifiedDate(), 
+					etag, encoding.getToken(), connection);
+		if(sidecar != null)
+			return HttpResponseFactory.create200OKEncoded(sidecar.getFile(), sidecar.getLastModified(), 
+					sidecar.getLength(), null, server.getMappedFileCache(), entry.getContentType(), 
+					entry.getLastModifiedDate(), etag, encoding.getToken(), connection);
+		return null;
+	}
+
+	/**
+	 * Compresses a file and caches the result.
+	 *
+	 * @return the variant or null if the file could not be read
+	 */
+	private ByteBuffer encode(String path, ContentCache.Entry entry, Compressor.Encoding encoding) {
+		Compressor compressor = server.getCompressor();
+		byte[] compressed;
+		ByteBuffer content = entry.getContent();
+		try {
+			if(content != null)
+				compressed = compressor.compress(content, encoding);
+			else
+				compressed = compressor.compress(entry.getFile(), entry.getLength(), encoding);
+		}
+		catch(IOException e) {
+			// Most likely the file changed, send it as is this time
+			Server.logger.fine(e.toString());
+			return null;
+		}
+		server.getContentCache().putVariant(path, entry, encoding, compressed);
+		return ByteBuffer.wrap(compressed);
+	}
+
+	/**
+	 * Marks a response for a file that can be sent compressed as depending
+	 * on <tt>Accept-Encoding</tt>, so caches keep the variants apart.
+	 */
+	private static HttpResponse vary(HttpResponse response, boolean varies) {
+		if(varies)
+			response.put(Protocol.VARY, Protocol.ACCEPT_ENCODING);
+		return response;
+	}
+
+	/**
+	 * Evaluates the conditional request fields the way RFC 7232 does for a
+	 * GET: <tt>If-None-Match</tt> decides when it is sent, otherwise the file
+	 * must not have changed since <tt>If-Modified-Since</tt>. HTTP dates
+	 * have a precision of one second, so the modification time is truncated
+	 * before comparing. Entity tags are those of the variant that would be
+	 * sent.
+	 */
+	private static boolean isNotModified(HttpRequest request, ContentCache.Entry entry, String etag) {
+		String match = request.getHeader(IF_NONE_MATCH);
+		if(match != null)
+			return matches(match, etag);
+
+		String date = request.getHeader(IF_MODIFIED_SINCE);
+		if(date == null)
+			return false;
+		long since = GMTConversion.parse(date);
+		// Malformed dates and dates in the future are ignored
+		if(since == -1 || since > System.currentTimeMillis())
+			return false;
+		return entry.getLastModified() / 1000 <= since / 1000;
+	}
+
+	/**
+	 * Checks the <tt>If-Range</tt> field, which makes a range request fall
+	 * back to the whole file if the file changed. Only strong validators
+	 * count: the entity tag, or the modification time if it is at least a
+	 * second old, as a file may change twice within a second.
+	 */
+	private static boolean isRangeCurrent(HttpRequest request, ContentCache.Entry entry) {
+		String validator = request.getHeader(IF_RANGE);
+		if(validator == null)
+			return true;
+		validator = validator.trim();
+		if(validator.startsWith("\"") || validator.startsWith("W/"))
+			return validator.equals(entry.getETag());
+
+		long date = GMTConversion.parse(validator);
+		long modified = entry.getLastModified() / 1000;
+		return date != -1 && date / 1000 == modified && modified < System.currentTimeMillis() / 1000;
+	}
+
+	/**
+	 * Checks if an <tt>If-None-Match</tt> list names the supplied entity
+	 * tag, or is <tt>*</tt>. The comparison is weak, a <tt>W/</tt> in front
+	 * of a tag does not matter.
+	 */
+	private static boolean matches(String list, String etag) {
+		int length = list.length();
+		int i = 0;
+		while(i < length) {
+			char c = list.charAt(i);
+			if(c == ',' || c == ' ' || c == '\t') {
+				i++;
+				continue;
+			}
+			if(c == '*')
+				return true;
+			if(list.startsWith("W/", i))
+				i += 2;
+			// Quotes cannot appear inside a tag, so a match is a whole tag
+			if(list.startsWith(etag, i))
+				return true;
+			// Skip to the end of this tag
+			int open = list.indexOf('"', i);
+			int close = open < 0 ? -1 : list.indexOf('"', open + 1);
+			if(close < 0)
+				return false;
+			i = close + 1;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if the URI is the metrics path, with or without a query.
+	 */
+	private boolean isMetricsRequest(String uri) {
+		if(this.metricsPath == null || !uri.startsWith(this.metricsPath))
+			return false;
+		return uri.length() == this.metricsPath.length() || uri.charAt(this.metricsPath.length()) == '?';
+	}
+
+	/**
+	 * Finds the file a request URI refers to.
+	 *
+	 * @return The file, or null if there is nothing to serve.
+	 */
+	private File resolve(String rootDirectory, String uri) {
+		File file = new File(rootDirectory + uri);
+		// Check if the file exists
+		if(!file.exists()) {
+			return null;
+		}
+
+		if(!file.isDirectory()) {
+			// Its a file
+			return file;
+		}
+
+		// Look for default index.html file in a directory
+		String location = rootDirectory + uri + System.getProperty("file.separator") + Protocol.DEFAULT_FILE;
+		file = new File(location);
+		if(!file.exists()) {
+			return null;
+		}
+		return file;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * RingBuffer.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue for many producers and a single consumer that does not
+ * take locks. Producers claim a slot by advancing the tail with a
+ * compare-and-set and then publish their element into it; the consumer
+ * takes elements in claim order and frees their slots.
+ *
+ * @param <E> The type of the queued elements.
+ */
+public class RingBuffer<E> {
+	private AtomicReferenceArray<E> slots;
+	private int mask;
+	private AtomicLong tail;
+	private volatile long head;
+
+	/**
+	 * @param capacity The number of elements the buffer holds, rounded up
+	 * to a power of two.
+	 */
+	public RingBuffer(int capacity) {
+		if(capacity < 1)
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity)
+			size <<= 1;
+		this.slots = new AtomicReferenceArray<E>(size);
+		this.mask = size - 1;
+		this.tail = new AtomicLong();
+		this.head = 0;
+	}
+
+	/**
+	 * Adds an element unless the buffer is full. Safe to call from any
+	 * thread.
+	 *
+	 * @param element The element, not null.
+	 * @return true if the element was added
+	 */
+	public boolean offer(E element) {
+		while(true) {
+			long claimed = this.tail.get();
+			if(claimed - this.head >= this.slots.length())
+				return false;
+			if(this.tail.compareAndSet(claimed, claimed + 1)) {
+				this.slots.lazySet((int) claimed & this.mask, element);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Takes the oldest element. Must only be called by the consumer thread.
+	 *
+	 * @return the element or null if there is none, or if the producer of
+	 * the oldest one has not finished publishing it
+	 */
+	public E poll() {
+		long current = this.head;
+		int index = (int) current & this.mask;
+		E element = this.slots.get(index);
+		if(element == null)
+			return null;
+		this.slots.lazySet(index, null);
+		// Frees the slot for producers, after it has been cleared
+		this.head = current + 1;
+		return element;
+	}
+
+	/**
+	 * @return true if no element has been claimed but not yet taken
+	 */
+	public boolean isEmpty() {
+		return this.tail.get() == this.head;
+	}
+
+	/**
+	 * @return the number of elements the buffer holds
+	 */
+	public int capacity() {
+		return this.slots.length();
+	}
+}
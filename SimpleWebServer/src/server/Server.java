@@ -21,18 +21,34 @@
 
 package server;
 
-import gui.WebServer;
+import protocol.HttpRequest;
+import protocol.MappedFileCache;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.logging.FileHandler;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.logging.StreamHandler;
+import java.util.logging.XMLFormatter;
 
 /**
  * This represents a welcoming server for the incoming TCP request from a HTTP
@@ -44,29 +60,81 @@ import java.util.logging.Logger;
  * @author crawfonw
  */
 public class Server implements Runnable {
+	private static final long DRAIN_CHECK_INTERVAL = 50; // in ms
+	private static final long TIMER_TICK = 10; // in ms
+	private static final int TIMER_SLOTS = 1024;
+
 	private String rootDirectory;
 	private int port;
-	private boolean stop;
+	private volatile boolean stop;
 	private ServerSocket welcomeSocket;
 
-	private long connections;
-	private long serviceTime;
+	private StripedCounter connections;
+	private StripedCounter serviceTime;
+	private Metrics metrics;
 
-	public static Logger logger;
+	public static Logger logger = Logger.getLogger(Server.class.getName());
+	private static AsyncLogHandler logHandler;
 
-	private WebServer window;
+	private ServerListener listener;
+	private volatile Exception failure;
+	private ServerConfiguration configuration;
+	private WorkerPool workers;
+	private ThreadFactory virtualThreads;
+	private RequestProcessor processor;
+	private ContentCache cache;
+	private Compressor compressor;
+	private MappedFileCache mappedFiles;
+	private ExecutorService responseExecutor;
+	private volatile AccessLog accessLog;
+	private HeartbeatWriter heartbeat;
+	private Set<ConnectionHandler> handlers;
+	private ConnectionLimiter limiter;
+	private TimerWheel timers;
+	private Reactor[] reactors;
+	private volatile int drained;
+	private volatile int cut;
 
 	/**
 	 * @param rootDirectory
 	 * @param port
+	 * @param listener Told about failures, may be null.
+	 */
+	public Server(String rootDirectory, int port, ServerListener listener) {
+		this(createConfiguration(rootDirectory, port), listener);
+	}
+
+	/**
+	 * @param configuration
+	 * @param listener Told about failures, may be null.
 	 */
-	public Server(String rootDirectory, int port, WebServer window) {
-		this.rootDirectory = rootDirectory;
-		this.port = port;
+	public Server(ServerConfiguration configuration, ServerListener listener) {
+		this.configuration = configuration;
+		this.rootDirectory = configuration.getRootDirectory();
+		this.port = configuration.getPort();
 		this.stop = false;
-		this.connections = 0;
-		this.serviceTime = 0;
-		this.window = window;
+		this.connections = new StripedCounter();
+		this.serviceTime = new StripedCounter();
+		this.metrics = new Metrics();
+		this.listener = listener;
+		this.failure = null;
+		this.processor = new RequestProcessor(this);
+		this.cache = new ContentCache(configuration);
+		this.compressor = new Compressor(configuration);
+		this.mappedFiles = new MappedFileCache(configuration.getMappedFileThreshold(),
+				configuration.getMaxMappedFiles(), configuration.getMaxMappedBytes());
+		this.handlers = Collections.newSetFromMap(new ConcurrentHashMap<ConnectionHandler, Boolean>());
+		this.timers = new TimerWheel(TIMER_TICK, TIMER_SLOTS);
+		this.limiter = new ConnectionLimiter(configuration.getMaxConnectionsPerAddress());
+		this.drained = 0;
+		this.cut = 0;
+	}
+
+	private static ServerConfiguration createConfiguration(String rootDirectory, int port) {
+		ServerConfiguration configuration = new ServerConfiguration();
+		configuration.setRootDirectory(rootDirectory);
+		configuration.setPort(port);
+		return configuration;
 	}
 
 	/**
@@ -88,37 +156,225 @@ public class Server implements Runnable {
 	}
 
 	/**
-	 * Returns connections serviced per second. Synchronized to be used in
-	 * threaded environment.
+	 * Gets the configuration this server was created with.
+	 * 
+	 * @return the configuration
+	 */
+	public ServerConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * Gets the processor that turns requests into responses for this server.
+	 * 
+	 * @return the processor
+	 */
+	public RequestProcessor getRequestProcessor() {
+		return processor;
+	}
+
+	/**
+	 * Gets the cache of resolved files and their content.
+	 * 
+	 * @return the content cache
+	 */
+	public ContentCache getContentCache() {
+		return cache;
+	}
+
+	/**
+	 * Gets the compressor for responses to clients that accept it.
+	 * 
+	 * @return the compressor
+	 */
+	public Compressor getCompressor() {
+		return compressor;
+	}
+
+	/**
+	 * Gets the memory mappings of the large files this server sends. They
+	 * are released when the server stops.
+	 * 
+	 * @return the mapped file cache
+	 */
+	public MappedFileCache getMappedFileCache() {
+		return mappedFiles;
+	}
+
+	/**
+	 * Gets the timer wheel that enforces the read and request deadlines of
+	 * every connection.
+	 * 
+	 * @return the timers
+	 */
+	public TimerWheel getTimers() {
+		return timers;
+	}
+
+	/**
+	 * Gets the count of open connections per client address.
+	 * 
+	 * @return the connection limiter
+	 */
+	ConnectionLimiter getConnectionLimiter() {
+		return limiter;
+	}
+
+	/**
+	 * Gets the binary log that records every response.
+	 * 
+	 * @return the access log or null if it is turned off or not open yet
+	 */
+	public AccessLog getAccessLog() {
+		return accessLog;
+	}
+
+	/**
+	 * Gets the executor that produces responses for requests pipelined
+	 * behind others, so they are ready by the time their turn to be written
+	 * comes. It has one thread per processor and is created on first use.
+	 * 
+	 * @return the response executor
+	 */
+	public synchronized ExecutorService getResponseExecutor() {
+		if (this.responseExecutor == null) {
+			int threads = Runtime.getRuntime().availableProcessors();
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(threads,
+					threads, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						private AtomicInteger count = new AtomicInteger();
+
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "sws-response-"
+									+ count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			executor.allowCoreThreadTimeOut(true);
+			this.responseExecutor = executor;
+		}
+		return this.responseExecutor;
+	}
+
+	/**
+	 * Gets the number of connection handlers currently running.
+	 * 
+	 * @return the number of active workers
+	 */
+	public int getActiveWorkers() {
+		WorkerPool workers = this.workers;
+		return workers == null ? 0 : workers.getActiveCount();
+	}
+
+	/**
+	 * Gets the number of accepted connections waiting for a free worker.
+	 * 
+	 * @return the number of queued workers
+	 */
+	public int getQueuedWorkers() {
+		WorkerPool workers = this.workers;
+		return workers == null ? 0 : workers.getQueuedCount();
+	}
+
+	/**
+	 * Gets the number of connections answered with 503 because every worker
+	 * was busy and the queue was full.
+	 * 
+	 * @return the number of rejected workers
+	 */
+	public long getRejectedWorkers() {
+		WorkerPool workers = this.workers;
+		return workers == null ? 0 : workers.getRejectedCount();
+	}
+
+	/**
+	 * Gets the number of responses written so far.
+	 * 
+	 * @return the number of connections serviced
+	 */
+	public long getConnections() {
+		return this.connections.get();
+	}
+
+	/**
+	 * Gets the total time spent serving requests, in milliseconds.
+	 * 
+	 * @return the service time
+	 */
+	public long getServiceTime() {
+		return this.serviceTime.get();
+	}
+
+	/**
+	 * Returns connections serviced per second over the lifetime of the
+	 * server. See {@link #getMetrics()} for recent rates. The counters are
+	 * striped so handlers never contend on one location, nor block on the
+	 * server monitor, which would also pin virtual threads to their carrier.
 	 * 
 	 * @return
 	 */
-	public synchronized double getServiceRate() {
-		if (this.serviceTime == 0)
+	public double getServiceRate() {
+		long serviceTime = this.serviceTime.get();
+		if (serviceTime == 0)
 			return Long.MIN_VALUE;
-		double rate = this.connections / (double) this.serviceTime;
+		double rate = this.connections.get() / (double) serviceTime;
 		rate = rate * 1000;
 		return rate;
 	}
 
 	/**
-	 * Increments number of connection by the supplied value. Synchronized to be
-	 * used in threaded environment.
+	 * Increments number of connection by the supplied value. Safe to be used
+	 * in threaded environment.
 	 * 
 	 * @param value
 	 */
-	public synchronized void incrementConnections(long value) {
-		this.connections += value;
+	public void incrementConnections(long value) {
+		this.connections.add(value);
 	}
 
 	/**
-	 * Increments the service time by the supplied value. Synchronized to be
-	 * used in threaded environment.
+	 * Increments the service time by the supplied value. Safe to be used in
+	 * threaded environment.
 	 * 
 	 * @param value
 	 */
-	public synchronized void incrementServiceTime(long value) {
-		this.serviceTime += value;
+	public void incrementServiceTime(long value) {
+		this.serviceTime.add(value);
+	}
+
+	/**
+	 * Gets the request statistics of this server.
+	 * 
+	 * @return the metrics
+	 */
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Accounts for a response that has been written: updates the counters
+	 * and the {@link Metrics} and adds it to the access log.
+	 * 
+	 * @param address The raw address of the client.
+	 * @param request The request, or null if it could not be read.
+	 * @param status The status code of the response.
+	 * @param sent The number of bytes written for the response.
+	 * @param elapsed The time taken to serve the request, in nanoseconds.
+	 */
+	public void recordResponse(byte[] address, HttpRequest request, int status, long sent, long elapsed) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(elapsed);
+		this.connections.increment();
+		this.serviceTime.add(TimeUnit.NANOSECONDS.toMillis(elapsed));
+		this.metrics.record(status, request == null ? 0 : request.getLength(), sent, micros);
+		if (request != null)
+			this.metrics.requestFinished();
+
+		AccessLog log = this.accessLog;
+		if (log != null) {
+			log.log(address, request == null ? null : request.getMethod(),
+					request == null ? null : request.getUri(), status, sent, micros);
+		}
 	}
 
 	/**
@@ -128,69 +384,270 @@ public class Server implements Runnable {
 	 */
 	public void run() {
 
-		logger = Logger.getLogger(getClass().getName());
+		installLogHandler(configuration);
 
-		logger.info("Adding FileHandler");
+		logger.entering(getRootDirectory(), "run");
+		this.timers.start();
+		this.workers = new WorkerPool(configuration);
+		openAccessLog();
+		String heartbeatFile = configuration.getHeartbeatFile();
+		if (heartbeatFile != null && !heartbeatFile.isEmpty()) {
+			this.heartbeat = new HeartbeatWriter(this, new File(heartbeatFile),
+					configuration.getHeartbeatInterval());
+			this.heartbeat.start();
+		}
 		try {
-			logger.addHandler(new FileHandler(Server.class.getName() + ".main.log"));
-		} catch (SecurityException e1) {
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
-		} catch (IOException e1) {
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
+			if (configuration.getThreadMode() == ThreadMode.VIRTUAL)
+				this.virtualThreads = VirtualThreads.newFactory("sws-virtual-");
+			logger.config("Thread mode: " + configuration.getThreadMode());
+
+			if (configuration.getThreadMode() == ThreadMode.REACTOR)
+				acceptChannels();
+			else
+				acceptSockets();
+		} catch (Exception e) {
+			this.failure = e;
+			logger.log(Level.SEVERE, "Server failed on port " + port, e);
+			if (this.listener != null)
+				this.listener.serverFailed(e);
+		} finally {
+			// Let the handlers already accepted finish up
+			drain();
+			synchronized (this) {
+				if (this.responseExecutor != null)
+					this.responseExecutor.shutdown();
+			}
+			if (this.accessLog != null)
+				this.accessLog.close();
+			if (this.heartbeat != null)
+				this.heartbeat.stop();
+			this.mappedFiles.close();
+			this.timers.stop();
+			logHandler.flush();
 		}
-		// Let each handler pick its own level
-		logger.setLevel(Level.ALL);
+	}
 
-		logger.entering(getRootDirectory(), "run");
+	/**
+	 * Lets the connections that are open when the server stops finish the
+	 * requests they are serving, for at most
+	 * {@link ServerConfiguration#getShutdownTimeout()}. Responses written
+	 * meanwhile tell the client the connection closes, connections waiting
+	 * for their next request are closed right away and whatever is still
+	 * open at the deadline is cut.
+	 */
+	private void drain() {
+		long timeout = configuration.getShutdownTimeout();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		long open = this.metrics.getOpenConnections() + this.workers.getQueuedCount();
+		int cut = 0;
+		this.workers.shutdown();
+		try {
+			if (this.reactors != null) {
+				for (Reactor reactor : this.reactors)
+					reactor.shutdown();
+				for (Reactor reactor : this.reactors) {
+					long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+					if (remaining <= 0 || !reactor.awaitTermination(remaining))
+						cut += reactor.shutdownNow();
+				}
+			}
+
+			while (true) {
+				for (ConnectionHandler handler : this.handlers)
+					handler.closeIfIdle();
+				long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (remaining <= 0)
+					break;
+				if (this.workers.awaitTermination(Math.min(remaining, DRAIN_CHECK_INTERVAL))
+						&& this.handlers.isEmpty())
+					break;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		cut += this.workers.cancelQueued();
+		for (ConnectionHandler handler : this.handlers) {
+			handler.close();
+			cut++;
+		}
+		this.cut = cut;
+		this.drained = (int) Math.max(0, open - cut);
+		logger.info("Drained " + this.drained + " connections, cut " + cut);
+	}
+
+	/**
+	 * Opens the access log if one is configured. The server runs without
+	 * it if the file cannot be opened.
+	 */
+	private void openAccessLog() {
+		String name = configuration.getAccessLogFile();
+		if (name == null || name.isEmpty())
+			return;
+		try {
+			this.accessLog = new AccessLog(new File(name),
+					configuration.getAccessLogMaxSize(),
+					configuration.getAccessLogMaxFiles());
+		} catch (IOException e) {
+			logger.severe("Could not open access log " + name + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Sends the log to <tt>server.Server.main.log</tt> through an
+	 * {@link AsyncLogHandler}, so request threads never wait for the file.
+	 * The handler is shared by every server in the process and installed
+	 * the first time one runs; the level is set by every server.
+	 */
+	private static synchronized void installLogHandler(ServerConfiguration configuration) {
+		// Records below this level are skipped before they are even created
+		logger.setLevel(configuration.getLogLevel());
+		if (logHandler != null)
+			return;
+
+		Handler file;
 		try {
-			this.welcomeSocket = new ServerSocket(port);
-			logger.config("Port: " + port);
+			file = new StreamHandler(new BufferedOutputStream(new FileOutputStream(
+					Server.class.getName() + ".main.log")), new XMLFormatter());
+		} catch (IOException e) {
+			e.printStackTrace();
+			file = new ConsoleHandler();
+		}
+		file.setLevel(Level.ALL);
+		logHandler = new AsyncLogHandler(file, configuration.getLogBufferSize(),
+				configuration.getLogOverflowPolicy());
+		logHandler.setLevel(Level.ALL);
+		logger.addHandler(logHandler);
+		logger.info("Added asynchronous log handler");
+	}
+
+	/**
+	 * Accepts blocking sockets and hands each one to a
+	 * {@link ConnectionHandler} running on a virtual thread or on the worker
+	 * pool.
+	 * 
+	 * @throws Exception
+	 */
+	private void acceptSockets() throws Exception {
+		// Accept through a blocking channel so each socket has a channel
+		// that files can be transferred to without copying
+		ServerSocketChannel welcomeChannel = ServerSocketChannel.open();
+		this.welcomeSocket = welcomeChannel.socket();
+		this.welcomeSocket.bind(new InetSocketAddress(port));
+		logger.config("Port: " + port);
+
+		// Now keep welcoming new connections until stop flag is set to true
+		while (true) {
+			// Listen for incoming socket connection
+			// This method block until somebody makes a request
+			Socket connectionSocket = welcomeChannel.accept().socket();
+			connectionSocket.setKeepAlive(true);
+			//connectionSocket.setSoTimeout(10000);
+			if (logger.isLoggable(Level.FINE))
+				logger.fine(connectionSocket + " at " + System.currentTimeMillis());
+			// Come out of the loop if the stop flag is set
+			if (this.stop) {
+				connectionSocket.close();
+				break;
+			}
+			if (!admit(connectionSocket))
+				continue;
+
+			// Create a handler for this incoming connection and hand it
+			// to a virtual thread or to the worker pool, which answers 503
+			// when it is saturated
+			ConnectionHandler handler = new ConnectionHandler(this,
+					connectionSocket);
+			if (logger.isLoggable(Level.FINE))
+				logger.fine("Dispatching worker for: " + handler);
+			dispatch(handler);
+		}
+		this.welcomeSocket.close();
+		logger.info("Closing: " + this.welcomeSocket.toString());
+	}
+
+	/**
+	 * Runs a handler on a virtual thread or on the worker pool, which answers
+	 * 503 when it is saturated. Also used by the reactors for the connections
+	 * they hand over.
+	 * 
+	 * @param handler The handler to run.
+	 */
+	void dispatch(ConnectionHandler handler) {
+		if (this.virtualThreads != null)
+			this.virtualThreads.newThread(handler).start();
+		else
+			this.workers.execute(handler);
+	}
+
+	/**
+	 * Accepts channels and spreads them over a fixed set of {@link Reactor}s,
+	 * which serve them without a thread per connection.
+	 * 
+	 * @throws Exception
+	 */
+	private void acceptChannels() throws Exception {
+		ServerSocketChannel welcomeChannel = ServerSocketChannel.open();
+		this.welcomeSocket = welcomeChannel.socket();
+		this.welcomeSocket.bind(new InetSocketAddress(port));
+		logger.config("Port: " + port);
+
+		Reactor[] reactors = new Reactor[configuration.getReactorThreads()];
+		for (int i = 0; i < reactors.length; i++)
+			reactors[i] = new Reactor(this, i + 1);
+		for (Reactor reactor : reactors)
+			reactor.start();
+		// The reactors are drained and shut down once run() is done
+		this.reactors = reactors;
+		logger.config("Reactors: " + reactors.length);
 
+		try {
+			int next = 0;
 			// Now keep welcoming new connections until stop flag is set to true
 			while (true) {
-				// Listen for incoming socket connection
 				// This method block until somebody makes a request
-				Socket connectionSocket = this.welcomeSocket.accept();
-				connectionSocket.setKeepAlive(true);
-				//connectionSocket.setSoTimeout(10000);
-				logger.info(connectionSocket.toString());
-				logger.info(Long.toString(System.currentTimeMillis()));
+				SocketChannel channel = welcomeChannel.accept();
+				channel.socket().setKeepAlive(true);
 				// Come out of the loop if the stop flag is set
-				if (this.stop)
+				if (this.stop) {
+					channel.close();
 					break;
+				}
+				if (!admit(channel.socket()))
+					continue;
 
-				// Create a handler for this incoming connection and start the
-				// handler in a new thread
-				ConnectionHandler handler = new ConnectionHandler(this,
-						connectionSocket);
-				logger.info("Starting tread for: " + handler.toString());
-				new Thread(handler).start();
-
-				// BufferedWriter log = new BufferedWriter();
-				// log.write(logger.toString());
-				// log.close();
-
-				File file = new File("log.txt");
-				FileWriter fileWritter = new FileWriter(file.getName(), true);
-				BufferedWriter bufferWritter = new BufferedWriter(fileWritter);
-				bufferWritter.write(logger.toString() + "\n");
-				bufferWritter.close();
-
-				BufferedWriter heart = new BufferedWriter(new FileWriter(
-						"heartbeat.txt"));
-				heart.write("Connections: " + connections + "\n"
-						+ "Service Time: " + serviceTime + "\n");
-				heart.close();
+				// Round robin the connections over the reactors
+				reactors[next].register(channel);
+				next = (next + 1) % reactors.length;
 			}
-			this.welcomeSocket.close();
+		} finally {
+			welcomeChannel.close();
 			logger.info("Closing: " + this.welcomeSocket.toString());
-		} catch (Exception e) {
-			window.showSocketException(e);
 		}
 	}
 
+	/**
+	 * Takes a connection for the client address of a new socket, or resets
+	 * the socket if that address has its share of connections open already.
+	 * Admitted connections give their share back when they are closed.
+	 * 
+	 * @return true if the socket may be served
+	 */
+	private boolean admit(Socket socket) {
+		if (this.limiter.acquire(socket.getInetAddress()))
+			return true;
+		this.metrics.connectionRefused();
+		if (logger.isLoggable(Level.FINE))
+			logger.fine("Refusing " + socket + ", too many connections from its address");
+		try {
+			// Reset right away, nothing is kept around for the client
+			socket.setSoLinger(true, 0);
+			socket.close();
+		} catch (IOException e) {
+		}
+		return false;
+	}
+
 	/**
 	 * Stops the server from listening further.
 	 */
@@ -204,7 +661,7 @@ public class Server implements Runnable {
 			// This will force welcomeSocket to come out of the blocked accept()
 			// method
 			// in the main loop of the start() method
-			Socket socket = new Socket(InetAddress.getLocalHost(), port);
+			Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
 
 			// We do not have any other job for this socket so just close it
 			socket.close();
@@ -212,6 +669,16 @@ public class Server implements Runnable {
 		}
 	}
 
+	/**
+	 * Checks if {@link #stop()} has been called. Connections use this to stop
+	 * offering keep-alive once the server is going down.
+	 * 
+	 * @return true if the server is stopping or stopped
+	 */
+	public boolean isStopping() {
+		return this.stop;
+	}
+
 	/**
 	 * Checks if the server is stopeed or not.
 	 * 
@@ -223,6 +690,49 @@ public class Server implements Runnable {
 		return true;
 	}
 
+	/**
+	 * Gets the number of connections that were closed cleanly while the
+	 * server was stopping.
+	 * 
+	 * @return the number of drained connections
+	 */
+	public int getDrainedConnections() {
+		return drained;
+	}
+
+	/**
+	 * Gets the number of connections that were still busy when the
+	 * shutdown timeout ran out and had to be closed.
+	 * 
+	 * @return the number of cut connections
+	 */
+	public int getCutConnections() {
+		return cut;
+	}
+
+	/**
+	 * Registers a running handler, so it can be drained on stop.
+	 */
+	void register(ConnectionHandler handler) {
+		this.handlers.add(handler);
+	}
+
+	/**
+	 * Forgets a handler whose connection is closed.
+	 */
+	void unregister(ConnectionHandler handler) {
+		this.handlers.remove(handler);
+	}
+
+	/**
+	 * Gets the failure that made {@link #run()} return, if any.
+	 * 
+	 * @return the failure or null if the server was stopped normally
+	 */
+	public Exception getFailure() {
+		return failure;
+	}
+
 	public Logger getLogger() {
 		return logger;
 	}
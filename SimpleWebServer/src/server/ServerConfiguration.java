@@ -0,0 +1,896 @@
+/*
+ * ServerConfiguration.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.util.Locale;
+import java.util.Properties;
+import java.util.logging.Level;
+
+/**
+ * Holds the tunable parameters of a {@link Server}. Every value starts out
+ * with a sensible default, so callers only need to set what they care about.
+ */
+public class ServerConfiguration {
+	public static final int DEFAULT_PORT = 8080;
+	public static final int DEFAULT_WORKER_THREADS = 200;
+	public static final int DEFAULT_WORKER_QUEUE_SIZE = 1000;
+	public static final int DEFAULT_KEEP_ALIVE_TIMEOUT = 5000; // in ms
+	public static final int DEFAULT_HEADER_TIMEOUT = 10000; // in ms
+	public static final int DEFAULT_REQUEST_TIMEOUT = 10000; // in ms
+	public static final int DEFAULT_MIN_READ_RATE = 500; // in bytes per second
+	public static final int DEFAULT_MIN_WRITE_RATE = 1024; // in bytes per second
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ADDRESS = 64;
+	public static final int DEFAULT_MAX_KEEP_ALIVE_REQUESTS = 100;
+	public static final int DEFAULT_PIPELINE_DEPTH = 16;
+	public static final int DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS = 100;
+	public static final long DEFAULT_CACHE_BUDGET = 64 * 1024 * 1024; // 64MB
+	public static final long DEFAULT_CACHE_MAX_FILE_SIZE = 256 * 1024; // 256KB
+	public static final long DEFAULT_CACHE_VALIDATION_INTERVAL = 1000; // in ms
+	public static final long DEFAULT_CACHE_VARIANT_BUDGET = 16 * 1024 * 1024; // 16MB
+	public static final long DEFAULT_MAPPED_FILE_THRESHOLD = 1024 * 1024; // 1MB
+	public static final int DEFAULT_MAX_MAPPED_FILES = 256;
+	public static final long DEFAULT_MAX_MAPPED_BYTES = 1024L * 1024 * 1024; // 1GB
+	public static final String DEFAULT_COMPRESSION_TYPES = 
+			"text/*,application/javascript,application/json,application/xml,image/svg+xml";
+	public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+	public static final long DEFAULT_COMPRESSION_MIN_SIZE = 1024; // 1KB
+	public static final long DEFAULT_COMPRESSION_MAX_FILE_SIZE = 8 * 1024 * 1024; // 8MB
+	public static final int DEFAULT_LOG_BUFFER_SIZE = 8192;
+	public static final String DEFAULT_ACCESS_LOG_FILE = "access.log";
+	public static final long DEFAULT_ACCESS_LOG_MAX_SIZE = 64 * 1024 * 1024; // 64MB
+	public static final int DEFAULT_ACCESS_LOG_MAX_FILES = 5;
+	public static final String DEFAULT_HEARTBEAT_FILE = "heartbeat.txt";
+	public static final long DEFAULT_HEARTBEAT_INTERVAL = 1000; // in ms
+	public static final String DEFAULT_METRICS_PATH = ""; // off
+	public static final long DEFAULT_SHUTDOWN_TIMEOUT = 10000; // in ms
+
+	private String rootDirectory;
+	private int port;
+	private int workerThreads;
+	private int workerQueueSize;
+	private ThreadMode threadMode;
+	private int reactorThreads;
+	private int keepAliveTimeout;
+	private int headerTimeout;
+	private int requestTimeout;
+	private int minReadRate;
+	private int minWriteRate;
+	private int maxConnectionsPerAddress;
+	private int maxKeepAliveRequests;
+	private int pipelineDepth;
+	private int http2MaxConcurrentStreams;
+	private long cacheBudget;
+	private long cacheMaxFileSize;
+	private long cacheValidationInterval;
+	private long cacheVariantBudget;
+	private long mappedFileThreshold;
+	private int maxMappedFiles;
+	private long maxMappedBytes;
+	private String compressionTypes;
+	private int compressionLevel;
+	private long compressionMinSize;
+	private long compressionMaxFileSize;
+	private Level logLevel;
+	private int logBufferSize;
+	private AsyncLogHandler.OverflowPolicy logOverflowPolicy;
+	private String accessLogFile;
+	private long accessLogMaxSize;
+	private int accessLogMaxFiles;
+	private String heartbeatFile;
+	private long heartbeatInterval;
+	private String metricsPath;
+	private long shutdownTimeout;
+
+	/**
+	 * Creates a configuration serving the current working directory on
+	 * {@link #DEFAULT_PORT}.
+	 */
+	public ServerConfiguration() {
+		this.rootDirectory = System.getProperty("user.dir");
+		this.port = DEFAULT_PORT;
+		this.workerThreads = DEFAULT_WORKER_THREADS;
+		this.workerQueueSize = DEFAULT_WORKER_QUEUE_SIZE;
+		this.threadMode = ThreadMode.PLATFORM;
+		this.reactorThreads = Runtime.getRuntime().availableProcessors();
+		this.keepAliveTimeout = DEFAULT_KEEP_ALIVE_TIMEOUT;
+		this.headerTimeout = DEFAULT_HEADER_TIMEOUT;
+		this.requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+		this.minReadRate = DEFAULT_MIN_READ_RATE;
+		this.minWriteRate = DEFAULT_MIN_WRITE_RATE;
+		this.maxConnectionsPerAddress = DEFAULT_MAX_CONNECTIONS_PER_ADDRESS;
+		this.maxKeepAliveRequests = DEFAULT_MAX_KEEP_ALIVE_REQUESTS;
+		this.pipelineDepth = DEFAULT_PIPELINE_DEPTH;
+		this.http2MaxConcurrentStreams = DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS;
+		this.cacheBudget = DEFAULT_CACHE_BUDGET;
+		this.cacheMaxFileSize = DEFAULT_CACHE_MAX_FILE_SIZE;
+		this.cacheValidationInterval = DEFAULT_CACHE_VALIDATION_INTERVAL;
+		this.cacheVariantBudget = DEFAULT_CACHE_VARIANT_BUDGET;
+		this.mappedFileThreshold = DEFAULT_MAPPED_FILE_THRESHOLD;
+		this.maxMappedFiles = DEFAULT_MAX_MAPPED_FILES;
+		this.maxMappedBytes = DEFAULT_MAX_MAPPED_BYTES;
+		this.compressionTypes = DEFAULT_COMPRESSION_TYPES;
+		this.compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+		this.compressionMinSize = DEFAULT_COMPRESSION_MIN_SIZE;
+		this.compressionMaxFileSize = DEFAULT_COMPRESSION_MAX_FILE_SIZE;
+		this.logLevel = Level.INFO;
+		this.logBufferSize = DEFAULT_LOG_BUFFER_SIZE;
+		this.logOverflowPolicy = AsyncLogHandler.OverflowPolicy.DROP;
+		this.accessLogFile = DEFAULT_ACCESS_LOG_FILE;
+		this.accessLogMaxSize = DEFAULT_ACCESS_LOG_MAX_SIZE;
+		this.accessLogMaxFiles = DEFAULT_ACCESS_LOG_MAX_FILES;
+		this.heartbeatFile = DEFAULT_HEARTBEAT_FILE;
+		this.heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+		this.metricsPath = DEFAULT_METRICS_PATH;
+		this.shutdownTimeout = DEFAULT_SHUTDOWN_TIMEOUT;
+	}
+
+	/**
+	 * Sets the values named in the supplied properties, leaving the others
+	 * as they are. Each key is the name of a property of this class, e.g.
+	 * <tt>port</tt>, <tt>rootDirectory</tt> or <tt>threadMode</tt>; values
+	 * are given the way they would be passed to the setter, enums by name.
+	 *
+	 * @param properties The values to set.
+	 * @throws IllegalArgumentException if a key is unknown or a value is invalid
+	 */
+	public void load(Properties properties) {
+		for(String key : properties.stringPropertyNames()) {
+			String value = properties.getProperty(key).trim();
+			try {
+				set(key, value);
+			}
+			catch(IllegalArgumentException e) {
+				throw new IllegalArgumentException("Invalid value for " + key + ": " 
+						+ value + " (" + e.getMessage() + ")", e);
+			}
+		}
+	}
+
+	private void set(String key, String value) {
+		switch(key) {
+		case "rootDirectory": setRootDirectory(value); break;
+		case "port": setPort(Integer.parseInt(value)); break;
+		case "workerThreads": setWorkerThreads(Integer.parseInt(value)); break;
+		case "workerQueueSize": setWorkerQueueSize(Integer.parseInt(value)); break;
+		case "threadMode": setThreadMode(ThreadMode.valueOf(value.toUpperCase(Locale.ROOT))); break;
+		case "reactorThreads": setReactorThreads(Integer.parseInt(value)); break;
+		case "keepAliveTimeout": setKeepAliveTimeout(Integer.parseInt(value)); break;
+		case "headerTimeout": setHeaderTimeout(Integer.parseInt(value)); break;
+		case "requestTimeout": setRequestTimeout(Integer.parseInt(value)); break;
+		case "minReadRate": setMinReadRate(Integer.parseInt(value)); break;
+		case "minWriteRate": setMinWriteRate(Integer.parseInt(value)); break;
+		case "maxConnectionsPerAddress": setMaxConnectionsPerAddress(Integer.parseInt(value)); break;
+		case "maxKeepAliveRequests": setMaxKeepAliveRequests(Integer.parseInt(value)); break;
+		case "pipelineDepth": setPipelineDepth(Integer.parseInt(value)); break;
+		case "http2MaxConcurrentStreams": setHttp2MaxConcurrentStreams(Integer.parseInt(value)); break;
+		case "cacheBudget": setCacheBudget(Long.parseLong(value)); break;
+		case "cacheMaxFileSize": setCacheMaxFileSize(Long.parseLong(value)); break;
+		case "cacheValidationInterval": setCacheValidationInterval(Long.parseLong(value)); break;
+		case "cacheVariantBudget": setCacheVariantBudget(Long.parseLong(value)); break;
+		case "mappedFileThreshold": setMappedFileThreshold(Long.parseLong(value)); break;
+		case "maxMappedFiles": setMaxMappedFiles(Integer.parseInt(value)); break;
+		case "maxMappedBytes": setMaxMappedBytes(Long.parseLong(value)); break;
+		case "compressionTypes": setCompressionTypes(value); break;
+		case "compressionLevel": setCompressionLevel(Integer.parseInt(value)); break;
+		case "compressionMinSize": setCompressionMinSize(Long.parseLong(value)); break;
+		case "compressionMaxFileSize": setCompressionMaxFileSize(Long.parseLong(value)); break;
+		case "logLevel": setLogLevel(Level.parse(value.toUpperCase(Locale.ROOT))); break;
+		case "logBufferSize": setLogBufferSize(Integer.parseInt(value)); break;
+		case "logOverflowPolicy": 
+			setLogOverflowPolicy(AsyncLogHandler.OverflowPolicy.valueOf(value.toUpperCase(Locale.ROOT))); 
+			break;
+		case "accessLogFile": setAccessLogFile(value); break;
+		case "accessLogMaxSize": setAccessLogMaxSize(Long.parseLong(value)); break;
+		case "accessLogMaxFiles": setAccessLogMaxFiles(Integer.parseInt(value)); break;
+		case "heartbeatFile": setHeartbeatFile(value); break;
+		case "heartbeatInterval": setHeartbeatInterval(Long.parseLong(value)); break;
+		case "metricsPath": setMetricsPath(value); break;
+		case "shutdownTimeout": setShutdownTimeout(Long.parseLong(value)); break;
+		default:
+			throw new IllegalArgumentException("unknown setting");
+		}
+	}
+
+	/**
+	 * @return the rootDirectory
+	 */
+	public String getRootDirectory() {
+		return rootDirectory;
+	}
+
+	/**
+	 * @param rootDirectory the rootDirectory to set
+	 */
+	public void setRootDirectory(String rootDirectory) {
+		this.rootDirectory = rootDirectory;
+	}
+
+	/**
+	 * @return the port
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * @param port the port to set
+	 */
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * Gets the maximum number of threads running {@link ConnectionHandler}s.
+	 *
+	 * @return the workerThreads
+	 */
+	public int getWorkerThreads() {
+		return workerThreads;
+	}
+
+	/**
+	 * @param workerThreads the workerThreads to set
+	 */
+	public void setWorkerThreads(int workerThreads) {
+		if(workerThreads < 1)
+			throw new IllegalArgumentException("workerThreads must be positive: " + workerThreads);
+		this.workerThreads = workerThreads;
+	}
+
+	/**
+	 * Gets the number of accepted connections allowed to wait for a free
+	 * worker. Connections beyond this limit are answered with a 503.
+	 *
+	 * @return the workerQueueSize
+	 */
+	public int getWorkerQueueSize() {
+		return workerQueueSize;
+	}
+
+	/**
+	 * @param workerQueueSize the workerQueueSize to set
+	 */
+	public void setWorkerQueueSize(int workerQueueSize) {
+		if(workerQueueSize < 1)
+			throw new IllegalArgumentException("workerQueueSize must be positive: " + workerQueueSize);
+		this.workerQueueSize = workerQueueSize;
+	}
+
+	/**
+	 * Gets the kind of threads that serve the connections. The worker pool
+	 * limits only apply to {@link ThreadMode#PLATFORM}.
+	 *
+	 * @return the threadMode
+	 */
+	public ThreadMode getThreadMode() {
+		return threadMode;
+	}
+
+	/**
+	 * @param threadMode the threadMode to set
+	 */
+	public void setThreadMode(ThreadMode threadMode) {
+		if(threadMode == null)
+			throw new IllegalArgumentException("threadMode must not be null");
+		this.threadMode = threadMode;
+	}
+
+	/**
+	 * Gets the number of selector threads used in {@link ThreadMode#REACTOR}.
+	 * Defaults to the number of available processors.
+	 *
+	 * @return the reactorThreads
+	 */
+	public int getReactorThreads() {
+		return reactorThreads;
+	}
+
+	/**
+	 * @param reactorThreads the reactorThreads to set
+	 */
+	public void setReactorThreads(int reactorThreads) {
+		if(reactorThreads < 1)
+			throw new IllegalArgumentException("reactorThreads must be positive: " + reactorThreads);
+		this.reactorThreads = reactorThreads;
+	}
+
+	/**
+	 * Gets how long, in milliseconds, a connection may sit idle waiting for
+	 * its next request before the server closes it.
+	 *
+	 * @return the keepAliveTimeout
+	 */
+	public int getKeepAliveTimeout() {
+		return keepAliveTimeout;
+	}
+
+	/**
+	 * @param keepAliveTimeout the keepAliveTimeout to set
+	 */
+	public void setKeepAliveTimeout(int keepAliveTimeout) {
+		if(keepAliveTimeout < 1)
+			throw new IllegalArgumentException("keepAliveTimeout must be positive: " + keepAliveTimeout);
+		this.keepAliveTimeout = keepAliveTimeout;
+	}
+
+	/**
+	 * Gets how long, in milliseconds, a client may take to send the header
+	 * block of a request once it started sending it. Slower requests are
+	 * answered with 408 Request Timeout.
+	 *
+	 * @return the headerTimeout
+	 */
+	public int getHeaderTimeout() {
+		return headerTimeout;
+	}
+
+	/**
+	 * @param headerTimeout the headerTimeout to set
+	 */
+	public void setHeaderTimeout(int headerTimeout) {
+		if(headerTimeout < 1)
+			throw new IllegalArgumentException("headerTimeout must be positive: " + headerTimeout);
+		this.headerTimeout = headerTimeout;
+	}
+
+	/**
+	 * Gets how long, in milliseconds, the server may take to answer a
+	 * request, from its arrival until its response has been written. A
+	 * response that is not ready in time is replaced by 408 Request Timeout,
+	 * one that is still being written is cut off.
+	 *
+	 * @return the requestTimeout
+	 */
+	public int getRequestTimeout() {
+		return requestTimeout;
+	}
+
+	/**
+	 * @param requestTimeout the requestTimeout to set
+	 */
+	public void setRequestTimeout(int requestTimeout) {
+		if(requestTimeout < 1)
+			throw new IllegalArgumentException("requestTimeout must be positive: " + requestTimeout);
+		this.requestTimeout = requestTimeout;
+	}
+
+	/**
+	 * Gets the slowest rate, in bytes per second, at which a client may send
+	 * the header block of a request once it started sending it. A client
+	 * that falls behind is answered with 408 Request Timeout. A value of 0
+	 * turns the check off.
+	 *
+	 * @return the minReadRate
+	 */
+	public int getMinReadRate() {
+		return minReadRate;
+	}
+
+	/**
+	 * @param minReadRate the minReadRate to set
+	 */
+	public void setMinReadRate(int minReadRate) {
+		if(minReadRate < 0)
+			throw new IllegalArgumentException("minReadRate must not be negative: " + minReadRate);
+		this.minReadRate = minReadRate;
+	}
+
+	/**
+	 * Gets the slowest rate, in bytes per second, at which a client may take
+	 * a response. The connection of a client that falls behind is cut. A
+	 * value of 0 turns the check off.
+	 *
+	 * @return the minWriteRate
+	 */
+	public int getMinWriteRate() {
+		return minWriteRate;
+	}
+
+	/**
+	 * @param minWriteRate the minWriteRate to set
+	 */
+	public void setMinWriteRate(int minWriteRate) {
+		if(minWriteRate < 0)
+			throw new IllegalArgumentException("minWriteRate must not be negative: " + minWriteRate);
+		this.minWriteRate = minWriteRate;
+	}
+
+	/**
+	 * Gets the number of connections one client address may have open at
+	 * once. Further connections from that address are closed as soon as
+	 * they are accepted. A value of 0 means no limit.
+	 *
+	 * @return the maxConnectionsPerAddress
+	 */
+	public int getMaxConnectionsPerAddress() {
+		return maxConnectionsPerAddress;
+	}
+
+	/**
+	 * @param maxConnectionsPerAddress the maxConnectionsPerAddress to set
+	 */
+	public void setMaxConnectionsPerAddress(int maxConnectionsPerAddress) {
+		if(maxConnectionsPerAddress < 0)
+			throw new IllegalArgumentException("maxConnectionsPerAddress must not be negative: " + maxConnectionsPerAddress);
+		this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+	}
+
+	/**
+	 * Gets the number of requests served on one connection before the
+	 * server answers with <tt>Connection: close</tt>. A value of 1 turns
+	 * persistent connections off.
+	 *
+	 * @return the maxKeepAliveRequests
+	 */
+	public int getMaxKeepAliveRequests() {
+		return maxKeepAliveRequests;
+	}
+
+	/**
+	 * @param maxKeepAliveRequests the maxKeepAliveRequests to set
+	 */
+	public void setMaxKeepAliveRequests(int maxKeepAliveRequests) {
+		if(maxKeepAliveRequests < 1)
+			throw new IllegalArgumentException("maxKeepAliveRequests must be positive: " + maxKeepAliveRequests);
+		this.maxKeepAliveRequests = maxKeepAliveRequests;
+	}
+
+	/**
+	 * Gets the number of pipelined requests a connection may have waiting
+	 * for their responses. The server stops reading from a connection that
+	 * reaches this limit until a response has been written.
+	 *
+	 * @return the pipelineDepth
+	 */
+	public int getPipelineDepth() {
+		return pipelineDepth;
+	}
+
+	/**
+	 * @param pipelineDepth the pipelineDepth to set
+	 */
+	public void setPipelineDepth(int pipelineDepth) {
+		if(pipelineDepth < 1)
+			throw new IllegalArgumentException("pipelineDepth must be positive: " + pipelineDepth);
+		this.pipelineDepth = pipelineDepth;
+	}
+
+	/**
+	 * Gets the number of streams an HTTP/2 client may have open at once on
+	 * one connection. It is the HTTP/2 counterpart of the pipeline depth,
+	 * streams opened past it are refused.
+	 *
+	 * @return the http2MaxConcurrentStreams
+	 */
+	public int getHttp2MaxConcurrentStreams() {
+		return http2MaxConcurrentStreams;
+	}
+
+	/**
+	 * @param http2MaxConcurrentStreams the http2MaxConcurrentStreams to set
+	 */
+	public void setHttp2MaxConcurrentStreams(int http2MaxConcurrentStreams) {
+		if(http2MaxConcurrentStreams < 1)
+			throw new IllegalArgumentException("http2MaxConcurrentStreams must be positive: " + http2MaxConcurrentStreams);
+		this.http2MaxConcurrentStreams = http2MaxConcurrentStreams;
+	}
+
+	/**
+	 * Gets the number of bytes of file content the {@link ContentCache} may
+	 * hold. A budget of 0 keeps only file metadata in the cache.
+	 *
+	 * @return the cacheBudget
+	 */
+	public long getCacheBudget() {
+		return cacheBudget;
+	}
+
+	/**
+	 * @param cacheBudget the cacheBudget to set
+	 */
+	public void setCacheBudget(long cacheBudget) {
+		if(cacheBudget < 0)
+			throw new IllegalArgumentException("cacheBudget must not be negative: " + cacheBudget);
+		this.cacheBudget = cacheBudget;
+	}
+
+	/**
+	 * Gets the size of the largest file whose content is kept in the
+	 * {@link ContentCache}.
+	 *
+	 * @return the cacheMaxFileSize
+	 */
+	public long getCacheMaxFileSize() {
+		return cacheMaxFileSize;
+	}
+
+	/**
+	 * @param cacheMaxFileSize the cacheMaxFileSize to set
+	 */
+	public void setCacheMaxFileSize(long cacheMaxFileSize) {
+		if(cacheMaxFileSize < 0)
+			throw new IllegalArgumentException("cacheMaxFileSize must not be negative: " + cacheMaxFileSize);
+		this.cacheMaxFileSize = cacheMaxFileSize;
+	}
+
+	/**
+	 * Gets how long, in milliseconds, a cached file is trusted before its
+	 * modification time is checked again.
+	 *
+	 * @return the cacheValidationInterval
+	 */
+	public long getCacheValidationInterval() {
+		return cacheValidationInterval;
+	}
+
+	/**
+	 * @param cacheValidationInterval the cacheValidationInterval to set
+	 */
+	public void setCacheValidationInterval(long cacheValidationInterval) {
+		if(cacheValidationInterval < 0)
+			throw new IllegalArgumentException("cacheValidationInterval must not be negative: " + cacheValidationInterval);
+		this.cacheValidationInterval = cacheValidationInterval;
+	}
+
+	/**
+	 * Gets the number of bytes of compressed file content the
+	 * {@link ContentCache} may hold, on top of
+	 * {@link #getCacheBudget()}. A budget of 0 compresses files for every
+	 * response.
+	 *
+	 * @return the cacheVariantBudget
+	 */
+	public long getCacheVariantBudget() {
+		return cacheVariantBudget;
+	}
+
+	/**
+	 * @param cacheVariantBudget the cacheVariantBudget to set
+	 */
+	public void setCacheVariantBudget(long cacheVariantBudget) {
+		if(cacheVariantBudget < 0)
+			throw new IllegalArgumentException("cacheVariantBudget must not be negative: " + cacheVariantBudget);
+		this.cacheVariantBudget = cacheVariantBudget;
+	}
+
+	/**
+	 * Gets the size of the smallest file that is served from a memory
+	 * mapping rather than read from disk.
+	 *
+	 * @return the mappedFileThreshold
+	 */
+	public long getMappedFileThreshold() {
+		return mappedFileThreshold;
+	}
+
+	/**
+	 * @param mappedFileThreshold the mappedFileThreshold to set
+	 */
+	public void setMappedFileThreshold(long mappedFileThreshold) {
+		if(mappedFileThreshold < 0)
+			throw new IllegalArgumentException("mappedFileThreshold must not be negative: " + mappedFileThreshold);
+		this.mappedFileThreshold = mappedFileThreshold;
+	}
+
+	/**
+	 * Gets the number of files that may be memory mapped at once. A value of
+	 * 0 turns memory mapping off.
+	 *
+	 * @return the maxMappedFiles
+	 */
+	public int getMaxMappedFiles() {
+		return maxMappedFiles;
+	}
+
+	/**
+	 * @param maxMappedFiles the maxMappedFiles to set
+	 */
+	public void setMaxMappedFiles(int maxMappedFiles) {
+		if(maxMappedFiles < 0)
+			throw new IllegalArgumentException("maxMappedFiles must not be negative: " + maxMappedFiles);
+		this.maxMappedFiles = maxMappedFiles;
+	}
+
+	/**
+	 * Gets the number of bytes that may be memory mapped at once.
+	 *
+	 * @return the maxMappedBytes
+	 */
+	public long getMaxMappedBytes() {
+		return maxMappedBytes;
+	}
+
+	/**
+	 * @param maxMappedBytes the maxMappedBytes to set
+	 */
+	public void setMaxMappedBytes(long maxMappedBytes) {
+		if(maxMappedBytes < 0)
+			throw new IllegalArgumentException("maxMappedBytes must not be negative: " + maxMappedBytes);
+		this.maxMappedBytes = maxMappedBytes;
+	}
+
+	/**
+	 * Gets the comma separated MIME types that are compressed for clients
+	 * that accept it, e.g. <tt>text/html</tt>; <tt>text/*</tt> stands for
+	 * every subtype. An empty list turns compression off.
+	 *
+	 * @return the compressionTypes
+	 */
+	public String getCompressionTypes() {
+		return compressionTypes;
+	}
+
+	/**
+	 * @param compressionTypes the compressionTypes to set
+	 */
+	public void setCompressionTypes(String compressionTypes) {
+		if(compressionTypes == null)
+			throw new IllegalArgumentException("compressionTypes must not be null");
+		this.compressionTypes = compressionTypes;
+	}
+
+	/**
+	 * Gets the deflate level compression is done at, from 1 for the
+	 * fastest to 9 for the smallest output.
+	 *
+	 * @return the compressionLevel
+	 */
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/**
+	 * @param compressionLevel the compressionLevel to set
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		if(compressionLevel < 1 || compressionLevel > 9)
+			throw new IllegalArgumentException("compressionLevel must be between 1 and 9: " + compressionLevel);
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * Gets the size of the smallest file that is compressed. Below it the
+	 * saving does not make up for the cost.
+	 *
+	 * @return the compressionMinSize
+	 */
+	public long getCompressionMinSize() {
+		return compressionMinSize;
+	}
+
+	/**
+	 * @param compressionMinSize the compressionMinSize to set
+	 */
+	public void setCompressionMinSize(long compressionMinSize) {
+		if(compressionMinSize < 0)
+			throw new IllegalArgumentException("compressionMinSize must not be negative: " + compressionMinSize);
+		this.compressionMinSize = compressionMinSize;
+	}
+
+	/**
+	 * Gets the size of the largest file that is compressed in full and
+	 * cached. Larger files are sent with chunked transfer coding while
+	 * they are being compressed.
+	 *
+	 * @return the compressionMaxFileSize
+	 */
+	public long getCompressionMaxFileSize() {
+		return compressionMaxFileSize;
+	}
+
+	/**
+	 * @param compressionMaxFileSize the compressionMaxFileSize to set
+	 */
+	public void setCompressionMaxFileSize(long compressionMaxFileSize) {
+		if(compressionMaxFileSize < 0)
+			throw new IllegalArgumentException("compressionMaxFileSize must not be negative: " + compressionMaxFileSize);
+		this.compressionMaxFileSize = compressionMaxFileSize;
+	}
+
+	/**
+	 * Gets the least severe level that is logged. Per request messages are
+	 * logged at {@link Level#FINE} and are skipped at the default of
+	 * {@link Level#INFO}.
+	 *
+	 * @return the logLevel
+	 */
+	public Level getLogLevel() {
+		return logLevel;
+	}
+
+	/**
+	 * @param logLevel the logLevel to set
+	 */
+	public void setLogLevel(Level logLevel) {
+		if(logLevel == null)
+			throw new IllegalArgumentException("logLevel must not be null");
+		this.logLevel = logLevel;
+	}
+
+	/**
+	 * Gets the number of log records that may wait to be written to the log
+	 * file.
+	 *
+	 * @return the logBufferSize
+	 */
+	public int getLogBufferSize() {
+		return logBufferSize;
+	}
+
+	/**
+	 * @param logBufferSize the logBufferSize to set
+	 */
+	public void setLogBufferSize(int logBufferSize) {
+		if(logBufferSize < 1)
+			throw new IllegalArgumentException("logBufferSize must be positive: " + logBufferSize);
+		this.logBufferSize = logBufferSize;
+	}
+
+	/**
+	 * Gets what happens to log records while {@link #getLogBufferSize()}
+	 * records are already waiting.
+	 *
+	 * @return the logOverflowPolicy
+	 */
+	public AsyncLogHandler.OverflowPolicy getLogOverflowPolicy() {
+		return logOverflowPolicy;
+	}
+
+	/**
+	 * @param logOverflowPolicy the logOverflowPolicy to set
+	 */
+	public void setLogOverflowPolicy(AsyncLogHandler.OverflowPolicy logOverflowPolicy) {
+		if(logOverflowPolicy == null)
+			throw new IllegalArgumentException("logOverflowPolicy must not be null");
+		this.logOverflowPolicy = logOverflowPolicy;
+	}
+
+	/**
+	 * Gets the file the binary {@link AccessLog} is written to. A null or
+	 * empty name turns the access log off.
+	 *
+	 * @return the accessLogFile
+	 */
+	public String getAccessLogFile() {
+		return accessLogFile;
+	}
+
+	/**
+	 * @param accessLogFile the accessLogFile to set
+	 */
+	public void setAccessLogFile(String accessLogFile) {
+		this.accessLogFile = accessLogFile;
+	}
+
+	/**
+	 * Gets the size at which the access log is rotated.
+	 *
+	 * @return the accessLogMaxSize
+	 */
+	public long getAccessLogMaxSize() {
+		return accessLogMaxSize;
+	}
+
+	/**
+	 * @param accessLogMaxSize the accessLogMaxSize to set
+	 */
+	public void setAccessLogMaxSize(long accessLogMaxSize) {
+		if(accessLogMaxSize < 1)
+			throw new IllegalArgumentException("accessLogMaxSize must be positive: " + accessLogMaxSize);
+		this.accessLogMaxSize = accessLogMaxSize;
+	}
+
+	/**
+	 * Gets the number of rotated access logs that are kept.
+	 *
+	 * @return the accessLogMaxFiles
+	 */
+	public int getAccessLogMaxFiles() {
+		return accessLogMaxFiles;
+	}
+
+	/**
+	 * @param accessLogMaxFiles the accessLogMaxFiles to set
+	 */
+	public void setAccessLogMaxFiles(int accessLogMaxFiles) {
+		if(accessLogMaxFiles < 0)
+			throw new IllegalArgumentException("accessLogMaxFiles must not be negative: " + accessLogMaxFiles);
+		this.accessLogMaxFiles = accessLogMaxFiles;
+	}
+
+	/**
+	 * Gets the file the {@link HeartbeatWriter} keeps a snapshot of the
+	 * server's counters in. A null or empty name turns the heartbeat off.
+	 *
+	 * @return the heartbeatFile
+	 */
+	public String getHeartbeatFile() {
+		return heartbeatFile;
+	}
+
+	/**
+	 * @param heartbeatFile the heartbeatFile to set
+	 */
+	public void setHeartbeatFile(String heartbeatFile) {
+		this.heartbeatFile = heartbeatFile;
+	}
+
+	/**
+	 * Gets the time between two heartbeat snapshots, in milliseconds.
+	 *
+	 * @return the heartbeatInterval
+	 */
+	public long getHeartbeatInterval() {
+		return heartbeatInterval;
+	}
+
+	/**
+	 * @param heartbeatInterval the heartbeatInterval to set
+	 */
+	public void setHeartbeatInterval(long heartbeatInterval) {
+		if(heartbeatInterval < 1)
+			throw new IllegalArgumentException("heartbeatInterval must be positive: " + heartbeatInterval);
+		this.heartbeatInterval = heartbeatInterval;
+	}
+
+	/**
+	 * Gets the request path at which the server answers with its
+	 * {@link MetricsEndpoint statistics} instead of a file. A null or empty
+	 * path turns the endpoint off, which is the default: the statistics are
+	 * only served where they are asked for, e.g. with
+	 * <tt>metricsPath=/metrics</tt>.
+	 *
+	 * @return the metricsPath
+	 */
+	public String getMetricsPath() {
+		return metricsPath;
+	}
+
+	/**
+	 * @param metricsPath the metricsPath to set
+	 */
+	public void setMetricsPath(String metricsPath) {
+		if(metricsPath != null && !metricsPath.isEmpty() && !metricsPath.startsWith("/"))
+			throw new IllegalArgumentException("metricsPath must start with a slash: " + metricsPath);
+		this.metricsPath = metricsPath;
+	}
+
+	/**
+	 * Gets how long a stopping server waits for the requests in progress to
+	 * be answered before it cuts the connections that are still open, in
+	 * milliseconds.
+	 *
+	 * @return the shutdownTimeout
+	 */
+	public long getShutdownTimeout() {
+		return shutdownTimeout;
+	}
+
+	/**
+	 * @param shutdownTimeout the shutdownTimeout to set
+	 */
+	public void setShutdownTimeout(long shutdownTimeout) {
+		if(shutdownTimeout < 0)
+			throw new IllegalArgumentException("shutdownTimeout must not be negative: " + shutdownTimeout);
+		this.shutdownTimeout = shutdownTimeout;
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * ServerListener.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+/**
+ * Receives the failures of a {@link Server} that stop it from serving, such
+ * as the port being taken. The failure is logged in any case; a listener lets
+ * a front end, like the {@link gui.WebServer} window or the headless
+ * {@link Launcher}, react to it as well.
+ */
+public interface ServerListener {
+	/**
+	 * Called on the server thread when the server cannot go on accepting
+	 * connections.
+	 *
+	 * @param e The cause of the failure.
+	 */
+	public void serverFailed(Exception e);
+}
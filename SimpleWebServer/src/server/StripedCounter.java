@@ -0,0 +1,81 @@
+/*
+ * StripedCounter.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads can add to without fighting over one memory
+ * location. It is split into stripes, each on its own cache line, and a
+ * thread always adds to the same stripe; reading the counter sums them.
+ * Reads are not atomic with respect to concurrent adds, which is fine for
+ * statistics.
+ */
+public class StripedCounter {
+	// Longs per cache line, only the first of each line is used
+	private static final int PADDING = 8;
+	private static final int STRIPES;
+
+	static {
+		int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+		STRIPES = Math.max(2, Math.min(stripes, 64));
+	}
+
+	private AtomicLongArray cells;
+
+	public StripedCounter() {
+		this.cells = new AtomicLongArray(STRIPES * PADDING);
+	}
+
+	/**
+	 * Adds to the counter.
+	 *
+	 * @param value The amount to add.
+	 */
+	public void add(long value) {
+		this.cells.getAndAdd(stripe(), value);
+	}
+
+	/**
+	 * Adds one to the counter.
+	 */
+	public void increment() {
+		add(1);
+	}
+
+	/**
+	 * @return the sum of all stripes
+	 */
+	public long get() {
+		long sum = 0;
+		for(int i = 0; i < STRIPES; i++)
+			sum += this.cells.get(i * PADDING);
+		return sum;
+	}
+
+	private static int stripe() {
+		// Spread the thread ids, consecutive ids are common
+		long id = Thread.currentThread().getId();
+		int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return ((hash >>> 16) & (STRIPES - 1)) * PADDING;
+	}
+}
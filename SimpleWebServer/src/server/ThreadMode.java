@@ -0,0 +1,55 @@
+/*
+ * ThreadMode.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+/**
+ * Selects how the {@link Server} runs its connections.
+ */
+public enum ThreadMode {
+	/**
+	 * Handlers run on the bounded {@link WorkerPool} of platform threads.
+	 */
+	PLATFORM("Platform Threads"),
+
+	/**
+	 * Each handler runs on its own virtual thread. Needs a Java runtime with
+	 * virtual thread support, see {@link VirtualThreads#isSupported()}.
+	 */
+	VIRTUAL("Virtual Threads"),
+
+	/**
+	 * Connections are non-blocking channels multiplexed over a few
+	 * {@link Reactor} threads, one per core by default.
+	 */
+	REACTOR("NIO Reactor");
+
+	private String displayName;
+
+	private ThreadMode(String displayName) {
+		this.displayName = displayName;
+	}
+
+	@Override
+	public String toString() {
+		return displayName;
+	}
+}
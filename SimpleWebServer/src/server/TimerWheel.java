@@ -0,0 +1,282 @@
+/*
+ * TimerWheel.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * A hashed timer wheel that runs the deadlines of every connection of a
+ * {@link Server} from one thread. Time is cut into ticks and each tick owns
+ * a slot of a fixed size wheel; a timeout goes into the slot its deadline
+ * falls in, with the number of turns of the wheel still to wait. Scheduling
+ * and cancelling are constant time, whatever the number of timeouts, and a
+ * timeout fires within one tick of its deadline.
+ *
+ * Other threads only hand timeouts over through lock-free queues, the slots
+ * themselves are touched by the timer thread alone. Tasks run on that
+ * thread, so they must be short and never block.
+ */
+public class TimerWheel {
+	/**
+	 * Work done when a timeout expires.
+	 */
+	public interface Task {
+		/**
+		 * Called on the timer thread once the deadline has passed, unless
+		 * the timeout was cancelled first.
+		 *
+		 * @param timeout The timeout that expired.
+		 */
+		public void expired(Timeout timeout);
+	}
+
+	private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+	private long tick;
+	private Timeout[] slots;
+	private int mask;
+	private Queue<Timeout> scheduled;
+	private Queue<Timeout> cancelled;
+	private AtomicInteger pending;
+	private Thread thread;
+	private long startTime;
+	private volatile boolean stop;
+
+	/**
+	 * @param tick The length of a tick, in milliseconds.
+	 * @param size The number of slots, rounded up to a power of two.
+	 */
+	public TimerWheel(long tick, int size) {
+		if(tick < 1)
+			throw new IllegalArgumentException("tick must be positive: " + tick);
+		int slots = 1;
+		while(slots < size)
+			slots <<= 1;
+		this.tick = TimeUnit.MILLISECONDS.toNanos(tick);
+		this.slots = new Timeout[slots];
+		this.mask = slots - 1;
+		this.scheduled = new ConcurrentLinkedQueue<Timeout>();
+		this.cancelled = new ConcurrentLinkedQueue<Timeout>();
+		this.pending = new AtomicInteger();
+		this.thread = new Thread(new Runnable() {
+			public void run() {
+				turn();
+			}
+		}, "sws-timer");
+		this.thread.setDaemon(true);
+		this.startTime = System.nanoTime();
+		this.stop = false;
+	}
+
+	/**
+	 * Starts the timer thread.
+	 */
+	public void start() {
+		this.thread.start();
+	}
+
+	/**
+	 * Stops the timer thread. Timeouts that have not expired yet never will.
+	 */
+	public void stop() {
+		this.stop = true;
+		LockSupport.unpark(this.thread);
+		try {
+			this.thread.join();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Arranges for the task to run once the delay has passed.
+	 *
+	 * @param task The task to run.
+	 * @param delay The delay, in milliseconds.
+	 * @return The timeout, which can be cancelled.
+	 */
+	public Timeout schedule(Task task, long delay) {
+		long deadline = System.nanoTime() - this.startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay));
+		Timeout timeout = new Timeout(this, task, deadline);
+		this.pending.incrementAndGet();
+		this.scheduled.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * @return the number of timeouts that have neither expired nor been cancelled
+	 */
+	public int getPending() {
+		return this.pending.get();
+	}
+
+	private void turn() {
+		long ticks = 0;
+		while(!this.stop) {
+			long now = waitForTick(ticks);
+			if(this.stop)
+				break;
+			removeCancelled();
+			transferScheduled(ticks);
+			expire((int) (ticks & this.mask), now);
+			ticks++;
+		}
+	}
+
+	/**
+	 * Sleeps until the supplied tick has ended.
+	 *
+	 * @return the time elapsed since the wheel was created, in nanoseconds
+	 */
+	private long waitForTick(long ticks) {
+		long end = this.tick * (ticks + 1);
+		while(true) {
+			long now = System.nanoTime() - this.startTime;
+			if(now >= end || this.stop)
+				return now;
+			LockSupport.parkNanos(this, end - now);
+		}
+	}
+
+	private void removeCancelled() {
+		Timeout timeout;
+		while((timeout = this.cancelled.poll()) != null) {
+			if(timeout.slot >= 0)
+				unlink(timeout);
+		}
+	}
+
+	private void transferScheduled(long ticks) {
+		for(int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+			Timeout timeout = this.scheduled.poll();
+			if(timeout == null)
+				break;
+			if(timeout.state.get() != Timeout.WAITING)
+				continue;
+
+			// Never put a timeout behind the current slot, late ones go off now
+			long due = Math.max(timeout.deadline / this.tick, ticks);
+			timeout.rounds = (due - ticks) / this.slots.length;
+			timeout.slot = (int) (due & this.mask);
+			Timeout head = this.slots[timeout.slot];
+			timeout.next = head;
+			if(head != null)
+				head.previous = timeout;
+			this.slots[timeout.slot] = timeout;
+		}
+	}
+
+	private void expire(int slot, long now) {
+		Timeout timeout = this.slots[slot];
+		while(timeout != null) {
+			Timeout next = timeout.next;
+			if(timeout.rounds > 0) {
+				timeout.rounds--;
+			}
+			else if(timeout.deadline <= now) {
+				unlink(timeout);
+				if(timeout.state.compareAndSet(Timeout.WAITING, Timeout.EXPIRED)) {
+					this.pending.decrementAndGet();
+					try {
+						timeout.task.expired(timeout);
+					}
+					catch(Throwable t) {
+						Server.logger.log(Level.WARNING, "Timer task failed", t);
+					}
+				}
+			}
+			timeout = next;
+		}
+	}
+
+	private void unlink(Timeout timeout) {
+		if(timeout.previous != null)
+			timeout.previous.next = timeout.next;
+		else
+			this.slots[timeout.slot] = timeout.next;
+		if(timeout.next != null)
+			timeout.next.previous = timeout.previous;
+		timeout.next = null;
+		timeout.previous = null;
+		timeout.slot = -1;
+	}
+
+	/**
+	 * A task waiting in the wheel.
+	 */
+	public static final class Timeout {
+		private static final int WAITING = 0;
+		private static final int CANCELLED = 1;
+		private static final int EXPIRED = 2;
+
+		private TimerWheel wheel;
+		private Task task;
+		private long deadline;
+		private AtomicInteger state;
+		// Only touched by the timer thread
+		private long rounds;
+		private int slot;
+		private Timeout next;
+		private Timeout previous;
+
+		private Timeout(TimerWheel wheel, Task task, long deadline) {
+			this.wheel = wheel;
+			this.task = task;
+			this.deadline = deadline;
+			this.state = new AtomicInteger(WAITING);
+			this.slot = -1;
+		}
+
+		/**
+		 * Keeps the task from running, if it has not run yet.
+		 *
+		 * @return true if the timeout was cancelled by this call
+		 */
+		public boolean cancel() {
+			if(!this.state.compareAndSet(WAITING, CANCELLED))
+				return false;
+			this.wheel.pending.decrementAndGet();
+			this.wheel.cancelled.add(this);
+			return true;
+		}
+
+		/**
+		 * @return true if the task has run or is running
+		 */
+		public boolean isExpired() {
+			return this.state.get() == EXPIRED;
+		}
+
+		/**
+		 * @return the task that runs when the timeout expires
+		 */
+		public Task getTask() {
+			return task;
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * VirtualThreads.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Looks up the virtual thread factory of the running JVM. The project is
+ * still compiled for older Java versions, so the factory is obtained
+ * reflectively through <tt>Thread.ofVirtual().name(prefix, 0).factory()</tt>
+ * and is only available when the server runs on Java 21 or later.
+ */
+public class VirtualThreads {
+	private VirtualThreads() {
+	}
+
+	/**
+	 * Checks if the running JVM can create virtual threads.
+	 * 
+	 * @return true if {@link #newFactory(String)} will succeed
+	 */
+	public static boolean isSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		}
+		catch(NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Creates a factory of virtual threads named <tt>prefix0</tt>,
+	 * <tt>prefix1</tt>, and so on.
+	 * 
+	 * @param prefix The thread name prefix.
+	 * @return A {@link ThreadFactory} producing unstarted virtual threads.
+	 * @throws UnsupportedOperationException If the JVM has no virtual threads.
+	 */
+	public static ThreadFactory newFactory(String prefix) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			Method name = builderType.getMethod("name", String.class, long.class);
+			builder = name.invoke(builder, prefix, 0L);
+			return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+		}
+		catch(Exception e) {
+			throw new UnsupportedOperationException("Virtual threads need Java 21 or later, running on "
+					+ System.getProperty("java.version"), e);
+		}
+	}
+}
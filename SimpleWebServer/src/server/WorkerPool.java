@@ -0,0 +1,178 @@
+/*
+ * WorkerPool.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import protocol.HttpResponse;
+import protocol.HttpResponseFactory;
+import protocol.Protocol;
+
+/**
+ * A bounded pool of threads that runs {@link ConnectionHandler}s. At most
+ * {@link ServerConfiguration#getWorkerThreads()} handlers run at once and at
+ * most {@link ServerConfiguration#getWorkerQueueSize()} wait for a thread.
+ * Connections arriving when both are full are answered with a 503 and closed
+ * right away instead of piling up.
+ */
+public class WorkerPool {
+	private static final long IDLE_THREAD_TIMEOUT = 60; // in seconds
+
+	private ThreadPoolExecutor executor;
+	private AtomicLong rejected;
+
+	/**
+	 * Creates a pool sized according to the supplied configuration.
+	 *
+	 * @param configuration The server configuration.
+	 */
+	public WorkerPool(ServerConfiguration configuration) {
+		this.rejected = new AtomicLong();
+		int threads = configuration.getWorkerThreads();
+		this.executor = new ThreadPoolExecutor(threads, threads,
+				IDLE_THREAD_TIMEOUT, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(configuration.getWorkerQueueSize()),
+				new WorkerThreadFactory(), new ServiceUnavailablePolicy());
+		// Let the pool shrink back down once a burst is over
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Queues the handler for execution, or answers its client with a 503 if
+	 * the pool is saturated.
+	 *
+	 * @param handler The handler to run.
+	 */
+	public void execute(ConnectionHandler handler) {
+		this.executor.execute(handler);
+	}
+
+	/**
+	 * Stops taking new handlers. Handlers that are already queued or running
+	 * are left to finish.
+	 */
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+	/**
+	 * Waits for the running and queued handlers to finish after
+	 * {@link #shutdown()}.
+	 *
+	 * @param timeout The most time to wait, in milliseconds.
+	 * @return true if every handler finished
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(long timeout) throws InterruptedException {
+		return this.executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Takes the handlers that are still waiting for a thread off the queue
+	 * and closes their connections without an answer.
+	 *
+	 * @return the number of connections closed
+	 */
+	public int cancelQueued() {
+		List<Runnable> queued = new ArrayList<Runnable>();
+		this.executor.getQueue().drainTo(queued);
+		for(Runnable r : queued) {
+			if(r instanceof ConnectionHandler)
+				((ConnectionHandler) r).discard();
+		}
+		return queued.size();
+	}
+
+	/**
+	 * Gets the approximate number of handlers currently running.
+	 *
+	 * @return the number of active workers
+	 */
+	public int getActiveCount() {
+		return this.executor.getActiveCount();
+	}
+
+	/**
+	 * Gets the number of handlers waiting for a free thread.
+	 *
+	 * @return the number of queued workers
+	 */
+	public int getQueuedCount() {
+		return this.executor.getQueue().size();
+	}
+
+	/**
+	 * Gets the number of connections turned away because the pool was full.
+	 *
+	 * @return the number of rejected workers
+	 */
+	public long getRejectedCount() {
+		return this.rejected.get();
+	}
+
+	/**
+	 * Answers the client of a rejected handler with 503 Service Unavailable.
+	 * This runs on the acceptor thread, so it only writes the short status
+	 * and header block and closes the socket.
+	 */
+	private class ServiceUnavailablePolicy implements RejectedExecutionHandler {
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			rejected.incrementAndGet();
+			if(!(r instanceof ConnectionHandler))
+				return;
+
+			ConnectionHandler handler = (ConnectionHandler) r;
+			try {
+				// A client that opened with the HTTP/2 preface is just closed
+				if(!handler.isHttp2Preface()) {
+					HttpResponse response = HttpResponseFactory.create503ServiceUnavailable(Protocol.CLOSE);
+					response.write(handler.getSocket().getOutputStream());
+				}
+			}
+			catch(Exception e) {
+				// The client may already be gone, nothing else we can do
+			}
+			finally {
+				handler.discard();
+			}
+		}
+	}
+
+	/**
+	 * Names the worker threads so they can be told apart in thread dumps.
+	 */
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			return new Thread(r, "sws-worker-" + count.incrementAndGet());
+		}
+	}
+}